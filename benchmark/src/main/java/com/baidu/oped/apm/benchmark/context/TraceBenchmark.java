@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.benchmark.context;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
+import com.baidu.oped.apm.bootstrap.context.ServerMetaDataHolder;
+import com.baidu.oped.apm.bootstrap.context.Trace;
+import com.baidu.oped.apm.common.Version;
+import com.baidu.oped.apm.common.trace.ServiceType;
+import com.baidu.oped.apm.common.util.JvmUtils;
+import com.baidu.oped.apm.common.util.SystemPropertyKey;
+import com.baidu.oped.apm.profiler.AgentInformation;
+import com.baidu.oped.apm.profiler.context.DefaultServerMetaDataHolder;
+import com.baidu.oped.apm.profiler.context.DefaultTrace;
+import com.baidu.oped.apm.profiler.context.DefaultTraceContext;
+import com.baidu.oped.apm.profiler.context.storage.LogStorageFactory;
+import com.baidu.oped.apm.profiler.sampler.SamplingRateSampler;
+
+/**
+ * Trace life cycle as seen by an interceptor.
+ * DefaultTraceContext delegates to ThreadLocalTraceFactory, so newTraceObject() measures
+ * sampling + DefaultTrace/Span creation + thread local binding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraceBenchmark {
+
+    @Param({"1", "20"})
+    public int samplingRate;
+
+    private DefaultTraceContext traceContext;
+
+    // long running sampled trace for traceBlockBegin/End. not bound to the thread.
+    private DefaultTrace trace;
+
+    @Setup
+    public void setUp() {
+        final AgentInformation agentInformation = new AgentInformation("benchmark-agent", "benchmark-application", System.currentTimeMillis(), 10, "benchmark", "127.0.0.1",
+                ServiceType.STAND_ALONE, JvmUtils.getSystemProperty(SystemPropertyKey.JAVA_VERSION), Version.VERSION);
+        final ServerMetaDataHolder serverMetaDataHolder = new DefaultServerMetaDataHolder(Collections.<String>emptyList());
+        // LogStorage writes nothing without a logging binding.
+        this.traceContext = new DefaultTraceContext(1024, agentInformation, new LogStorageFactory(), new SamplingRateSampler(samplingRate), serverMetaDataHolder, false);
+        this.traceContext.setProfilerConfig(new DefaultProfilerConfig());
+    }
+
+    @Setup(Level.Iteration)
+    public void beginTrace() {
+        this.trace = new DefaultTrace(traceContext, 1, true);
+        this.trace.setStorage(new LogStorageFactory().createStorage());
+    }
+
+    @TearDown(Level.Iteration)
+    public void endTrace() {
+        trace.close();
+    }
+
+    @Benchmark
+    public void newTraceObject(Blackhole blackhole) {
+        final Trace trace = traceContext.newTraceObject();
+        blackhole.consume(trace);
+        traceContext.removeTraceObject();
+        trace.close();
+    }
+
+    @Benchmark
+    public void traceBlock(Blackhole blackhole) {
+        blackhole.consume(trace.traceBlockBegin());
+        trace.traceBlockEnd();
+    }
+
+    @Benchmark
+    public void nestedTraceBlock(Blackhole blackhole) {
+        blackhole.consume(trace.traceBlockBegin());
+        blackhole.consume(trace.traceBlockBegin());
+        blackhole.consume(trace.traceBlockBegin());
+        trace.traceBlockEnd();
+        trace.traceBlockEnd();
+        trace.traceBlockEnd();
+    }
+}
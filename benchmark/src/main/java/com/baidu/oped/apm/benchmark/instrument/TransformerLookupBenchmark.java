@@ -0,0 +1,149 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.benchmark.instrument;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
+import com.baidu.oped.apm.bootstrap.config.Filter;
+import com.baidu.oped.apm.bootstrap.instrument.matcher.Matchers;
+import com.baidu.oped.apm.profiler.ClassFileFilter;
+import com.baidu.oped.apm.profiler.UnmodifiableClassFilter;
+import com.baidu.oped.apm.profiler.instrument.transformer.DefaultTransformerRegistry;
+
+/**
+ * Lookup part of ClassFileTransformerDispatcher.transform(), which runs for every class the JVM loads.
+ * The dispatcher itself needs a running DefaultAgent, so the same filter -> registry -> debug filter chain is built here
+ * from the real components. Bytecode editing is not measured. most loaded classes are not instrumented.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformerLookupBenchmark {
+
+    private static final String[] PLUGIN_PACKAGES = {
+            "org.apache.catalina.core", "org.apache.catalina.connector", "org.eclipse.jetty.server",
+            "org.apache.http.impl.client", "org.apache.commons.httpclient", "com.ning.http.client",
+            "com.squareup.okhttp", "sun.net.www.protocol.http", "com.mysql.jdbc", "oracle.jdbc.driver",
+            "net.sourceforge.jtds.jdbc", "org.apache.commons.dbcp", "redis.clients.jedis", "net.spy.memcached",
+            "org.apache.thrift", "org.springframework.beans.factory.support", "org.springframework.web.servlet",
+            "com.ibatis.sqlmap.engine.impl", "org.apache.ibatis.session.defaults", "com.google.gson"
+    };
+    private static final int CLASSES_PER_PACKAGE = 15;
+
+    private final ClassLoader agentClassLoader = new ClassLoader(null) {};
+    private final ClassLoader applicationClassLoader = TransformerLookupBenchmark.class.getClassLoader();
+    private final byte[] classFileBuffer = new byte[0];
+
+    private ClassFileFilter unmodifiableFilter;
+    private DefaultTransformerRegistry transformerRegistry;
+    private Filter<String> debugTargetFilter;
+    private ClassFileTransformer debugTransformer;
+
+    private String[] hitClassNames;
+    private String[] missClassNames;
+    private String[] jdkClassNames;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        this.unmodifiableFilter = new UnmodifiableClassFilter(agentClassLoader);
+        this.debugTargetFilter = new DefaultProfilerConfig().getProfilableClassFilter();
+        this.debugTransformer = new NoopTransformer();
+
+        final List<String> hit = new ArrayList<String>();
+        final List<String> miss = new ArrayList<String>();
+        this.transformerRegistry = new DefaultTransformerRegistry();
+        for (String packageName : PLUGIN_PACKAGES) {
+            for (int i = 0; i < CLASSES_PER_PACKAGE; i++) {
+                final String className = packageName + ".Target" + i;
+                transformerRegistry.addTransformer(Matchers.newClassNameMatcher(className), new NoopTransformer());
+                hit.add(className.replace('.', '/'));
+                // neighbour classes of the same library are loaded but not instrumented.
+                miss.add(packageName.replace('.', '/') + "/Support" + i);
+                miss.add(packageName.replace('.', '/') + "/Target" + i + "$1");
+            }
+        }
+        this.hitClassNames = hit.toArray(new String[hit.size()]);
+        this.missClassNames = miss.toArray(new String[miss.size()]);
+        this.jdkClassNames = new String[] {
+                "java/lang/String", "java/util/HashMap", "java/util/concurrent/ConcurrentHashMap$Node",
+                "javax/servlet/http/HttpServlet", "sun/reflect/GeneratedMethodAccessor1", "com/sun/proxy/$Proxy12"
+        };
+    }
+
+    @Benchmark
+    public ClassFileTransformer lookupHit() {
+        return lookup(applicationClassLoader, next(hitClassNames));
+    }
+
+    @Benchmark
+    public ClassFileTransformer lookupMiss() {
+        return lookup(applicationClassLoader, next(missClassNames));
+    }
+
+    @Benchmark
+    public ClassFileTransformer lookupJdk() {
+        return lookup(null, next(jdkClassNames));
+    }
+
+    private String next(String[] classNames) {
+        final int next = (index++ & Integer.MAX_VALUE) % classNames.length;
+        return classNames[next];
+    }
+
+    // same steps as ClassFileTransformerDispatcher.transform()
+    private ClassFileTransformer lookup(ClassLoader classLoader, String jvmClassName) {
+        if (!unmodifiableFilter.accept(classLoader, jvmClassName, null, null, classFileBuffer)) {
+            return null;
+        }
+        final ClassFileTransformer transformer = transformerRegistry.findTransformer(classLoader, jvmClassName, classFileBuffer);
+        if (transformer != null) {
+            return transformer;
+        }
+        if (debugTargetFilter.filter(jvmClassName)) {
+            return debugTransformer;
+        }
+        return null;
+    }
+
+    private static class NoopTransformer implements ClassFileTransformer {
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.benchmark.metadata;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.oped.apm.profiler.metadata.Result;
+import com.baidu.oped.apm.profiler.metadata.SimpleCache;
+
+/**
+ * SimpleCache backs the api/string/sql metadata ids.
+ * hit : steady state of a warmed up application.
+ * miss : key set larger than the cache. every put evicts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimpleCacheBenchmark {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final int HIT_KEY_SIZE = CACHE_SIZE / 2;
+    private static final int MISS_KEY_SIZE = CACHE_SIZE * 64;
+
+    private SimpleCache<String> hitCache;
+    private SimpleCache<String> missCache;
+
+    private String[] hitKeys;
+    private String[] missKeys;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index;
+
+        int next(int size) {
+            final int next = index++;
+            if (index == size) {
+                index = 0;
+            }
+            return next;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        this.hitKeys = newKeys("com.baidu.oped.apm.Hit.method", HIT_KEY_SIZE);
+        this.missKeys = newKeys("com.baidu.oped.apm.Miss.method", MISS_KEY_SIZE);
+
+        this.hitCache = new SimpleCache<String>(CACHE_SIZE);
+        for (String key : hitKeys) {
+            hitCache.put(key);
+        }
+        this.missCache = new SimpleCache<String>(CACHE_SIZE);
+    }
+
+    private String[] newKeys(String prefix, int size) {
+        final String[] keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = prefix + i + "(java.lang.String, int)";
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public Result putHit(Cursor cursor) {
+        return hitCache.put(hitKeys[cursor.next(HIT_KEY_SIZE)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Result putHitContended(Cursor cursor) {
+        return hitCache.put(hitKeys[cursor.next(HIT_KEY_SIZE)]);
+    }
+
+    @Benchmark
+    public Result putMiss(Cursor cursor) {
+        return missCache.put(missKeys[cursor.next(MISS_KEY_SIZE)]);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.benchmark.sender;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.oped.apm.profiler.sender.AsyncQueueingExecutor;
+import com.baidu.oped.apm.profiler.sender.AsyncQueueingExecutorListener;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueType;
+import com.baidu.oped.apm.profiler.sender.queue.WaitStrategyType;
+
+/**
+ * Producer side of the data sender queue. request threads call execute() concurrently.
+ * The consumer drops messages, so the result is the enqueue cost (and offer failures once the consumer falls behind).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsyncQueueingExecutorBenchmark {
+
+    private static final int QUEUE_SIZE = 1024 * 5;
+
+    @Param({"LINKED", "RING_BUFFER"})
+    public String queueType;
+
+    private AsyncQueueingExecutor<Object> executor;
+
+    private final Object message = new Object();
+
+    @Setup
+    public void setUp() {
+        final AsyncQueueFactory queueFactory = new AsyncQueueFactory(AsyncQueueType.getType(queueType, AsyncQueueType.LINKED), WaitStrategyType.PARK);
+        this.executor = new AsyncQueueingExecutor<Object>(queueFactory, QUEUE_SIZE, AsyncQueueingExecutor.DEFAULT_MAX_DRAIN_SIZE, "Apm-Benchmark-Executor");
+        this.executor.setListener(new AsyncQueueingExecutorListener<Object>() {
+            @Override
+            public void execute(Collection<Object> messageList) {
+            }
+
+            @Override
+            public void execute(Object message) {
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.stop();
+    }
+
+    @Benchmark
+    public boolean execute() {
+        return executor.execute(message);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean executeContended() {
+        return executor.execute(message);
+    }
+}
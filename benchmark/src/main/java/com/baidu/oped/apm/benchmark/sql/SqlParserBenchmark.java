@@ -0,0 +1,68 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.benchmark.sql;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.baidu.oped.apm.common.util.DefaultSqlParser;
+import com.baidu.oped.apm.common.util.NormalizedSql;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlParserBenchmark {
+
+    private static final String SIMPLE_SQL = "select * from member where id = 10";
+
+    private static final String COMPLEX_SQL = "SELECT a.id, a.name, b.order_no, b.amount FROM member a "
+            + "INNER JOIN orders b ON a.id = b.member_id "
+            + "WHERE a.status = 'ACTIVE' AND b.amount > 1000.5 AND b.created BETWEEN '2015-01-01' AND '2015-12-31' "
+            + "/* find orders */ AND a.grade IN (1, 2, 3, 4) "
+            + "ORDER BY b.created DESC LIMIT 100";
+
+    private static final String PREPARED_SQL = "insert into orders (member_id, order_no, amount, created) values (?, ?, ?, ?)";
+
+    private final DefaultSqlParser sqlParser = new DefaultSqlParser();
+
+    @Benchmark
+    public NormalizedSql normalizedSimpleSql() {
+        return sqlParser.normalizedSql(SIMPLE_SQL);
+    }
+
+    @Benchmark
+    public NormalizedSql normalizedComplexSql() {
+        return sqlParser.normalizedSql(COMPLEX_SQL);
+    }
+
+    @Benchmark
+    public NormalizedSql normalizedPreparedSql() {
+        return sqlParser.normalizedSql(PREPARED_SQL);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.benchmark.thrift;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.baidu.oped.apm.thrift.dto.TAnnotation;
+import com.baidu.oped.apm.thrift.dto.TAnnotationValue;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+import com.baidu.oped.apm.thrift.io.DirectSpanSerializer;
+import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializer;
+import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializerFactory;
+import com.baidu.oped.apm.thrift.util.SerializationUtils;
+
+/**
+ * SerializationUtils.serialize() (UdpDataSender path) vs DirectSpanSerializer.
+ * bytes/op : java -jar benchmarks.jar SpanSerializeBenchmark -prof gc (gc.alloc.rate.norm)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpanSerializeBenchmark {
+
+    private static final int UDP_MAX_PACKET_LENGTH = 65507;
+
+    @Param({"1", "10", "100"})
+    public int spanEventCount;
+
+    private TSpan span;
+
+    private HeaderTBaseSerializer serializer;
+    private DirectSpanSerializer directSerializer;
+
+    @Setup
+    public void setUp() {
+        // same as UdpDataSender
+        this.serializer = new HeaderTBaseSerializerFactory(false, UDP_MAX_PACKET_LENGTH, false).createSerializer();
+        this.directSerializer = new DirectSpanSerializer(UDP_MAX_PACKET_LENGTH);
+        this.span = createSpan(spanEventCount);
+    }
+
+    private TSpan createSpan(int spanEventCount) {
+        final TSpan span = new TSpan();
+        span.setAgentId("benchmark-agent");
+        span.setApplicationName("benchmark-application");
+        span.setAgentStartTime(System.currentTimeMillis());
+        span.setTransactionId(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15});
+        span.setSpanId(1234567890L);
+        span.setParentSpanId(-1);
+        span.setStartTime(System.currentTimeMillis());
+        span.setElapsed(120);
+        span.setRpc("/benchmark/span/serialize.do");
+        span.setServiceType((short) 1010);
+        span.setEndPoint("localhost:8080");
+        span.setRemoteAddr("127.0.0.1");
+        span.setApiId(10);
+        span.setApplicationServiceType((short) 1010);
+        span.addToAnnotations(annotation(-1, TAnnotationValue.stringValue("http.param=value")));
+
+        for (int i = 0; i < spanEventCount; i++) {
+            final TSpanEvent spanEvent = new TSpanEvent();
+            spanEvent.setSequence((short) i);
+            spanEvent.setStartElapsed(i);
+            spanEvent.setEndElapsed(1);
+            spanEvent.setServiceType((short) 2101);
+            spanEvent.setDepth(i % 8 + 1);
+            spanEvent.setApiId(100 + i);
+            spanEvent.setDestinationId("jdbc:mysql://localhost:3306/benchmark");
+            spanEvent.addToAnnotations(annotation(20, TAnnotationValue.intValue(i)));
+            spanEvent.addToAnnotations(annotation(21, TAnnotationValue.stringValue("select * from table where id = ?")));
+            span.addToSpanEventList(spanEvent);
+        }
+        return span;
+    }
+
+    private TAnnotation annotation(int key, TAnnotationValue value) {
+        final TAnnotation annotation = new TAnnotation(key);
+        annotation.setValue(value);
+        return annotation;
+    }
+
+    @Benchmark
+    public void serializationUtils(Blackhole blackhole) {
+        blackhole.consume(SerializationUtils.serialize(span, serializer, null));
+        blackhole.consume(serializer.getInterBufferSize());
+    }
+
+    @Benchmark
+    public void directSpanSerializer(Blackhole blackhole) throws TException {
+        blackhole.consume(directSerializer.serialize(span));
+        blackhole.consume(directSerializer.getInterBufferSize());
+    }
+}
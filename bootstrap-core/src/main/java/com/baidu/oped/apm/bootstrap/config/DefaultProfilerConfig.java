@@ -37,6 +37,9 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     private static final Logger logger = Logger.getLogger(DefaultProfilerConfig.class.getName());
     private static final String DEFAULT_IP = "127.0.0.1";
 
+    public static final String INSTRUMENT_ENGINE_JAVASSIST = "JAVASSIST";
+    public static final String INSTRUMENT_ENGINE_ASM = "ASM";
+
     private final Properties properties;
     private final PropertyPlaceholderHelper propertyPlaceholderHelper = new PropertyPlaceholderHelper("${", "}");
 
@@ -95,19 +98,54 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     private int spanDataSenderSocketSendBufferSize = 1024 * 64 * 16;
     private int spanDataSenderSocketTimeout = 1000 * 3;
     private int spanDataSenderChunkSize = 1024 * 16;
+    private boolean spanDataSenderPackingEnable = false;
+    private boolean spanDataSenderDirectSerializeEnable = false;
 
     private int statDataSenderWriteQueueSize = 1024 * 5;
     private int statDataSenderSocketSendBufferSize = 1024 * 64 * 16;
     private int statDataSenderSocketTimeout = 1000 * 3;
     private int statDataSenderChunkSize = 1024 * 16;
+    private boolean statDataSenderPackingEnable = false;
+
+    private String dataSenderQueueType = "LINKED";
+    private String dataSenderQueueWaitStrategy = "PARK";
+    private int dataSenderMaxDrainSize = 10;
+
+    private boolean dataSenderSpoolEnable = false;
+    private String dataSenderSpoolDirectory = "";
+    private int dataSenderSpoolSegmentSize = 1024 * 1024 * 8;
+    private long dataSenderSpoolMaxSize = 1024L * 1024 * 128;
+    private int dataSenderSpoolReplayRate = 1000;
+
+    private int metaDataDictionarySize = 1024;
+    private int metaDataDictionaryOverflowSize = 1024;
+    private boolean metaDataDictionaryPersistEnable = false;
+    private String metaDataDictionaryDirectory = "";
     
     private boolean tcpDataSenderCommandAcceptEnable = false;
+    private boolean tcpDataSenderWriteCoalescingEnable = false;
+    private int tcpDataSenderWriteCoalescingMaxBytes = 1024 * 64;
+    private boolean tcpDataSenderPriorityLaneEnable = false;
+    private int tcpDataSenderPriorityLaneSize = 1024;
+    private int tcpDataSenderPriorityLaneWeight = 4;
 
     private boolean traceAgentActiveThread = true;
 
+    private boolean stackSamplingEnable = false;
+    private int stackSamplingInterval = 100;
+    private int stackSamplingThreshold = 1000;
+    private int stackSamplingMaxThreads = 32;
+    private int stackSamplingMaxDepth = 64;
+    private int stackSamplingMaxNodes = 1024;
+
     private int callStackMaxDepth = 512;
+
+    private boolean spanEventRecycleEnable = false;
+    private int spanEventRecyclePoolSize = 256;
     
     private int jdbcSqlCacheSize = 1024;
+    // record bind values only for statements slower than this(ms). 0 records them always.
+    private int jdbcBindValueSlowThreshold = 0;
 
     private boolean tomcatHideApmHeader = true;
     private Filter<String> tomcatExcludeUrlFilter = new SkipFilter<String>();
@@ -133,6 +171,7 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     private DumpType apacheHttpClient3ProfileEntityDumpType = DumpType.EXCEPTION;
     private int apacheHttpClient3ProfileEntitySamplingRate = 1;
     private boolean apacheHttpClient3ProfileIo = true;
+    private boolean apacheHttpClient3BinaryTraceHeader = false;
     
     /**
      * apache http client 4
@@ -146,6 +185,7 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     private int apacheHttpClient4ProfileEntitySamplingRate = 1;
     private boolean apacheHttpClient4ProfileStatusCode = true;
     private boolean apacheHttpClient4ProfileIo = true;
+    private boolean apacheHttpClient4BinaryTraceHeader = false;
 
     /**
      * apache nio http client
@@ -155,10 +195,21 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     // Sampling
     private boolean samplingEnable = true;
     private int samplingRate = 1;
+    private String samplingType = "RATE";
+    private int samplingMaxTps = 0;
+    private int samplingAdaptiveMaxRate = 100;
+    private long samplingAdaptiveInterval = 1000;
+    private List<String> samplingEntryPointRate = Collections.emptyList();
+    private boolean samplingTailEnable = false;
+    private int samplingTailThreshold = 1000;
+    private int samplingTailBufferSize = 256;
+    private int samplingTailBufferMax = 65536;
 
     // span buffering
     private boolean ioBufferingEnable;
     private int ioBufferingBufferSize;
+    private int ioBufferingChunkMaxBytes = 0;
+    private long ioBufferingChunkMaxAge = 0;
 
     private int profileJvmCollectInterval;
 
@@ -170,10 +221,19 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     private String applicationServerType;
     private List<String> applicationTypeDetectOrder = Collections.emptyList();
     private List<String> disabledPlugins = Collections.emptyList();
+    private int pluginLoadThreads = 4;
     private boolean log4jLoggingTransactionInfo;
     private boolean logbackLoggingTransactionInfo;
     
     private boolean propagateInterceptorException = false;
+    private boolean interceptorFieldBindEnable = false;
+    private String instrumentEngine = INSTRUMENT_ENGINE_JAVASSIST;
+    private int classPoolMaxCachedClassSize = 4096;
+
+    private boolean transformCacheEnable = false;
+    private String transformCacheDirectory = "";
+    private int transformCacheMaxEntries = 16384;
+    private long transformCacheMaxBytes = 1024 * 1024 * 64;
 
     public DefaultProfilerConfig() {
         this.properties = new Properties();
@@ -247,11 +307,66 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         return tcpDataSenderCommandAcceptEnable;
     }
 
+    @Override
+    public boolean isTcpDataSenderWriteCoalescingEnable() {
+        return tcpDataSenderWriteCoalescingEnable;
+    }
+
+    @Override
+    public int getTcpDataSenderWriteCoalescingMaxBytes() {
+        return tcpDataSenderWriteCoalescingMaxBytes;
+    }
+
+    @Override
+    public boolean isTcpDataSenderPriorityLaneEnable() {
+        return tcpDataSenderPriorityLaneEnable;
+    }
+
+    @Override
+    public int getTcpDataSenderPriorityLaneSize() {
+        return tcpDataSenderPriorityLaneSize;
+    }
+
+    @Override
+    public int getTcpDataSenderPriorityLaneWeight() {
+        return tcpDataSenderPriorityLaneWeight;
+    }
+
     @Override
     public boolean isTraceAgentActiveThread() {
         return traceAgentActiveThread;
     }
 
+    @Override
+    public boolean isStackSamplingEnable() {
+        return stackSamplingEnable;
+    }
+
+    @Override
+    public int getStackSamplingInterval() {
+        return stackSamplingInterval;
+    }
+
+    @Override
+    public int getStackSamplingThreshold() {
+        return stackSamplingThreshold;
+    }
+
+    @Override
+    public int getStackSamplingMaxThreads() {
+        return stackSamplingMaxThreads;
+    }
+
+    @Override
+    public int getStackSamplingMaxDepth() {
+        return stackSamplingMaxDepth;
+    }
+
+    @Override
+    public int getStackSamplingMaxNodes() {
+        return stackSamplingMaxNodes;
+    }
+
     @Override
     public int getSpanDataSenderSocketTimeout() {
         return spanDataSenderSocketTimeout;
@@ -262,11 +377,86 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         return spanDataSenderChunkSize;
     }
 
+    @Override
+    public boolean isSpanDataSenderPackingEnable() {
+        return spanDataSenderPackingEnable;
+    }
+
+    @Override
+    public boolean isSpanDataSenderDirectSerializeEnable() {
+        return spanDataSenderDirectSerializeEnable;
+    }
+
     @Override
     public int getStatDataSenderChunkSize() {
         return statDataSenderChunkSize;
     }
 
+    @Override
+    public boolean isStatDataSenderPackingEnable() {
+        return statDataSenderPackingEnable;
+    }
+
+    @Override
+    public String getDataSenderQueueType() {
+        return dataSenderQueueType;
+    }
+
+    @Override
+    public String getDataSenderQueueWaitStrategy() {
+        return dataSenderQueueWaitStrategy;
+    }
+
+    @Override
+    public int getDataSenderMaxDrainSize() {
+        return dataSenderMaxDrainSize;
+    }
+
+    @Override
+    public boolean isDataSenderSpoolEnable() {
+        return dataSenderSpoolEnable;
+    }
+
+    @Override
+    public String getDataSenderSpoolDirectory() {
+        return dataSenderSpoolDirectory;
+    }
+
+    @Override
+    public int getDataSenderSpoolSegmentSize() {
+        return dataSenderSpoolSegmentSize;
+    }
+
+    @Override
+    public long getDataSenderSpoolMaxSize() {
+        return dataSenderSpoolMaxSize;
+    }
+
+    @Override
+    public int getDataSenderSpoolReplayRate() {
+        return dataSenderSpoolReplayRate;
+    }
+
+    @Override
+    public int getMetaDataDictionarySize() {
+        return metaDataDictionarySize;
+    }
+
+    @Override
+    public int getMetaDataDictionaryOverflowSize() {
+        return metaDataDictionaryOverflowSize;
+    }
+
+    @Override
+    public boolean isMetaDataDictionaryPersistEnable() {
+        return metaDataDictionaryPersistEnable;
+    }
+
+    @Override
+    public String getMetaDataDictionaryDirectory() {
+        return metaDataDictionaryDirectory;
+    }
+
     @Override
     public boolean isProfileEnable() {
         return profileEnable;
@@ -277,6 +467,11 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         return jdbcSqlCacheSize;
     }
 
+    @Override
+    public int getJdbcBindValueSlowThreshold() {
+        return jdbcBindValueSlowThreshold;
+    }
+
     @Override
     public boolean isSamplingEnable() {
         return samplingEnable;
@@ -288,6 +483,51 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         return samplingRate;
     }
 
+    @Override
+    public String getSamplingType() {
+        return samplingType;
+    }
+
+    @Override
+    public int getSamplingMaxTps() {
+        return samplingMaxTps;
+    }
+
+    @Override
+    public int getSamplingAdaptiveMaxRate() {
+        return samplingAdaptiveMaxRate;
+    }
+
+    @Override
+    public long getSamplingAdaptiveInterval() {
+        return samplingAdaptiveInterval;
+    }
+
+    @Override
+    public List<String> getSamplingEntryPointRate() {
+        return samplingEntryPointRate;
+    }
+
+    @Override
+    public boolean isSamplingTailEnable() {
+        return samplingTailEnable;
+    }
+
+    @Override
+    public int getSamplingTailThreshold() {
+        return samplingTailThreshold;
+    }
+
+    @Override
+    public int getSamplingTailBufferSize() {
+        return samplingTailBufferSize;
+    }
+
+    @Override
+    public int getSamplingTailBufferMax() {
+        return samplingTailBufferMax;
+    }
+
     @Override
     public boolean isIoBufferingEnable() {
         return ioBufferingEnable;
@@ -298,6 +538,16 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         return ioBufferingBufferSize;
     }
 
+    @Override
+    public int getIoBufferingChunkMaxBytes() {
+        return ioBufferingChunkMaxBytes;
+    }
+
+    @Override
+    public long getIoBufferingChunkMaxAge() {
+        return ioBufferingChunkMaxAge;
+    }
+
     @Override
     public int getProfileJvmCollectInterval() {
         return profileJvmCollectInterval;
@@ -375,6 +625,11 @@ public class DefaultProfilerConfig implements ProfilerConfig {
     public boolean isApacheHttpClient3ProfileIo() {
         return apacheHttpClient3ProfileIo;
     }
+
+    @Override
+    public boolean isApacheHttpClient3BinaryTraceHeader() {
+        return apacheHttpClient3BinaryTraceHeader;
+    }
     
     //-----------------------------------------
     // http apache client 4
@@ -423,6 +678,11 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         return apacheHttpClient4ProfileIo;
     }
 
+    @Override
+    public boolean isApacheHttpClient4BinaryTraceHeader() {
+        return apacheHttpClient4BinaryTraceHeader;
+    }
+
     //-----------------------------------------
     // org/apache/http/impl/nio/*
     @Override
@@ -470,6 +730,11 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         this.disabledPlugins = disabledPlugins;
     }
 
+    @Override
+    public int getPluginLoadThreads() {
+        return pluginLoadThreads;
+    }
+
     @Override
     public String getApplicationServerType() {
         return applicationServerType;
@@ -501,11 +766,65 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         this.callStackMaxDepth = callStackMaxDepth;
     }
     
+    @Override
+    public boolean isSpanEventRecycleEnable() {
+        return spanEventRecycleEnable;
+    }
+
+    @Override
+    public int getSpanEventRecyclePoolSize() {
+        return spanEventRecyclePoolSize;
+    }
+
     @Override
     public boolean isPropagateInterceptorException() {
         return propagateInterceptorException;
     }
 
+    @Override
+    public boolean isInterceptorFieldBindEnable() {
+        return interceptorFieldBindEnable;
+    }
+
+    @Override
+    public String getInstrumentEngine() {
+        return instrumentEngine;
+    }
+
+    @Override
+    public int getClassPoolMaxCachedClassSize() {
+        return classPoolMaxCachedClassSize;
+    }
+
+    @Override
+    public boolean isTransformCacheEnable() {
+        return transformCacheEnable;
+    }
+
+    @Override
+    public String getTransformCacheDirectory() {
+        return transformCacheDirectory;
+    }
+
+    @Override
+    public int getTransformCacheMaxEntries() {
+        return transformCacheMaxEntries;
+    }
+
+    @Override
+    public long getTransformCacheMaxBytes() {
+        return transformCacheMaxBytes;
+    }
+
+    /**
+     * @return copy of all the properties, including the ones read by plugins
+     */
+    public Properties copyProperties() {
+        final Properties copy = new Properties();
+        copy.putAll(properties);
+        return copy;
+    }
+
     // for test
     void readPropertyValues() {
         // TODO : use Properties' default value instead of using a temp variable.
@@ -527,24 +846,89 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         this.spanDataSenderSocketSendBufferSize = readInt("profiler.spandatasender.socket.sendbuffersize", 1024 * 64 * 16);
         this.spanDataSenderSocketTimeout = readInt("profiler.spandatasender.socket.timeout", 1000 * 3);
         this.spanDataSenderChunkSize = readInt("profiler.spandatasender.chunk.size", 1024 * 16);
+        this.spanDataSenderPackingEnable = readBoolean("profiler.spandatasender.packing.enable", false);
+        this.spanDataSenderDirectSerializeEnable = readBoolean("profiler.spandatasender.direct.serialize.enable", false);
 
         this.statDataSenderWriteQueueSize = readInt("profiler.statdatasender.write.queue.size", 1024 * 5);
         this.statDataSenderSocketSendBufferSize = readInt("profiler.statdatasender.socket.sendbuffersize", 1024 * 64 * 16);
         this.statDataSenderSocketTimeout = readInt("profiler.statdatasender.socket.timeout", 1000 * 3);
         this.statDataSenderChunkSize = readInt("profiler.statdatasender.chunk.size", 1024 * 16);
+        this.statDataSenderPackingEnable = readBoolean("profiler.statdatasender.packing.enable", false);
+
+        this.dataSenderQueueType = readString("profiler.datasender.queue.type", "LINKED");
+        this.dataSenderQueueWaitStrategy = readString("profiler.datasender.queue.waitstrategy", "PARK");
+        this.dataSenderMaxDrainSize = readInt("profiler.datasender.queue.drain.size", 10);
+        if (this.dataSenderMaxDrainSize < 1) {
+            this.dataSenderMaxDrainSize = 1;
+        }
+
+        this.dataSenderSpoolEnable = readBoolean("profiler.datasender.spool.enable", false);
+        this.dataSenderSpoolDirectory = readString("profiler.datasender.spool.dir", "");
+        this.dataSenderSpoolSegmentSize = readInt("profiler.datasender.spool.segment.size", 1024 * 1024 * 8);
+        this.dataSenderSpoolMaxSize = readLong("profiler.datasender.spool.max.size", 1024L * 1024 * 128);
+        this.dataSenderSpoolReplayRate = readInt("profiler.datasender.spool.replay.rate", 1000);
+
+        this.metaDataDictionarySize = readInt("profiler.metadata.dictionary.size", 1024);
+        this.metaDataDictionaryOverflowSize = readInt("profiler.metadata.dictionary.overflow.size", 1024);
+        this.metaDataDictionaryPersistEnable = readBoolean("profiler.metadata.dictionary.persist.enable", false);
+        this.metaDataDictionaryDirectory = readString("profiler.metadata.dictionary.dir", "");
 
         this.tcpDataSenderCommandAcceptEnable = readBoolean("profiler.tcpdatasender.command.accept.enable", false);
+        this.tcpDataSenderWriteCoalescingEnable = readBoolean("profiler.tcpdatasender.write.coalescing.enable", false);
+        this.tcpDataSenderWriteCoalescingMaxBytes = readInt("profiler.tcpdatasender.write.coalescing.maxbytes", 1024 * 64);
+        if (this.tcpDataSenderWriteCoalescingMaxBytes < 1024) {
+            this.tcpDataSenderWriteCoalescingMaxBytes = 1024;
+        }
+        this.tcpDataSenderPriorityLaneEnable = readBoolean("profiler.tcpdatasender.lane.enable", false);
+        this.tcpDataSenderPriorityLaneSize = readInt("profiler.tcpdatasender.lane.priority.queue.size", 1024);
+        if (this.tcpDataSenderPriorityLaneSize < 1) {
+            this.tcpDataSenderPriorityLaneSize = 1;
+        }
+        this.tcpDataSenderPriorityLaneWeight = readInt("profiler.tcpdatasender.lane.priority.weight", 4);
+        if (this.tcpDataSenderPriorityLaneWeight < 1) {
+            this.tcpDataSenderPriorityLaneWeight = 1;
+        }
 
         this.traceAgentActiveThread = readBoolean("profiler.apm.activethread", true);
 
+        this.stackSamplingEnable = readBoolean("profiler.stacksampling.enable", false);
+        this.stackSamplingInterval = readInt("profiler.stacksampling.interval", 100);
+        if (this.stackSamplingInterval < 10) {
+            this.stackSamplingInterval = 10;
+        }
+        this.stackSamplingThreshold = readInt("profiler.stacksampling.threshold", 1000);
+        if (this.stackSamplingThreshold < 0) {
+            this.stackSamplingThreshold = 0;
+        }
+        this.stackSamplingMaxThreads = readInt("profiler.stacksampling.max.threads", 32);
+        if (this.stackSamplingMaxThreads < 1) {
+            this.stackSamplingMaxThreads = 1;
+        }
+        this.stackSamplingMaxDepth = readInt("profiler.stacksampling.max.depth", 64);
+        if (this.stackSamplingMaxDepth < 1) {
+            this.stackSamplingMaxDepth = 1;
+        }
+        this.stackSamplingMaxNodes = readInt("profiler.stacksampling.max.nodes", 1024);
+        if (this.stackSamplingMaxNodes < 1) {
+            this.stackSamplingMaxNodes = 1;
+        }
+
         // CallStck
         this.callStackMaxDepth = readInt("profiler.callstack.max.depth", 64);
         if(this.callStackMaxDepth < 2) {
             this.callStackMaxDepth = 2;
         }
+
+        // SpanEvent recycling
+        this.spanEventRecycleEnable = readBoolean("profiler.spanevent.recycle.enable", false);
+        this.spanEventRecyclePoolSize = readInt("profiler.spanevent.recycle.poolsize", 256);
+        if (this.spanEventRecyclePoolSize < 1) {
+            this.spanEventRecycleEnable = false;
+        }
         
         // JDBC
         this.jdbcSqlCacheSize = readInt("profiler.jdbc.sqlcachesize", 1024);
+        this.jdbcBindValueSlowThreshold = readInt("profiler.jdbc.bindvalue.slow.threshold", 0);
 
         this.tomcatHideApmHeader = readBoolean("profiler.tomcat.hideapmheader", true);
         final String tomcatExcludeURL = readString("profiler.tomcat.excludeurl", "");
@@ -571,6 +955,7 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         this.apacheHttpClient3ProfileEntityDumpType = readDumpType("profiler.apache.httpclient3.entity.dumptype", DumpType.EXCEPTION);
         this.apacheHttpClient3ProfileEntitySamplingRate = readInt("profiler.apache.httpclient3.entity.sampling.rate", 1);
         this.apacheHttpClient3ProfileIo = readBoolean("profiler.apache.httpclient3.io", true);
+        this.apacheHttpClient3BinaryTraceHeader = readBoolean("profiler.apache.httpclient3.binary.traceheader", false);
         /**
          * apache http client 4
          */
@@ -585,6 +970,7 @@ public class DefaultProfilerConfig implements ProfilerConfig {
 
         this.apacheHttpClient4ProfileStatusCode = readBoolean("profiler.apache.httpclient4.entity.statuscode", true);
         this.apacheHttpClient4ProfileIo = readBoolean("profiler.apache.httpclient4.io", true);
+        this.apacheHttpClient4BinaryTraceHeader = readBoolean("profiler.apache.httpclient4.binary.traceheader", false);
         /**
          * apache nio http client
          */
@@ -610,12 +996,23 @@ public class DefaultProfilerConfig implements ProfilerConfig {
 
         this.samplingEnable = readBoolean("profiler.sampling.enable", true);
         this.samplingRate = readInt("profiler.sampling.rate", 1);
+        this.samplingType = readString("profiler.sampling.type", "RATE");
+        this.samplingMaxTps = readInt("profiler.sampling.max.tps", 0);
+        this.samplingAdaptiveMaxRate = readInt("profiler.sampling.adaptive.max.rate", 100);
+        this.samplingAdaptiveInterval = readLong("profiler.sampling.adaptive.interval", 1000);
+        this.samplingEntryPointRate = readList("profiler.sampling.entrypoint.rate");
+        this.samplingTailEnable = readBoolean("profiler.sampling.tail.enable", false);
+        this.samplingTailThreshold = readInt("profiler.sampling.tail.threshold", 1000);
+        this.samplingTailBufferSize = readInt("profiler.sampling.tail.buffer.size", 256);
+        this.samplingTailBufferMax = readInt("profiler.sampling.tail.buffer.max", 65536);
 
         // configuration for sampling and IO buffer 
         this.ioBufferingEnable = readBoolean("profiler.io.buffering.enable", true);
 
         // it may be a problem to be here.  need to modify(delete or move or .. )  this configuration.
         this.ioBufferingBufferSize = readInt("profiler.io.buffering.buffersize", 20);
+        this.ioBufferingChunkMaxBytes = readInt("profiler.io.buffering.chunk.maxbytes", 0);
+        this.ioBufferingChunkMaxAge = readLong("profiler.io.buffering.chunk.maxage", 0);
 
         // JVM
         this.profileJvmCollectInterval = readInt("profiler.jvm.collect.interval", 1000);
@@ -629,6 +1026,7 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         this.applicationTypeDetectOrder = readList("profiler.type.detect.order");
         
         this.disabledPlugins = readList("profiler.plugin.disable");
+        this.pluginLoadThreads = readInt("profiler.plugin.load.threads", 4);
         
         // TODO have to remove        
         // profile package included in order to test "call stack view".
@@ -640,6 +1038,20 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         }
         
         this.propagateInterceptorException = readBoolean("profiler.interceptor.exception.propagate", false);
+        this.interceptorFieldBindEnable = readBoolean("profiler.interceptor.field.bind.enable", false);
+        this.instrumentEngine = readString("profiler.instrument.engine", INSTRUMENT_ENGINE_JAVASSIST);
+        this.classPoolMaxCachedClassSize = readInt("profiler.instrument.classpool.max.cached.classes", 4096);
+
+        this.transformCacheEnable = readBoolean("profiler.transform.cache.enable", false);
+        this.transformCacheDirectory = readString("profiler.transform.cache.dir", "");
+        this.transformCacheMaxEntries = readInt("profiler.transform.cache.max.entries", 16384);
+        if (this.transformCacheMaxEntries < 1) {
+            this.transformCacheMaxEntries = 1;
+        }
+        this.transformCacheMaxBytes = readLong("profiler.transform.cache.max.bytes", 1024 * 1024 * 64);
+        if (this.transformCacheMaxBytes < 1024 * 1024) {
+            this.transformCacheMaxBytes = 1024 * 1024;
+        }
 
         logger.info("configuration loaded successfully.");
     }
@@ -750,6 +1162,10 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         builder.append(spanDataSenderSocketTimeout);
         builder.append(", spanDataSenderChunkSize=");
         builder.append(spanDataSenderChunkSize);
+        builder.append(", spanDataSenderPackingEnable=");
+        builder.append(spanDataSenderPackingEnable);
+        builder.append(", spanDataSenderDirectSerializeEnable=");
+        builder.append(spanDataSenderDirectSerializeEnable);
         builder.append(", statDataSenderWriteQueueSize=");
         builder.append(statDataSenderWriteQueueSize);
         builder.append(", statDataSenderSocketSendBufferSize=");
@@ -758,14 +1174,70 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         builder.append(statDataSenderSocketTimeout);
         builder.append(", statDataSenderChunkSize=");
         builder.append(statDataSenderChunkSize);
+        builder.append(", statDataSenderPackingEnable=");
+        builder.append(statDataSenderPackingEnable);
         builder.append(", tcpDataSenderCommandAcceptEnable=");
         builder.append(tcpDataSenderCommandAcceptEnable);
+        builder.append(", tcpDataSenderWriteCoalescingEnable=");
+        builder.append(tcpDataSenderWriteCoalescingEnable);
+        builder.append(", tcpDataSenderWriteCoalescingMaxBytes=");
+        builder.append(tcpDataSenderWriteCoalescingMaxBytes);
+        builder.append(", tcpDataSenderPriorityLaneEnable=");
+        builder.append(tcpDataSenderPriorityLaneEnable);
+        builder.append(", tcpDataSenderPriorityLaneSize=");
+        builder.append(tcpDataSenderPriorityLaneSize);
+        builder.append(", tcpDataSenderPriorityLaneWeight=");
+        builder.append(tcpDataSenderPriorityLaneWeight);
+        builder.append(", dataSenderSpoolEnable=");
+        builder.append(dataSenderSpoolEnable);
+        builder.append(", dataSenderSpoolDirectory=");
+        builder.append(dataSenderSpoolDirectory);
+        builder.append(", dataSenderSpoolSegmentSize=");
+        builder.append(dataSenderSpoolSegmentSize);
+        builder.append(", dataSenderSpoolMaxSize=");
+        builder.append(dataSenderSpoolMaxSize);
+        builder.append(", dataSenderSpoolReplayRate=");
+        builder.append(dataSenderSpoolReplayRate);
+        builder.append(", metaDataDictionarySize=");
+        builder.append(metaDataDictionarySize);
+        builder.append(", metaDataDictionaryOverflowSize=");
+        builder.append(metaDataDictionaryOverflowSize);
+        builder.append(", metaDataDictionaryPersistEnable=");
+        builder.append(metaDataDictionaryPersistEnable);
+        builder.append(", metaDataDictionaryDirectory=");
+        builder.append(metaDataDictionaryDirectory);
         builder.append(", traceAgentActiveThread=");
         builder.append(traceAgentActiveThread);
+        builder.append(", stackSamplingEnable=");
+        builder.append(stackSamplingEnable);
+        builder.append(", stackSamplingInterval=");
+        builder.append(stackSamplingInterval);
+        builder.append(", stackSamplingThreshold=");
+        builder.append(stackSamplingThreshold);
+        builder.append(", stackSamplingMaxThreads=");
+        builder.append(stackSamplingMaxThreads);
+        builder.append(", stackSamplingMaxDepth=");
+        builder.append(stackSamplingMaxDepth);
+        builder.append(", stackSamplingMaxNodes=");
+        builder.append(stackSamplingMaxNodes);
+        builder.append(", instrumentEngine=");
+        builder.append(instrumentEngine);
+        builder.append(", classPoolMaxCachedClassSize=");
+        builder.append(classPoolMaxCachedClassSize);
+        builder.append(", transformCacheEnable=");
+        builder.append(transformCacheEnable);
+        builder.append(", transformCacheDirectory=");
+        builder.append(transformCacheDirectory);
+        builder.append(", transformCacheMaxEntries=");
+        builder.append(transformCacheMaxEntries);
+        builder.append(", transformCacheMaxBytes=");
+        builder.append(transformCacheMaxBytes);
         builder.append(", callStackMaxDepth=");
         builder.append(callStackMaxDepth);
         builder.append(", jdbcSqlCacheSize=");
         builder.append(jdbcSqlCacheSize);
+        builder.append(", jdbcBindValueSlowThreshold=");
+        builder.append(jdbcBindValueSlowThreshold);
         builder.append(", tomcatHideApmHeader=");
         builder.append(tomcatHideApmHeader);
         builder.append(", tomcatExcludeUrlFilter=");
@@ -796,6 +1268,8 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         builder.append(apacheHttpClient3ProfileEntitySamplingRate);
         builder.append(", apacheHttpClient3ProfileIo=");
         builder.append(apacheHttpClient3ProfileIo);
+        builder.append(", apacheHttpClient3BinaryTraceHeader=");
+        builder.append(apacheHttpClient3BinaryTraceHeader);
         builder.append(", apacheHttpClient4Profile=");
         builder.append(apacheHttpClient4Profile);
         builder.append(", apacheHttpClient4ProfileCookie=");
@@ -814,6 +1288,8 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         builder.append(apacheHttpClient4ProfileStatusCode);
         builder.append(", apacheHttpClient4ProfileIo=");
         builder.append(apacheHttpClient4ProfileIo);
+        builder.append(", apacheHttpClient4BinaryTraceHeader=");
+        builder.append(apacheHttpClient4BinaryTraceHeader);
         builder.append(", apacheNIOHttpClient4Profile=");
         builder.append(apacheNIOHttpClient4Profile);
         builder.append(", samplingEnable=");
@@ -824,6 +1300,10 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         builder.append(ioBufferingEnable);
         builder.append(", ioBufferingBufferSize=");
         builder.append(ioBufferingBufferSize);
+        builder.append(", ioBufferingChunkMaxBytes=");
+        builder.append(ioBufferingChunkMaxBytes);
+        builder.append(", ioBufferingChunkMaxAge=");
+        builder.append(ioBufferingChunkMaxAge);
         builder.append(", profileJvmCollectInterval=");
         builder.append(profileJvmCollectInterval);
         builder.append(", profilableClassFilter=");
@@ -838,6 +1318,8 @@ public class DefaultProfilerConfig implements ProfilerConfig {
         builder.append(applicationTypeDetectOrder);
         builder.append(", disabledPlugins=");
         builder.append(disabledPlugins);
+        builder.append(", pluginLoadThreads=");
+        builder.append(pluginLoadThreads);
         builder.append(", log4jLoggingTransactionInfo=");
         builder.append(log4jLoggingTransactionInfo);
         builder.append(", logbackLoggingTransactionInfo=");
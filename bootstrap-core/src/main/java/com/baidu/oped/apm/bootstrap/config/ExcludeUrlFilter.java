@@ -16,13 +16,10 @@
 
 package com.baidu.oped.apm.bootstrap.config;
 
-import com.baidu.oped.apm.bootstrap.util.AntPathMatcher;
+import com.baidu.oped.apm.bootstrap.util.CompiledPathMatcher;
 import com.baidu.oped.apm.bootstrap.util.PathMatcher;
-import com.baidu.oped.apm.bootstrap.util.EqualsPathMatcher;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -30,7 +27,7 @@ import java.util.List;
  */
 public class ExcludeUrlFilter implements Filter<String> {
 
-    private final List<PathMatcher> excludeMatcherList;
+    private final PathMatcher excludeMatcher;
 
     public ExcludeUrlFilter(String excludeFormat) {
         this(excludeFormat, ",");
@@ -38,32 +35,23 @@ public class ExcludeUrlFilter implements Filter<String> {
 
     public ExcludeUrlFilter(String excludeFormat, String separator) {
         if (StringUtils.isEmpty(excludeFormat)) {
-            this.excludeMatcherList = Collections.emptyList();
+            this.excludeMatcher = null;
             return;
         }
         final List<String> splitList = StringUtils.splitAndTrim(excludeFormat, separator);
-        final List<PathMatcher> buildList = new ArrayList<PathMatcher>(splitList.size());
-        for (String path : splitList) {
-            final PathMatcher pathMatcher = createPathMatcher(path);
-            buildList.add(pathMatcher);
-        }
-
-        this.excludeMatcherList = buildList;
+        this.excludeMatcher = createPathMatcher(splitList);
     }
 
-    protected PathMatcher createPathMatcher(String pattern) {
-        if (AntPathMatcher.isAntStylePattern(pattern)) {
-            return new AntPathMatcher(pattern);
-        }
-        return new EqualsPathMatcher(pattern);
+    protected PathMatcher createPathMatcher(List<String> patterns) {
+        // all patterns are compiled into one matcher instead of being matched one by one.
+        return new CompiledPathMatcher(patterns);
     }
 
     @Override
     public boolean filter(String requestURI) {
-        for (PathMatcher excludePathMatcher : this.excludeMatcherList) {
-            if (excludePathMatcher.isMatched(requestURI)) {
-                return FILTERED;
-            }
+        final PathMatcher excludeMatcher = this.excludeMatcher;
+        if (excludeMatcher != null && excludeMatcher.isMatched(requestURI)) {
+            return FILTERED;
         }
         return false;
     }
@@ -71,7 +59,7 @@ public class ExcludeUrlFilter implements Filter<String> {
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("ExcludeUrlFilter{");
-        sb.append("excludeMatcherList=").append(excludeMatcherList);
+        sb.append("excludeMatcher=").append(excludeMatcher);
         sb.append('}');
         return sb.toString();
     }
@@ -47,26 +47,102 @@ public interface ProfilerConfig {
 
     boolean isTcpDataSenderCommandAcceptEnable();
 
+    boolean isTcpDataSenderWriteCoalescingEnable();
+
+    int getTcpDataSenderWriteCoalescingMaxBytes();
+
+    boolean isTcpDataSenderPriorityLaneEnable();
+
+    int getTcpDataSenderPriorityLaneSize();
+
+    int getTcpDataSenderPriorityLaneWeight();
+
     boolean isTraceAgentActiveThread();
 
+    boolean isStackSamplingEnable();
+
+    int getStackSamplingInterval();
+
+    int getStackSamplingThreshold();
+
+    int getStackSamplingMaxThreads();
+
+    int getStackSamplingMaxDepth();
+
+    int getStackSamplingMaxNodes();
+
     int getSpanDataSenderSocketTimeout();
 
     int getSpanDataSenderChunkSize();
 
+    boolean isSpanDataSenderPackingEnable();
+
+    boolean isSpanDataSenderDirectSerializeEnable();
+
     int getStatDataSenderChunkSize();
 
+    boolean isStatDataSenderPackingEnable();
+
+    String getDataSenderQueueType();
+
+    String getDataSenderQueueWaitStrategy();
+
+    int getDataSenderMaxDrainSize();
+
+    boolean isDataSenderSpoolEnable();
+
+    String getDataSenderSpoolDirectory();
+
+    int getDataSenderSpoolSegmentSize();
+
+    long getDataSenderSpoolMaxSize();
+
+    int getDataSenderSpoolReplayRate();
+
+    int getMetaDataDictionarySize();
+
+    int getMetaDataDictionaryOverflowSize();
+
+    boolean isMetaDataDictionaryPersistEnable();
+
+    String getMetaDataDictionaryDirectory();
+
     boolean isProfileEnable();
 
     int getJdbcSqlCacheSize();
 
+    int getJdbcBindValueSlowThreshold();
+
     boolean isSamplingEnable();
 
     int getSamplingRate();
 
+    String getSamplingType();
+
+    int getSamplingMaxTps();
+
+    int getSamplingAdaptiveMaxRate();
+
+    long getSamplingAdaptiveInterval();
+
+    List<String> getSamplingEntryPointRate();
+
+    boolean isSamplingTailEnable();
+
+    int getSamplingTailThreshold();
+
+    int getSamplingTailBufferSize();
+
+    int getSamplingTailBufferMax();
+
     boolean isIoBufferingEnable();
 
     int getIoBufferingBufferSize();
 
+    int getIoBufferingChunkMaxBytes();
+
+    long getIoBufferingChunkMaxAge();
+
     int getProfileJvmCollectInterval();
 
     long getAgentInfoSendRetryInterval();
@@ -97,6 +173,8 @@ public interface ProfilerConfig {
 
     boolean isApacheHttpClient3ProfileIo();
 
+    boolean isApacheHttpClient3BinaryTraceHeader();
+
     //-----------------------------------------
     // http apache client 4
     boolean isApacheHttpClient4Profile();
@@ -117,6 +195,8 @@ public interface ProfilerConfig {
 
     boolean isApacheHttpClient4ProfileIo();
 
+    boolean isApacheHttpClient4BinaryTraceHeader();
+
     //-----------------------------------------
     // org/apache/http/impl/nio/*
     boolean getApacheNIOHttpClient4Profile();
@@ -137,6 +217,8 @@ public interface ProfilerConfig {
 
     void setDisabledPlugins(List<String> disabledPlugins);
 
+    int getPluginLoadThreads();
+
     String getApplicationServerType();
 
     void setApplicationServerType(String applicationServerType);
@@ -147,10 +229,28 @@ public interface ProfilerConfig {
 
     int getCallStackMaxDepth();
 
+    boolean isSpanEventRecycleEnable();
+
+    int getSpanEventRecyclePoolSize();
+
     void setCallStackMaxDepth(int callStackMaxDepth);
 
     boolean isPropagateInterceptorException();
 
+    boolean isInterceptorFieldBindEnable();
+
+    String getInstrumentEngine();
+
+    int getClassPoolMaxCachedClassSize();
+
+    boolean isTransformCacheEnable();
+
+    String getTransformCacheDirectory();
+
+    int getTransformCacheMaxEntries();
+
+    long getTransformCacheMaxBytes();
+
     String readString(String propertyName, String defaultValue);
 
     int readInt(String propertyName, int defaultValue);
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.context;
+
+/**
+ * Implemented by a {@link TraceContext} whose sampler can decide per entry point, such as a request URI.
+ * Use {@link com.baidu.oped.apm.bootstrap.util.TraceContextUtils#newTraceObject(TraceContext, String)}
+ * instead of casting, so other TraceContext implementations keep working.
+ */
+public interface EntryPointTraceContext {
+
+    /**
+     * Start a new trace for an entry point.
+     * The entry point is only used for the sampling decision.
+     */
+    Trace newTraceObject(String entryPoint);
+}
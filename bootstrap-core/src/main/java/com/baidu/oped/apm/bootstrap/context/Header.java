@@ -35,7 +35,9 @@ public enum Header {
     HTTP_FLAGS("Apm-Flags"),
     HTTP_PARENT_APPLICATION_NAME("Apm-pAppName"),
     HTTP_PARENT_APPLICATION_TYPE("Apm-pAppType"),
-    HTTP_HOST("Apm-Host");
+    HTTP_HOST("Apm-Host"),
+    // trace id, span id, parent span id and flags in one header. see BinaryTraceHeader
+    HTTP_TRACE("Apm-Trace");
 
     private String name;
 
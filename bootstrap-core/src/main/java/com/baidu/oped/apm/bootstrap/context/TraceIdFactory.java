@@ -0,0 +1,28 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.context;
+
+/**
+ * Implemented by a {@link TraceContext} that creates a {@link TraceId} from the fields of a transaction id,
+ * without formatting them into a String and parsing it again.
+ * Use {@link com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils#parseBinaryTraceHeader(TraceContext, String)}
+ * instead of casting, so other TraceContext implementations keep working.
+ */
+public interface TraceIdFactory {
+
+    TraceId createTraceId(String agentId, long agentStartTime, long transactionSequence, long parentSpanId, long spanId, short flags);
+}
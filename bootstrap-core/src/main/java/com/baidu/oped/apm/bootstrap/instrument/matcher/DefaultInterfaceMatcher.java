@@ -0,0 +1,57 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.instrument.matcher;
+
+public class DefaultInterfaceMatcher implements InterfaceMatcher {
+    private final String interfaceName;
+
+    DefaultInterfaceMatcher(String interfaceName) {
+        if (interfaceName == null) {
+            throw new NullPointerException("interfaceName must not be null");
+        }
+        this.interfaceName = interfaceName;
+    }
+
+    @Override
+    public String getInterfaceName() {
+        return interfaceName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DefaultInterfaceMatcher that = (DefaultInterfaceMatcher) o;
+
+        return interfaceName.equals(that.interfaceName);
+
+    }
+
+    @Override
+    public int hashCode() {
+        return interfaceName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultInterfaceMatcher{");
+        sb.append(interfaceName);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -46,4 +46,20 @@ public final class Matchers {
         return new DefaultMultiClassNameMatcher(Arrays.asList(classNameList));
     }
 
+    public static Matcher newPackageNameMatcher(String packageName) {
+        return new DefaultPackageNameMatcher(packageName);
+    }
+
+    public static Matcher newAnnotationMatcher(String annotationName) {
+        return new DefaultAnnotationMatcher(annotationName);
+    }
+
+    public static Matcher newInterfaceMatcher(String interfaceName) {
+        return new DefaultInterfaceMatcher(interfaceName);
+    }
+
+    public static Matcher newSuperClassMatcher(String superClassName) {
+        return new DefaultSuperClassMatcher(superClassName);
+    }
+
 }
@@ -14,13 +14,13 @@
  */
 package com.baidu.oped.apm.bootstrap.plugin.jdbc;
 
-import java.util.Map;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder;
 
 /**
  * @author Jongho Moon
  *
  */
 public interface BindValueAccessor {
-    void _$APM$_setBindValue(Map<Integer, String> map);
-    Map<Integer, String> _$APM$_getBindValue();
+    void _$APM$_setBindValue(BindValueRecorder bindValue);
+    BindValueRecorder _$APM$_getBindValue();
 }
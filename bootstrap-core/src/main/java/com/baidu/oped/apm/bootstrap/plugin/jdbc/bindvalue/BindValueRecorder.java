@@ -0,0 +1,211 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import com.baidu.oped.apm.bootstrap.util.NumberUtils;
+import com.baidu.oped.apm.bootstrap.util.StringUtils;
+
+/**
+ * Bind values of a PreparedStatement, addressed by parameter index.<br>
+ * Immutable values (boxed primitives, short Strings) are kept as they are and converted to String only when the values are actually recorded.
+ * Anything else (byte[], streams, long Strings, arbitrary setObject values) is converted and truncated to maxValueLength on record,
+ * so that a pooled statement does not pin it until the next execution.
+ * The slot arrays are reused across executions of the same statement.
+ *
+ * Not thread safe. A PreparedStatement is used by one thread at a time.
+ */
+public final class BindValueRecorder {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int DEFAULT_MAX_VALUE_LENGTH = 1024;
+    // argument count of a slot whose value was already converted on record.
+    private static final byte CONVERTED = 0;
+    // slot arrays bigger than this are released on clear() instead of being reused.
+    private static final int MAX_RETAINED_CAPACITY = 1024;
+
+    private static final String[] EMPTY_METHOD_NAMES = new String[0];
+    private static final Object[] EMPTY_VALUES = new Object[0];
+    private static final byte[] EMPTY_ARGUMENT_COUNTS = new byte[0];
+
+    // setter method name per parameter. null if the parameter is not bound.
+    private String[] methodNames = EMPTY_METHOD_NAMES;
+    private Object[] values = EMPTY_VALUES;
+    // number of arguments of the setter. setXxx(index, value) or setXxx(index, value, typeOrLength)
+    private byte[] argumentCounts = EMPTY_ARGUMENT_COUNTS;
+    // highest bound parameter index. PreparedStatement parameter index starts from 1.
+    private int maxIndex = 0;
+
+    private long executeStartTime;
+
+    private final int maxValueLength;
+
+    public BindValueRecorder() {
+        this(DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * @param maxValueLength values longer than this are truncated on record
+     */
+    public BindValueRecorder(int maxValueLength) {
+        if (maxValueLength < 0) {
+            throw new IllegalArgumentException("negative maxValueLength:" + maxValueLength);
+        }
+        this.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * @param methodName setter name of PreparedStatement. setInt, setString ...
+     * @param args setter arguments. args[0] is the parameter index
+     */
+    public void record(String methodName, Object[] args) {
+        if (args == null || args.length == 0) {
+            return;
+        }
+        final Object value = args.length > 1 ? args[1] : null;
+        record0(methodName, args[0], value, args.length, args);
+    }
+
+    /**
+     * Same as {@link #record(String, Object[])} without the argument array. Used by the arity-specific interceptor methods.
+     *
+     * @param methodName setter name of PreparedStatement. setInt, setString ...
+     * @param parameterIndex first setter argument
+     * @param value second setter argument. null if the setter has only the parameter index
+     * @param argumentCount number of setter arguments. setXxx(index, value) is 2
+     */
+    public void record(String methodName, Object parameterIndex, Object value, int argumentCount) {
+        if (argumentCount < 1) {
+            return;
+        }
+        record0(methodName, parameterIndex, value, argumentCount, null);
+    }
+
+    private void record0(String methodName, Object parameterIndex, Object value, int argumentCount, Object[] args) {
+        final Integer index = NumberUtils.toInteger(parameterIndex);
+        if (index == null || index < 1) {
+            // invalid index. PreparedStatement first parameterIndex is 1
+            return;
+        }
+        final int slot = index - 1;
+        ensureCapacity(index);
+        methodNames[slot] = methodName;
+        if (isRetainable(value)) {
+            values[slot] = value;
+            argumentCounts[slot] = (byte) argumentCount;
+        } else {
+            if (args == null) {
+                args = toArguments(index, value, argumentCount);
+            }
+            values[slot] = StringUtils.drop(BindValueConverter.convert(methodName, args), maxValueLength);
+            argumentCounts[slot] = CONVERTED;
+        }
+        if (index > maxIndex) {
+            maxIndex = index;
+        }
+    }
+
+    // converters read args[1] only, but check the argument count.
+    private static Object[] toArguments(int parameterIndex, Object value, int argumentCount) {
+        final Object[] args = new Object[argumentCount];
+        args[0] = parameterIndex;
+        if (argumentCount > 1) {
+            args[1] = value;
+        }
+        return args;
+    }
+
+    private boolean isRetainable(Object value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof String) {
+            return ((String) value).length() <= maxValueLength;
+        }
+        // immutable and short once converted
+        return value instanceof Integer || value instanceof Long || value instanceof Boolean
+                || value instanceof Short || value instanceof Byte || value instanceof Character
+                || value instanceof Double || value instanceof Float
+                || value instanceof BigDecimal || value instanceof BigInteger;
+    }
+
+    private void ensureCapacity(int capacity) {
+        final int length = methodNames.length;
+        if (capacity <= length) {
+            return;
+        }
+        int newLength = Math.max(length * 2, DEFAULT_CAPACITY);
+        while (newLength < capacity) {
+            newLength *= 2;
+        }
+        methodNames = Arrays.copyOf(methodNames, newLength);
+        values = Arrays.copyOf(values, newLength);
+        argumentCounts = Arrays.copyOf(argumentCounts, newLength);
+    }
+
+    public boolean isEmpty() {
+        return maxIndex == 0;
+    }
+
+    public int size() {
+        return maxIndex;
+    }
+
+    public void clear() {
+        if (methodNames.length > MAX_RETAINED_CAPACITY) {
+            methodNames = EMPTY_METHOD_NAMES;
+            values = EMPTY_VALUES;
+            argumentCounts = EMPTY_ARGUMENT_COUNTS;
+        } else {
+            Arrays.fill(methodNames, 0, maxIndex, null);
+            Arrays.fill(values, 0, maxIndex, null);
+        }
+        maxIndex = 0;
+        executeStartTime = 0;
+    }
+
+    /**
+     * @param parameterIndex 1 based parameter index
+     * @return converted bind value. empty string if the parameter is not bound.
+     */
+    public String getBindValue(int parameterIndex) {
+        final int slot = parameterIndex - 1;
+        if (slot < 0 || slot >= maxIndex) {
+            return "";
+        }
+        final String methodName = methodNames[slot];
+        if (methodName == null) {
+            return "";
+        }
+        if (argumentCounts[slot] == CONVERTED) {
+            return (String) values[slot];
+        }
+        final Object[] args = toArguments(parameterIndex, values[slot], argumentCounts[slot]);
+        return BindValueConverter.convert(methodName, args);
+    }
+
+    public long getExecuteStartTime() {
+        return executeStartTime;
+    }
+
+    public void setExecuteStartTime(long executeStartTime) {
+        this.executeStartTime = executeStartTime;
+    }
+}
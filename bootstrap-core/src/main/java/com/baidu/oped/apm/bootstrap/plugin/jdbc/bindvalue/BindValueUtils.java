@@ -86,6 +86,33 @@ public final class BindValueUtils {
         return sb.toString();
     }
 
+    /**
+     * Same format as {@link #bindValueToString(String[], int)}. Values beyond the limit are not converted at all.
+     */
+    public static String bindValueToString(final BindValueRecorder bindValueRecorder, int limit) {
+        if (bindValueRecorder == null) {
+            return "";
+        }
+        final int length = bindValueRecorder.size();
+        if (length == 0) {
+            return "";
+        }
+        final StringBuilder sb = new StringBuilder(32);
+        final int end = length - 1;
+        for (int i = 0; i < length; i++) {
+            if (sb.length() >= limit) {
+                appendLength(sb, length);
+                break;
+            }
+            final String bindValue = StringUtils.defaultString(bindValueRecorder.getBindValue(i + 1), "");
+            StringUtils.appendDrop(sb, bindValue, limit);
+            if (i < end) {
+                sb.append(", ");
+            }
+        }
+        return sb.toString();
+    }
+
     private static void appendLength(StringBuilder sb, int length) {
         sb.append("...(");
         sb.append(length);
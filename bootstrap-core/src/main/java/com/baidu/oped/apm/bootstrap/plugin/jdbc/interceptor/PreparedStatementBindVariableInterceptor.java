@@ -16,65 +16,108 @@
 
 package com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor;
 
-import java.util.Map;
-
+import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
 import com.baidu.oped.apm.bootstrap.context.Trace;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
-import com.baidu.oped.apm.bootstrap.interceptor.StaticAroundInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor2;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor3;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor4;
 import com.baidu.oped.apm.bootstrap.interceptor.annotation.TargetFilter;
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
 import com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor;
-import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueConverter;
-import com.baidu.oped.apm.bootstrap.util.NumberUtils;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder;
 
 /**
+ * Records the bind values of PreparedStatement setXxx(index, value ...).<br>
+ * Setters take 2 to 4 arguments, so the arity-specific methods are woven and no argument array is built.
+ * One instance per setter method, the method name comes from the target method descriptor.
+ *
  * @author emeroad
  */
-@TargetFilter(type="com.baidu.oped.apm.bootstrap.plugin.jdbc.PreparedStatementBindingMethodFilter", singleton=true)
-public class PreparedStatementBindVariableInterceptor implements StaticAroundInterceptor {
+@TargetFilter(type="com.baidu.oped.apm.bootstrap.plugin.jdbc.PreparedStatementBindingMethodFilter", singleton=false)
+public class PreparedStatementBindVariableInterceptor implements AroundInterceptor, AroundInterceptor2, AroundInterceptor3, AroundInterceptor4 {
 
     private final PLogger logger = PLoggerFactory.getLogger(this.getClass());
     private final boolean isDebug = logger.isDebugEnabled();
 
     private final TraceContext traceContext;
+    private final String methodName;
     
-    public PreparedStatementBindVariableInterceptor(TraceContext traceContext) {
+    public PreparedStatementBindVariableInterceptor(TraceContext traceContext, MethodDescriptor descriptor) {
         this.traceContext = traceContext;
+        this.methodName = descriptor.getMethodName();
+    }
+
+    @Override
+    public void before(Object target, Object[] args) {
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1) {
     }
 
     @Override
-    public void before(Object target, String className, String methodName, String parameterDescription, Object[] args) {
+    public void before(Object target, Object arg0, Object arg1, Object arg2) {
     }
 
     @Override
-    public void after(Object target, String className, String methodName, String parameterDescription, Object[] args, Object result, Throwable throwable) {
+    public void before(Object target, Object arg0, Object arg1, Object arg2, Object arg3) {
+    }
 
+    @Override
+    public void after(Object target, Object[] args, Object result, Throwable throwable) {
         if (isDebug) {
-            logger.afterInterceptor(target, className, methodName, parameterDescription, args, result, throwable);
+            logger.afterInterceptor(target, args, result, throwable);
+        }
+        if (args == null || args.length == 0) {
+            return;
         }
+        record(target, args[0], args.length > 1 ? args[1] : null, args.length);
+    }
 
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object result, Throwable throwable) {
+        if (isDebug) {
+            logger.afterInterceptor(target, new Object[] {arg0, arg1}, result, throwable);
+        }
+        record(target, arg0, arg1, 2);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object result, Throwable throwable) {
+        if (isDebug) {
+            logger.afterInterceptor(target, new Object[] {arg0, arg1, arg2}, result, throwable);
+        }
+        // the 3rd argument is a sql type or a length. not recorded.
+        record(target, arg0, arg1, 3);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object result, Throwable throwable) {
+        if (isDebug) {
+            logger.afterInterceptor(target, new Object[] {arg0, arg1, arg2, arg3}, result, throwable);
+        }
+        record(target, arg0, arg1, 4);
+    }
+
+    private void record(Object target, Object parameterIndex, Object value, int argumentCount) {
         final Trace trace = traceContext.currentTraceObject();
         if (trace == null) {
             return;
         }
-        Map<Integer, String> bindList = null;
+        BindValueRecorder bindValue = null;
         if (target instanceof BindValueAccessor) {
-            bindList = ((BindValueAccessor)target)._$APM$_getBindValue();
+            bindValue = ((BindValueAccessor)target)._$APM$_getBindValue();
         }
-        if (bindList == null) {
+        if (bindValue == null) {
             if (logger.isWarnEnabled()) {
                 logger.warn("bindValue is null");
             }
             return;
         }
-        Integer index = NumberUtils.toInteger(args[0]);
-        if (index == null) {
-            // something is wrong
-            return;
-        }
-        String value = BindValueConverter.convert(methodName, args);
-        bindList.put(index, value);
-
+        // keep the raw value. converted only when the sql is recorded.
+        bindValue.record(methodName, parameterIndex, value, argumentCount);
     }
 }
@@ -16,9 +16,7 @@
 
 package com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor;
 
-import java.util.HashMap;
-import java.util.Map;
-
+import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
 import com.baidu.oped.apm.bootstrap.context.DatabaseInfo;
 import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
 import com.baidu.oped.apm.bootstrap.context.ParsingResult;
@@ -34,6 +32,7 @@ import com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor;
 import com.baidu.oped.apm.bootstrap.plugin.jdbc.DatabaseInfoAccessor;
 import com.baidu.oped.apm.bootstrap.plugin.jdbc.ParsingResultAccessor;
 import com.baidu.oped.apm.bootstrap.plugin.jdbc.UnKnownDatabaseInfo;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder;
 import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueUtils;
 
 /**
@@ -54,6 +53,8 @@ public class PreparedStatementExecuteQueryInterceptor implements AroundIntercept
     private final MethodDescriptor descriptor;
     private final TraceContext traceContext;
     private final int maxSqlBindValueLength;
+    // bind values are recorded only for statements slower than this. 0 records them always.
+    private final int bindValueSlowThreshold;
     
     
     public PreparedStatementExecuteQueryInterceptor(TraceContext traceContext, MethodDescriptor descriptor) {
@@ -64,6 +65,15 @@ public class PreparedStatementExecuteQueryInterceptor implements AroundIntercept
         this.traceContext = traceContext;
         this.descriptor = descriptor;
         this.maxSqlBindValueLength = maxSqlBindValueLength;
+        this.bindValueSlowThreshold = getBindValueSlowThreshold(traceContext);
+    }
+
+    private static int getBindValueSlowThreshold(TraceContext traceContext) {
+        final ProfilerConfig profilerConfig = traceContext.getProfilerConfig();
+        if (profilerConfig == null) {
+            return 0;
+        }
+        return profilerConfig.getJdbcBindValueSlowThreshold();
     }
 
     @Override
@@ -89,19 +99,20 @@ public class PreparedStatementExecuteQueryInterceptor implements AroundIntercept
             recorder.recordEndPoint(databaseInfo.getMultipleHost());
             recorder.recordDestinationId(databaseInfo.getDatabaseId());
 
-            ParsingResult parsingResult = null;
-            if (target instanceof ParsingResultAccessor) {
-                parsingResult = ((ParsingResultAccessor)target)._$APM$_getParsingResult();
-            }
-            Map<Integer, String> bindValue = null;
-            if (target instanceof BindValueAccessor) {
-                bindValue = ((BindValueAccessor)target)._$APM$_getBindValue();
-            }
-            if (bindValue != null) {
-                String bindString = toBindVariable(bindValue);
-                recorder.recordSqlParsingResult(parsingResult, bindString);
+            final BindValueRecorder bindValue = getBindValue(target);
+            if (bindValueSlowThreshold > 0) {
+                // the sql is recorded in after(), once the elapsed time is known.
+                if (bindValue != null) {
+                    bindValue.setExecuteStartTime(System.currentTimeMillis());
+                }
             } else {
-                recorder.recordSqlParsingResult(parsingResult);
+                final ParsingResult parsingResult = getParsingResult(target);
+                if (bindValue != null) {
+                    String bindString = toBindVariable(bindValue);
+                    recorder.recordSqlParsingResult(parsingResult, bindString);
+                } else {
+                    recorder.recordSqlParsingResult(parsingResult);
+                }
             }
 
             recorder.recordApi(descriptor);
@@ -110,7 +121,9 @@ public class PreparedStatementExecuteQueryInterceptor implements AroundIntercept
             // Need to change where to invoke clean().
             // There is cleanParameters method but it's not necessary to intercept that method.
             // iBatis intentionally does not invoke it in most cases. 
-            clean(target);
+            if (bindValueSlowThreshold <= 0) {
+                clean(bindValue);
+            }
 
 
         } catch (Exception e) {
@@ -121,13 +134,28 @@ public class PreparedStatementExecuteQueryInterceptor implements AroundIntercept
 
     }
 
-    private void clean(Object target) {
+    private BindValueRecorder getBindValue(Object target) {
         if (target instanceof BindValueAccessor) {
-            ((BindValueAccessor)target)._$APM$_setBindValue(new HashMap<Integer, String>());
+            return ((BindValueAccessor)target)._$APM$_getBindValue();
+        }
+        return null;
+    }
+
+    private ParsingResult getParsingResult(Object target) {
+        if (target instanceof ParsingResultAccessor) {
+            return ((ParsingResultAccessor)target)._$APM$_getParsingResult();
         }
+        return null;
     }
 
-    private String toBindVariable(Map<Integer, String> bindValue) {
+    private void clean(BindValueRecorder bindValue) {
+        if (bindValue != null) {
+            // reuse the slots for the next execution
+            bindValue.clear();
+        }
+    }
+
+    private String toBindVariable(BindValueRecorder bindValue) {
         return BindValueUtils.bindValueToString(bindValue, maxSqlBindValueLength);
     }
 
@@ -145,10 +173,32 @@ public class PreparedStatementExecuteQueryInterceptor implements AroundIntercept
         
         try {
             SpanEventRecorder recorder = trace.currentSpanEventRecorder();
+            if (bindValueSlowThreshold > 0) {
+                recordSqlAfterExecute(target, recorder);
+            }
             // TODO Test if it's success. if failed terminate. else calculate resultset fetch too. we'd better make resultset fetch optional.
             recorder.recordException(throwable);
         } finally {
             trace.traceBlockEnd();
         }
     }
+
+    private void recordSqlAfterExecute(Object target, SpanEventRecorder recorder) {
+        final ParsingResult parsingResult = getParsingResult(target);
+        final BindValueRecorder bindValue = getBindValue(target);
+        if (bindValue == null) {
+            recorder.recordSqlParsingResult(parsingResult);
+            return;
+        }
+        try {
+            final long elapsed = System.currentTimeMillis() - bindValue.getExecuteStartTime();
+            if (elapsed >= bindValueSlowThreshold) {
+                recorder.recordSqlParsingResult(parsingResult, toBindVariable(bindValue));
+            } else {
+                recorder.recordSqlParsingResult(parsingResult);
+            }
+        } finally {
+            clean(bindValue);
+        }
+    }
 }
@@ -0,0 +1,355 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Matches a path against many patterns at once.
+ * Plain patterns are looked up in a set, ant style patterns are merged into one segment trie built in the constructor.
+ * Matching follows {@link AntPathMatcher} and does not allocate.
+ */
+public class CompiledPathMatcher implements PathMatcher {
+
+    private static final char SEPARATOR = '/';
+    private static final String DOUBLE_WILDCARD = "**";
+
+    private static final int CACHE_SIZE = 256;
+    private static final int MAX_CACHED_PATH_LENGTH = 256;
+
+    private final List<String> patterns;
+    private final Set<String> equalsPatterns = new HashSet<String>();
+    private final Node absoluteRoot = new Node(false);
+    private final Node relativeRoot = new Node(false);
+    private boolean hasTriePattern = false;
+    // uri template variables are not compiled.
+    private final List<PathMatcher> fallbackMatchers = new ArrayList<PathMatcher>();
+
+    // results of recent paths. a path is kept in the array of its result, so a slot never pairs a path with another path's result.
+    // racy on purpose. a lost update only costs another match.
+    private final String[] matchedPaths = new String[CACHE_SIZE];
+    private final String[] unmatchedPaths = new String[CACHE_SIZE];
+
+    public CompiledPathMatcher(List<String> patterns) {
+        if (patterns == null) {
+            throw new NullPointerException("patterns must not be null");
+        }
+        this.patterns = Collections.unmodifiableList(new ArrayList<String>(patterns));
+        for (String pattern : this.patterns) {
+            addPattern(pattern);
+        }
+    }
+
+    private void addPattern(String pattern) {
+        if (!AntPathMatcher.isAntStylePattern(pattern)) {
+            equalsPatterns.add(pattern);
+            return;
+        }
+        if (pattern.indexOf('{') != -1) {
+            fallbackMatchers.add(new AntPathMatcher(pattern));
+            return;
+        }
+
+        final List<String> tokens = tokenize(pattern);
+        Node node = pattern.charAt(0) == SEPARATOR ? absoluteRoot : relativeRoot;
+        boolean doubleWildcard = false;
+        for (String token : tokens) {
+            if (DOUBLE_WILDCARD.equals(token)) {
+                doubleWildcard = true;
+                node = node.getDoubleWildcardChild();
+            } else {
+                node = node.getChild(token, doubleWildcard);
+            }
+        }
+
+        if (pattern.charAt(pattern.length() - 1) == SEPARATOR) {
+            node.terminalWithSeparator = true;
+        } else {
+            node.terminal = true;
+        }
+        this.hasTriePattern = true;
+    }
+
+    private static List<String> tokenize(String pattern) {
+        final List<String> tokens = new ArrayList<String>();
+        for (String token : pattern.split(String.valueOf(SEPARATOR))) {
+            final String trimmed = token.trim();
+            if (!trimmed.isEmpty()) {
+                tokens.add(trimmed);
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public boolean isMatched(String path) {
+        if (path == null) {
+            return false;
+        }
+        final boolean cacheable = path.length() <= MAX_CACHED_PATH_LENGTH;
+        final int index = path.hashCode() & (CACHE_SIZE - 1);
+        if (cacheable) {
+            if (path.equals(matchedPaths[index])) {
+                return true;
+            }
+            if (path.equals(unmatchedPaths[index])) {
+                return false;
+            }
+        }
+
+        final boolean matched = doMatch(path);
+        if (cacheable) {
+            if (matched) {
+                matchedPaths[index] = path;
+            } else {
+                unmatchedPaths[index] = path;
+            }
+        }
+        return matched;
+    }
+
+    private boolean doMatch(String path) {
+        if (equalsPatterns.contains(path)) {
+            return true;
+        }
+        if (hasTriePattern && !path.isEmpty()) {
+            final Node root = path.charAt(0) == SEPARATOR ? absoluteRoot : relativeRoot;
+            final boolean endsWithSeparator = path.charAt(path.length() - 1) == SEPARATOR;
+            if (match(root, path, 0, endsWithSeparator)) {
+                return true;
+            }
+        }
+        for (PathMatcher fallbackMatcher : fallbackMatchers) {
+            if (fallbackMatcher.isMatched(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean match(Node node, String path, int from, boolean endsWithSeparator) {
+        // '**' matches zero segment.
+        final Node doubleWildcardChild = node.doubleWildcardChild;
+        if (doubleWildcardChild != null && match(doubleWildcardChild, path, from, endsWithSeparator)) {
+            return true;
+        }
+
+        // next token. empty tokens are skipped and tokens are trimmed, as AntPathMatcher does.
+        final int length = path.length();
+        int tokenStart;
+        int tokenEnd;
+        int next = from;
+        while (true) {
+            while (next < length && path.charAt(next) == SEPARATOR) {
+                next++;
+            }
+            if (next >= length) {
+                return node.accept(endsWithSeparator);
+            }
+            int end = path.indexOf(SEPARATOR, next);
+            if (end == -1) {
+                end = length;
+            }
+            tokenStart = next;
+            tokenEnd = end;
+            next = end;
+            while (tokenStart < tokenEnd && path.charAt(tokenStart) <= ' ') {
+                tokenStart++;
+            }
+            while (tokenEnd > tokenStart && path.charAt(tokenEnd - 1) <= ' ') {
+                tokenEnd--;
+            }
+            if (tokenStart < tokenEnd) {
+                break;
+            }
+        }
+
+        final Node literalChild = node.findLiteralChild(path, tokenStart, tokenEnd);
+        if (literalChild != null && match(literalChild, path, next, endsWithSeparator)) {
+            return true;
+        }
+        final Segment[] wildcardChildren = node.wildcardChildren;
+        for (Segment wildcardChild : wildcardChildren) {
+            if (matchToken(wildcardChild.token, path, tokenStart, tokenEnd) && match(wildcardChild.node, path, next, endsWithSeparator)) {
+                return true;
+            }
+        }
+        // '**' matches one more segment.
+        if (node.doubleWildcard) {
+            return match(node, path, next, endsWithSeparator);
+        }
+        return false;
+    }
+
+    /**
+     * '*' matches zero or more characters and '?' matches one character.
+     */
+    static boolean matchToken(String pattern, String path, int start, int end) {
+        final int patternLength = pattern.length();
+        int patternIndex = 0;
+        int pathIndex = start;
+        int starIndex = -1;
+        int starPathIndex = start;
+        while (pathIndex < end) {
+            if (patternIndex < patternLength) {
+                final char c = pattern.charAt(patternIndex);
+                if (c == '*') {
+                    starIndex = patternIndex++;
+                    starPathIndex = pathIndex;
+                    continue;
+                }
+                if (c == '?' || c == path.charAt(pathIndex)) {
+                    patternIndex++;
+                    pathIndex++;
+                    continue;
+                }
+            }
+            if (starIndex == -1) {
+                return false;
+            }
+            // let the last '*' take one more character.
+            patternIndex = starIndex + 1;
+            pathIndex = ++starPathIndex;
+        }
+        while (patternIndex < patternLength && pattern.charAt(patternIndex) == '*') {
+            patternIndex++;
+        }
+        return patternIndex == patternLength;
+    }
+
+    private static int hash(String value, int start, int end) {
+        // same as String.hashCode()
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CompiledPathMatcher{");
+        sb.append("patterns=").append(patterns);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static final Segment[] EMPTY_SEGMENT = new Segment[0];
+
+    private static final class Node {
+        // reached through '**'. a trailing separator of the path is ignored.
+        private final boolean underDoubleWildcard;
+        // this node is a '**' and can consume any number of segments.
+        private boolean doubleWildcard;
+
+        private Segment[] literalChildren = EMPTY_SEGMENT;
+        private Segment[] wildcardChildren = EMPTY_SEGMENT;
+        private Node doubleWildcardChild;
+
+        private boolean terminal;
+        private boolean terminalWithSeparator;
+        // a pattern ends with a single '*' right after this node. ("/a/*" matches "/a/")
+        private boolean singleWildcardTerminal;
+
+        private Node(boolean underDoubleWildcard) {
+            this.underDoubleWildcard = underDoubleWildcard;
+        }
+
+        private Node getDoubleWildcardChild() {
+            if (doubleWildcardChild == null) {
+                doubleWildcardChild = new Node(true);
+                doubleWildcardChild.doubleWildcard = true;
+            }
+            return doubleWildcardChild;
+        }
+
+        private Node getChild(String token, boolean underDoubleWildcard) {
+            final boolean wildcard = AntPathMatcher.isAntStylePattern(token);
+            final Segment[] children = wildcard ? wildcardChildren : literalChildren;
+            for (Segment child : children) {
+                if (child.token.equals(token)) {
+                    return child.node;
+                }
+            }
+
+            final Node node = new Node(underDoubleWildcard || this.underDoubleWildcard);
+            final Segment[] newChildren = new Segment[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, children.length);
+            newChildren[children.length] = new Segment(token, node);
+            if (wildcard) {
+                wildcardChildren = newChildren;
+            } else {
+                literalChildren = newChildren;
+            }
+            if (!node.underDoubleWildcard && "*".equals(token)) {
+                // marked now, checked against node.terminal when matching.
+                singleWildcardTerminal = true;
+            }
+            return node;
+        }
+
+        private Node findLiteralChild(String path, int start, int end) {
+            final Segment[] children = literalChildren;
+            if (children.length == 0) {
+                return null;
+            }
+            final int length = end - start;
+            final int hash = hash(path, start, end);
+            for (Segment child : children) {
+                if (child.hash == hash && child.token.length() == length && child.token.regionMatches(0, path, start, length)) {
+                    return child.node;
+                }
+            }
+            return null;
+        }
+
+        private boolean accept(boolean endsWithSeparator) {
+            if (underDoubleWildcard) {
+                return terminal || terminalWithSeparator;
+            }
+            if (endsWithSeparator ? terminalWithSeparator : terminal) {
+                return true;
+            }
+            return endsWithSeparator && singleWildcardTerminal && isSingleWildcardChildTerminal();
+        }
+
+        private boolean isSingleWildcardChildTerminal() {
+            for (Segment child : wildcardChildren) {
+                if ("*".equals(child.token)) {
+                    return child.node.terminal || child.node.terminalWithSeparator;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Segment {
+        private final String token;
+        private final int hash;
+        private final Node node;
+
+        private Segment(String token, Node node) {
+            this.token = token;
+            this.hash = token.hashCode();
+            this.node = node;
+        }
+    }
+}
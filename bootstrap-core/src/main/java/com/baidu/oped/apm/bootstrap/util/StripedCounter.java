@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.util;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter split into cache line padded stripes selected by thread id.
+ * Request threads rarely share a stripe, so incrementing does not bounce one cache line across cores.
+ * Each stripe starts from a different offset, so the stripes do not all reach a multiple of a sampling rate at the same time.
+ */
+public final class StripedCounter {
+
+    // 16 longs = 128 bytes between stripes
+    private static final int PADDING = 16;
+    private static final int MAX_STRIPES = 64;
+    // golden ratio increment. spreads the offsets of consecutive stripes.
+    private static final long OFFSET_INCREMENT = 0x9E3779B97F4A7C15L;
+
+    private final AtomicLongArray counters;
+    private final int mask;
+    private final long offsetSum;
+
+    public StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public StripedCounter(int stripes) {
+        this(stripes, new Random().nextLong());
+    }
+
+    public StripedCounter(int stripes, long seed) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes");
+        }
+        final int size = roundToPowerOfTwo(Math.min(stripes, MAX_STRIPES));
+        this.mask = size - 1;
+        this.counters = new AtomicLongArray(size * PADDING);
+        long offsetSum = 0;
+        for (int i = 0; i < size; i++) {
+            // positive int range. far from overflowing a long.
+            final long offset = (seed + i * OFFSET_INCREMENT) >>> 33;
+            this.counters.set(i * PADDING, offset);
+            offsetSum += offset;
+        }
+        this.offsetSum = offsetSum;
+    }
+
+    private static int roundToPowerOfTwo(int value) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+    /**
+     * @return incremented value of the current thread's stripe
+     */
+    public long increment() {
+        return counters.incrementAndGet(index());
+    }
+
+    /**
+     * @return total number of increments
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i <= mask; i++) {
+            sum += counters.get(i * PADDING);
+        }
+        return sum - offsetSum;
+    }
+
+    public long get(int stripe) {
+        return counters.get((stripe & mask) * PADDING);
+    }
+
+    private int index() {
+        final int stripe = (int) Thread.currentThread().getId() & mask;
+        return stripe * PADDING;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.util;
+
+import com.baidu.oped.apm.bootstrap.context.EntryPointTraceContext;
+import com.baidu.oped.apm.bootstrap.context.Trace;
+import com.baidu.oped.apm.bootstrap.context.TraceContext;
+
+public final class TraceContextUtils {
+
+    private TraceContextUtils() {
+    }
+
+    /**
+     * Start a new trace sampled by entry point if the traceContext supports it.
+     * Falls back to {@link TraceContext#newTraceObject()} otherwise.
+     */
+    public static Trace newTraceObject(TraceContext traceContext, String entryPoint) {
+        if (traceContext == null) {
+            throw new NullPointerException("traceContext must not be null");
+        }
+        if (traceContext instanceof EntryPointTraceContext) {
+            return ((EntryPointTraceContext) traceContext).newTraceObject(entryPoint);
+        }
+        return traceContext.newTraceObject();
+    }
+}
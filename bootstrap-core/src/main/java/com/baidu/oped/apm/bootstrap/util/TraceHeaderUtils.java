@@ -0,0 +1,61 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.util;
+
+import com.baidu.oped.apm.bootstrap.context.TraceContext;
+import com.baidu.oped.apm.bootstrap.context.TraceId;
+import com.baidu.oped.apm.bootstrap.context.TraceIdFactory;
+import com.baidu.oped.apm.common.util.BinaryTraceHeader;
+import com.baidu.oped.apm.common.util.TransactionIdUtils;
+
+/**
+ * Formats and parses the {@link com.baidu.oped.apm.bootstrap.context.Header#HTTP_TRACE} header.
+ * Receivers always accept it and fall back to the legacy headers when it is absent or invalid.
+ * Senders use it only when enabled for the plugin, since older agents do not read it.
+ */
+public final class TraceHeaderUtils {
+
+    private TraceHeaderUtils() {
+    }
+
+    public static String formatBinaryTraceHeader(TraceId traceId) {
+        if (traceId == null) {
+            throw new NullPointerException("traceId must not be null");
+        }
+        return BinaryTraceHeader.format(traceId.getAgentId(), traceId.getAgentStartTime(), traceId.getTransactionSequence(),
+                traceId.getSpanId(), traceId.getParentSpanId(), traceId.getFlags());
+    }
+
+    /**
+     * @return null if the header is absent or invalid
+     */
+    public static TraceId parseBinaryTraceHeader(TraceContext traceContext, String header) {
+        if (traceContext == null) {
+            throw new NullPointerException("traceContext must not be null");
+        }
+        final BinaryTraceHeader traceHeader = BinaryTraceHeader.parse(header);
+        if (traceHeader == null) {
+            return null;
+        }
+        if (traceContext instanceof TraceIdFactory) {
+            return ((TraceIdFactory) traceContext).createTraceId(traceHeader.getAgentId(), traceHeader.getAgentStartTime(), traceHeader.getTransactionSequence(),
+                    traceHeader.getParentSpanId(), traceHeader.getSpanId(), traceHeader.getFlags());
+        }
+        final String transactionId = TransactionIdUtils.formatString(traceHeader.getAgentId(), traceHeader.getAgentStartTime(), traceHeader.getTransactionSequence());
+        return traceContext.createTraceId(transactionId, traceHeader.getParentSpanId(), traceHeader.getSpanId(), traceHeader.getFlags());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BindValueRecorderTest {
+
+    @Test
+    public void record() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setInt", new Object[]{1, 10});
+        recorder.record("setString", new Object[]{2, "abc"});
+        recorder.record("setBoolean", new Object[]{3, Boolean.TRUE});
+
+        Assert.assertEquals(3, recorder.size());
+        Assert.assertEquals("10", recorder.getBindValue(1));
+        Assert.assertEquals("abc", recorder.getBindValue(2));
+        Assert.assertEquals("true", recorder.getBindValue(3));
+        Assert.assertEquals("10, abc, true", BindValueUtils.bindValueToString(recorder, 100));
+    }
+
+    @Test
+    public void record_skipIndex() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setString", new Object[]{1, "1"});
+        recorder.record("setString", new Object[]{2, "2"});
+        // skip 3
+        recorder.record("setString", new Object[]{4, "4"});
+
+        Assert.assertEquals("", recorder.getBindValue(3));
+        Assert.assertEquals("1, 2, , 4", BindValueUtils.bindValueToString(recorder, 100));
+    }
+
+    @Test
+    public void record_invalidIndex() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setString", new Object[]{0, "0"});
+        recorder.record("setString", new Object[]{-2, "-2"});
+        recorder.record("setString", new Object[]{"x", "x"});
+        recorder.record("setString", null);
+
+        Assert.assertTrue(recorder.isEmpty());
+        Assert.assertEquals("", BindValueUtils.bindValueToString(recorder, 100));
+    }
+
+    @Test
+    public void record_overwrite() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setString", new Object[]{1, "a"});
+        recorder.record("setInt", new Object[]{1, 2});
+
+        Assert.assertEquals(1, recorder.size());
+        Assert.assertEquals("2", recorder.getBindValue(1));
+    }
+
+    @Test
+    public void record_grow() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setInt", new Object[]{100, 100});
+
+        Assert.assertEquals(100, recorder.size());
+        Assert.assertEquals("100", recorder.getBindValue(100));
+        Assert.assertEquals("", recorder.getBindValue(101));
+    }
+
+    @Test
+    public void bindValueToString_limit() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setString", new Object[]{1, "abc"});
+        recorder.record("setString", new Object[]{2, "b"});
+        recorder.record("setString", new Object[]{3, "c"});
+
+        Assert.assertEquals("a...(3), ...(3)", BindValueUtils.bindValueToString(recorder, 1));
+    }
+
+    @Test
+    public void clear() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setString", new Object[]{1, "a"});
+        recorder.record("setString", new Object[]{2, "b"});
+        recorder.setExecuteStartTime(10);
+
+        recorder.clear();
+        Assert.assertTrue(recorder.isEmpty());
+        Assert.assertEquals(0, recorder.getExecuteStartTime());
+        Assert.assertEquals("", recorder.getBindValue(1));
+
+        // reuse
+        recorder.record("setString", new Object[]{2, "c"});
+        Assert.assertEquals(", c", BindValueUtils.bindValueToString(recorder, 100));
+    }
+
+    @Test
+    public void record_truncateLongValue() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder(3);
+        recorder.record("setString", new Object[]{1, "abc"});
+        recorder.record("setString", new Object[]{2, "abcdef"});
+
+        Assert.assertEquals("abc", recorder.getBindValue(1));
+        Assert.assertEquals("abc...(6)", recorder.getBindValue(2));
+    }
+
+    @Test
+    public void record_convertMutableValue() throws Exception {
+        BindValueRecorder recorder = new BindValueRecorder();
+        final byte[] bytes = new byte[]{1, 2};
+        recorder.record("setBytes", new Object[]{1, bytes});
+        final StringBuilder object = new StringBuilder("before");
+        recorder.record("setObject", new Object[]{2, object});
+
+        final String bytesValue = recorder.getBindValue(1);
+        final String objectValue = recorder.getBindValue(2);
+        // changes after record() are not visible
+        bytes[0] = 9;
+        object.setLength(0);
+        Assert.assertEquals(bytesValue, recorder.getBindValue(1));
+        Assert.assertEquals(objectValue, recorder.getBindValue(2));
+    }
+
+    @Test
+    public void record_withoutArgumentArray() throws Exception {
+        BindValueRecorder arrayRecorder = new BindValueRecorder();
+        arrayRecorder.record("setInt", new Object[]{1, 10});
+        arrayRecorder.record("setBytes", new Object[]{2, new byte[]{1, 2}});
+        arrayRecorder.record("setObject", new Object[]{3, "abc", 12});
+
+        BindValueRecorder recorder = new BindValueRecorder();
+        recorder.record("setInt", 1, 10, 2);
+        recorder.record("setBytes", 2, new byte[]{1, 2}, 2);
+        recorder.record("setObject", 3, "abc", 3);
+        recorder.record("setString", "x", "x", 2);
+
+        Assert.assertEquals(3, recorder.size());
+        for (int i = 1; i <= 3; i++) {
+            Assert.assertEquals(arrayRecorder.getBindValue(i), recorder.getBindValue(i));
+        }
+    }
+
+    @Test
+    public void nullRecorder() throws Exception {
+        Assert.assertEquals("", BindValueUtils.bindValueToString((BindValueRecorder) null, 100));
+    }
+}
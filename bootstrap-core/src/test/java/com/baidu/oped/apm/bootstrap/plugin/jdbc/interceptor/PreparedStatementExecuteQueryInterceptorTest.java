@@ -0,0 +1,154 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
+import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
+import com.baidu.oped.apm.bootstrap.context.SpanEventRecorder;
+import com.baidu.oped.apm.bootstrap.interceptor.MockTrace;
+import com.baidu.oped.apm.bootstrap.interceptor.MockTraceContext;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder;
+
+public class PreparedStatementExecuteQueryInterceptorTest {
+
+    private static final int SLOW_THRESHOLD = 1000;
+
+    @Test
+    public void bindValueSlowThreshold_slow() throws Exception {
+        RecordingSpanEventRecorder recorder = new RecordingSpanEventRecorder();
+        PreparedStatementExecuteQueryInterceptor interceptor = newInterceptor(recorder, SLOW_THRESHOLD);
+        MockStatement statement = new MockStatement();
+        statement.bindValue.record("setInt", new Object[]{1, 10});
+        statement.bindValue.record("setString", new Object[]{2, "abc"});
+
+        interceptor.before(statement, null);
+        Assert.assertTrue("sql is recorded in after()", recorder.bindValues.isEmpty());
+
+        // pretend the execution took longer than the threshold
+        statement.bindValue.setExecuteStartTime(System.currentTimeMillis() - SLOW_THRESHOLD * 2);
+        interceptor.after(statement, null, null, null);
+
+        Assert.assertEquals(1, recorder.bindValues.size());
+        Assert.assertEquals("10, abc", recorder.bindValues.get(0));
+        Assert.assertTrue(statement.bindValue.isEmpty());
+    }
+
+    @Test
+    public void bindValueSlowThreshold_fast() throws Exception {
+        RecordingSpanEventRecorder recorder = new RecordingSpanEventRecorder();
+        PreparedStatementExecuteQueryInterceptor interceptor = newInterceptor(recorder, SLOW_THRESHOLD);
+        MockStatement statement = new MockStatement();
+        statement.bindValue.record("setInt", new Object[]{1, 10});
+
+        interceptor.before(statement, null);
+        interceptor.after(statement, null, null, null);
+
+        Assert.assertEquals(1, recorder.bindValues.size());
+        Assert.assertNull("bind values are skipped for fast statements", recorder.bindValues.get(0));
+        Assert.assertTrue(statement.bindValue.isEmpty());
+    }
+
+    @Test
+    public void bindValueSlowThreshold_disabled() throws Exception {
+        RecordingSpanEventRecorder recorder = new RecordingSpanEventRecorder();
+        PreparedStatementExecuteQueryInterceptor interceptor = newInterceptor(recorder, 0);
+        MockStatement statement = new MockStatement();
+        statement.bindValue.record("setInt", new Object[]{1, 10});
+
+        interceptor.before(statement, null);
+        Assert.assertEquals(1, recorder.bindValues.size());
+        Assert.assertEquals("10", recorder.bindValues.get(0));
+        Assert.assertTrue(statement.bindValue.isEmpty());
+
+        interceptor.after(statement, null, null, null);
+        Assert.assertEquals(1, recorder.bindValues.size());
+    }
+
+    private PreparedStatementExecuteQueryInterceptor newInterceptor(RecordingSpanEventRecorder recorder, int slowThreshold) {
+        Properties properties = new Properties();
+        properties.setProperty("profiler.jdbc.bindvalue.slow.threshold", String.valueOf(slowThreshold));
+        final ProfilerConfig profilerConfig = new DefaultProfilerConfig(properties);
+
+        final SpanEventRecorder spanEventRecorder = recorder.newProxy();
+        MockTrace trace = new MockTrace() {
+            @Override
+            public SpanEventRecorder traceBlockBegin() {
+                return spanEventRecorder;
+            }
+
+            @Override
+            public SpanEventRecorder currentSpanEventRecorder() {
+                return spanEventRecorder;
+            }
+        };
+        // MockTraceContext.currentTraceObject() returns the trace only when canSampled() is false
+        trace.setSampled(false);
+
+        MockTraceContext traceContext = new MockTraceContext() {
+            @Override
+            public ProfilerConfig getProfilerConfig() {
+                return profilerConfig;
+            }
+        };
+        traceContext.setTrace(trace);
+        return new PreparedStatementExecuteQueryInterceptor(traceContext, null);
+    }
+
+    public static class MockStatement implements BindValueAccessor {
+        private BindValueRecorder bindValue = new BindValueRecorder();
+
+        @Override
+        public void _$APM$_setBindValue(BindValueRecorder bindValue) {
+            this.bindValue = bindValue;
+        }
+
+        @Override
+        public BindValueRecorder _$APM$_getBindValue() {
+            return bindValue;
+        }
+    }
+
+    /**
+     * keeps the bind value of each recordSqlParsingResult() call. null if recorded without bind values.
+     */
+    private static class RecordingSpanEventRecorder implements InvocationHandler {
+        private final List<String> bindValues = new ArrayList<String>();
+
+        private SpanEventRecorder newProxy() {
+            return (SpanEventRecorder) Proxy.newProxyInstance(SpanEventRecorder.class.getClassLoader(), new Class[]{SpanEventRecorder.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("recordSqlParsingResult")) {
+                bindValues.add(args.length > 1 ? (String) args[1] : null);
+            }
+            return null;
+        }
+    }
+}
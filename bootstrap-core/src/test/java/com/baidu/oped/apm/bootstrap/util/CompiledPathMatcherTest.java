@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompiledPathMatcherTest {
+
+    @Test
+    public void isMatched() {
+        CompiledPathMatcher matcher = new CompiledPathMatcher(Arrays.asList("/monitor/l7check.html", "/static/**", "/*/health", "/api/v?/ping", "*.ico"));
+
+        Assert.assertTrue(matcher.isMatched("/monitor/l7check.html"));
+        Assert.assertTrue(matcher.isMatched("/static/js/app.js"));
+        Assert.assertTrue(matcher.isMatched("/static"));
+        Assert.assertTrue(matcher.isMatched("/app/health"));
+        Assert.assertTrue(matcher.isMatched("/api/v1/ping"));
+        Assert.assertTrue(matcher.isMatched("favicon.ico"));
+
+        Assert.assertFalse(matcher.isMatched("/monitor/l7check.htm"));
+        Assert.assertFalse(matcher.isMatched("/app/health/detail"));
+        Assert.assertFalse(matcher.isMatched("/api/v10/ping"));
+        Assert.assertFalse(matcher.isMatched("/favicon.ico"));
+        Assert.assertFalse(matcher.isMatched(""));
+        Assert.assertFalse(matcher.isMatched(null));
+    }
+
+    @Test
+    public void cachedResult() {
+        CompiledPathMatcher matcher = new CompiledPathMatcher(Collections.singletonList("/static/**"));
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(matcher.isMatched("/static/a.js"));
+            Assert.assertFalse(matcher.isMatched("/dynamic/a.js"));
+        }
+    }
+
+    @Test
+    public void cachedResult_sameSlot() {
+        CompiledPathMatcher matcher = new CompiledPathMatcher(Collections.singletonList("/x/Aa"));
+        // same hashCode, so the same cache slot
+        Assert.assertEquals("/x/Aa".hashCode(), "/x/BB".hashCode());
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(matcher.isMatched("/x/Aa"));
+            Assert.assertFalse(matcher.isMatched("/x/BB"));
+        }
+    }
+
+    @Test
+    public void matchToken() {
+        Assert.assertTrue(CompiledPathMatcher.matchToken("*.html", "/a/index.html", 3, 13));
+        Assert.assertTrue(CompiledPathMatcher.matchToken("a*b*c", "aXbYbZc", 0, 7));
+        Assert.assertTrue(CompiledPathMatcher.matchToken("*", "", 0, 0));
+        Assert.assertFalse(CompiledPathMatcher.matchToken("a?c", "abbc", 0, 4));
+        Assert.assertFalse(CompiledPathMatcher.matchToken("*.html", "index.htm", 0, 9));
+    }
+
+    @Test
+    public void sameAsAntPathMatcher() {
+        String[] patterns = {"/a/*", "/a/**", "/a/**/b", "/**/b/*.js", "/a/*/", "a/?b", "/**", "/a/**/**/c", "/*/b/**/c*", "/a*/b", "/a/?b/"};
+        String[] tokens = {"a", "b", "c", "ab", "xb", "c.js", "b.js", "a1", ""};
+        Random random = new Random(1);
+
+        for (String pattern : patterns) {
+            AntPathMatcher expected = new AntPathMatcher(pattern);
+            CompiledPathMatcher actual = new CompiledPathMatcher(Collections.singletonList(pattern));
+            for (int i = 0; i < 2000; i++) {
+                String path = randomPath(random, tokens);
+                Assert.assertEquals(pattern + " " + path, expected.isMatched(path), actual.isMatched(path));
+            }
+        }
+
+        // all patterns merged into one trie
+        CompiledPathMatcher merged = new CompiledPathMatcher(Arrays.asList(patterns));
+        for (int i = 0; i < 5000; i++) {
+            String path = randomPath(random, tokens);
+            boolean expected = false;
+            for (String pattern : patterns) {
+                expected |= new AntPathMatcher(pattern).isMatched(path);
+            }
+            Assert.assertEquals(path, expected, merged.isMatched(path));
+        }
+    }
+
+    private String randomPath(Random random, String[] tokens) {
+        StringBuilder path = new StringBuilder();
+        if (random.nextBoolean()) {
+            path.append('/');
+        }
+        int count = random.nextInt(5);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                path.append('/');
+            }
+            path.append(tokens[random.nextInt(tokens.length)]);
+        }
+        if (random.nextInt(4) == 0) {
+            path.append('/');
+        }
+        return path.toString();
+    }
+}
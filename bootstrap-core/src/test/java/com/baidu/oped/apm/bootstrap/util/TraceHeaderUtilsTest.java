@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.bootstrap.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import com.baidu.oped.apm.bootstrap.context.TraceId;
+import com.baidu.oped.apm.bootstrap.context.TraceIdFactory;
+import com.baidu.oped.apm.bootstrap.interceptor.MockTraceContext;
+import com.baidu.oped.apm.common.util.BinaryTraceHeader;
+
+public class TraceHeaderUtilsTest {
+
+    private static final String HEADER = BinaryTraceHeader.format("agent", 100L, 7L, 30L, 20L, (short) 1);
+
+    @Test
+    public void parseBinaryTraceHeader_traceIdFactory() {
+        final FactoryTraceContext traceContext = new FactoryTraceContext();
+        TraceHeaderUtils.parseBinaryTraceHeader(traceContext, HEADER);
+
+        assertEquals("agent 100 7 20 30 1", traceContext.created);
+        assertNull("transaction id must not be formatted", traceContext.transactionId);
+    }
+
+    @Test
+    public void parseBinaryTraceHeader_transactionId() {
+        final StringTraceContext traceContext = new StringTraceContext();
+        TraceHeaderUtils.parseBinaryTraceHeader(traceContext, HEADER);
+
+        assertEquals("agent^100^7 20 30 1", traceContext.transactionId);
+    }
+
+    @Test
+    public void parseBinaryTraceHeader_invalid() {
+        final StringTraceContext traceContext = new StringTraceContext();
+        assertNull(TraceHeaderUtils.parseBinaryTraceHeader(traceContext, "!invalid!"));
+        assertNull(traceContext.transactionId);
+    }
+
+    private static class StringTraceContext extends MockTraceContext {
+        String transactionId;
+
+        @Override
+        public TraceId createTraceId(String transactionId, long parentSpanID, long spanID, short flags) {
+            this.transactionId = transactionId + " " + parentSpanID + " " + spanID + " " + flags;
+            return null;
+        }
+    }
+
+    private static class FactoryTraceContext extends StringTraceContext implements TraceIdFactory {
+        String created;
+
+        @Override
+        public TraceId createTraceId(String agentId, long agentStartTime, long transactionSequence, long parentSpanId, long spanId, short flags) {
+            this.created = agentId + " " + agentStartTime + " " + transactionSequence + " " + parentSpanId + " " + spanId + " " + flags;
+            return null;
+        }
+    }
+}
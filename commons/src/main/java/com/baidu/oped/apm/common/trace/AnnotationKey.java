@@ -186,4 +186,7 @@ public interface AnnotationKey {
 
     AnnotationKey ASYNC = AnnotationKeyFactory.of(-100, "Asynchronous Invocation", VIEW_IN_RECORD_SET);
 
+    // aggregated stack samples of a slow trace. see StackTraceTree
+    AnnotationKey STACK_SAMPLE = AnnotationKeyFactory.of(-110, "Stack Sample");
+
 }
\ No newline at end of file
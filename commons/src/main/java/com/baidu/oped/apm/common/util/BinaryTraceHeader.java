@@ -0,0 +1,200 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.common.util;
+
+import com.baidu.oped.apm.common.buffer.AutomaticBuffer;
+import com.baidu.oped.apm.common.buffer.Buffer;
+import com.baidu.oped.apm.common.buffer.FixedBuffer;
+
+/**
+ * Single header form of a trace id.
+ * The bytes of {@link TransactionIdUtils#formatBytes(String, long, long)} followed by span id, parent span id and flags,
+ * encoded as unpadded base64url.
+ */
+public final class BinaryTraceHeader {
+
+    private static final char[] ENCODE_TABLE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final byte[] DECODE_TABLE = createDecodeTable();
+
+    private final String agentId;
+    private final long agentStartTime;
+    private final long transactionSequence;
+    private final long spanId;
+    private final long parentSpanId;
+    private final short flags;
+
+    public BinaryTraceHeader(String agentId, long agentStartTime, long transactionSequence, long spanId, long parentSpanId, short flags) {
+        if (agentId == null) {
+            throw new NullPointerException("agentId must not be null");
+        }
+        this.agentId = agentId;
+        this.agentStartTime = agentStartTime;
+        this.transactionSequence = transactionSequence;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.flags = flags;
+    }
+
+    private static byte[] createDecodeTable() {
+        final byte[] table = new byte[128];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = -1;
+        }
+        for (int i = 0; i < ENCODE_TABLE.length; i++) {
+            table[ENCODE_TABLE[i]] = (byte) i;
+        }
+        return table;
+    }
+
+    public static String format(String agentId, long agentStartTime, long transactionSequence, long spanId, long parentSpanId, short flags) {
+        if (agentId == null) {
+            throw new NullPointerException("agentId must not be null");
+        }
+        // version + prefixed size + string + long * 4 + short
+        final Buffer buffer = new AutomaticBuffer(1 + 5 + 24 + 10 * 4 + 3);
+        buffer.put(TransactionIdUtils.VERSION);
+        buffer.putPrefixedString(agentId);
+        buffer.putVar(agentStartTime);
+        buffer.putVar(transactionSequence);
+        buffer.putSVar(spanId);
+        buffer.putSVar(parentSpanId);
+        buffer.putSVar(flags);
+        return encode(buffer.getInternalBuffer(), buffer.getOffset());
+    }
+
+    /**
+     * @return null if the header is not a valid binary trace header
+     */
+    public static BinaryTraceHeader parse(String header) {
+        if (header == null || header.isEmpty()) {
+            return null;
+        }
+        final byte[] bytes = decode(header);
+        if (bytes == null) {
+            return null;
+        }
+        try {
+            final Buffer buffer = new FixedBuffer(bytes);
+            if (buffer.readByte() != TransactionIdUtils.VERSION) {
+                return null;
+            }
+            final String agentId = buffer.readPrefixedString();
+            if (agentId == null) {
+                return null;
+            }
+            final long agentStartTime = buffer.readVarLong();
+            final long transactionSequence = buffer.readVarLong();
+            final long spanId = buffer.readSVarLong();
+            final long parentSpanId = buffer.readSVarLong();
+            final short flags = (short) buffer.readSVarInt();
+            return new BinaryTraceHeader(agentId, agentStartTime, transactionSequence, spanId, parentSpanId, flags);
+        } catch (RuntimeException e) {
+            // truncated or corrupted
+            return null;
+        }
+    }
+
+    static String encode(byte[] bytes, int length) {
+        final char[] chars = new char[(length * 4 + 2) / 3];
+        int charIndex = 0;
+        int i = 0;
+        for (; i + 2 < length; i += 3) {
+            final int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            chars[charIndex++] = ENCODE_TABLE[bits >>> 18];
+            chars[charIndex++] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+            chars[charIndex++] = ENCODE_TABLE[(bits >>> 6) & 0x3f];
+            chars[charIndex++] = ENCODE_TABLE[bits & 0x3f];
+        }
+        final int remaining = length - i;
+        if (remaining == 1) {
+            final int bits = (bytes[i] & 0xff) << 16;
+            chars[charIndex++] = ENCODE_TABLE[bits >>> 18];
+            chars[charIndex] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+        } else if (remaining == 2) {
+            final int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+            chars[charIndex++] = ENCODE_TABLE[bits >>> 18];
+            chars[charIndex++] = ENCODE_TABLE[(bits >>> 12) & 0x3f];
+            chars[charIndex] = ENCODE_TABLE[(bits >>> 6) & 0x3f];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Decodes straight from the characters of the header.
+     * @return null if the header contains a character other than base64url
+     */
+    static byte[] decode(String header) {
+        final int length = header.length();
+        if (length % 4 == 1) {
+            return null;
+        }
+        final byte[] bytes = new byte[length * 3 / 4];
+        int byteIndex = 0;
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = header.charAt(i);
+            final int value = c < DECODE_TABLE.length ? DECODE_TABLE[c] : -1;
+            if (value == -1) {
+                return null;
+            }
+            bits = bits << 6 | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                bytes[byteIndex++] = (byte) (bits >>> bitCount);
+            }
+        }
+        return bytes;
+    }
+
+    public String getAgentId() {
+        return agentId;
+    }
+
+    public long getAgentStartTime() {
+        return agentStartTime;
+    }
+
+    public long getTransactionSequence() {
+        return transactionSequence;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public short getFlags() {
+        return flags;
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryTraceHeader{" +
+                "agentId='" + agentId + '\'' +
+                ", agentStartTime=" + agentStartTime +
+                ", transactionSequence=" + transactionSequence +
+                ", spanId=" + spanId +
+                ", parentSpanId=" + parentSpanId +
+                ", flags=" + flags +
+                '}';
+    }
+}
@@ -97,6 +97,18 @@ public final class ThreadMXBeanUtils {
         }
     }
 
+    /**
+     * Captures the threads in a single call. The element of a terminated thread is null.
+     */
+    public static ThreadInfo[] findThread(long[] ids, int stackTraceMaxDepth) {
+        if (stackTraceMaxDepth <= 0) {
+            // getThreadInfo(long[]) returns no stack trace
+            return THREAD_MX_BEAN.getThreadInfo(ids, Integer.MAX_VALUE);
+        } else {
+            return THREAD_MX_BEAN.getThreadInfo(ids, stackTraceMaxDepth);
+        }
+    }
+
     public static List<ThreadInfo> findThread(String threadName) {
         Asserts.notNull(threadName, "threadName may not be null.");
 
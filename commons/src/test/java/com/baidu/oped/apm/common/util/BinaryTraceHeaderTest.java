@@ -0,0 +1,72 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.common.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BinaryTraceHeaderTest {
+
+    @Test
+    public void formatAndParse() {
+        long time = System.currentTimeMillis();
+        String header = BinaryTraceHeader.format("test-agent", time, 2, -1234567890123L, -1, (short) 3);
+
+        BinaryTraceHeader traceHeader = BinaryTraceHeader.parse(header);
+        Assert.assertEquals("test-agent", traceHeader.getAgentId());
+        Assert.assertEquals(time, traceHeader.getAgentStartTime());
+        Assert.assertEquals(2L, traceHeader.getTransactionSequence());
+        Assert.assertEquals(-1234567890123L, traceHeader.getSpanId());
+        Assert.assertEquals(-1L, traceHeader.getParentSpanId());
+        Assert.assertEquals((short) 3, traceHeader.getFlags());
+    }
+
+    @Test
+    public void shorterThanLegacyHeaders() {
+        long time = System.currentTimeMillis();
+        String header = BinaryTraceHeader.format("test-agent", time, 2, Long.MIN_VALUE, 8423947234L, (short) 0);
+
+        String legacy = TransactionIdUtils.formatString("test-agent", time, 2) + Long.MIN_VALUE + 8423947234L + "0";
+        Assert.assertTrue(header.length() < legacy.length());
+    }
+
+    @Test
+    public void encodeAndDecode() {
+        for (int length = 0; length < 10; length++) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = (byte) (i * 71 - 128);
+            }
+            String encoded = BinaryTraceHeader.encode(bytes, length);
+            Assert.assertArrayEquals(bytes, BinaryTraceHeader.decode(encoded));
+        }
+        // RFC 4648 test vector
+        Assert.assertEquals("Zm9vYmFy", BinaryTraceHeader.encode("foobar".getBytes(), 6));
+        Assert.assertEquals("-_8", BinaryTraceHeader.encode(new byte[]{(byte) 0xfb, (byte) 0xff}, 2));
+    }
+
+    @Test
+    public void parseInvalidHeader() {
+        Assert.assertNull(BinaryTraceHeader.parse(null));
+        Assert.assertNull(BinaryTraceHeader.parse(""));
+        Assert.assertNull(BinaryTraceHeader.parse("agentId^1^2"));
+        Assert.assertNull(BinaryTraceHeader.parse("AAAA"));
+
+        String header = BinaryTraceHeader.format("test-agent", 1, 2, 3, 4, (short) 0);
+        Assert.assertNull(BinaryTraceHeader.parse(header.substring(0, header.length() / 2)));
+    }
+}
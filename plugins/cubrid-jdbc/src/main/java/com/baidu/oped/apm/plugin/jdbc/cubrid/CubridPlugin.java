@@ -95,9 +95,9 @@ public class CubridPlugin implements ProfilerPlugin {
                 
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.DatabaseInfoAccessor");
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.ParsingResultAccessor");
-                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new java.util.HashMap()");
                 
                 int maxBindValueSize = config.getMaxSqlBindValueSize();
+                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder(" + maxBindValueSize + ")");
 
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementExecuteQueryInterceptor", va(maxBindValueSize), CubridConstants.GROUP_CUBRID);
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor", CubridConstants.GROUP_CUBRID);
@@ -50,6 +50,7 @@ import com.baidu.oped.apm.bootstrap.util.InterceptorUtils;
 import com.baidu.oped.apm.bootstrap.util.SimpleSampler;
 import com.baidu.oped.apm.bootstrap.util.SimpleSamplerFactory;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.plugin.httpclient3.HttpClient3CallContext;
 import com.baidu.oped.apm.plugin.httpclient3.HttpClient3Constants;
@@ -84,6 +85,7 @@ public class HttpMethodBaseExecuteMethodInterceptor implements AroundInterceptor
     private SimpleSampler entitySampler;
 
     private boolean io;
+    private final boolean binaryTraceHeader;
 
     public HttpMethodBaseExecuteMethodInterceptor(TraceContext traceContext, MethodDescriptor methodDescriptor, InterceptorGroup interceptorGroup) {
         this.traceContext = traceContext;
@@ -106,6 +108,7 @@ public class HttpMethodBaseExecuteMethodInterceptor implements AroundInterceptor
         }
 
         this.io = config.isApacheHttpClient3ProfileIo();
+        this.binaryTraceHeader = config.isApacheHttpClient3BinaryTraceHeader();
     }
 
     @Override
@@ -138,10 +141,14 @@ public class HttpMethodBaseExecuteMethodInterceptor implements AroundInterceptor
         recorder.recordServiceType(HttpClient3Constants.HTTP_CLIENT_3);
 
         if (httpMethod != null) {
-            httpMethod.setRequestHeader(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
-            httpMethod.setRequestHeader(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
-            httpMethod.setRequestHeader(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
-            httpMethod.setRequestHeader(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            if (binaryTraceHeader) {
+                httpMethod.setRequestHeader(Header.HTTP_TRACE.toString(), TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+            } else {
+                httpMethod.setRequestHeader(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
+                httpMethod.setRequestHeader(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
+                httpMethod.setRequestHeader(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
+                httpMethod.setRequestHeader(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            }
             httpMethod.setRequestHeader(Header.HTTP_PARENT_APPLICATION_NAME.toString(), traceContext.getApplicationName());
             httpMethod.setRequestHeader(Header.HTTP_PARENT_APPLICATION_TYPE.toString(), Short.toString(traceContext.getServerTypeCode()));
             final String host = getHost(httpMethod);
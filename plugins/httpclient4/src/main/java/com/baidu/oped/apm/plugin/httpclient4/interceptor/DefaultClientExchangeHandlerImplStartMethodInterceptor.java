@@ -52,6 +52,7 @@ import com.baidu.oped.apm.bootstrap.util.InterceptorUtils;
 import com.baidu.oped.apm.bootstrap.util.SimpleSampler;
 import com.baidu.oped.apm.bootstrap.util.SimpleSamplerFactory;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.plugin.httpclient4.HttpClient4Constants;
 import com.baidu.oped.apm.plugin.httpclient4.RequestProducerGetter;
@@ -79,6 +80,8 @@ public class DefaultClientExchangeHandlerImplStartMethodInterceptor implements A
 
     protected boolean statusCode;
 
+    protected boolean binaryTraceHeader;
+
     public DefaultClientExchangeHandlerImplStartMethodInterceptor(TraceContext traceContext, MethodDescriptor methodDescriptor) {
         setTraceContext(traceContext);
         this.methodDescriptor = methodDescriptor;
@@ -115,12 +118,16 @@ public class DefaultClientExchangeHandlerImplStartMethodInterceptor implements A
         recorder.recordServiceType(HttpClient4Constants.HTTP_CLIENT_4);
 
         if (httpRequest != null) {
-            httpRequest.setHeader(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
-            httpRequest.setHeader(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
+            if (binaryTraceHeader) {
+                httpRequest.setHeader(Header.HTTP_TRACE.toString(), TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+            } else {
+                httpRequest.setHeader(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
+                httpRequest.setHeader(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
 
-            httpRequest.setHeader(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
+                httpRequest.setHeader(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
 
-            httpRequest.setHeader(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+                httpRequest.setHeader(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            }
             httpRequest.setHeader(Header.HTTP_PARENT_APPLICATION_NAME.toString(), traceContext.getApplicationName());
             httpRequest.setHeader(Header.HTTP_PARENT_APPLICATION_TYPE.toString(), Short.toString(traceContext.getServerTypeCode()));
             final NameIntValuePair<String> host = getHost(target);
@@ -381,5 +388,7 @@ public class DefaultClientExchangeHandlerImplStartMethodInterceptor implements A
         if (entity) {
             this.entitySampler = SimpleSamplerFactory.createSampler(entity, profilerConfig.getApacheHttpClient4ProfileEntitySamplingRate());
         }
+
+        this.binaryTraceHeader = profilerConfig.isApacheHttpClient4BinaryTraceHeader();
     }
 }
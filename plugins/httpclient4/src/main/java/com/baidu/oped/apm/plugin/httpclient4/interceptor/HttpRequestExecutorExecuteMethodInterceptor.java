@@ -55,6 +55,7 @@ import com.baidu.oped.apm.bootstrap.util.InterceptorUtils;
 import com.baidu.oped.apm.bootstrap.util.SimpleSampler;
 import com.baidu.oped.apm.bootstrap.util.SimpleSamplerFactory;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.plugin.httpclient4.HttpClient4Constants;
 
@@ -84,6 +85,7 @@ public class HttpRequestExecutorExecuteMethodInterceptor implements AroundInterc
     private final InterceptorGroup interceptorGroup;
 
     private final boolean io;
+    private final boolean binaryTraceHeader;
 
     public HttpRequestExecutorExecuteMethodInterceptor(TraceContext traceContext, MethodDescriptor methodDescriptor, InterceptorGroup interceptorGroup) {
         this.traceContext = traceContext;
@@ -108,6 +110,7 @@ public class HttpRequestExecutorExecuteMethodInterceptor implements AroundInterc
         }
         this.statusCode = profilerConfig.isApacheHttpClient4ProfileStatusCode();
         this.io = profilerConfig.isApacheHttpClient4ProfileIo();
+        this.binaryTraceHeader = profilerConfig.isApacheHttpClient4BinaryTraceHeader();
     }
 
     @Override
@@ -139,12 +142,16 @@ public class HttpRequestExecutorExecuteMethodInterceptor implements AroundInterc
         recorder.recordServiceType(HttpClient4Constants.HTTP_CLIENT_4);
 
         if (httpRequest != null) {
-            httpRequest.setHeader(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
-            httpRequest.setHeader(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
+            if (binaryTraceHeader) {
+                httpRequest.setHeader(Header.HTTP_TRACE.toString(), TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+            } else {
+                httpRequest.setHeader(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
+                httpRequest.setHeader(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
 
-            httpRequest.setHeader(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
+                httpRequest.setHeader(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
 
-            httpRequest.setHeader(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+                httpRequest.setHeader(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            }
             httpRequest.setHeader(Header.HTTP_PARENT_APPLICATION_NAME.toString(), traceContext.getApplicationName());
             httpRequest.setHeader(Header.HTTP_PARENT_APPLICATION_TYPE.toString(), Short.toString(traceContext.getServerTypeCode()));
             final NameIntValuePair<String> host = getHost();
@@ -33,6 +33,7 @@ import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
 import com.baidu.oped.apm.bootstrap.sampler.SamplingFlagUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.plugin.jdk.http.ConnectedGetter;
 import com.baidu.oped.apm.plugin.jdk.http.ConnectingGetter;
@@ -56,11 +57,13 @@ public class HttpURLConnectionInterceptor implements AroundInterceptor {
     private final TraceContext traceContext;
     private final MethodDescriptor descriptor;
     private final InterceptorGroup group;
+    private final boolean binaryTraceHeader;
     
     public HttpURLConnectionInterceptor(TraceContext traceContext, MethodDescriptor descriptor, InterceptorGroup group) {
         this.traceContext = traceContext;
         this.descriptor = descriptor;
         this.group = group;
+        this.binaryTraceHeader = traceContext.getProfilerConfig().readBoolean("profiler.jdk.httpurlconnection.binary.traceheader", false);
     }
 
     @Override
@@ -100,11 +103,15 @@ public class HttpURLConnectionInterceptor implements AroundInterceptor {
         // TODO How to represent protocol?
         String endpoint = getEndpoint(host, port);
 
-        request.setRequestProperty(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
-        request.setRequestProperty(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
-        request.setRequestProperty(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
+        if (binaryTraceHeader) {
+            request.setRequestProperty(Header.HTTP_TRACE.toString(), TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+        } else {
+            request.setRequestProperty(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
+            request.setRequestProperty(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
+            request.setRequestProperty(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
 
-        request.setRequestProperty(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            request.setRequestProperty(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+        }
         request.setRequestProperty(Header.HTTP_PARENT_APPLICATION_NAME.toString(), traceContext.getApplicationName());
         request.setRequestProperty(Header.HTTP_PARENT_APPLICATION_TYPE.toString(), Short.toString(traceContext.getServerTypeCode()));
         if(host != null) {
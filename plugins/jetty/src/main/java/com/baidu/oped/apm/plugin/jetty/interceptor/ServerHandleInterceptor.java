@@ -35,6 +35,8 @@ import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
 import com.baidu.oped.apm.bootstrap.sampler.SamplingFlagUtils;
 import com.baidu.oped.apm.bootstrap.util.NetworkUtils;
 import com.baidu.oped.apm.bootstrap.util.NumberUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceContextUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
 import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.common.trace.ServiceType;
@@ -129,7 +131,7 @@ public class ServerHandleInterceptor implements AroundInterceptor {
             }
             return trace;
         } else {
-            final Trace trace = traceContext.newTraceObject();
+            final Trace trace = TraceContextUtils.newTraceObject(traceContext, requestURI);
             if (trace.canSampled()) {
                 SpanRecorder recorder = trace.getSpanRecorder();
                 recordRootSpan(recorder, request);
@@ -263,6 +265,13 @@ public class ServerHandleInterceptor implements AroundInterceptor {
      * @return TraceId when it is possible to get a transactionId from Http header. if not possible return null
      */
     private TraceId populateTraceIdFromRequest(Request request) {
+        final TraceId binaryTraceId = TraceHeaderUtils.parseBinaryTraceHeader(traceContext, request.getHeader(Header.HTTP_TRACE.toString()));
+        if (binaryTraceId != null) {
+            if (isDebug) {
+                logger.debug("TraceID exist. continue trace. {}", binaryTraceId);
+            }
+            return binaryTraceId;
+        }
 
         String transactionId = request.getHeader(Header.HTTP_TRACE_ID.toString());
         if (transactionId != null) {
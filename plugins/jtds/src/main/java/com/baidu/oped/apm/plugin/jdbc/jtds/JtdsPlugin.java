@@ -98,9 +98,9 @@ public class JtdsPlugin implements ProfilerPlugin {
                 
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.DatabaseInfoAccessor");
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.ParsingResultAccessor");
-                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new java.util.HashMap()");
                 
                 int maxBindValueSize = config.getMaxSqlBindValueSize();
+                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder(" + maxBindValueSize + ")");
 
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementExecuteQueryInterceptor", va(maxBindValueSize), JtdsConstants.GROUP_JTDS);
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor", JtdsConstants.GROUP_JTDS);
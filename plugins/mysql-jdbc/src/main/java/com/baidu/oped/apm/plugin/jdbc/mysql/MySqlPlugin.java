@@ -18,6 +18,7 @@ import java.security.ProtectionDomain;
 
 import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
 import com.baidu.oped.apm.bootstrap.instrument.InstrumentException;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentMethod;
 import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
 import com.baidu.oped.apm.bootstrap.instrument.transformer.TransformCallback;
 import com.baidu.oped.apm.bootstrap.interceptor.group.ExecutionPolicy;
@@ -108,13 +109,13 @@ public class MySqlPlugin implements ProfilerPlugin {
                 
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.DatabaseInfoAccessor");
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.ParsingResultAccessor");
-                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new java.util.HashMap()");
                 
                 int maxBindValueSize = config.getMaxSqlBindValueSize();
+                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder(" + maxBindValueSize + ")");
 
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementExecuteQueryInterceptor", va(maxBindValueSize), MySqlConstants.GROUP_NAME);
                 final PreparedStatementBindingMethodFilter excludes = PreparedStatementBindingMethodFilter.excludes("setRowId", "setNClob", "setSQLXML");
-                target.addGroupedInterceptor(excludes, "com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor", MySqlConstants.GROUP_NAME, ExecutionPolicy.BOUNDARY);
+                addBindVariableInterceptor(target, excludes);
                 
                 return target.toBytecode();
             }
@@ -129,13 +130,20 @@ public class MySqlPlugin implements ProfilerPlugin {
                 InstrumentClass target = instrumentContext.getInstrumentClass(loader, className, classfileBuffer);
 
                 final PreparedStatementBindingMethodFilter includes = PreparedStatementBindingMethodFilter.includes("setRowId", "setNClob", "setSQLXML");
-                target.addGroupedInterceptor(includes, "com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor", MySqlConstants.GROUP_NAME, ExecutionPolicy.BOUNDARY);
+                addBindVariableInterceptor(target, includes);
                 
                 return target.toBytecode();
             }
         });
     }
 
+    // one interceptor per setter. the interceptor takes the setter name from its method descriptor and the arity-specific signature is woven.
+    private static void addBindVariableInterceptor(InstrumentClass target, PreparedStatementBindingMethodFilter filter) throws InstrumentException {
+        for (InstrumentMethod method : target.getDeclaredMethods(filter)) {
+            method.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor", MySqlConstants.GROUP_NAME, ExecutionPolicy.BOUNDARY);
+        }
+    }
+
     
     private void addStatementTransformer(ProfilerPluginSetupContext setupContext) {
         TransformCallback transformer = new TransformCallback() {
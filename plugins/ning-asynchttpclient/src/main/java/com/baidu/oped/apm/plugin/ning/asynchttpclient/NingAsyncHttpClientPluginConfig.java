@@ -36,6 +36,7 @@ public class NingAsyncHttpClientPluginConfig {
     private final DumpType paramDumpType;
     private final int paramDumpSize;
     private final int paramSamplingRate;
+    private final boolean binaryTraceHeader;
 
     public NingAsyncHttpClientPluginConfig(ProfilerConfig src) {
         this.profileCookie = src.readBoolean("profiler.ning.asynchttpclient.cookie", false);
@@ -53,6 +54,7 @@ public class NingAsyncHttpClientPluginConfig {
         this.paramDumpSize = src.readInt("profiler.ning.asynchttpclient.param.dumpsize", 1024);
         this.paramSamplingRate = src.readInt("profiler.asynchttpclient.param.sampling.rate", 1);
 
+        this.binaryTraceHeader = src.readBoolean("profiler.ning.asynchttpclient.binary.traceheader", false);
     }
 
     public boolean isProfileCookie() {
@@ -102,4 +104,8 @@ public class NingAsyncHttpClientPluginConfig {
     public int getParamSamplingRate() {
         return paramSamplingRate;
     }
+
+    public boolean isBinaryTraceHeader() {
+        return binaryTraceHeader;
+    }
 }
@@ -38,6 +38,7 @@ import com.baidu.oped.apm.bootstrap.util.InterceptorUtils;
 import com.baidu.oped.apm.bootstrap.util.SimpleSampler;
 import com.baidu.oped.apm.bootstrap.util.SimpleSamplerFactory;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.plugin.ning.asynchttpclient.NingAsyncHttpClientPlugin;
 import com.baidu.oped.apm.plugin.ning.asynchttpclient.NingAsyncHttpClientPluginConfig;
@@ -116,10 +117,14 @@ public class ExecuteRequestInterceptor implements AroundInterceptor {
 
         if (httpRequest != null) {
             final FluentCaseInsensitiveStringsMap httpRequestHeaders = httpRequest.getHeaders();
-            putHeader(httpRequestHeaders, Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
-            putHeader(httpRequestHeaders, Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
-            putHeader(httpRequestHeaders, Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
-            putHeader(httpRequestHeaders, Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            if (config.isBinaryTraceHeader()) {
+                putHeader(httpRequestHeaders, Header.HTTP_TRACE.toString(), TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+            } else {
+                putHeader(httpRequestHeaders, Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
+                putHeader(httpRequestHeaders, Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
+                putHeader(httpRequestHeaders, Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
+                putHeader(httpRequestHeaders, Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            }
             putHeader(httpRequestHeaders, Header.HTTP_PARENT_APPLICATION_NAME.toString(), traceContext.getApplicationName());
             putHeader(httpRequestHeaders, Header.HTTP_PARENT_APPLICATION_TYPE.toString(), Short.toString(traceContext.getServerTypeCode()));
             final String hostString = getEndpoint(httpRequest.getURI().getHost(), httpRequest.getURI().getPort());
@@ -34,6 +34,7 @@ public class OkHttpPluginConfig {
     private boolean statusCode = true;
 
     private final boolean async;
+    private final boolean binaryTraceHeader;
 
     public OkHttpPluginConfig(ProfilerConfig src) {
         this.cookie = src.readBoolean("profiler.okhttp.cookie", false);
@@ -46,12 +47,17 @@ public class OkHttpPluginConfig {
 
         this.statusCode = src.readBoolean("profiler.okhttp.entity.statuscode", true);
         this.async = src.readBoolean("profiler.okhttp.async", true);
+        this.binaryTraceHeader = src.readBoolean("profiler.okhttp.binary.traceheader", false);
     }
 
     public boolean isAsync() {
         return async;
     }
 
+    public boolean isBinaryTraceHeader() {
+        return binaryTraceHeader;
+    }
+
     public DumpType getCookieDumpType() {
         return cookieDumpType;
     }
@@ -91,6 +97,7 @@ public class OkHttpPluginConfig {
         sb.append(", entitySamplingRate=").append(entitySamplingRate);
         sb.append(", statusCode=").append(statusCode);
         sb.append(", async=").append(async);
+        sb.append(", binaryTraceHeader=").append(binaryTraceHeader);
         sb.append('}');
         return sb.toString();
     }
@@ -24,6 +24,7 @@ import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroupInvocation
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
 import com.baidu.oped.apm.bootstrap.sampler.SamplingFlagUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.plugin.okhttp.*;
 import com.squareup.okhttp.HttpUrl;
 import com.squareup.okhttp.Request;
@@ -39,11 +40,15 @@ public class RequestBuilderBuildMethodInterceptor implements AroundInterceptor {
     private TraceContext traceContext;
     private MethodDescriptor methodDescriptor;
     private InterceptorGroup interceptorGroup;
+    private final boolean binaryTraceHeader;
 
     public RequestBuilderBuildMethodInterceptor(TraceContext traceContext, MethodDescriptor methodDescriptor, InterceptorGroup interceptorGroup) {
         this.traceContext = traceContext;
         this.methodDescriptor = methodDescriptor;
         this.interceptorGroup = interceptorGroup;
+
+        final OkHttpPluginConfig config = new OkHttpPluginConfig(traceContext.getProfilerConfig());
+        this.binaryTraceHeader = config.isBinaryTraceHeader();
     }
 
     @Override
@@ -74,12 +79,16 @@ public class RequestBuilderBuildMethodInterceptor implements AroundInterceptor {
             }
 
             final TraceId nextId = (TraceId) invocation.getAttachment();
-            builder.header(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
-            builder.header(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
+            if (binaryTraceHeader) {
+                builder.header(Header.HTTP_TRACE.toString(), TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+            } else {
+                builder.header(Header.HTTP_TRACE_ID.toString(), nextId.getTransactionId());
+                builder.header(Header.HTTP_SPAN_ID.toString(), String.valueOf(nextId.getSpanId()));
 
-            builder.header(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
+                builder.header(Header.HTTP_PARENT_SPAN_ID.toString(), String.valueOf(nextId.getParentSpanId()));
 
-            builder.header(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+                builder.header(Header.HTTP_FLAGS.toString(), String.valueOf(nextId.getFlags()));
+            }
             builder.header(Header.HTTP_PARENT_APPLICATION_NAME.toString(), traceContext.getApplicationName());
             builder.header(Header.HTTP_PARENT_APPLICATION_TYPE.toString(), Short.toString(traceContext.getServerTypeCode()));
 
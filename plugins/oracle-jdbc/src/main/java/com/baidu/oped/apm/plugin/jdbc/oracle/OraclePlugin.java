@@ -107,9 +107,9 @@ public class OraclePlugin implements ProfilerPlugin {
                 
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.DatabaseInfoAccessor");
                 target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.ParsingResultAccessor");
-                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new java.util.HashMap()");
                 
                 int maxBindValueSize = config.getMaxSqlBindValueSize();
+                target.addField("com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor", "new com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder(" + maxBindValueSize + ")");
 
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementExecuteQueryInterceptor", va(maxBindValueSize), OracleConstants.GROUP_ORACLE);
                 target.addGroupedInterceptor("com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor", OracleConstants.GROUP_ORACLE);
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.plugin.redis.interceptor;
+
+import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
+import com.baidu.oped.apm.bootstrap.context.TraceContext;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor0;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor1;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor2;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor3;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor4;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor5;
+import com.baidu.oped.apm.bootstrap.interceptor.SpanEventSimpleAroundInterceptorForPlugin;
+
+/**
+ * Jedis command interceptors don't record the command arguments.
+ * The arity-specific methods are woven for commands with up to 5 arguments, so no argument array is built per command.
+ * Longer commands fall back to {@link #before(Object, Object[])}.
+ */
+public abstract class AbstractJedisMethodInterceptor extends SpanEventSimpleAroundInterceptorForPlugin implements AroundInterceptor0, AroundInterceptor1, AroundInterceptor2, AroundInterceptor3, AroundInterceptor4, AroundInterceptor5 {
+
+    protected AbstractJedisMethodInterceptor(TraceContext traceContext, MethodDescriptor methodDescriptor) {
+        super(traceContext, methodDescriptor);
+    }
+
+    @Override
+    public void before(Object target) {
+        before(target, (Object[]) null);
+    }
+
+    @Override
+    public void before(Object target, Object arg0) {
+        before(target, (Object[]) null);
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1) {
+        before(target, (Object[]) null);
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2) {
+        before(target, (Object[]) null);
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2, Object arg3) {
+        before(target, (Object[]) null);
+    }
+
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4) {
+        before(target, (Object[]) null);
+    }
+
+    @Override
+    public void after(Object target, Object result, Throwable throwable) {
+        after(target, (Object[]) null, result, throwable);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object result, Throwable throwable) {
+        after(target, (Object[]) null, result, throwable);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object result, Throwable throwable) {
+        after(target, (Object[]) null, result, throwable);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object result, Throwable throwable) {
+        after(target, (Object[]) null, result, throwable);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object result, Throwable throwable) {
+        after(target, (Object[]) null, result, throwable);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object arg3, Object arg4, Object result, Throwable throwable) {
+        after(target, (Object[]) null, result, throwable);
+    }
+}
@@ -19,7 +19,6 @@ package com.baidu.oped.apm.plugin.redis.interceptor;
 import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
 import com.baidu.oped.apm.bootstrap.context.SpanEventRecorder;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
-import com.baidu.oped.apm.bootstrap.interceptor.SpanEventSimpleAroundInterceptorForPlugin;
 import com.baidu.oped.apm.bootstrap.interceptor.annotation.Group;
 import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
 import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroupInvocation;
@@ -36,7 +35,7 @@ import com.baidu.oped.apm.plugin.redis.RedisConstants;
  *
  */
 @Group(value = RedisConstants.REDIS_SCOPE)
-public class JedisMethodInterceptor extends SpanEventSimpleAroundInterceptorForPlugin {
+public class JedisMethodInterceptor extends AbstractJedisMethodInterceptor {
 
     private InterceptorGroup interceptorGroup;
     private boolean io;
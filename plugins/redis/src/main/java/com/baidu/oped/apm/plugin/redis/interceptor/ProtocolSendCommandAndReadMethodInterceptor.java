@@ -19,6 +19,8 @@ import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
 import com.baidu.oped.apm.bootstrap.context.Trace;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
 import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor1;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor3;
 import com.baidu.oped.apm.bootstrap.interceptor.annotation.Group;
 import com.baidu.oped.apm.bootstrap.interceptor.group.ExecutionPolicy;
 import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
@@ -35,7 +37,7 @@ import com.baidu.oped.apm.plugin.redis.RedisConstants;
  *
  */
 @Group(value = RedisConstants.REDIS_SCOPE, executionPolicy = ExecutionPolicy.INTERNAL)
-public class ProtocolSendCommandAndReadMethodInterceptor implements AroundInterceptor {
+public class ProtocolSendCommandAndReadMethodInterceptor implements AroundInterceptor, AroundInterceptor1, AroundInterceptor3 {
 
     private final PLogger logger = PLoggerFactory.getLogger(this.getClass());
     private final boolean isDebug = logger.isDebugEnabled();
@@ -50,12 +52,33 @@ public class ProtocolSendCommandAndReadMethodInterceptor implements AroundInterc
         this.interceptorGroup = interceptorGroup;
     }
 
+    // read(InputStream)
+    @Override
+    public void before(Object target, Object arg0) {
+        if (isDebug) {
+            logger.beforeInterceptor(target, new Object[] {arg0});
+        }
+        before0();
+    }
+
+    // sendCommand(OutputStream, Command, byte[]...)
+    @Override
+    public void before(Object target, Object arg0, Object arg1, Object arg2) {
+        if (isDebug) {
+            logger.beforeInterceptor(target, new Object[] {arg0, arg1, arg2});
+        }
+        before0();
+    }
+
     @Override
     public void before(Object target, Object[] args) {
         if (isDebug) {
             logger.beforeInterceptor(target, args);
         }
+        before0();
+    }
 
+    private void before0() {
         final Trace trace = traceContext.currentTraceObject();
         if (trace == null) {
             return;
@@ -77,12 +100,31 @@ public class ProtocolSendCommandAndReadMethodInterceptor implements AroundInterc
         }
     }
 
+    @Override
+    public void after(Object target, Object arg0, Object result, Throwable throwable) {
+        if (isDebug) {
+            logger.afterInterceptor(target, methodDescriptor.getClassName(), methodDescriptor.getMethodName(), "", new Object[] {arg0}, result, throwable);
+        }
+        after0(throwable);
+    }
+
+    @Override
+    public void after(Object target, Object arg0, Object arg1, Object arg2, Object result, Throwable throwable) {
+        if (isDebug) {
+            logger.afterInterceptor(target, methodDescriptor.getClassName(), methodDescriptor.getMethodName(), "", new Object[] {arg0, arg1, arg2}, result, throwable);
+        }
+        after0(throwable);
+    }
+
     @Override
     public void after(Object target, Object[] args, Object result, Throwable throwable) {
         if (isDebug) {
             logger.afterInterceptor(target, methodDescriptor.getClassName(), methodDescriptor.getMethodName(), "", args, result, throwable);
         }
+        after0(throwable);
+    }
 
+    private void after0(Throwable throwable) {
         final Trace trace = traceContext.currentTraceObject();
         if (trace == null) {
             return;
@@ -24,15 +24,18 @@ public class SpringBeansConfig {
     public static final String SPRING_BEANS_ANNOTATION = "profiler.spring.beans.annotation";
     public static final String SPRING_BEANS_CLASS_PATTERN = "profiler.spring.beans.class.pattern";
     public static final String SPRING_BEANS_NAME_PATTERN = "profiler.spring.beans.name.pattern";
+    public static final String SPRING_BEANS_CACHE_SIZE = "profiler.spring.beans.cache.size";
 
     private final String springBeansNamePatterns;
     private final String springBeansClassPatterns;
     private final String springBeansAnnotations;
+    private final int springBeansCacheSize;
 
     public SpringBeansConfig(ProfilerConfig config) {
         this.springBeansNamePatterns = config.readString(SPRING_BEANS_NAME_PATTERN, null);
         this.springBeansClassPatterns = config.readString(SPRING_BEANS_CLASS_PATTERN, null);
         this.springBeansAnnotations = config.readString(SPRING_BEANS_ANNOTATION, null);
+        this.springBeansCacheSize = config.readInt(SPRING_BEANS_CACHE_SIZE, 1024);
     }
     
     public String getSpringBeansNamePatterns() {
@@ -47,4 +50,8 @@ public class SpringBeansConfig {
         return springBeansAnnotations;
     }
 
+    public int getSpringBeansCacheSize() {
+        return springBeansCacheSize;
+    }
+
 }
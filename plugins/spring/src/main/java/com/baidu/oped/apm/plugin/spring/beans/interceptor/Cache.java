@@ -14,59 +14,127 @@
  */
 package com.baidu.oped.apm.plugin.spring.beans.interceptor;
 
-import java.util.LinkedHashMap;
-import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.baidu.oped.apm.bootstrap.util.StripedCounter;
 
 /**
+ * Bounded set of classes with a lock-free read path.
+ * When full, a CLOCK hand evicts a class which has not been looked up since the hand last passed it.
+ *
  * @author Jongho Moon
  *
  */
 public class Cache {
-    private static final int SHARD_SIZE_LIMIT = 64;
-    private static final int SHARD_NUM = 13;
-    
-    private final Shard[] shards;
-    
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final ConcurrentMap<Class<?>, Entry> entries;
+    private final AtomicReferenceArray<Class<?>> clock;
+    private final AtomicInteger hand = new AtomicInteger();
+
+    // striped. contains() is called concurrently by every bean creation thread.
+    private final StripedCounter hitCount = new StripedCounter();
+    private final StripedCounter missCount = new StripedCounter();
+    private final AtomicLong evictionCount = new AtomicLong();
+
     public Cache() {
-        shards = new Shard[SHARD_NUM];
-        
-        for (int i = 0; i < SHARD_NUM; i++) {
-            shards[i] = new Shard();
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Cache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
         }
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<Class<?>, Entry>(capacity);
+        this.clock = new AtomicReferenceArray<Class<?>>(capacity);
     }
-    
+
     public boolean contains(Class<?> clazz) {
-        Shard shard = getShard(clazz);
-        
-        synchronized (shard) {
-            return shard.containsKey(clazz);
+        final Entry entry = entries.get(clazz);
+        if (entry == null) {
+            missCount.increment();
+            return false;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
         }
+        hitCount.increment();
+        return true;
     }
-    
+
     public void put(Class<?> clazz) {
-        Shard shard = getShard(clazz);
-        synchronized (shard) {
-            shard.put(clazz, Boolean.TRUE);
+        if (entries.putIfAbsent(clazz, new Entry()) != null) {
+            return;
         }
-    }
-    
-    private Shard getShard(Class<?> clazz) {
-        int idx = clazz.getName().hashCode() % SHARD_NUM;
-        
-        if (idx < 0) {
-            idx += SHARD_NUM;
+
+        // every entry gets a second chance, so a victim is found within two rounds unless other threads keep touching entries.
+        final int maxStep = capacity * 2;
+        for (int step = 0; ; step++) {
+            final int index = nextIndex();
+            final Class<?> current = clock.get(index);
+            if (current == null) {
+                if (clock.compareAndSet(index, null, clazz)) {
+                    return;
+                }
+                continue;
+            }
+
+            final Entry entry = entries.get(current);
+            if (entry != null && entry.referenced && step < maxStep) {
+                entry.referenced = false;
+                continue;
+            }
+            if (clock.compareAndSet(index, current, clazz)) {
+                entries.remove(current);
+                evictionCount.incrementAndGet();
+                return;
+            }
         }
-        
-        return shards[idx];
     }
-    
-    @SuppressWarnings("serial")
-    private final class Shard extends LinkedHashMap<Class<?>, Boolean> {
 
-        @Override
-        protected boolean removeEldestEntry(Entry<Class<?>, Boolean> eldest) {
-            return size() > SHARD_SIZE_LIMIT;
-        }
-        
+    private int nextIndex() {
+        final int index = hand.getAndIncrement() % capacity;
+        return index < 0 ? index + capacity : index;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Cache{" +
+                "capacity=" + capacity +
+                ", size=" + entries.size() +
+                ", hit=" + hitCount.sum() +
+                ", miss=" + missCount.sum() +
+                ", eviction=" + evictionCount.get() +
+                '}';
+    }
+
+    private static final class Entry {
+        volatile boolean referenced;
     }
 }
@@ -37,8 +37,8 @@ public class TargetBeanFilter {
     private final List<Pattern> targetClassPatterns;
     private final Set<String> targetAnnotationNames;
 
-    private final Cache transformed = new Cache();
-    private final Cache rejected = new Cache();
+    private final Cache transformed;
+    private final Cache rejected;
 
     public static TargetBeanFilter of(ProfilerConfig profilerConfig) {
         SpringBeansConfig config = new SpringBeansConfig(profilerConfig);
@@ -51,7 +51,12 @@ public class TargetBeanFilter {
 
         List<String> targetAnnotationNames = split(config.getSpringBeansAnnotations());
 
-        return new TargetBeanFilter(beanNamePatterns, beanClassPatterns, targetAnnotationNames);
+        return new TargetBeanFilter(beanNamePatterns, beanClassPatterns, targetAnnotationNames, getCacheSize(config));
+    }
+
+    private static int getCacheSize(SpringBeansConfig config) {
+        final int cacheSize = config.getSpringBeansCacheSize();
+        return cacheSize > 0 ? cacheSize : Cache.DEFAULT_CAPACITY;
     }
 
     private static List<Pattern> compilePattern(List<String> patternStrings) {
@@ -66,10 +71,12 @@ public class TargetBeanFilter {
         return beanNamePatterns;
     }
 
-    private TargetBeanFilter(List<Pattern> targetNamePatterns, List<Pattern> targetClassPatterns, List<String> targetAnnotationNames) {
+    private TargetBeanFilter(List<Pattern> targetNamePatterns, List<Pattern> targetClassPatterns, List<String> targetAnnotationNames, int cacheSize) {
         this.targetNamePatterns = targetNamePatterns;
         this.targetClassPatterns = targetClassPatterns;
         this.targetAnnotationNames = targetAnnotationNames == null ? null : new HashSet<String>(targetAnnotationNames);
+        this.transformed = new Cache(cacheSize);
+        this.rejected = new Cache(cacheSize);
     }
 
     public boolean isTarget(String beanName, Class<?> clazz) {
@@ -131,6 +138,14 @@ public class TargetBeanFilter {
         transformed.put(clazz);
     }
 
+    Cache getTransformedCache() {
+        return transformed;
+    }
+
+    Cache getRejectedCache() {
+        return rejected;
+    }
+
     private static List<String> split(String values) {
         if (values == null) {
             return Collections.emptyList();
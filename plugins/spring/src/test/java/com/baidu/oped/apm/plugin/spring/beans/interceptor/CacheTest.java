@@ -0,0 +1,72 @@
+/**
+ * Copyright 2014 NAVER Corp.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.baidu.oped.apm.plugin.spring.beans.interceptor;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CacheTest {
+
+    @Test
+    public void testContains() {
+        Cache cache = new Cache(4);
+
+        assertFalse(cache.contains(String.class));
+        cache.put(String.class);
+        assertTrue(cache.contains(String.class));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testBounded() {
+        Class<?>[] classes = {String.class, Integer.class, Long.class, Short.class, Byte.class, Double.class, Float.class, Character.class};
+        Cache cache = new Cache(4);
+
+        for (Class<?> clazz : classes) {
+            cache.put(clazz);
+        }
+
+        assertEquals(4, cache.size());
+        assertEquals(4, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testReferencedEntrySurvives() {
+        Cache cache = new Cache(2);
+        cache.put(String.class);
+        cache.put(Integer.class);
+
+        assertTrue(cache.contains(String.class));
+        cache.put(Long.class);
+
+        assertTrue(cache.contains(String.class));
+        assertFalse(cache.contains(Integer.class));
+        assertTrue(cache.contains(Long.class));
+    }
+
+    @Test
+    public void testPutTwice() {
+        Cache cache = new Cache(2);
+        cache.put(String.class);
+        cache.put(String.class);
+        cache.put(Integer.class);
+
+        assertEquals(2, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+    }
+}
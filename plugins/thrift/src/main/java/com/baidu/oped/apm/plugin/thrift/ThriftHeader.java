@@ -26,7 +26,9 @@ public enum ThriftHeader {
     THRIFT_FLAGS                   (TType.I16,     (short)(Short.MIN_VALUE+4)),
     THRIFT_PARENT_APPLICATION_NAME (TType.STRING,  (short)(Short.MIN_VALUE+5)),
     THRIFT_PARENT_APPLICATION_TYPE (TType.I16,     (short)(Short.MIN_VALUE+6)),
-    THRIFT_HOST                    (TType.STRING,  (short)(Short.MIN_VALUE+7));
+    THRIFT_HOST                    (TType.STRING,  (short)(Short.MIN_VALUE+7)),
+    // trace id, span id, parent span id and flags in one field. see BinaryTraceHeader
+    THRIFT_TRACE                   (TType.STRING,  (short)(Short.MIN_VALUE+8));
 
     private final short id;
     
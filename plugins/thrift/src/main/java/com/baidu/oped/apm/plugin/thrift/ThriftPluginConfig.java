@@ -26,12 +26,14 @@ public class ThriftPluginConfig {
     private final boolean traceThriftProcessor;
     private final boolean traceThriftServiceArgs;
     private final boolean traceThriftServiceResult;
+    private final boolean thriftClientBinaryTraceHeader;
     
     public ThriftPluginConfig(ProfilerConfig src) {
         this.traceThriftClient = src.readBoolean("profiler.thrift.client", true);
         this.traceThriftProcessor = src.readBoolean("profiler.thrift.processor", true);
         this.traceThriftServiceArgs = src.readBoolean("profiler.thrift.service.args", false);
         this.traceThriftServiceResult = src.readBoolean("profiler.thrift.service.result", false);
+        this.thriftClientBinaryTraceHeader = src.readBoolean("profiler.thrift.client.binary.traceheader", false);
     }
     
     public boolean traceThriftClient() {
@@ -50,6 +52,10 @@ public class ThriftPluginConfig {
         return this.traceThriftServiceResult;
     }
 
+    public boolean thriftClientBinaryTraceHeader() {
+        return this.thriftClientBinaryTraceHeader;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -57,6 +63,7 @@ public class ThriftPluginConfig {
         sb.append(", traceThriftProcessor=").append(this.traceThriftProcessor);
         sb.append(", traceThriftServiceArgs=").append(this.traceThriftServiceArgs);
         sb.append(", traceThriftServiceResult=").append(this.traceThriftServiceResult);
+        sb.append(", thriftClientBinaryTraceHeader=").append(this.thriftClientBinaryTraceHeader);
         sb.append("}");
         return sb.toString();
     }
@@ -51,6 +51,16 @@ public class ThriftRequestProperty {
         this.thriftHeaders.put(ThriftHeader.THRIFT_TRACE_ID, traceId);
     }
     
+    // TRACE (binary trace header)
+
+    public String getBinaryTraceHeader() {
+        return (String)this.thriftHeaders.get(ThriftHeader.THRIFT_TRACE);
+    }
+
+    public void setBinaryTraceHeader(String binaryTraceHeader) {
+        this.thriftHeaders.put(ThriftHeader.THRIFT_TRACE, binaryTraceHeader);
+    }
+
     // SPAN_ID
     
     public Long getSpanId() {
@@ -39,7 +39,9 @@ import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroupInvocation
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
 import com.baidu.oped.apm.bootstrap.util.StringUtils;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.plugin.thrift.ThriftConstants;
+import com.baidu.oped.apm.plugin.thrift.ThriftPluginConfig;
 import com.baidu.oped.apm.plugin.thrift.ThriftRequestProperty;
 import com.baidu.oped.apm.plugin.thrift.ThriftUtils;
 import com.baidu.oped.apm.plugin.thrift.field.accessor.SocketFieldAccessor;
@@ -69,6 +71,7 @@ public class TServiceClientSendBaseInterceptor implements AroundInterceptor {
     private final InterceptorGroup group;
 
     private final boolean traceServiceArgs;
+    private final boolean binaryTraceHeader;
 
     public TServiceClientSendBaseInterceptor(TraceContext traceContext, MethodDescriptor descriptor, @Name(THRIFT_CLIENT_SCOPE) InterceptorGroup group,
             boolean traceServiceArgs) {
@@ -76,6 +79,7 @@ public class TServiceClientSendBaseInterceptor implements AroundInterceptor {
         this.descriptor = descriptor;
         this.group = group;
         this.traceServiceArgs = traceServiceArgs;
+        this.binaryTraceHeader = new ThriftPluginConfig(traceContext.getProfilerConfig()).thriftClientBinaryTraceHeader();
     }
 
     @Override
@@ -128,11 +132,15 @@ public class TServiceClientSendBaseInterceptor implements AroundInterceptor {
                 TraceId nextId = trace.getTraceId().getNextTraceId();
                 recorder.recordNextSpanId(nextId.getSpanId());
 
-                parentTraceInfo.setTraceId(nextId.getTransactionId());
-                parentTraceInfo.setSpanId(nextId.getSpanId());
-                parentTraceInfo.setParentSpanId(nextId.getParentSpanId());
+                if (binaryTraceHeader) {
+                    parentTraceInfo.setBinaryTraceHeader(TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+                } else {
+                    parentTraceInfo.setTraceId(nextId.getTransactionId());
+                    parentTraceInfo.setSpanId(nextId.getSpanId());
+                    parentTraceInfo.setParentSpanId(nextId.getParentSpanId());
 
-                parentTraceInfo.setFlags(nextId.getFlags());
+                    parentTraceInfo.setFlags(nextId.getFlags());
+                }
                 parentTraceInfo.setParentApplicationName(traceContext.getApplicationName());
                 parentTraceInfo.setParentApplicationType(traceContext.getServerTypeCode());
                 parentTraceInfo.setAcceptorHost(remoteAddress);
@@ -34,7 +34,9 @@ import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
 import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroupInvocation;
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.plugin.thrift.ThriftConstants;
+import com.baidu.oped.apm.plugin.thrift.ThriftPluginConfig;
 import com.baidu.oped.apm.plugin.thrift.ThriftRequestProperty;
 import com.baidu.oped.apm.plugin.thrift.ThriftUtils;
 import com.baidu.oped.apm.plugin.thrift.field.accessor.AsyncCallRemoteAddressFieldAccessor;
@@ -54,11 +56,13 @@ public class TAsyncClientManagerCallInterceptor implements AroundInterceptor {
     private final TraceContext traceContext;
     private final MethodDescriptor descriptor;
     private final InterceptorGroup group;
+    private final boolean binaryTraceHeader;
 
     public TAsyncClientManagerCallInterceptor(TraceContext traceContext, MethodDescriptor descriptor, @Name(THRIFT_CLIENT_SCOPE) InterceptorGroup group) {
         this.traceContext = traceContext;
         this.descriptor = descriptor;
         this.group = group;
+        this.binaryTraceHeader = new ThriftPluginConfig(traceContext.getProfilerConfig()).thriftClientBinaryTraceHeader();
     }
 
     @Override
@@ -99,12 +103,16 @@ public class TAsyncClientManagerCallInterceptor implements AroundInterceptor {
 
                 // Inject nextSpanId as the actual sending of data will be handled asynchronously.
                 final long nextSpanId = nextId.getSpanId();
-                parentTraceInfo.setSpanId(nextSpanId);
+                if (binaryTraceHeader) {
+                    parentTraceInfo.setBinaryTraceHeader(TraceHeaderUtils.formatBinaryTraceHeader(nextId));
+                } else {
+                    parentTraceInfo.setSpanId(nextSpanId);
 
-                parentTraceInfo.setTraceId(nextId.getTransactionId());
-                parentTraceInfo.setParentSpanId(nextId.getParentSpanId());
+                    parentTraceInfo.setTraceId(nextId.getTransactionId());
+                    parentTraceInfo.setParentSpanId(nextId.getParentSpanId());
 
-                parentTraceInfo.setFlags(nextId.getFlags());
+                    parentTraceInfo.setFlags(nextId.getFlags());
+                }
                 parentTraceInfo.setParentApplicationName(this.traceContext.getApplicationName());
                 parentTraceInfo.setParentApplicationType(this.traceContext.getServerTypeCode());
                 parentTraceInfo.setAcceptorHost(remoteAddress);
@@ -87,6 +87,7 @@ public class TProtocolWriteFieldStopInterceptor implements AroundInterceptor {
             parentTraceInfo.writeTraceHeader(ThriftHeader.THRFIT_SAMPLED, oprot);
             return;
         }
+        parentTraceInfo.writeTraceHeader(ThriftHeader.THRIFT_TRACE, oprot);
         parentTraceInfo.writeTraceHeader(ThriftHeader.THRIFT_TRACE_ID, oprot);
         parentTraceInfo.writeTraceHeader(ThriftHeader.THRIFT_SPAN_ID, oprot);
         parentTraceInfo.writeTraceHeader(ThriftHeader.THRIFT_PARENT_SPAN_ID, oprot);
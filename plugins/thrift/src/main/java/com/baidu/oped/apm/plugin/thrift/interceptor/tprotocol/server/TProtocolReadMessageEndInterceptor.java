@@ -37,6 +37,7 @@ import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
 import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroupInvocation;
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
+import com.baidu.oped.apm.bootstrap.util.TraceHeaderUtils;
 import com.baidu.oped.apm.common.trace.ServiceType;
 import com.baidu.oped.apm.plugin.thrift.ThriftClientCallContext;
 import com.baidu.oped.apm.plugin.thrift.ThriftConstants;
@@ -233,6 +234,10 @@ public class TProtocolReadMessageEndInterceptor implements AroundInterceptor {
         if (parentTraceInfo == null) {
             return null;
         }
+        final TraceId binaryTraceId = TraceHeaderUtils.parseBinaryTraceHeader(this.traceContext, parentTraceInfo.getBinaryTraceHeader());
+        if (binaryTraceId != null) {
+            return binaryTraceId;
+        }
         String transactionId = parentTraceInfo.getTraceId();
         long parentSpanId = parentTraceInfo.getParentSpanId(SpanId.NULL);
         long spanId = parentTraceInfo.getSpanId(SpanId.NULL);
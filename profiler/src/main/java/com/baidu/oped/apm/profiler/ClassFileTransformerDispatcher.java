@@ -26,11 +26,16 @@ import org.slf4j.LoggerFactory;
 
 import com.baidu.oped.apm.bootstrap.config.Filter;
 import com.baidu.oped.apm.bootstrap.instrument.DynamicTransformRequestListener;
+import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
 import com.baidu.oped.apm.profiler.instrument.LegacyProfilerPluginClassInjector;
+import com.baidu.oped.apm.profiler.instrument.RetransformScope;
+import com.baidu.oped.apm.profiler.instrument.TransformCacheScope;
+import com.baidu.oped.apm.profiler.instrument.transformer.ClassFileTransformCache;
 import com.baidu.oped.apm.profiler.instrument.transformer.DebugTransformer;
 import com.baidu.oped.apm.profiler.instrument.transformer.DefaultTransformerRegistry;
 import com.baidu.oped.apm.profiler.instrument.transformer.TransformerRegistry;
 import com.baidu.oped.apm.profiler.plugin.DefaultProfilerPluginContext;
+import com.baidu.oped.apm.profiler.plugin.MatchableClassFileTransformerGuardDelegate;
 import com.baidu.oped.apm.profiler.plugin.xml.transformer.MatchableClassFileTransformer;
 import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
 
@@ -52,8 +57,15 @@ public class ClassFileTransformerDispatcher implements ClassFileTransformer, Dyn
     private final DebugTransformer debugTransformer;
 
     private final ClassFileFilter unmodifiableFilter;
-    
+
+    // null if disabled
+    private final ClassFileTransformCache transformCache;
+
     public ClassFileTransformerDispatcher(DefaultAgent agent, List<DefaultProfilerPluginContext> pluginContexts) {
+        this(agent, pluginContexts, null);
+    }
+
+    public ClassFileTransformerDispatcher(DefaultAgent agent, List<DefaultProfilerPluginContext> pluginContexts, ClassFileTransformCache transformCache) {
         if (agent == null) {
             throw new NullPointerException("agent must not be null");
         }
@@ -66,6 +78,7 @@ public class ClassFileTransformerDispatcher implements ClassFileTransformer, Dyn
         
         this.transformerRegistry = createTransformerRegistry(pluginContexts);
         this.dynamicTransformerRegistry = new DefaultDynamicTransformerRegistry();
+        this.transformCache = transformCache;
     }
 
     @Override
@@ -80,7 +93,7 @@ public class ClassFileTransformerDispatcher implements ClassFileTransformer, Dyn
             return null;
         }
 
-        transformer = this.transformerRegistry.findTransformer(jvmClassName);
+        transformer = this.transformerRegistry.findTransformer(classLoader, jvmClassName, classFileBuffer);
         
         if (transformer == null) {
             // For debug
@@ -93,9 +106,68 @@ public class ClassFileTransformerDispatcher implements ClassFileTransformer, Dyn
             }
         }
 
+        if (transformCache != null && classBeingRedefined == null && classFileBuffer != null) {
+            return cachedTransform(classLoader, jvmClassName, protectionDomain, classFileBuffer, transformer);
+        }
         return transform0(classLoader, jvmClassName, classBeingRedefined, protectionDomain, classFileBuffer, transformer);
     }
 
+    private byte[] cachedTransform(ClassLoader classLoader, String jvmClassName, ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer) {
+        if (transformCache.isUncacheable(classLoader, jvmClassName)) {
+            return transform0(classLoader, jvmClassName, null, protectionDomain, classFileBuffer, transformer);
+        }
+
+        // injected classes can only be replayed through the plugin context that owns them
+        final Instrumentor instrumentor = getInstrumentor(transformer);
+        final ClassFileTransformCache.Entry entry = transformCache.get(classLoader, jvmClassName, classFileBuffer);
+        if (entry != null && injectClasses(instrumentor, classLoader, jvmClassName, entry.getInjectedClasses())) {
+            if (isDebug) {
+                logger.debug("[transform] cache hit. classLoader:{} className:{}", classLoader, jvmClassName);
+            }
+            return entry.getClassFile();
+        }
+
+        final Object before = TransformCacheScope.enter();
+        byte[] transformed = null;
+        List<String> injectedClasses = null;
+        try {
+            transformed = transform0(classLoader, jvmClassName, null, protectionDomain, classFileBuffer, transformer);
+        } finally {
+            injectedClasses = TransformCacheScope.leave(before);
+        }
+        if (injectedClasses == null || (!injectedClasses.isEmpty() && instrumentor == null)) {
+            transformCache.markUncacheable(classLoader, jvmClassName);
+        } else {
+            transformCache.put(classLoader, jvmClassName, classFileBuffer, transformed, injectedClasses);
+        }
+        return transformed;
+    }
+
+    private Instrumentor getInstrumentor(ClassFileTransformer transformer) {
+        if (transformer instanceof MatchableClassFileTransformerGuardDelegate) {
+            return ((MatchableClassFileTransformerGuardDelegate) transformer).getInstrumentor();
+        }
+        return null;
+    }
+
+    private boolean injectClasses(Instrumentor instrumentor, ClassLoader classLoader, String jvmClassName, List<String> injectedClasses) {
+        if (injectedClasses.isEmpty()) {
+            return true;
+        }
+        if (instrumentor == null) {
+            return false;
+        }
+        try {
+            for (String injectedClass : injectedClasses) {
+                instrumentor.injectClass(classLoader, injectedClass);
+            }
+            return true;
+        } catch (Throwable e) {
+            logger.warn("cached class injection fail. transform again. cl:{} className:{} Cause:{}", classLoader, jvmClassName, e.getMessage(), e);
+            return false;
+        }
+    }
+
     private byte[] transform0(ClassLoader classLoader, String jvmClassName, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classFileBuffer, ClassFileTransformer transformer) {
         final String javaClassName = JavaAssistUtils.jvmNameToJavaName(jvmClassName);
 
@@ -111,13 +183,21 @@ public class ClassFileTransformerDispatcher implements ClassFileTransformer, Dyn
             final Thread thread = Thread.currentThread();
             final ClassLoader before = getContextClassLoader(thread);
             thread.setContextClassLoader(this.agentClassLoader);
+            final boolean retransform = classBeingRedefined != null;
+            if (retransform) {
+                RetransformScope.enter();
+            }
             try {
                 return transformer.transform(classLoader, javaClassName, classBeingRedefined, protectionDomain, classFileBuffer);
             } finally {
+                if (retransform) {
+                    RetransformScope.leave();
+                }
                 // The context class loader have to be recovered even if it was null.
                 thread.setContextClassLoader(before);
             }
         } catch (Throwable e) {
+            TransformCacheScope.markUncacheable();
             logger.error("Transformer:{} threw an exception. cl:{} ctxCl:{} agentCl:{} Cause:{}",
                     transformer.getClass().getName(), classLoader, Thread.currentThread().getContextClassLoader(), agentClassLoader, e.getMessage(), e);
             return null;
@@ -126,11 +206,13 @@ public class ClassFileTransformerDispatcher implements ClassFileTransformer, Dyn
 
     @Override
     public void onRetransformRequest(Class<?> target, final ClassFileTransformer transformer) {
+        TransformCacheScope.markUncacheable();
         this.dynamicTransformerRegistry.onRetransformRequest(target, transformer);
     }
 
     @Override
     public void onTransformRequest(ClassLoader classLoader, String targetClassName, ClassFileTransformer transformer) {
+        TransformCacheScope.markUncacheable();
         this.dynamicTransformerRegistry.onTransformRequest(classLoader, targetClassName, transformer);
     }
 
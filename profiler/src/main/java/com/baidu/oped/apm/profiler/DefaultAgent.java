@@ -16,7 +16,14 @@
 
 package com.baidu.oped.apm.profiler;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -32,29 +39,38 @@ import org.slf4j.LoggerFactory;
 import com.baidu.oped.apm.ProductInfo;
 import com.baidu.oped.apm.bootstrap.Agent;
 import com.baidu.oped.apm.bootstrap.AgentOption;
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
 import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
 import com.baidu.oped.apm.bootstrap.context.ServerMetaDataHolder;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentClassPool;
 import com.baidu.oped.apm.bootstrap.interceptor.InterceptorInvokerHelper;
 import com.baidu.oped.apm.bootstrap.logging.PLogger;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerBinder;
 import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
 import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+import com.baidu.oped.apm.common.Version;
 import com.baidu.oped.apm.common.service.ServiceTypeRegistryService;
 import com.baidu.oped.apm.common.trace.ServiceType;
 import com.baidu.oped.apm.profiler.context.DefaultServerMetaDataHolder;
 import com.baidu.oped.apm.profiler.context.DefaultTraceContext;
 import com.baidu.oped.apm.profiler.context.TransactionCounter;
 import com.baidu.oped.apm.profiler.context.active.ActiveTraceLocator;
+import com.baidu.oped.apm.profiler.context.active.ActiveTraceStackSampler;
 import com.baidu.oped.apm.profiler.context.storage.BufferedStorageFactory;
 import com.baidu.oped.apm.profiler.context.storage.SpanStorageFactory;
 import com.baidu.oped.apm.profiler.context.storage.StorageFactory;
+import com.baidu.oped.apm.profiler.instrument.AsmClassPool;
 import com.baidu.oped.apm.profiler.instrument.JavassistClassPool;
+import com.baidu.oped.apm.profiler.instrument.transformer.ClassFileTransformCache;
 import com.baidu.oped.apm.profiler.interceptor.registry.DefaultInterceptorRegistryBinder;
 import com.baidu.oped.apm.profiler.interceptor.registry.InterceptorRegistryBinder;
 import com.baidu.oped.apm.profiler.logging.Slf4jLoggerBinder;
+import com.baidu.oped.apm.profiler.metadata.MetaDataDictionary;
+import com.baidu.oped.apm.profiler.metadata.MetaDataDictionaryStore;
 import com.baidu.oped.apm.profiler.monitor.AgentStatMonitor;
 import com.baidu.oped.apm.profiler.monitor.codahale.AgentStatCollectorFactory;
+import com.baidu.oped.apm.profiler.monitor.codahale.MetricMonitorRegistry;
 import com.baidu.oped.apm.profiler.plugin.DefaultProfilerPluginContext;
 import com.baidu.oped.apm.profiler.plugin.ProfilerPluginLoader;
 import com.baidu.oped.apm.profiler.receiver.CommandDispatcher;
@@ -62,10 +78,16 @@ import com.baidu.oped.apm.profiler.receiver.service.ActiveThreadService;
 import com.baidu.oped.apm.profiler.receiver.service.EchoService;
 import com.baidu.oped.apm.profiler.receiver.service.ThreadDumpService;
 import com.baidu.oped.apm.profiler.sampler.SamplerFactory;
+import com.baidu.oped.apm.profiler.sender.CollectorStatus;
 import com.baidu.oped.apm.profiler.sender.DataSender;
+import com.baidu.oped.apm.profiler.sender.DataSenderStatus;
 import com.baidu.oped.apm.profiler.sender.EnhancedDataSender;
+import com.baidu.oped.apm.profiler.sender.PackingUdpDataSender;
 import com.baidu.oped.apm.profiler.sender.TcpDataSender;
 import com.baidu.oped.apm.profiler.sender.UdpDataSender;
+import com.baidu.oped.apm.profiler.sender.spool.SpoolFile;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueue;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
 import com.baidu.oped.apm.profiler.util.ApplicationServerTypeResolver;
 import com.baidu.oped.apm.profiler.util.RuntimeMXBeanUtils;
 import com.baidu.oped.apm.rpc.ClassPreLoader;
@@ -83,11 +105,17 @@ public class DefaultAgent implements Agent {
     private final PLoggerBinder binder;
 
     private final ClassFileTransformerDispatcher classFileTransformer;
+    private final ClassFileTransformCache transformCache;
     
     private final ProfilerConfig profilerConfig;
 
     private final AgentInfoSender agentInfoSender;
     private final AgentStatMonitor agentStatMonitor;
+    private final ActiveTraceStackSampler stackSampler;
+    private final MetricMonitorRegistry monitorRegistry = new MetricMonitorRegistry();
+
+    private final List<MetaDataDictionary> metaDataDictionaries = new ArrayList<MetaDataDictionary>();
+    private final MetaDataDictionaryStore metaDataDictionaryStore;
 
     private final TraceContext traceContext;
 
@@ -97,6 +125,7 @@ public class DefaultAgent implements Agent {
 
     private final DataSender statDataSender;
     private final DataSender spanDataSender;
+    private StorageFactory storageFactory;
 
     private final AgentInformation agentInformation;
     private final ServerMetaDataHolder serverMetaDataHolder;
@@ -108,6 +137,7 @@ public class DefaultAgent implements Agent {
     
     private final Instrumentation instrumentation;
     private final JavassistClassPool classPool;
+    private final InstrumentClassPool instrumentClassPool;
     private final DynamicTransformService dynamicTransformService;
     private final List<DefaultProfilerPluginContext> pluginContexts;
     
@@ -152,7 +182,8 @@ public class DefaultAgent implements Agent {
         
         this.profilerConfig = agentOption.getProfilerConfig();
         this.instrumentation = agentOption.getInstrumentation();
-        this.classPool = new JavassistClassPool(interceptorRegistryBinder, agentOption.getBootStrapJarPath());
+        this.classPool = new JavassistClassPool(interceptorRegistryBinder, agentOption.getBootStrapJarPath(), profilerConfig.getClassPoolMaxCachedClassSize());
+        this.instrumentClassPool = createInstrumentClassPool(agentOption);
         
         if (logger.isInfoEnabled()) {
             logger.info("DefaultAgent classLoader:{}", this.getClass().getClassLoader());
@@ -160,7 +191,8 @@ public class DefaultAgent implements Agent {
 
         pluginContexts = loadPlugins(agentOption);
 
-        this.classFileTransformer = new ClassFileTransformerDispatcher(this, pluginContexts);
+        this.transformCache = createTransformCache(agentOption);
+        this.classFileTransformer = new ClassFileTransformerDispatcher(this, pluginContexts, this.transformCache);
         this.dynamicTransformService = new DynamicTransformService(instrumentation, classFileTransformer);
 
         instrumentation.addTransformer(this.classFileTransformer, true);
@@ -187,6 +219,7 @@ public class DefaultAgent implements Agent {
                 this.profilerConfig.getStatDataSenderWriteQueueSize(), this.profilerConfig.getStatDataSenderSocketTimeout(),
                 this.profilerConfig.getStatDataSenderSocketSendBufferSize());
 
+        this.metaDataDictionaryStore = createMetaDataDictionaryStore();
         this.traceContext = createTraceContext();
 
         addCommandService(commandDispatcher, traceContext);
@@ -194,12 +227,61 @@ public class DefaultAgent implements Agent {
         this.agentInfoSender = new AgentInfoSender(tcpDataSender, profilerConfig.getAgentInfoSendRetryInterval(), this.agentInformation);
         this.serverMetaDataHolder.addListener(this.agentInfoSender);
 
-        AgentStatCollectorFactory agentStatCollectorFactory = new AgentStatCollectorFactory(this.getTransactionCounter(this.traceContext));
+        AgentStatCollectorFactory agentStatCollectorFactory = new AgentStatCollectorFactory(this.monitorRegistry, this.getTransactionCounter(this.traceContext));
         this.agentStatMonitor = new AgentStatMonitor(this.statDataSender, this.agentInformation.getAgentId(), this.agentInformation.getStartTime(), agentStatCollectorFactory);
+        this.stackSampler = createStackSampler(this.traceContext);
         
         InterceptorInvokerHelper.setPropagateException(profilerConfig.isPropagateInterceptorException());
     }
 
+    private InstrumentClassPool createInstrumentClassPool(AgentOption agentOption) {
+        final String instrumentEngine = this.profilerConfig.getInstrumentEngine();
+        if (DefaultProfilerConfig.INSTRUMENT_ENGINE_ASM.equalsIgnoreCase(instrumentEngine)) {
+            logger.info("instrument engine:{}", DefaultProfilerConfig.INSTRUMENT_ENGINE_ASM);
+            return new AsmClassPool(interceptorRegistryBinder, agentOption.getBootStrapJarPath());
+        }
+        if (!DefaultProfilerConfig.INSTRUMENT_ENGINE_JAVASSIST.equalsIgnoreCase(instrumentEngine)) {
+            logger.warn("unknown instrument engine:{}. {} is used", instrumentEngine, DefaultProfilerConfig.INSTRUMENT_ENGINE_JAVASSIST);
+        }
+        return this.classPool;
+    }
+
+    private ClassFileTransformCache createTransformCache(AgentOption agentOption) {
+        if (!this.profilerConfig.isTransformCacheEnable()) {
+            return null;
+        }
+        String directory = this.profilerConfig.getTransformCacheDirectory();
+        if (directory == null || directory.isEmpty()) {
+            directory = System.getProperty("java.io.tmpdir") + File.separator + "apm-transform-cache";
+        }
+
+        final List<URL> jars = new ArrayList<URL>();
+        final CodeSource codeSource = this.getClass().getProtectionDomain().getCodeSource();
+        if (codeSource != null && codeSource.getLocation() != null) {
+            jars.add(codeSource.getLocation());
+        }
+        final String bootStrapJarPath = agentOption.getBootStrapJarPath();
+        if (bootStrapJarPath != null) {
+            try {
+                jars.add(new File(bootStrapJarPath).toURI().toURL());
+            } catch (MalformedURLException e) {
+                logger.warn("invalid bootstrap jar path:{}", bootStrapJarPath);
+            }
+        }
+        final URL[] pluginJars = agentOption.getPluginJars();
+        if (pluginJars != null) {
+            jars.addAll(Arrays.asList(pluginJars));
+        }
+        Properties properties = null;
+        if (this.profilerConfig instanceof DefaultProfilerConfig) {
+            properties = ((DefaultProfilerConfig) this.profilerConfig).copyProperties();
+        }
+        final String fingerprint = ClassFileTransformCache.fingerprint(Version.VERSION, jars, properties);
+
+        return new ClassFileTransformCache(new File(directory), fingerprint, this.profilerConfig.getTransformCacheMaxEntries(),
+                this.profilerConfig.getTransformCacheMaxBytes());
+    }
+
     protected List<DefaultProfilerPluginContext> loadPlugins(AgentOption agentOption) {
         return new ProfilerPluginLoader(this).load(agentOption.getPluginJars());
     }
@@ -216,6 +298,22 @@ public class DefaultAgent implements Agent {
         }
     }
     
+    private ActiveTraceStackSampler createStackSampler(TraceContext traceContext) {
+        if (!profilerConfig.isStackSamplingEnable()) {
+            return null;
+        }
+        ActiveTraceLocator activeTraceLocator = null;
+        if (traceContext instanceof DefaultTraceContext) {
+            activeTraceLocator = ((DefaultTraceContext) traceContext).getActiveTraceLocator();
+        }
+        if (activeTraceLocator == null) {
+            logger.warn("stack sampling requires profiler.apm.activethread=true. stack sampling disabled");
+            return null;
+        }
+        return new ActiveTraceStackSampler(activeTraceLocator, profilerConfig.getStackSamplingInterval(), profilerConfig.getStackSamplingThreshold(),
+                profilerConfig.getStackSamplingMaxThreads(), profilerConfig.getStackSamplingMaxDepth(), profilerConfig.getStackSamplingMaxNodes());
+    }
+
     private TransactionCounter getTransactionCounter(TraceContext traceContext) {
         if (traceContext instanceof DefaultTraceContext) {
             return ((DefaultTraceContext) traceContext).getTransactionCounter();
@@ -239,6 +337,13 @@ public class DefaultAgent implements Agent {
         return classPool;
     }
 
+    /**
+     * @return the class pool of the instrument engine selected by profiler.instrument.engine
+     */
+    public InstrumentClassPool getInstrumentClassPool() {
+        return instrumentClassPool;
+    }
+
     private void dumpSystemProperties() {
         if (logger.isInfoEnabled()) {
             Properties properties = System.getProperties();
@@ -279,19 +384,53 @@ public class DefaultAgent implements Agent {
     private TraceContext createTraceContext() {
         final StorageFactory storageFactory = createStorageFactory();
         logger.info("StorageFactoryType:{}", storageFactory);
+        this.storageFactory = storageFactory;
 
         final Sampler sampler = createSampler();
         logger.info("SamplerType:{}", sampler);
         
-        final int jdbcSqlCacheSize = profilerConfig.getJdbcSqlCacheSize();
+        final MetaDataDictionary apiDictionary = createMetaDataDictionary("api", profilerConfig.getMetaDataDictionarySize());
+        final MetaDataDictionary stringDictionary = createMetaDataDictionary("string", profilerConfig.getMetaDataDictionarySize());
+        final MetaDataDictionary sqlDictionary = createMetaDataDictionary("sql", profilerConfig.getJdbcSqlCacheSize());
+
         final boolean traceActiveThread = profilerConfig.isTraceAgentActiveThread();
-        final DefaultTraceContext traceContext = new DefaultTraceContext(jdbcSqlCacheSize, this.agentInformation, storageFactory, sampler, this.serverMetaDataHolder, traceActiveThread);
+        final DefaultTraceContext traceContext = new DefaultTraceContext(this.agentInformation, storageFactory, sampler, this.serverMetaDataHolder, traceActiveThread,
+                apiDictionary, stringDictionary, sqlDictionary);
         traceContext.setPriorityDataSender(this.tcpDataSender);
         traceContext.setProfilerConfig(profilerConfig);
 
         return traceContext;
     }
 
+    private MetaDataDictionary createMetaDataDictionary(String name, int size) {
+        final MetaDataDictionary dictionary = new MetaDataDictionary(name, size, profilerConfig.getMetaDataDictionaryOverflowSize(), this.monitorRegistry);
+        if (this.metaDataDictionaryStore != null) {
+            this.metaDataDictionaryStore.load(dictionary);
+        }
+        this.metaDataDictionaries.add(dictionary);
+        return dictionary;
+    }
+
+    private MetaDataDictionaryStore createMetaDataDictionaryStore() {
+        if (!this.profilerConfig.isMetaDataDictionaryPersistEnable()) {
+            return null;
+        }
+        String directory = this.profilerConfig.getMetaDataDictionaryDirectory();
+        if (directory == null || directory.isEmpty()) {
+            directory = System.getProperty("java.io.tmpdir") + File.separator + "apm-metadata";
+        }
+        return new MetaDataDictionaryStore(new File(directory, this.agentInformation.getAgentId()));
+    }
+
+    private void saveMetaDataDictionaries() {
+        if (this.metaDataDictionaryStore == null) {
+            return;
+        }
+        for (MetaDataDictionary dictionary : this.metaDataDictionaries) {
+            this.metaDataDictionaryStore.save(dictionary);
+        }
+    }
+
     protected StorageFactory createStorageFactory() {
         if (profilerConfig.isIoBufferingEnable()) {
             return new BufferedStorageFactory(this.spanDataSender, this.profilerConfig, this.agentInformation);
@@ -302,11 +441,13 @@ public class DefaultAgent implements Agent {
     }
 
     private Sampler createSampler() {
-        boolean samplingEnable = this.profilerConfig.isSamplingEnable();
-        int samplingRate = this.profilerConfig.getSamplingRate();
+        DataSenderStatus spanDataSenderStatus = null;
+        if (this.spanDataSender instanceof DataSenderStatus) {
+            spanDataSenderStatus = (DataSenderStatus) this.spanDataSender;
+        }
 
         SamplerFactory samplerFactory = new SamplerFactory();
-        return samplerFactory.createSampler(samplingEnable, samplingRate);
+        return samplerFactory.createSampler(this.profilerConfig, spanDataSenderStatus);
     }
     
     protected ServerMetaDataHolder createServerMetaDataHolder() {
@@ -339,15 +480,84 @@ public class DefaultAgent implements Agent {
     protected EnhancedDataSender createTcpDataSender(CommandDispatcher commandDispatcher) {
         this.clientFactory = createApmClientFactory(commandDispatcher);
         this.client = ClientFactoryUtils.createApmClient(this.profilerConfig.getCollectorTcpServerIp(), this.profilerConfig.getCollectorTcpServerPort(), clientFactory);
-        return new TcpDataSender(client);
+        return new TcpDataSender(client, createTcpDataSenderQueue(), this.profilerConfig.getDataSenderMaxDrainSize(),
+                this.profilerConfig.isTcpDataSenderWriteCoalescingEnable(), this.profilerConfig.getTcpDataSenderWriteCoalescingMaxBytes());
+    }
+
+    private AsyncQueue<Object> createTcpDataSenderQueue() {
+        final AsyncQueueFactory queueFactory = createAsyncQueueFactory();
+        if (this.profilerConfig.isTcpDataSenderPriorityLaneEnable()) {
+            return TcpDataSender.createPriorityLaneQueue(queueFactory, this.profilerConfig.getTcpDataSenderPriorityLaneSize(), this.profilerConfig.getTcpDataSenderPriorityLaneWeight());
+        }
+        return queueFactory.createQueue(TcpDataSender.DEFAULT_QUEUE_SIZE);
     }
 
     protected DataSender createUdpStatDataSender(int port, String threadName, int writeQueueSize, int timeout, int sendBufferSize) {
-        return new UdpDataSender(this.profilerConfig.getCollectorStatServerIp(), port, threadName, writeQueueSize, timeout, sendBufferSize);
+        if (this.profilerConfig.isStatDataSenderPackingEnable()) {
+            warnIgnoredPackingOptions("profiler.statdatasender.packing.enable", false);
+            final int packetSize = Math.min(this.profilerConfig.getStatDataSenderChunkSize(), UdpDataSender.UDP_MAX_PACKET_LENGTH);
+            return new PackingUdpDataSender(this.profilerConfig.getCollectorStatServerIp(), port, threadName, writeQueueSize, timeout, sendBufferSize, packetSize,
+                    createAsyncQueueFactory(), this.profilerConfig.getDataSenderMaxDrainSize());
+        }
+        return new UdpDataSender(this.profilerConfig.getCollectorStatServerIp(), port, threadName, writeQueueSize, timeout, sendBufferSize,
+                createAsyncQueueFactory(), this.profilerConfig.getDataSenderMaxDrainSize(), false, createSpool("stat"), getCollectorStatus(), this.profilerConfig.getDataSenderSpoolReplayRate());
     }
     
     protected DataSender createUdpSpanDataSender(int port, String threadName, int writeQueueSize, int timeout, int sendBufferSize) {
-        return new UdpDataSender(this.profilerConfig.getCollectorSpanServerIp(), port, threadName, writeQueueSize, timeout, sendBufferSize);
+        if (this.profilerConfig.isSpanDataSenderPackingEnable()) {
+            warnIgnoredPackingOptions("profiler.spandatasender.packing.enable", this.profilerConfig.isSpanDataSenderDirectSerializeEnable());
+            final int packetSize = Math.min(this.profilerConfig.getSpanDataSenderChunkSize(), UdpDataSender.UDP_MAX_PACKET_LENGTH);
+            return new PackingUdpDataSender(this.profilerConfig.getCollectorSpanServerIp(), port, threadName, writeQueueSize, timeout, sendBufferSize, packetSize,
+                    createAsyncQueueFactory(), this.profilerConfig.getDataSenderMaxDrainSize());
+        }
+        return new UdpDataSender(this.profilerConfig.getCollectorSpanServerIp(), port, threadName, writeQueueSize, timeout, sendBufferSize,
+                createAsyncQueueFactory(), this.profilerConfig.getDataSenderMaxDrainSize(), this.profilerConfig.isSpanDataSenderDirectSerializeEnable(),
+                createSpool("span"), getCollectorStatus(), this.profilerConfig.getDataSenderSpoolReplayRate());
+    }
+
+    // PackingUdpDataSender serializes into its own pack buffer and has no spool.
+    private void warnIgnoredPackingOptions(String packingKey, boolean directSerializeEnable) {
+        if (this.profilerConfig.isDataSenderSpoolEnable()) {
+            logger.warn("{}=true. profiler.datasender.spool.enable is ignored, packets are not spooled while the collector is unavailable", packingKey);
+        }
+        if (directSerializeEnable) {
+            logger.warn("{}=true. profiler.spandatasender.direct.serialize.enable is ignored", packingKey);
+        }
+    }
+
+    private SpoolFile createSpool(String senderName) {
+        if (!this.profilerConfig.isDataSenderSpoolEnable()) {
+            return null;
+        }
+        if (getCollectorStatus() == null) {
+            logger.warn("collector status unknown. spool disabled.");
+            return null;
+        }
+        String spoolDirectory = this.profilerConfig.getDataSenderSpoolDirectory();
+        if (spoolDirectory == null || spoolDirectory.isEmpty()) {
+            spoolDirectory = System.getProperty("java.io.tmpdir") + File.separator + "apm-spool";
+        }
+        final File directory = new File(new File(spoolDirectory, this.agentInformation.getAgentId()), senderName);
+        try {
+            return new SpoolFile(directory, this.profilerConfig.getDataSenderSpoolSegmentSize(), this.profilerConfig.getDataSenderSpoolMaxSize());
+        } catch (IOException e) {
+            logger.warn("spool create fail. spool disabled. directory:{} Caused:{}", directory, e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            logger.warn("invalid spool config. spool disabled. Caused:{}", e.getMessage());
+        }
+        return null;
+    }
+
+    // the TCP connection tells whether the collector is up. UDP sends do not.
+    private CollectorStatus getCollectorStatus() {
+        if (this.tcpDataSender instanceof CollectorStatus) {
+            return (CollectorStatus) this.tcpDataSender;
+        }
+        return null;
+    }
+
+    private AsyncQueueFactory createAsyncQueueFactory() {
+        return new AsyncQueueFactory(this.profilerConfig.getDataSenderQueueType(), this.profilerConfig.getDataSenderQueueWaitStrategy());
     }
 
     protected EnhancedDataSender getTcpDataSender() {
@@ -387,6 +597,9 @@ public class DefaultAgent implements Agent {
         logger.info("Starting {} Agent.", ProductInfo.NAME);
         this.agentInfoSender.start();
         this.agentStatMonitor.start();
+        if (this.stackSampler != null) {
+            this.stackSampler.start();
+        }
     }
 
     @Override
@@ -403,11 +616,22 @@ public class DefaultAgent implements Agent {
 
         this.agentInfoSender.stop();
         this.agentStatMonitor.stop();
+        if (this.transformCache != null) {
+            logger.info("transform cache status:{}", this.transformCache);
+        }
+        if (this.stackSampler != null) {
+            this.stackSampler.stop();
+        }
 
         // Need to process stop
+        if (this.storageFactory instanceof BufferedStorageFactory) {
+            ((BufferedStorageFactory) this.storageFactory).stop();
+        }
         this.spanDataSender.stop();
         this.statDataSender.stop();
 
+        saveMetaDataDictionaries();
+
         closeTcpDataSender();
 
         PLoggerFactory.unregister(this.binder);
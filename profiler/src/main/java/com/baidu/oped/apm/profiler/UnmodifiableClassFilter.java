@@ -18,6 +18,8 @@ package com.baidu.oped.apm.profiler;
 
 import java.security.ProtectionDomain;
 
+import com.baidu.oped.apm.profiler.instrument.classpool.IsolateMultipleClassPool;
+
 /**
  * @author emeroad
  */
@@ -46,6 +48,11 @@ public class UnmodifiableClassFilter implements ClassFileFilter {
             return SKIP;
         }
 
+        if (IsolateMultipleClassPool.isThrowawayClassLoader(classLoader)) {
+            // reflection accessors. a class pool for them would never be reused.
+            return SKIP;
+        }
+
         // Skip apm packages too.
         if (className.startsWith("com.baidu.oped.apm/")) {
             return SKIP;
@@ -44,4 +44,8 @@ public class ActiveTrace {
         return this.trace.getBindThread();
     }
 
+    public Trace getTrace() {
+        return this.trace;
+    }
+
 }
@@ -35,6 +35,8 @@ public class CallStack {
     private int overflowIndex = 0;
     private short sequence;
     private int latestStackIndex = 0;
+    // returned for every frame beyond maxDepth. immutable and never stored.
+    private SpanEvent overflowSpanEvent;
 
     public CallStack(Span span) {
         this(span, -1);
@@ -87,7 +89,7 @@ public class CallStack {
     public SpanEvent pop() {
         if(isOverflow() && overflowIndex > 0) {
             overflowIndex--;
-            return new SpanEvent(span);
+            return getOverflowSpanEvent();
         }
         
         final SpanEvent spanEvent = peek();
@@ -105,7 +107,7 @@ public class CallStack {
         }
         
         if(isOverflow() && overflowIndex > 0) {
-            return new SpanEvent(span);
+            return getOverflowSpanEvent();
         }
 
         return stack[index - 1];
@@ -123,6 +125,20 @@ public class CallStack {
         return copyStack;
     }
 
+    SpanEvent getOverflowSpanEvent() {
+        SpanEvent overflowSpanEvent = this.overflowSpanEvent;
+        if (overflowSpanEvent == null) {
+            // ignores everything recorded. no need to reset it for the next overflow frame.
+            overflowSpanEvent = new OverflowSpanEvent(span);
+            this.overflowSpanEvent = overflowSpanEvent;
+        }
+        return overflowSpanEvent;
+    }
+
+    boolean isOverflowSpanEvent(SpanEvent spanEvent) {
+        return spanEvent != null && spanEvent == this.overflowSpanEvent;
+    }
+
     public int getMaxDepth() {
         return maxDepth;
     }
@@ -18,11 +18,15 @@ package com.baidu.oped.apm.profiler.context;
 
 import com.baidu.oped.apm.bootstrap.context.ParsingResult;
 import com.baidu.oped.apm.common.util.*;
+import com.baidu.oped.apm.profiler.metadata.MetaDataDictionary;
 import com.baidu.oped.apm.profiler.metadata.Result;
-import com.baidu.oped.apm.profiler.metadata.SimpleCache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * @author emeroad
  */
@@ -32,14 +36,55 @@ public class DefaultCachingSqlNormalizer implements CachingSqlNormalizer {
 
     private static final DefaultParsingResult EMPTY_OBJECT = new DefaultParsingResult("");
 
-    private final SimpleCache<String> sqlCache;
+    // average sql length assumed when the weight of the original sql cache is derived from cacheSize.
+    static final int DEFAULT_ORIGINAL_SQL_WEIGHT = 512;
+
+    private final MetaDataDictionary sqlCache;
+    // originalSql -> normalized result. skips the parser for statements which were already seen.
+    private final ConcurrentMap<String, CachedSql> originalSqlCache;
     private final SqlParser sqlParser;
 
     public DefaultCachingSqlNormalizer(int cacheSize) {
-        this.sqlCache = new SimpleCache<String>(cacheSize);
+        this(cacheSize, (long) cacheSize * DEFAULT_ORIGINAL_SQL_WEIGHT);
+    }
+
+    /**
+     * @param cacheSize max number of normalized sql
+     * @param originalSqlCacheMaxWeight max number of chars held by the original sql cache. 0 disables it.
+     */
+    public DefaultCachingSqlNormalizer(int cacheSize, long originalSqlCacheMaxWeight) {
+        this(new MetaDataDictionary("sql", cacheSize), originalSqlCacheMaxWeight);
+    }
+
+    /**
+     * @param sqlDictionary id dictionary of normalized sql
+     * @param originalSqlCacheMaxWeight max number of chars held by the original sql cache. 0 disables it.
+     */
+    public DefaultCachingSqlNormalizer(MetaDataDictionary sqlDictionary, long originalSqlCacheMaxWeight) {
+        if (sqlDictionary == null) {
+            throw new NullPointerException("sqlDictionary must not be null");
+        }
+        if (originalSqlCacheMaxWeight < 0) {
+            throw new IllegalArgumentException("negative originalSqlCacheMaxWeight:" + originalSqlCacheMaxWeight);
+        }
+        this.sqlCache = sqlDictionary;
+        this.originalSqlCache = createOriginalSqlCache(originalSqlCacheMaxWeight);
         this.sqlParser = new DefaultSqlParser();
     }
 
+    private ConcurrentMap<String, CachedSql> createOriginalSqlCache(long maxWeight) {
+        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+        cacheBuilder.concurrencyLevel(64);
+        cacheBuilder.maximumWeight(maxWeight);
+        final CacheBuilder<String, CachedSql> weightedCacheBuilder = cacheBuilder.weigher(new Weigher<String, CachedSql>() {
+            @Override
+            public int weigh(String originalSql, CachedSql cachedSql) {
+                return originalSql.length() + cachedSql.weight();
+            }
+        });
+        return weightedCacheBuilder.<String, CachedSql>build().asMap();
+    }
+
     @Override
     public ParsingResult wrapSql(String sql) {
         if (sql == null) {
@@ -71,23 +116,67 @@ public class DefaultCachingSqlNormalizer implements CachingSqlNormalizer {
         final ParsingResultInternal parsingResultInternal = (ParsingResultInternal) parsingResult;
 
         final String originalSql = parsingResultInternal.getOriginalSql();
+        final CachedSql cachedSql = this.originalSqlCache.get(originalSql);
+        if (cachedSql != null) {
+            // same original sql always has the same normalized sql and parameters.
+            setResult(parsingResultInternal, cachedSql.getId(), cachedSql.getNormalizedSql(), cachedSql.getParseParameter());
+            return false;
+        }
+
         final NormalizedSql normalizedSql = this.sqlParser.normalizedSql(originalSql);
 
         final Result cachingResult = this.sqlCache.put(normalizedSql.getNormalizedSql());
+        this.originalSqlCache.put(originalSql, new CachedSql(cachingResult.getId(), normalizedSql.getNormalizedSql(), normalizedSql.getParseParameter()));
 
+        setResult(parsingResultInternal, cachingResult.getId(), normalizedSql.getNormalizedSql(), normalizedSql.getParseParameter());
+
+        return cachingResult.isNewValue();
+    }
+
+    private void setResult(ParsingResultInternal parsingResultInternal, int id, String normalizedSql, String parseParameter) {
         // set normalizedSql
         // set sqlId
-        final boolean success = parsingResultInternal.setId(cachingResult.getId());
+        final boolean success = parsingResultInternal.setId(id);
         if (!success) {
             if (logger.isWarnEnabled()) {
-                logger.warn("invalid state. setSqlId fail setId:{}, ParsingResultInternal:{}", cachingResult.getId(), parsingResultInternal);
+                logger.warn("invalid state. setSqlId fail setId:{}, ParsingResultInternal:{}", id, parsingResultInternal);
             }
         }
 
-        parsingResultInternal.setSql(normalizedSql.getNormalizedSql());
-        parsingResultInternal.setOutput(normalizedSql.getParseParameter());
+        parsingResultInternal.setSql(normalizedSql);
+        parsingResultInternal.setOutput(parseParameter);
+    }
 
-        return cachingResult.isNewValue();
+    private static final class CachedSql {
+        private final int id;
+        private final String normalizedSql;
+        private final String parseParameter;
+
+        private CachedSql(int id, String normalizedSql, String parseParameter) {
+            this.id = id;
+            this.normalizedSql = normalizedSql;
+            this.parseParameter = parseParameter;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getNormalizedSql() {
+            return normalizedSql;
+        }
+
+        public String getParseParameter() {
+            return parseParameter;
+        }
+
+        private int weight() {
+            int weight = normalizedSql.length();
+            if (parseParameter != null) {
+                weight += parseParameter.length();
+            }
+            return weight;
+        }
     }
 
 
@@ -16,6 +16,9 @@
 
 package com.baidu.oped.apm.profiler.context;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +30,10 @@ import com.baidu.oped.apm.bootstrap.context.Trace;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
 import com.baidu.oped.apm.bootstrap.context.TraceId;
 import com.baidu.oped.apm.bootstrap.context.TraceType;
+import com.baidu.oped.apm.common.trace.AnnotationKey;
 import com.baidu.oped.apm.exception.ApmException;
+import com.baidu.oped.apm.profiler.context.active.StackTraceTree;
+import com.baidu.oped.apm.profiler.context.storage.SizeBufferedStorage;
 import com.baidu.oped.apm.profiler.context.storage.Storage;
 
 /**
@@ -46,6 +52,10 @@ public final class DefaultTrace implements Trace {
     private final TraceId traceId;
 
     private final CallStack callStack;
+    // 0 if SpanEvent recycling is disabled.
+    private final int spanEventPoolSize;
+    // pooled SpanEvents of this trace. released on close. null if SpanEvent recycling is disabled.
+    private List<SpanEvent> pooledSpanEvents;
 
     private Storage storage;
 
@@ -57,6 +67,9 @@ public final class DefaultTrace implements Trace {
 
     private Thread bindThread;
 
+    // written by the stack sampler thread. null if this trace was never sampled.
+    private volatile StackTraceTree stackTraceTree;
+
     public DefaultTrace(final TraceContext traceContext, long transactionId, boolean sampling) {
         if (traceContext == null) {
             throw new NullPointerException("traceContext must not be null");
@@ -71,6 +84,7 @@ public final class DefaultTrace implements Trace {
         this.spanRecorder.recordTraceId(traceId);
         this.spanEventRecorder = new WrappedSpanEventRecorder(traceContext);
         this.callStack = createCallStack(traceContext.getProfilerConfig(), span);
+        this.spanEventPoolSize = getSpanEventPoolSize(traceContext.getProfilerConfig());
         setCurrentThread();
     }
 
@@ -91,6 +105,7 @@ public final class DefaultTrace implements Trace {
         this.spanRecorder.recordTraceId(traceId);
         this.spanEventRecorder = new WrappedSpanEventRecorder(traceContext);
         this.callStack = createCallStack(traceContext.getProfilerConfig(), span);
+        this.spanEventPoolSize = getSpanEventPoolSize(traceContext.getProfilerConfig());
         setCurrentThread();
     }
 
@@ -103,6 +118,13 @@ public final class DefaultTrace implements Trace {
         }
     }
 
+    private int getSpanEventPoolSize(ProfilerConfig profilerConfig) {
+        if (profilerConfig != null && profilerConfig.isSpanEventRecycleEnable()) {
+            return profilerConfig.getSpanEventRecyclePoolSize();
+        }
+        return 0;
+    }
+
     private Span createSpan() {
         Span span = new Span();
         span.setAgentId(traceContext.getAgentId());
@@ -131,8 +153,15 @@ public final class DefaultTrace implements Trace {
 
     @Override
     public SpanEventRecorder traceBlockBegin(final int stackId) {
+        if (!this.closed && callStack.isOverflow()) {
+            // the frame is not recorded. skip creating SpanEvent.
+            final SpanEvent overflowSpanEvent = callStack.getOverflowSpanEvent();
+            callStack.push(overflowSpanEvent);
+            return wrappedSpanEventRecorder(overflowSpanEvent);
+        }
+
         // Set properties for the case when stackFrame is not used as part of Span.
-        final SpanEvent spanEvent = new SpanEvent(spanRecorder.getSpan());
+        final SpanEvent spanEvent = newSpanEvent();
         spanEvent.markStartTime();
         spanEvent.setStackId(stackId);
 
@@ -148,6 +177,20 @@ public final class DefaultTrace implements Trace {
         return wrappedSpanEventRecorder(spanEvent);
     }
 
+    private SpanEvent newSpanEvent() {
+        final Span span = spanRecorder.getSpan();
+        if (spanEventPoolSize > 0) {
+            // pool of the current thread. a trace could be touched by another thread.
+            final SpanEvent spanEvent = SpanEventPool.getLocalPool(spanEventPoolSize).acquire(span);
+            if (pooledSpanEvents == null) {
+                pooledSpanEvents = new ArrayList<SpanEvent>();
+            }
+            pooledSpanEvents.add(spanEvent);
+            return spanEvent;
+        }
+        return new SpanEvent(span);
+    }
+
     @Override
     public void traceBlockEnd() {
         traceBlockEnd(DEFAULT_STACKID);
@@ -171,6 +214,10 @@ public final class DefaultTrace implements Trace {
             }
             return;
         }
+        if (callStack.isOverflowSpanEvent(spanEvent)) {
+            // frame beyond max depth. nothing to store.
+            return;
+        }
 
         if (spanEvent.getStackId() != stackId) {
             // stack dump will make debugging easy.
@@ -205,6 +252,7 @@ public final class DefaultTrace implements Trace {
             if (span.isTimeRecording()) {
                 span.markAfterTime();
             }
+            recordStackTraceTree();
             logSpan(span);
         }
 
@@ -213,6 +261,47 @@ public final class DefaultTrace implements Trace {
             this.storage.close();
             this.storage = null;
         }
+        releasePooledSpanEvents();
+    }
+
+    private void releasePooledSpanEvents() {
+        final List<SpanEvent> pooledSpanEvents = this.pooledSpanEvents;
+        if (pooledSpanEvents == null) {
+            return;
+        }
+        this.pooledSpanEvents = null;
+        // the recorder must not write into a SpanEvent which may be reused by another trace.
+        spanEventRecorder.setWrapped(callStack.getOverflowSpanEvent());
+        final int size = pooledSpanEvents.size();
+        for (int i = 0; i < size; i++) {
+            pooledSpanEvents.get(i).releaseByTrace();
+        }
+    }
+
+    private void recordStackTraceTree() {
+        final StackTraceTree copy = this.stackTraceTree;
+        if (copy == null || !sampling) {
+            return;
+        }
+        this.stackTraceTree = null;
+        // the tree goes with the span. trimmed so that the span is not dropped for the datagram size.
+        final int maxBytes = SizeBufferedStorage.getRemainingAnnotationBytes(spanRecorder.getSpan());
+        final byte[] encoded = copy.encode(maxBytes);
+        if (encoded.length > maxBytes) {
+            if (isWarn) {
+                logger.warn("stack sample skipped. no room left in span. maxBytes:{}", maxBytes);
+            }
+            return;
+        }
+        spanRecorder.recordAttribute(AnnotationKey.STACK_SAMPLE, encoded);
+    }
+
+    public StackTraceTree getStackTraceTree() {
+        return stackTraceTree;
+    }
+
+    public void setStackTraceTree(StackTraceTree stackTraceTree) {
+        this.stackTraceTree = stackTraceTree;
     }
 
     /**
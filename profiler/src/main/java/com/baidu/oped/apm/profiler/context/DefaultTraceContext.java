@@ -23,12 +23,14 @@ import org.slf4j.LoggerFactory;
 
 import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
 import com.baidu.oped.apm.bootstrap.context.AsyncTraceId;
+import com.baidu.oped.apm.bootstrap.context.EntryPointTraceContext;
 import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
 import com.baidu.oped.apm.bootstrap.context.ParsingResult;
 import com.baidu.oped.apm.bootstrap.context.ServerMetaDataHolder;
 import com.baidu.oped.apm.bootstrap.context.Trace;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
 import com.baidu.oped.apm.bootstrap.context.TraceId;
+import com.baidu.oped.apm.bootstrap.context.TraceIdFactory;
 import com.baidu.oped.apm.bootstrap.context.TraceType;
 import com.baidu.oped.apm.bootstrap.sampler.Sampler;
 import com.baidu.oped.apm.profiler.AgentInformation;
@@ -37,8 +39,8 @@ import com.baidu.oped.apm.profiler.context.active.ActiveTraceLocator;
 import com.baidu.oped.apm.profiler.context.storage.LogStorageFactory;
 import com.baidu.oped.apm.profiler.context.storage.StorageFactory;
 import com.baidu.oped.apm.profiler.metadata.LRUCache;
+import com.baidu.oped.apm.profiler.metadata.MetaDataDictionary;
 import com.baidu.oped.apm.profiler.metadata.Result;
-import com.baidu.oped.apm.profiler.metadata.SimpleCache;
 import com.baidu.oped.apm.profiler.sampler.TrueSampler;
 import com.baidu.oped.apm.profiler.sender.EnhancedDataSender;
 import com.baidu.oped.apm.profiler.util.RuntimeMXBeanUtils;
@@ -51,7 +53,7 @@ import com.baidu.oped.apm.thrift.dto.TStringMetaData;
  * @author HyunGil Jeong
  * @author Taejin Koo
  */
-public class DefaultTraceContext implements TraceContext {
+public class DefaultTraceContext implements TraceContext, EntryPointTraceContext, TraceIdFactory {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final boolean isDebug = logger.isDebugEnabled();
@@ -66,8 +68,8 @@ public class DefaultTraceContext implements TraceContext {
 
     private final CachingSqlNormalizer cachingSqlNormalizer;
 
-    private final SimpleCache<String> apiCache = new SimpleCache<String>();
-    private final SimpleCache<String> stringCache = new SimpleCache<String>();
+    private final MetaDataDictionary apiCache;
+    private final MetaDataDictionary stringCache;
 
     private ProfilerConfig profilerConfig;
 
@@ -85,6 +87,12 @@ public class DefaultTraceContext implements TraceContext {
     }
 
     public DefaultTraceContext(final int sqlCacheSize, final AgentInformation agentInformation, StorageFactory storageFactory, Sampler sampler, ServerMetaDataHolder serverMetaDataHolder, final boolean traceActiveThread) {
+        this(agentInformation, storageFactory, sampler, serverMetaDataHolder, traceActiveThread,
+                new MetaDataDictionary("api", LRUCache.DEFAULT_CACHE_SIZE), new MetaDataDictionary("string", LRUCache.DEFAULT_CACHE_SIZE), new MetaDataDictionary("sql", sqlCacheSize));
+    }
+
+    public DefaultTraceContext(final AgentInformation agentInformation, StorageFactory storageFactory, Sampler sampler, ServerMetaDataHolder serverMetaDataHolder, final boolean traceActiveThread,
+                               MetaDataDictionary apiDictionary, MetaDataDictionary stringDictionary, MetaDataDictionary sqlDictionary) {
         if (agentInformation == null) {
             throw new NullPointerException("agentInformation must not be null");
         }
@@ -94,9 +102,20 @@ public class DefaultTraceContext implements TraceContext {
         if (sampler == null) {
             throw new NullPointerException("sampler must not be null");
         }
+        if (apiDictionary == null) {
+            throw new NullPointerException("apiDictionary must not be null");
+        }
+        if (stringDictionary == null) {
+            throw new NullPointerException("stringDictionary must not be null");
+        }
+        if (sqlDictionary == null) {
+            throw new NullPointerException("sqlDictionary must not be null");
+        }
         this.agentInformation = agentInformation;
 
-        this.cachingSqlNormalizer = new DefaultCachingSqlNormalizer(sqlCacheSize);
+        this.apiCache = apiDictionary;
+        this.stringCache = stringDictionary;
+        this.cachingSqlNormalizer = new DefaultCachingSqlNormalizer(sqlDictionary, (long) sqlDictionary.getMaxSize() * DefaultCachingSqlNormalizer.DEFAULT_ORIGINAL_SQL_WEIGHT);
 
         this.traceFactory = createTraceFactory(storageFactory, sampler, traceActiveThread);
 
@@ -178,6 +197,11 @@ public class DefaultTraceContext implements TraceContext {
         return traceFactory.newTraceObject(traceType);
     }
 
+    @Override
+    public Trace newTraceObject(String entryPoint) {
+        return traceFactory.newTraceObject(entryPoint);
+    }
+
     @Override
     public Trace removeTraceObject() {
         return traceFactory.removeTraceObject();
@@ -262,6 +286,14 @@ public class DefaultTraceContext implements TraceContext {
         return DefaultTraceId.parse(transactionId, parentSpanID, spanID, flags);
     }
 
+    @Override
+    public TraceId createTraceId(final String agentId, final long agentStartTime, final long transactionSequence, final long parentSpanId, final long spanId, final short flags) {
+        if (agentId == null) {
+            throw new NullPointerException("agentId must not be null");
+        }
+        return new DefaultTraceId(agentId, agentStartTime, transactionSequence, parentSpanId, spanId, flags);
+    }
+
     @Override
     public ParsingResult parseSql(final String sql) {
         // lazy sql normalization
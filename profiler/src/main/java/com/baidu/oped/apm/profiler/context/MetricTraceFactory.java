@@ -98,6 +98,11 @@ public class MetricTraceFactory implements TraceFactory, TraceFactoryWrapper {
         return delegate.newTraceObject(traceType);
     }
 
+    @Override
+    public Trace newTraceObject(String entryPoint) {
+        return delegate.newTraceObject(entryPoint);
+    }
+
     @Override
     public Trace removeTraceObject() {
         final Trace trace = delegate.removeTraceObject();
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context;
+
+import com.baidu.oped.apm.thrift.dto.TAnnotation;
+import com.baidu.oped.apm.thrift.dto.TIntStringValue;
+
+/**
+ * Stands for the frames beyond the max call stack depth.
+ * Shared by all of them, so everything recorded into it is ignored.
+ */
+final class OverflowSpanEvent extends SpanEvent {
+
+    OverflowSpanEvent(Span span) {
+        super(span);
+        super.setTimeRecording(false);
+    }
+
+    @Override
+    public void setTimeRecording(boolean timeRecording) {
+    }
+
+    @Override
+    public void markStartTime() {
+    }
+
+    @Override
+    public void markAfterTime() {
+    }
+
+    @Override
+    public void setStackId(int stackId) {
+    }
+
+    @Override
+    public void addToAnnotations(TAnnotation elem) {
+    }
+
+    @Override
+    public void setExceptionInfo(TIntStringValue exceptionInfo) {
+    }
+
+    @Override
+    public void setSequence(short sequence) {
+    }
+
+    @Override
+    public void setStartElapsed(int startElapsed) {
+    }
+
+    @Override
+    public void setStartElapsedIsSet(boolean value) {
+    }
+
+    @Override
+    public void setEndElapsed(int endElapsed) {
+    }
+
+    @Override
+    public void setEndElapsedIsSet(boolean value) {
+    }
+
+    @Override
+    public void setRpc(String rpc) {
+    }
+
+    @Override
+    public void setServiceType(short serviceType) {
+    }
+
+    @Override
+    public void setEndPoint(String endPoint) {
+    }
+
+    @Override
+    public void setDepth(int depth) {
+    }
+
+    @Override
+    public void setNextSpanId(long nextSpanId) {
+    }
+
+    @Override
+    public void setDestinationId(String destinationId) {
+    }
+
+    @Override
+    public void setApiId(int apiId) {
+    }
+
+    @Override
+    public void setAsyncId(int asyncId) {
+    }
+
+    @Override
+    public void setNextAsyncId(int nextAsyncId) {
+    }
+
+    @Override
+    public void setAsyncSequence(short asyncSequence) {
+    }
+
+    @Override
+    public Object attachFrameObject(Object attachObject) {
+        return null;
+    }
+
+    @Override
+    public Object detachFrameObject() {
+        return null;
+    }
+}
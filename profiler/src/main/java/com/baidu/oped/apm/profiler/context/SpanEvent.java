@@ -16,6 +16,8 @@
 
 package com.baidu.oped.apm.profiler.context;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 import com.baidu.oped.apm.bootstrap.context.FrameAttachment;
 import com.baidu.oped.apm.thrift.dto.TIntStringValue;
 import com.baidu.oped.apm.thrift.dto.TSpanEvent;
@@ -28,11 +30,23 @@ import com.baidu.oped.apm.thrift.dto.TSpanEvent;
  */
 public class SpanEvent extends TSpanEvent implements FrameAttachment {
 
-    private final Span span;
+    private Span span;
     private int stackId;
     private boolean timeRecording = true;
     private Object frameObject;
 
+    private static final int RELEASED_BY_TRACE = 1;
+    private static final int RELEASED_BY_SENDER = 2;
+    private static final int RELEASED = RELEASED_BY_TRACE | RELEASED_BY_SENDER;
+    private static final AtomicIntegerFieldUpdater<SpanEvent> RELEASE_STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(SpanEvent.class, "releaseState");
+
+    // owner pool. null if this SpanEvent is not recyclable.
+    private SpanEventPool pool;
+    // a recyclable SpanEvent goes back to the pool once its trace is closed and it has been serialized.
+    private volatile int releaseState;
+    // link of the pool's returned list.
+    SpanEvent nextReturned;
+
     public SpanEvent(Span span) {
         if (span == null) {
             throw new NullPointerException("span must not be null");
@@ -40,6 +54,65 @@ public class SpanEvent extends TSpanEvent implements FrameAttachment {
         this.span = span;
     }
 
+    SpanEvent(Span span, SpanEventPool pool) {
+        this(span);
+        this.pool = pool;
+    }
+
+    void reuse(Span span) {
+        if (span == null) {
+            throw new NullPointerException("span must not be null");
+        }
+        this.span = span;
+    }
+
+    void resetForRecycle() {
+        clear();
+        this.span = null;
+        this.stackId = 0;
+        this.timeRecording = true;
+        this.frameObject = null;
+        this.releaseState = 0;
+    }
+
+    /**
+     * Called by the sender after the SpanEvent has been serialized.
+     * The SpanEvent goes back to the pool of the thread that created it if its trace is already closed.
+     *
+     * @return false if this SpanEvent is not recyclable
+     */
+    public boolean recycle() {
+        return release(RELEASED_BY_SENDER);
+    }
+
+    /**
+     * Called by the trace on close. The trace and its recorder must not touch this SpanEvent afterwards.
+     */
+    boolean releaseByTrace() {
+        return release(RELEASED_BY_TRACE);
+    }
+
+    private boolean release(int releasedBy) {
+        final SpanEventPool pool = this.pool;
+        if (pool == null) {
+            return false;
+        }
+        while (true) {
+            final int state = this.releaseState;
+            if ((state & releasedBy) != 0) {
+                // already released by this side
+                return true;
+            }
+            final int newState = state | releasedBy;
+            if (RELEASE_STATE_UPDATER.compareAndSet(this, state, newState)) {
+                if (newState == RELEASED) {
+                    pool.release(this);
+                }
+                return true;
+            }
+        }
+    }
+
     public Span getSpan() {
         return span;
     }
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanChunk;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+
+/**
+ * Per-thread pool of {@link SpanEvent}.
+ * SpanEvents are acquired by the application thread, and returned once their trace is closed and the sender has serialized them.
+ * Returned SpanEvents are pushed to a lock-free list linked through the SpanEvents themselves,
+ * so returning never allocates and never touches the owner's free list.
+ */
+public class SpanEventPool {
+
+    private static final ThreadLocal<SpanEventPool> LOCAL_POOL = new ThreadLocal<SpanEventPool>();
+
+    // Caution. accessed by the owner thread only.
+    private final SpanEvent[] free;
+    private int freeCount = 0;
+
+    private final AtomicReference<SpanEvent> returned = new AtomicReference<SpanEvent>();
+    private final AtomicInteger returnedCount = new AtomicInteger();
+
+    SpanEventPool(int maxPoolSize) {
+        if (maxPoolSize <= 0) {
+            throw new IllegalArgumentException("maxPoolSize");
+        }
+        this.free = new SpanEvent[maxPoolSize];
+    }
+
+    public static SpanEventPool getLocalPool(int maxPoolSize) {
+        SpanEventPool pool = LOCAL_POOL.get();
+        if (pool == null) {
+            pool = new SpanEventPool(maxPoolSize);
+            LOCAL_POOL.set(pool);
+        }
+        return pool;
+    }
+
+    public SpanEvent acquire(Span span) {
+        if (freeCount == 0) {
+            fill();
+        }
+        if (freeCount > 0) {
+            final SpanEvent spanEvent = free[--freeCount];
+            free[freeCount] = null;
+            spanEvent.reuse(span);
+            return spanEvent;
+        }
+        return new SpanEvent(span, this);
+    }
+
+    private void fill() {
+        // take the whole list. no ABA problem because the owner is the only consumer.
+        SpanEvent spanEvent = returned.getAndSet(null);
+        final SpanEvent[] free = this.free;
+        int count = 0;
+        while (spanEvent != null) {
+            final SpanEvent next = spanEvent.nextReturned;
+            spanEvent.nextReturned = null;
+            if (freeCount < free.length) {
+                free[freeCount++] = spanEvent;
+            }
+            spanEvent = next;
+            count++;
+        }
+        returnedCount.addAndGet(-count);
+    }
+
+    void release(SpanEvent spanEvent) {
+        // drop it if the pool is full. gc will take care of it.
+        if (returnedCount.incrementAndGet() > free.length) {
+            returnedCount.decrementAndGet();
+            return;
+        }
+        spanEvent.resetForRecycle();
+        while (true) {
+            final SpanEvent head = returned.get();
+            spanEvent.nextReturned = head;
+            if (returned.compareAndSet(head, spanEvent)) {
+                return;
+            }
+        }
+    }
+
+    int getFreeCount() {
+        return freeCount;
+    }
+
+    /**
+     * Release SpanEvents of a serialized {@link TSpan} or {@link TSpanChunk}.
+     * They are reused after their trace is closed.
+     */
+    public static void recycle(Object message) {
+        if (message instanceof TSpan) {
+            recycle(((TSpan) message).getSpanEventList());
+        } else if (message instanceof TSpanChunk) {
+            recycle(((TSpanChunk) message).getSpanEventList());
+        }
+    }
+
+    private static void recycle(List<TSpanEvent> spanEventList) {
+        if (spanEventList == null) {
+            return;
+        }
+        boolean recycled = false;
+        final int size = spanEventList.size();
+        for (int i = 0; i < size; i++) {
+            final TSpanEvent spanEvent = spanEventList.get(i);
+            if (spanEvent instanceof SpanEvent) {
+                recycled |= ((SpanEvent) spanEvent).recycle();
+            }
+        }
+        if (recycled) {
+            // do not leave references to reused SpanEvents.
+            spanEventList.clear();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context;
+
+import com.baidu.oped.apm.bootstrap.context.SpanId;
+import com.baidu.oped.apm.profiler.context.storage.TailSamplingDecision;
+import com.baidu.oped.apm.profiler.sampler.TailSampler;
+
+/**
+ * TraceId of a transaction recorded tentatively in tail sampling mode.
+ * Carries {@link TailSampler#DEFERRED_FLAG}, so the next nodes do not record the transaction,
+ * and the keep/drop decision shared with the async parts of the transaction.
+ */
+public class TailSamplingTraceId extends DefaultTraceId {
+
+    private final TailSamplingDecision decision = new TailSamplingDecision();
+
+    public TailSamplingTraceId(String agentId, long agentStartTime, long transactionId) {
+        super(agentId, agentStartTime, transactionId, SpanId.NULL, SpanId.newSpanId(), TailSampler.DEFERRED_FLAG);
+    }
+
+    public TailSamplingDecision getDecision() {
+        return decision;
+    }
+}
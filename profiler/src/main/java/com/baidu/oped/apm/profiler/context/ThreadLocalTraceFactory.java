@@ -26,6 +26,10 @@ import com.baidu.oped.apm.exception.ApmException;
 import com.baidu.oped.apm.profiler.context.storage.AsyncStorage;
 import com.baidu.oped.apm.profiler.context.storage.Storage;
 import com.baidu.oped.apm.profiler.context.storage.StorageFactory;
+import com.baidu.oped.apm.profiler.context.storage.TailSamplingDecision;
+import com.baidu.oped.apm.profiler.context.storage.TailSamplingStorage;
+import com.baidu.oped.apm.profiler.sampler.EntryPointSampler;
+import com.baidu.oped.apm.profiler.sampler.TailSampler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -116,6 +120,13 @@ public class ThreadLocalTraceFactory implements TraceFactory {
     public Trace continueTraceObject(final TraceId traceId) {
         checkBeforeTraceObject();
 
+        if ((traceId.getFlags() & TailSampler.DEFERRED_FLAG) != 0) {
+            // the previous node recorded the transaction tentatively and may drop it.
+            final Trace disableTrace = new DisableTrace(this.idGenerator.nextContinuedDisabledId());
+            bind(disableTrace);
+            return disableTrace;
+        }
+
         // TODO need to modify how to bind a datasender
         // always set true because the decision of sampling has been  made on previous nodes
         // TODO need to consider as a target to sample in case Trace object has a sampling flag (true) marked on previous node.
@@ -156,8 +167,26 @@ public class ThreadLocalTraceFactory implements TraceFactory {
     @Override
     public Trace newTraceObject(TraceType traceType) {
         checkBeforeTraceObject();
-        // TODO need to modify how to inject a datasender
         final boolean sampling = sampler.isSampling();
+        return newTraceObject(traceType, sampling);
+    }
+
+    @Override
+    public Trace newTraceObject(String entryPoint) {
+        checkBeforeTraceObject();
+        final boolean sampling = isSampling(entryPoint);
+        return newTraceObject(TraceType.DEFAULT, sampling);
+    }
+
+    private boolean isSampling(String entryPoint) {
+        if (entryPoint != null && sampler instanceof EntryPointSampler) {
+            return ((EntryPointSampler) sampler).isSampling(entryPoint);
+        }
+        return sampler.isSampling();
+    }
+
+    private Trace newTraceObject(TraceType traceType, boolean sampling) {
+        // TODO need to modify how to inject a datasender
         if (sampling) {
             final DefaultTrace trace = new DefaultTrace(traceContext, idGenerator.nextTransactionId(), sampling);
 
@@ -166,6 +195,18 @@ public class ThreadLocalTraceFactory implements TraceFactory {
             trace.setTraceType(traceType);
             bind(trace);
             return trace;
+        } else if (sampler instanceof TailSampler) {
+            // record anyway. TailSamplingStorage decides whether the transaction is sent.
+            // the deferred flag of the trace id keeps the next nodes from recording it.
+            final long transactionId = idGenerator.nextTransactionId();
+            final TailSamplingTraceId traceId = new TailSamplingTraceId(traceContext.getAgentId(), traceContext.getAgentStartTime(), transactionId);
+            final DefaultTrace trace = new DefaultTrace(traceContext, traceId, transactionId, true);
+
+            final Storage storage = new TailSamplingStorage(storageFactory, (TailSampler) sampler, traceId.getDecision(), true);
+            trace.setStorage(storage);
+            trace.setTraceType(traceType);
+            bind(trace);
+            return trace;
         } else {
             final Trace disableTrace = new DisableTrace(this.idGenerator.nextDisabledId());
             bind(disableTrace);
@@ -205,7 +246,7 @@ public class ThreadLocalTraceFactory implements TraceFactory {
         final TraceId parentTraceId = traceId.getParentTraceId();
         final boolean sampling = true;
         final DefaultTrace trace = new DefaultTrace(traceContext, parentTraceId, IdGenerator.UNTRACKED_ID, sampling);
-        final Storage storage = storageFactory.createStorage();
+        final Storage storage = createAsyncStorage(parentTraceId);
         trace.setStorage(new AsyncStorage(storage));
 
         final AsyncTrace asyncTrace = new AsyncTrace(trace, asyncId, traceId.nextAsyncSequence(), startTime);
@@ -213,4 +254,13 @@ public class ThreadLocalTraceFactory implements TraceFactory {
 
         return asyncTrace;
     }
+
+    private Storage createAsyncStorage(TraceId parentTraceId) {
+        if (parentTraceId instanceof TailSamplingTraceId && sampler instanceof TailSampler) {
+            // sent only if the parent transaction is kept
+            final TailSamplingDecision decision = ((TailSamplingTraceId) parentTraceId).getDecision();
+            return new TailSamplingStorage(storageFactory, (TailSampler) sampler, decision, false);
+        }
+        return storageFactory.createStorage();
+    }
 }
\ No newline at end of file
@@ -44,5 +44,7 @@ public interface TraceFactory {
 
     Trace newTraceObject(TraceType traceType);
 
+    Trace newTraceObject(String entryPoint);
+
     Trace removeTraceObject();
 }
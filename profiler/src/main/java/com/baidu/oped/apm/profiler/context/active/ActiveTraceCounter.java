@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.active;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.baidu.oped.apm.common.trace.HistogramSchema;
+import com.baidu.oped.apm.common.util.Clock;
+import com.baidu.oped.apm.common.util.SystemClock;
+
+/**
+ * Live count of active traces by start time.
+ * A ring of {@link #TICK_COUNT} slots counts the traces started within each {@link #TICK_MILLIS} tick.
+ * When a slot is reused by a newer tick, its remaining count moves to the overflow counter,
+ * which is always older than the slowest histogram slot. Building a histogram reads every slot once, whatever the number of active traces.
+ * The ring is striped by thread id, so threads starting traces within the same tick do not CAS the same slot.
+ * A stripe is a whole ring, the same tick of two stripes is never on the same cache line.
+ *
+ * slot value : tick(44bit) | count(20bit). updated with CAS only.
+ */
+public class ActiveTraceCounter {
+
+    static final int TICK_MILLIS = 10;
+    // 10.24 seconds. must be longer than the slow slot of every HistogramSchema.
+    static final int TICK_COUNT = 1024;
+    private static final int TICK_BITS = 10;
+    private static final int TICK_MASK = TICK_COUNT - 1;
+
+    // 8KB per stripe
+    private static final int STRIPE_BITS = 4;
+    private static final int MAX_STRIPES = 1 << STRIPE_BITS;
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private static final long BASE_TIME_MARGIN = 1000 * 60 * 60;
+
+    private final Clock clock;
+    private final long baseTime;
+    private final int stripeMask;
+    private final AtomicLongArray slots;
+    // traces older than the ring
+    private final AtomicInteger overflowCount = new AtomicInteger();
+
+    public ActiveTraceCounter() {
+        this(SystemClock.INSTANCE);
+    }
+
+    public ActiveTraceCounter(Clock clock) {
+        // leave room for traces started a little before the counter.
+        this(clock, clock.getTime() - BASE_TIME_MARGIN, Runtime.getRuntime().availableProcessors());
+    }
+
+    ActiveTraceCounter(Clock clock, long baseTime, int stripes) {
+        if (clock == null) {
+            throw new NullPointerException("clock must not be null");
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes");
+        }
+        this.clock = clock;
+        this.baseTime = baseTime;
+        final int size = Integer.highestOneBit(Math.min(stripes, MAX_STRIPES));
+        this.stripeMask = size - 1;
+        this.slots = new AtomicLongArray(size * TICK_COUNT);
+    }
+
+    /**
+     * @return key of the counted slot. pass it to {@link #remove(long)}, from any thread.
+     */
+    public long add(long startTime) {
+        final long tick = toTick(startTime);
+        final int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        final int index = index(stripe, tick);
+        final long key = (tick << STRIPE_BITS) | stripe;
+        while (true) {
+            final long value = slots.get(index);
+            final long slotTick = tick(value);
+            final long count = count(value);
+            if (slotTick == tick) {
+                if (count == COUNT_MASK) {
+                    overflowCount.incrementAndGet();
+                    return key;
+                }
+                if (slots.compareAndSet(index, value, value + 1)) {
+                    return key;
+                }
+            } else if (slotTick < tick) {
+                // roll over. the previous tick is older than the ring now.
+                if (slots.compareAndSet(index, value, pack(tick, 1))) {
+                    if (count > 0) {
+                        overflowCount.addAndGet((int) count);
+                    }
+                    return key;
+                }
+            } else {
+                // the slot already belongs to a newer tick.
+                overflowCount.incrementAndGet();
+                return key;
+            }
+        }
+    }
+
+    public void remove(long key) {
+        final long tick = key >>> STRIPE_BITS;
+        final int index = index((int) key & stripeMask, tick);
+        while (true) {
+            final long value = slots.get(index);
+            if (tick(value) != tick) {
+                // rolled over (or added to the overflow counter directly)
+                overflowCount.decrementAndGet();
+                return;
+            }
+            if (count(value) == 0) {
+                // counted in the overflow counter because the slot was full.
+                overflowCount.decrementAndGet();
+                return;
+            }
+            if (slots.compareAndSet(index, value, value - 1)) {
+                return;
+            }
+        }
+    }
+
+    public ActiveTraceHistogram getHistogram(HistogramSchema histogramSchema) {
+        return getHistogram(histogramSchema, clock.getTime());
+    }
+
+    ActiveTraceHistogram getHistogram(HistogramSchema histogramSchema, long currentTime) {
+        final ActiveTraceHistogram histogram = new ActiveTraceHistogram(histogramSchema);
+        for (int i = 0; i < slots.length(); i++) {
+            final long value = slots.get(i);
+            final int count = (int) count(value);
+            if (count == 0) {
+                continue;
+            }
+            final long tickStartTime = baseTime + (tick(value) - 1) * TICK_MILLIS;
+            final long elapsedTime = Math.max(0, currentTime - tickStartTime);
+            histogram.add((int) Math.min(elapsedTime, Integer.MAX_VALUE), count);
+        }
+        // could be negative for a moment while a slot is rolling over.
+        final int overflow = overflowCount.get();
+        if (overflow > 0) {
+            histogram.addVerySlow(overflow);
+        }
+        return histogram;
+    }
+
+    private static int index(int stripe, long tick) {
+        return (stripe << TICK_BITS) | (int) (tick & TICK_MASK);
+    }
+
+    private long toTick(long startTime) {
+        // tick 0 is the initial value of the slots
+        final long elapsed = startTime - baseTime;
+        if (elapsed <= 0) {
+            return 1;
+        }
+        return elapsed / TICK_MILLIS + 1;
+    }
+
+    private static long pack(long tick, long count) {
+        return (tick << COUNT_BITS) | count;
+    }
+
+    private static long tick(long value) {
+        return value >>> COUNT_BITS;
+    }
+
+    private static long count(long value) {
+        return value & COUNT_MASK;
+    }
+}
@@ -112,6 +112,13 @@ public class ActiveTraceFactory implements TraceFactory, TraceFactoryWrapper {
         return trace;
     }
 
+    @Override
+    public Trace newTraceObject(String entryPoint) {
+        final Trace trace = this.delegate.newTraceObject(entryPoint);
+        attachTrace(trace);
+        return trace;
+    }
+
     @Override
     public Trace removeTraceObject() {
         final Trace trace = this.delegate.removeTraceObject();
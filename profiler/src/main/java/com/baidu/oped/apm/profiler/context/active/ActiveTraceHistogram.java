@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.active;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.baidu.oped.apm.common.trace.HistogramSchema;
+import com.baidu.oped.apm.common.trace.SlotType;
+
+/**
+ * Active trace count per elapsed time slot at a point in time.
+ */
+public class ActiveTraceHistogram {
+
+    private final HistogramSchema histogramSchema;
+    private int fastCount;
+    private int normalCount;
+    private int slowCount;
+    private int verySlowCount;
+
+    public ActiveTraceHistogram(HistogramSchema histogramSchema) {
+        if (histogramSchema == null) {
+            throw new NullPointerException("histogramSchema must not be null");
+        }
+        this.histogramSchema = histogramSchema;
+    }
+
+    public HistogramSchema getHistogramSchema() {
+        return histogramSchema;
+    }
+
+    void add(int elapsedTime, int count) {
+        final SlotType slotType = histogramSchema.findHistogramSlot(elapsedTime).getSlotType();
+        switch (slotType) {
+            case FAST:
+                fastCount += count;
+                break;
+            case NORMAL:
+                normalCount += count;
+                break;
+            case SLOW:
+                slowCount += count;
+                break;
+            default:
+                verySlowCount += count;
+                break;
+        }
+    }
+
+    void addVerySlow(int count) {
+        this.verySlowCount += count;
+    }
+
+    public int getCount(SlotType slotType) {
+        switch (slotType) {
+            case FAST:
+                return fastCount;
+            case NORMAL:
+                return normalCount;
+            case SLOW:
+                return slowCount;
+            case VERY_SLOW:
+                return verySlowCount;
+            default:
+                // an active trace has no error yet.
+                return 0;
+        }
+    }
+
+    public int getTotalCount() {
+        return fastCount + normalCount + slowCount + verySlowCount;
+    }
+
+    public List<Integer> getCounts(List<SlotType> slotTypeOrder) {
+        final List<Integer> counts = new ArrayList<Integer>(slotTypeOrder.size());
+        for (SlotType slotType : slotTypeOrder) {
+            counts.add(getCount(slotType));
+        }
+        return counts;
+    }
+
+    @Override
+    public String toString() {
+        return "ActiveTraceHistogram{" +
+                "fastCount=" + fastCount +
+                ", normalCount=" + normalCount +
+                ", slowCount=" + slowCount +
+                ", verySlowCount=" + verySlowCount +
+                '}';
+    }
+}
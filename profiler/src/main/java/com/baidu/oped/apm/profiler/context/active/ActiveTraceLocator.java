@@ -19,6 +19,9 @@
 
 package com.baidu.oped.apm.profiler.context.active;
 
+import com.baidu.oped.apm.common.trace.HistogramSchema;
+import com.baidu.oped.apm.profiler.context.ActiveTrace;
+
 import java.util.List;
 
 /**
@@ -28,4 +31,12 @@ public interface ActiveTraceLocator {
 
     List<ActiveTraceInfo> collect();
 
+    /**
+     * @param startTime only traces started before this time are collected
+     * @param maxSize upper bound of the collected traces
+     */
+    List<ActiveTrace> collectStartedBefore(long startTime, int maxSize);
+
+    ActiveTraceHistogram getActiveTraceHistogram(HistogramSchema histogramSchema);
+
 }
@@ -16,8 +16,9 @@
 
 package com.baidu.oped.apm.profiler.context.active;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.baidu.oped.apm.common.trace.HistogramSchema;
+import com.baidu.oped.apm.common.util.Clock;
+import com.baidu.oped.apm.common.util.SystemClock;
 import com.baidu.oped.apm.profiler.context.ActiveTrace;
 
 import org.slf4j.Logger;
@@ -25,58 +26,158 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Per-thread slot registry of active traces.
+ * Each thread owns a slot, and only the owner links entries into it. Removal marks an entry with a CAS,
+ * and the owner unlinks marked entries on its next put. No lock and no weak reference on the request path.
+ * Traces which are never closed (leaked, or broken call stack) are swept out on snapshot once they exceed the max age.
+ *
  * @author Taejin Koo
+ * @author emeroad
  */
 public class ActiveTraceRepository implements ActiveTraceLocator {
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    // memory leak defense threshold
-    private static final int DEFAULT_MAX_ACTIVE_TRACE_SIZE = 1024 * 10;
-    // oom safe cache
-    private final ConcurrentMap<Long, ActiveTrace> activeTraceInfoMap;
+    // memory leak defense threshold. a thread normally has only one active trace.
+    private static final int DEFAULT_MAX_ACTIVE_TRACE_PER_THREAD = 64;
+    // purge slots of terminated threads every n slot registrations.
+    private static final int PURGE_INTERVAL = 64;
+    // a trace still active after this is assumed to be leaked.
+    static final long DEFAULT_MAX_ACTIVE_TRACE_AGE = 1000 * 60 * 30;
+    static final long SWEEP_INTERVAL = 1000 * 10;
+
+    private final int maxActiveTracePerThread;
+    private final long maxActiveTraceAge;
+    private final Clock clock;
+    private final AtomicLong nextSweepTime = new AtomicLong();
+
+    private final ThreadLocal<Slot> localSlot = new ThreadLocal<Slot>();
+    private final ConcurrentLinkedQueue<Slot> slots = new ConcurrentLinkedQueue<Slot>();
+    private final AtomicInteger slotRegisterCount = new AtomicInteger();
+
+    private final ActiveTraceCounter activeTraceCounter;
 
     public ActiveTraceRepository() {
-        this(DEFAULT_MAX_ACTIVE_TRACE_SIZE);
-    }
-    public ActiveTraceRepository(int maxActiveTraceSize) {
-        this.activeTraceInfoMap = createCache(maxActiveTraceSize);
+        this(DEFAULT_MAX_ACTIVE_TRACE_PER_THREAD);
     }
 
-    private ConcurrentMap<Long, ActiveTrace> createCache(int maxActiveTraceSize) {
-        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
-        cacheBuilder.concurrencyLevel(64);
-        cacheBuilder.initialCapacity(maxActiveTraceSize);
-        cacheBuilder.maximumSize(maxActiveTraceSize);
-        // OOM defense
-        cacheBuilder.weakValues();
+    public ActiveTraceRepository(int maxActiveTracePerThread) {
+        this(maxActiveTracePerThread, DEFAULT_MAX_ACTIVE_TRACE_AGE, SystemClock.INSTANCE);
+    }
 
-        final Cache<Long, ActiveTrace> localCache = cacheBuilder.build();
-        return localCache.asMap();
+    ActiveTraceRepository(int maxActiveTracePerThread, long maxActiveTraceAge, Clock clock) {
+        if (maxActiveTracePerThread <= 0) {
+            throw new IllegalArgumentException("maxActiveTracePerThread must be positive");
+        }
+        if (maxActiveTraceAge <= 0) {
+            throw new IllegalArgumentException("maxActiveTraceAge must be positive");
+        }
+        if (clock == null) {
+            throw new NullPointerException("clock must not be null");
+        }
+        this.maxActiveTracePerThread = maxActiveTracePerThread;
+        this.maxActiveTraceAge = maxActiveTraceAge;
+        this.clock = clock;
+        this.activeTraceCounter = new ActiveTraceCounter(clock);
     }
 
     public void put(ActiveTrace activeTrace) {
-        this.activeTraceInfoMap.put(activeTrace.getId(), activeTrace);
+        long startTime = activeTrace.getStartTime();
+        if (startTime <= 0) {
+            startTime = clock.getTime();
+        }
+        final long counterKey = activeTraceCounter.add(startTime);
+        final Entry entry = new Entry(activeTrace, activeTraceCounter, startTime, counterKey);
+        getLocalSlot().add(entry);
+    }
+
+    private Slot getLocalSlot() {
+        Slot slot = localSlot.get();
+        if (slot == null) {
+            slot = new Slot(Thread.currentThread());
+            localSlot.set(slot);
+            slots.add(slot);
+            if (slotRegisterCount.incrementAndGet() % PURGE_INTERVAL == 0) {
+                purgeTerminatedThreadSlot();
+            }
+        }
+        return slot;
+    }
+
+    // the safety net against traces which are never removed. runs at most once per SWEEP_INTERVAL.
+    private void sweepExpired() {
+        final long currentTime = clock.getTime();
+        final long nextSweepTime = this.nextSweepTime.get();
+        if (currentTime < nextSweepTime || !this.nextSweepTime.compareAndSet(nextSweepTime, currentTime + SWEEP_INTERVAL)) {
+            return;
+        }
+        final long expireTime = currentTime - maxActiveTraceAge;
+        int expiredCount = 0;
+        final Iterator<Slot> iterator = slots.iterator();
+        while (iterator.hasNext()) {
+            final Slot slot = iterator.next();
+            if (!slot.isAlive()) {
+                iterator.remove();
+                slot.removeAll();
+                continue;
+            }
+            expiredCount += slot.removeStartedBefore(expireTime);
+        }
+        if (expiredCount > 0) {
+            logger.warn("{} active traces exceeded max age {}ms. assumed to be leaked and removed.", expiredCount, maxActiveTraceAge);
+        }
     }
 
-    private ActiveTrace get(Long key) {
-        return this.activeTraceInfoMap.get(key);
+    private void purgeTerminatedThreadSlot() {
+        final Iterator<Slot> iterator = slots.iterator();
+        while (iterator.hasNext()) {
+            final Slot slot = iterator.next();
+            if (!slot.isAlive()) {
+                iterator.remove();
+                slot.removeAll();
+            }
+        }
     }
 
+    private Entry find(Long key) {
+        final long id = key;
+        // fast path. traces are removed by the thread that started them.
+        final Slot slot = localSlot.get();
+        if (slot != null) {
+            final Entry entry = slot.find(id);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        // rare path. trace continued on another thread.
+        for (Slot other : slots) {
+            if (other == slot) {
+                continue;
+            }
+            final Entry entry = other.find(id);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
 
     // @ThreadSafe
     public Object getStackTrace(Long key) {
-        final ActiveTrace trace = get(key);
-        if (trace == null) {
+        final Entry entry = find(key);
+        if (entry == null) {
             return null;
         }
 
-        final Thread bindThread = trace.getBindThread();
+        final Thread bindThread = entry.activeTrace.getBindThread();
         if (bindThread == null) {
             return null;
         }
@@ -90,23 +191,171 @@ public class ActiveTraceRepository implements ActiveTraceLocator {
     }
 
     public ActiveTrace remove(Long key) {
-        return this.activeTraceInfoMap.remove(key);
+        final Entry entry = find(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.remove()) {
+            return entry.activeTrace;
+        }
+        return null;
     }
 
     // @ThreadSafe
     @Override
     public List<ActiveTraceInfo> collect() {
+        sweepExpired();
         List<ActiveTraceInfo> collectData = new ArrayList<ActiveTraceInfo>();
-        final Collection<ActiveTrace> copied = this.activeTraceInfoMap.values();
-        for (ActiveTrace trace : copied) {
-            final long startTime = trace.getStartTime();
-            // not started
-            if (startTime > 0) {
-                // clear Trace reference
-                ActiveTraceInfo activeTraceInfo = new ActiveTraceInfo(trace.getId(), startTime, trace.getBindThread());
-                collectData.add(activeTraceInfo);
+        for (Slot slot : slots) {
+            for (Entry entry = slot.head; entry != null; entry = entry.next) {
+                if (entry.isRemoved()) {
+                    continue;
+                }
+                final ActiveTrace trace = entry.activeTrace;
+                final long startTime = trace.getStartTime();
+                // not started
+                if (startTime > 0) {
+                    // clear Trace reference
+                    ActiveTraceInfo activeTraceInfo = new ActiveTraceInfo(trace.getId(), startTime, trace.getBindThread());
+                    collectData.add(activeTraceInfo);
+                }
             }
         }
         return collectData;
     }
+
+    // @ThreadSafe
+    @Override
+    public List<ActiveTrace> collectStartedBefore(long startTime, int maxSize) {
+        sweepExpired();
+        List<ActiveTrace> collectData = new ArrayList<ActiveTrace>();
+        for (Slot slot : slots) {
+            for (Entry entry = slot.head; entry != null; entry = entry.next) {
+                if (entry.isRemoved()) {
+                    continue;
+                }
+                final ActiveTrace trace = entry.activeTrace;
+                final long traceStartTime = trace.getStartTime();
+                if (traceStartTime > 0 && traceStartTime < startTime) {
+                    collectData.add(trace);
+                    if (collectData.size() >= maxSize) {
+                        return collectData;
+                    }
+                }
+            }
+        }
+        return collectData;
+    }
+
+    // @ThreadSafe
+    @Override
+    public ActiveTraceHistogram getActiveTraceHistogram(HistogramSchema histogramSchema) {
+        sweepExpired();
+        return activeTraceCounter.getHistogram(histogramSchema);
+    }
+
+    private class Slot {
+        private final Thread thread;
+        // written by the owner thread only.
+        private volatile Entry head;
+
+        private Slot(Thread thread) {
+            this.thread = thread;
+        }
+
+        private boolean isAlive() {
+            return thread.isAlive();
+        }
+
+        // owner thread only
+        private void add(Entry entry) {
+            // unlink removed entries and evict the oldest ones over the threshold.
+            Entry last = null;
+            int liveCount = 0;
+            for (Entry current = head; current != null; current = current.next) {
+                if (current.isRemoved()) {
+                    continue;
+                }
+                if (++liveCount >= maxActiveTracePerThread) {
+                    if (current.remove()) {
+                        logger.debug("too many active traces in a thread. evict {}", current.activeTrace.getId());
+                    }
+                    continue;
+                }
+                if (last == null) {
+                    entry.next = current;
+                } else {
+                    last.next = current;
+                }
+                last = current;
+            }
+            if (last == null) {
+                entry.next = null;
+            } else {
+                last.next = null;
+            }
+            this.head = entry;
+        }
+
+        private Entry find(long id) {
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                if (entry.id == id && !entry.isRemoved()) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        // any thread. only marks entries, the owner unlinks them.
+        private int removeStartedBefore(long expireTime) {
+            int removedCount = 0;
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                if (entry.startTime < expireTime && entry.remove()) {
+                    removedCount++;
+                }
+            }
+            return removedCount;
+        }
+
+        private void removeAll() {
+            for (Entry entry = head; entry != null; entry = entry.next) {
+                entry.remove();
+            }
+            this.head = null;
+        }
+    }
+
+    private static class Entry {
+        private static final AtomicIntegerFieldUpdater<Entry> REMOVED_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "removed");
+
+        private final ActiveTrace activeTrace;
+        private final ActiveTraceCounter activeTraceCounter;
+        private final long id;
+        private final long startTime;
+        private final long counterKey;
+        private volatile Entry next;
+
+        // not private for AtomicIntegerFieldUpdater
+        volatile int removed = 0;
+
+        private Entry(ActiveTrace activeTrace, ActiveTraceCounter activeTraceCounter, long startTime, long counterKey) {
+            this.activeTrace = activeTrace;
+            this.activeTraceCounter = activeTraceCounter;
+            this.id = activeTrace.getId();
+            this.startTime = startTime;
+            this.counterKey = counterKey;
+        }
+
+        private boolean isRemoved() {
+            return removed != 0;
+        }
+
+        private boolean remove() {
+            if (REMOVED_UPDATER.compareAndSet(this, 0, 1)) {
+                activeTraceCounter.remove(counterKey);
+                return true;
+            }
+            return false;
+        }
+    }
 }
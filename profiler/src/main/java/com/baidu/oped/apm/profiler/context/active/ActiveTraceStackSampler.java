@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.active;
+
+import com.baidu.oped.apm.bootstrap.context.Trace;
+import com.baidu.oped.apm.common.util.ApmThreadFactory;
+import com.baidu.oped.apm.common.util.ThreadMXBeanUtils;
+import com.baidu.oped.apm.profiler.context.ActiveTrace;
+import com.baidu.oped.apm.profiler.context.DefaultTrace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically samples the stacks of threads bound to slow active traces.
+ * All the threads of a tick are captured by a single ThreadMXBean call, and each sample is
+ * aggregated into the {@link StackTraceTree} of its trace. The tree is recorded on the span when the trace closes.
+ * Cost per tick is bounded by maxThreads and maxDepth, memory per trace by maxNodes.
+ */
+public class ActiveTraceStackSampler {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final ActiveTraceLocator activeTraceLocator;
+    private final long samplingIntervalMs;
+    private final long thresholdMs;
+    private final int maxThreads;
+    private final int maxDepth;
+    private final int maxNodes;
+
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1, new ApmThreadFactory("Apm-stack-sampler", true));
+
+    public ActiveTraceStackSampler(ActiveTraceLocator activeTraceLocator, long samplingIntervalMs, long thresholdMs, int maxThreads, int maxDepth, int maxNodes) {
+        if (activeTraceLocator == null) {
+            throw new NullPointerException("activeTraceLocator must not be null");
+        }
+        if (samplingIntervalMs <= 0) {
+            throw new IllegalArgumentException("samplingIntervalMs must be positive");
+        }
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("maxThreads must be positive");
+        }
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
+        this.activeTraceLocator = activeTraceLocator;
+        this.samplingIntervalMs = samplingIntervalMs;
+        this.thresholdMs = thresholdMs;
+        this.maxThreads = maxThreads;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+    }
+
+    public void start() {
+        executor.scheduleWithFixedDelay(new SampleJob(), this.samplingIntervalMs, this.samplingIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Stack sampler started. interval:{}ms, threshold:{}ms", samplingIntervalMs, thresholdMs);
+    }
+
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(3000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Stack sampler stopped");
+    }
+
+    // @ThreadSafe. called by the sampler thread only
+    int sample() {
+        final long startTime = System.currentTimeMillis() - thresholdMs;
+        final List<ActiveTrace> slowTraces = activeTraceLocator.collectStartedBefore(startTime, maxThreads);
+        if (slowTraces.isEmpty()) {
+            return 0;
+        }
+
+        final DefaultTrace[] traces = new DefaultTrace[slowTraces.size()];
+        final long[] threadIds = new long[slowTraces.size()];
+        int size = 0;
+        for (ActiveTrace activeTrace : slowTraces) {
+            final Trace trace = activeTrace.getTrace();
+            if (!(trace instanceof DefaultTrace)) {
+                continue;
+            }
+            final DefaultTrace defaultTrace = (DefaultTrace) trace;
+            if (!defaultTrace.canSampled()) {
+                continue;
+            }
+            final Thread bindThread = defaultTrace.getBindThread();
+            if (bindThread == null) {
+                continue;
+            }
+            traces[size] = defaultTrace;
+            threadIds[size] = bindThread.getId();
+            size++;
+        }
+        if (size == 0) {
+            return 0;
+        }
+
+        final long[] ids = size == threadIds.length ? threadIds : Arrays.copyOf(threadIds, size);
+        final ThreadInfo[] threadInfos = ThreadMXBeanUtils.findThread(ids, maxDepth);
+
+        int sampled = 0;
+        for (int i = 0; i < size; i++) {
+            final ThreadInfo threadInfo = threadInfos[i];
+            if (threadInfo == null) {
+                // terminated
+                continue;
+            }
+            getStackTraceTree(traces[i]).addSample(threadInfo.getStackTrace());
+            sampled++;
+        }
+        return sampled;
+    }
+
+    private StackTraceTree getStackTraceTree(DefaultTrace trace) {
+        StackTraceTree tree = trace.getStackTraceTree();
+        if (tree == null) {
+            tree = new StackTraceTree(maxNodes);
+            trace.setStackTraceTree(tree);
+        }
+        return tree;
+    }
+
+    private class SampleJob implements Runnable {
+        @Override
+        public void run() {
+            try {
+                sample();
+            } catch (Exception ex) {
+                logger.warn("stack sampling failed. Caused:{}", ex.getMessage(), ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.active;
+
+import com.baidu.oped.apm.common.buffer.AutomaticBuffer;
+import com.baidu.oped.apm.common.buffer.Buffer;
+import com.baidu.oped.apm.common.util.BytesUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Aggregates stack samples of a trace into a call tree (flame tree).
+ * Frames are deduplicated into a dictionary and nodes refer to them by index.
+ * The number of nodes is bounded. A sample that needs a node beyond the bound is counted on
+ * the deepest existing node of its path, and recorded as truncated.
+ * The encoded tree can be bounded in bytes, in which case the coldest leaves are trimmed first.
+ */
+public class StackTraceTree {
+
+    public static final byte VERSION = 0;
+
+    private final int maxNodes;
+
+    private final Map<StackTraceElement, Integer> frameIndex = new HashMap<StackTraceElement, Integer>();
+    private final List<StackTraceElement> frames = new ArrayList<StackTraceElement>();
+
+    private final Node root = new Node(-1);
+    private int nodeCount = 0;
+    private int sampleCount = 0;
+    private int truncatedCount = 0;
+
+    public StackTraceTree(int maxNodes) {
+        if (maxNodes <= 0) {
+            throw new IllegalArgumentException("maxNodes must be positive");
+        }
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * @param stackTrace innermost frame first. same order as {@link Thread#getStackTrace()}
+     */
+    public synchronized void addSample(StackTraceElement[] stackTrace) {
+        if (stackTrace == null || stackTrace.length == 0) {
+            return;
+        }
+        sampleCount++;
+        root.count++;
+
+        Node current = root;
+        // root is the outermost frame
+        for (int i = stackTrace.length - 1; i >= 0; i--) {
+            int index = findFrameIndex(stackTrace[i]);
+            Node child = current.findChild(index);
+            if (child == null) {
+                if (nodeCount >= maxNodes) {
+                    truncatedCount++;
+                    return;
+                }
+                if (index == -1) {
+                    index = addFrame(stackTrace[i]);
+                }
+                child = current.addChild(index);
+                nodeCount++;
+            }
+            child.count++;
+            current = child;
+        }
+    }
+
+    private int addFrame(StackTraceElement frame) {
+        final int newIndex = frames.size();
+        frames.add(frame);
+        frameIndex.put(frame, newIndex);
+        return newIndex;
+    }
+
+    private int findFrameIndex(StackTraceElement frame) {
+        final Integer index = frameIndex.get(frame);
+        if (index == null) {
+            return -1;
+        }
+        return index;
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    public synchronized int getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    public synchronized int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * version(byte), sampleCount(var), truncatedCount(var),
+     * frameCount(var) {className(prefixed), methodName(prefixed), lineNumber(svar)}*,
+     * then the nodes in pre-order, starting with the child count of the virtual root: {frameIndex(var), count(var), childCount(var)}*
+     */
+    public byte[] encode() {
+        return encode(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #encode()}, but leaves with the lowest count are trimmed until the encoded tree fits in maxBytes.
+     * Samples of a trimmed leaf stay counted on its parent, and are recorded as truncated.
+     */
+    public synchronized byte[] encode(int maxBytes) {
+        final Snapshot snapshot = new Snapshot();
+        snapshot.trim(maxBytes);
+        return snapshot.encode();
+    }
+
+    private static int frameSize(StackTraceElement frame) {
+        return prefixedStringSize(frame.getClassName()) + prefixedStringSize(frame.getMethodName()) + BytesUtils.computeVar32Size(BytesUtils.intToZigZag(frame.getLineNumber()));
+    }
+
+    private static int prefixedStringSize(String string) {
+        final byte[] bytes = BytesUtils.toBytes(string);
+        if (bytes == null) {
+            return BytesUtils.computeVar32Size(BytesUtils.intToZigZag(-1));
+        }
+        return BytesUtils.computeVar32Size(BytesUtils.intToZigZag(bytes.length)) + bytes.length;
+    }
+
+    /**
+     * Flattened pre-order copy of the tree, so that trimming does not touch the tree itself.
+     */
+    private class Snapshot {
+        // indexed by pre-order node id. parent is -1 for the children of the virtual root
+        private final int[] parent = new int[nodeCount];
+        private final int[] frame = new int[nodeCount];
+        private final int[] count = new int[nodeCount];
+        private final int[] childCount = new int[nodeCount];
+        private final boolean[] trimmed = new boolean[nodeCount];
+        private final int[] frameReference = new int[frames.size()];
+        private int rootChildCount;
+        private int trimmedCount;
+
+        private Snapshot() {
+            final List<Node> stack = new ArrayList<Node>();
+            final List<Integer> parentStack = new ArrayList<Integer>();
+            for (int i = root.childCount() - 1; i >= 0; i--) {
+                stack.add(root.children.get(i));
+                parentStack.add(-1);
+            }
+            rootChildCount = root.childCount();
+            int id = 0;
+            while (!stack.isEmpty()) {
+                final Node current = stack.remove(stack.size() - 1);
+                parent[id] = parentStack.remove(parentStack.size() - 1);
+                frame[id] = current.frameIndex;
+                count[id] = current.count;
+                childCount[id] = current.childCount();
+                frameReference[current.frameIndex]++;
+                for (int i = current.childCount() - 1; i >= 0; i--) {
+                    stack.add(current.children.get(i));
+                    parentStack.add(id);
+                }
+                id++;
+            }
+        }
+
+        /**
+         * sizes are computed with the indexes and counts before trimming, which never grow. so this is an upper bound.
+         */
+        private int size() {
+            // version + sampleCount + truncatedCount(may grow while trimming) + frameCount + rootChildCount
+            int size = 1 + BytesUtils.computeVar32Size(sampleCount) + 5 + BytesUtils.computeVar32Size(frames.size()) + BytesUtils.computeVar32Size(rootChildCount);
+            for (int i = 0; i < frameReference.length; i++) {
+                if (frameReference[i] > 0) {
+                    size += frameSize(frames.get(i));
+                }
+            }
+            for (int i = 0; i < parent.length; i++) {
+                if (!trimmed[i]) {
+                    size += nodeSize(i);
+                }
+            }
+            return size;
+        }
+
+        private int nodeSize(int id) {
+            return BytesUtils.computeVar32Size(frame[id]) + BytesUtils.computeVar32Size(count[id]) + BytesUtils.computeVar32Size(childCount[id]);
+        }
+
+        private void trim(int maxBytes) {
+            int size = size();
+            if (size <= maxBytes) {
+                return;
+            }
+            // coldest first. among equal counts, the deeper one, which comes later in pre-order
+            final PriorityQueue<Integer> leaves = new PriorityQueue<Integer>(Math.max(1, parent.length), new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    final int countCompare = compareInt(count[o1], count[o2]);
+                    if (countCompare != 0) {
+                        return countCompare;
+                    }
+                    return compareInt(o2, o1);
+                }
+            });
+            for (int i = 0; i < parent.length; i++) {
+                if (childCount[i] == 0) {
+                    leaves.add(i);
+                }
+            }
+            while (size > maxBytes && !leaves.isEmpty()) {
+                final int leaf = leaves.poll();
+                trimmed[leaf] = true;
+                trimmedCount += count[leaf];
+                size -= nodeSize(leaf);
+                if (--frameReference[frame[leaf]] == 0) {
+                    size -= frameSize(frames.get(frame[leaf]));
+                }
+                final int parentId = parent[leaf];
+                if (parentId == -1) {
+                    rootChildCount--;
+                    continue;
+                }
+                size -= BytesUtils.computeVar32Size(childCount[parentId]);
+                childCount[parentId]--;
+                size += BytesUtils.computeVar32Size(childCount[parentId]);
+                if (childCount[parentId] == 0) {
+                    leaves.add(parentId);
+                }
+            }
+        }
+
+        private byte[] encode() {
+            // frames referred by a trimmed node only are dropped
+            final int[] newFrameIndex = new int[frameReference.length];
+            final List<StackTraceElement> usedFrames = new ArrayList<StackTraceElement>(frameReference.length);
+            for (int i = 0; i < frameReference.length; i++) {
+                if (frameReference[i] > 0) {
+                    newFrameIndex[i] = usedFrames.size();
+                    usedFrames.add(frames.get(i));
+                }
+            }
+
+            final Buffer buffer = new AutomaticBuffer(64 + usedFrames.size() * 48 + parent.length * 4);
+            buffer.put(VERSION);
+            buffer.putVar(sampleCount);
+            buffer.putVar(truncatedCount + trimmedCount);
+
+            buffer.putVar(usedFrames.size());
+            for (StackTraceElement usedFrame : usedFrames) {
+                buffer.putPrefixedString(usedFrame.getClassName());
+                buffer.putPrefixedString(usedFrame.getMethodName());
+                buffer.putSVar(usedFrame.getLineNumber());
+            }
+
+            // only leaves are trimmed, so the remaining ids are still in pre-order
+            buffer.putVar(rootChildCount);
+            for (int i = 0; i < parent.length; i++) {
+                if (trimmed[i]) {
+                    continue;
+                }
+                buffer.putVar(newFrameIndex[frame[i]]);
+                buffer.putVar(count[i]);
+                buffer.putVar(childCount[i]);
+            }
+            return buffer.getBuffer();
+        }
+    }
+
+    private static int compareInt(int x, int y) {
+        return (x < y) ? -1 : ((x == y) ? 0 : 1);
+    }
+
+    private static class Node {
+        private final int frameIndex;
+        private int count;
+        private List<Node> children;
+
+        private Node(int frameIndex) {
+            this.frameIndex = frameIndex;
+        }
+
+        private Node findChild(int index) {
+            if (index == -1 || children == null) {
+                return null;
+            }
+            for (Node child : children) {
+                if (child.frameIndex == index) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private Node addChild(int frameIndex) {
+            if (children == null) {
+                children = new ArrayList<Node>(2);
+            }
+            final Node child = new Node(frameIndex);
+            children.add(child);
+            return child;
+        }
+
+        private int childCount() {
+            if (children == null) {
+                return 0;
+            }
+            return children.size();
+        }
+    }
+}
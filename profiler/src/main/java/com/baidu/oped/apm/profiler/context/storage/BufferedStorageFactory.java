@@ -29,6 +29,9 @@ public class BufferedStorageFactory implements StorageFactory {
     private final DataSender dataSender;
     private final int bufferSize;
     private final SpanChunkFactory spanChunkFactory;
+    private final int chunkMaxBytes;
+    private final long chunkMaxAge;
+    private final SpanChunkFlushScheduler flushScheduler;
 
     public BufferedStorageFactory(DataSender dataSender, ProfilerConfig config, AgentInformation agentInformation) {
         if (dataSender == null) {
@@ -40,6 +43,9 @@ public class BufferedStorageFactory implements StorageFactory {
         this.dataSender = dataSender;
 
         this.bufferSize = config.getIoBufferingBufferSize();
+        this.chunkMaxBytes = config.getIoBufferingChunkMaxBytes();
+        this.chunkMaxAge = config.getIoBufferingChunkMaxAge();
+        this.flushScheduler = chunkMaxAge > 0 ? new SpanChunkFlushScheduler(chunkMaxAge) : null;
 
         this.spanChunkFactory = new SpanChunkFactory(agentInformation);
     }
@@ -47,14 +53,25 @@ public class BufferedStorageFactory implements StorageFactory {
 
     @Override
     public Storage createStorage() {
+        if (chunkMaxBytes > 0 || chunkMaxAge > 0) {
+            return new SizeBufferedStorage(this.dataSender, spanChunkFactory, this.bufferSize, this.chunkMaxBytes, this.chunkMaxAge, this.flushScheduler);
+        }
         BufferedStorage bufferedStorage = new BufferedStorage(this.dataSender, spanChunkFactory, this.bufferSize);
         return bufferedStorage;
     }
 
+    public void stop() {
+        if (flushScheduler != null) {
+            flushScheduler.stop();
+        }
+    }
+
     @Override
     public String toString() {
         return "BufferedStorageFactory{" +
                 "bufferSize=" + bufferSize +
+                ", chunkMaxBytes=" + chunkMaxBytes +
+                ", chunkMaxAge=" + chunkMaxAge +
                 ", dataSender=" + dataSender +
                 '}';
     }
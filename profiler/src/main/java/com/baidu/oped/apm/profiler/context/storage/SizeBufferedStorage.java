@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.profiler.context.Span;
+import com.baidu.oped.apm.profiler.context.SpanChunk;
+import com.baidu.oped.apm.profiler.context.SpanChunkFactory;
+import com.baidu.oped.apm.profiler.context.SpanEvent;
+import com.baidu.oped.apm.profiler.sender.DataSender;
+import com.baidu.oped.apm.profiler.sender.UdpDataSender;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.io.Header;
+
+/**
+ * {@link BufferedStorage} that also flushes on the estimated serialized size of the buffered span events
+ * and, when a {@link SpanChunkFlushScheduler} is given, on the age of the oldest buffered event.
+ * A flushed SpanChunk or Span always fits in one UDP datagram unless a single span event or the span itself is already larger.
+ */
+public class SizeBufferedStorage implements Storage {
+    private static final Logger logger = LoggerFactory.getLogger(SizeBufferedStorage.class);
+    private static final boolean isDebug = logger.isDebugEnabled();
+
+    public static final int MAX_CHUNK_BYTES = UdpDataSender.UDP_MAX_PACKET_LENGTH - Header.HEADER_SIZE;
+
+    private final DataSender dataSender;
+    private final SpanChunkFactory spanChunkFactory;
+    private final int bufferSize;
+    private final int maxChunkBytes;
+    private final long maxAge;
+    private final SpanChunkFlushScheduler scheduler;
+
+    private List<SpanEvent> storage;
+    private int chunkOverhead = -1;
+    private int bufferedBytes;
+    private long firstEventTime;
+    private boolean registered;
+
+    public SizeBufferedStorage(DataSender dataSender, SpanChunkFactory spanChunkFactory, int bufferSize, int maxChunkBytes) {
+        this(dataSender, spanChunkFactory, bufferSize, maxChunkBytes, 0, null);
+    }
+
+    public SizeBufferedStorage(DataSender dataSender, SpanChunkFactory spanChunkFactory, int bufferSize, int maxChunkBytes, long maxAge, SpanChunkFlushScheduler scheduler) {
+        if (dataSender == null) {
+            throw new NullPointerException("dataSender must not be null");
+        }
+        if (spanChunkFactory == null) {
+            throw new NullPointerException("spanChunkFactory must not be null");
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be greater than 0");
+        }
+        if (maxAge > 0 && scheduler == null) {
+            throw new NullPointerException("scheduler must not be null");
+        }
+        this.dataSender = dataSender;
+        this.spanChunkFactory = spanChunkFactory;
+        this.bufferSize = bufferSize;
+        this.maxChunkBytes = getMaxChunkBytes(maxChunkBytes);
+        this.maxAge = maxAge;
+        this.scheduler = maxAge > 0 ? scheduler : null;
+        this.storage = new ArrayList<SpanEvent>(bufferSize);
+    }
+
+    /**
+     * @return bytes left for the value of one more binary annotation, so that the span still fits in one UDP datagram
+     */
+    public static int getRemainingAnnotationBytes(TSpan span) {
+        return MAX_CHUNK_BYTES - SpanSizeEstimator.estimateSpanOverhead(span) - SpanSizeEstimator.BINARY_ANNOTATION_OVERHEAD;
+    }
+
+    private static int getMaxChunkBytes(int maxChunkBytes) {
+        if (maxChunkBytes <= 0 || maxChunkBytes > MAX_CHUNK_BYTES) {
+            return MAX_CHUNK_BYTES;
+        }
+        return maxChunkBytes;
+    }
+
+    @Override
+    public synchronized void store(SpanEvent spanEvent) {
+        if (chunkOverhead == -1) {
+            chunkOverhead = SpanSizeEstimator.estimateSpanChunkOverhead(spanEvent.getSpan());
+        }
+        final int eventBytes = SpanSizeEstimator.estimateSpanEvent(spanEvent);
+        if (!storage.isEmpty() && chunkOverhead + bufferedBytes + eventBytes > maxChunkBytes) {
+            // flush first so that the chunk still fits.
+            flushChunk();
+        }
+
+        if (storage.isEmpty()) {
+            firstEventTime = System.currentTimeMillis();
+            register();
+        }
+        storage.add(spanEvent);
+        bufferedBytes += eventBytes;
+
+        if (storage.size() >= bufferSize || chunkOverhead + bufferedBytes >= maxChunkBytes) {
+            flushChunk();
+        }
+    }
+
+    @Override
+    public synchronized void store(Span span) {
+        if (!storage.isEmpty() && SpanSizeEstimator.estimateSpanOverhead(span) + bufferedBytes > maxChunkBytes) {
+            // span fields and annotations leave no room for the buffered span events. send them in their own chunk.
+            flushChunk();
+        }
+        final List<SpanEvent> spanEventList = takeBuffer();
+        if (!spanEventList.isEmpty()) {
+            span.setSpanEventList((List) spanEventList);
+        }
+        dataSender.send(span);
+
+        if (isDebug) {
+            logger.debug("[SizeBufferedStorage] Flush span {}", span);
+        }
+    }
+
+    public synchronized void flush() {
+        flushChunk();
+    }
+
+    synchronized void flushIfExpired(long currentTime) {
+        if (storage.isEmpty()) {
+            unregister();
+            return;
+        }
+        if (currentTime - firstEventTime >= maxAge) {
+            if (isDebug) {
+                logger.debug("[SizeBufferedStorage] span-chunk expired. age:{}", currentTime - firstEventTime);
+            }
+            flushChunk();
+        }
+    }
+
+    private void flushChunk() {
+        final List<SpanEvent> flushData = takeBuffer();
+        if (flushData.isEmpty()) {
+            return;
+        }
+        final SpanChunk spanChunk = spanChunkFactory.create(flushData);
+        if (isDebug) {
+            logger.debug("[SizeBufferedStorage] Flush span-chunk {}", spanChunk);
+        }
+        dataSender.send(spanChunk);
+    }
+
+    private List<SpanEvent> takeBuffer() {
+        final List<SpanEvent> spanEventList = this.storage;
+        if (spanEventList.isEmpty()) {
+            return spanEventList;
+        }
+        this.storage = new ArrayList<SpanEvent>(bufferSize);
+        this.bufferedBytes = 0;
+        unregister();
+        return spanEventList;
+    }
+
+    private void register() {
+        if (scheduler != null && !registered) {
+            scheduler.register(this);
+            registered = true;
+        }
+    }
+
+    private void unregister() {
+        if (registered) {
+            scheduler.unregister(this);
+            registered = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        unregister();
+    }
+
+    int getMaxChunkBytes() {
+        return maxChunkBytes;
+    }
+
+    synchronized int getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SizeBufferedStorage{" +
+                "bufferSize=" + bufferSize +
+                ", maxChunkBytes=" + maxChunkBytes +
+                ", maxAge=" + maxAge +
+                ", dataSender=" + dataSender +
+                '}';
+    }
+}
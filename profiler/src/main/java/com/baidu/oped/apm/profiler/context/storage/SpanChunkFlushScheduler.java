@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.common.util.ApmThreadFactory;
+
+/**
+ * Single timer shared by all {@link SizeBufferedStorage}s of an agent.
+ * Only storages holding span events are registered, so an idle agent sweeps an empty set.
+ */
+public class SpanChunkFlushScheduler {
+
+    private static final String THREAD_NAME = "Apm-SpanChunk-Flush";
+    private static final long MIN_TICK = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Set<SizeBufferedStorage> storages = Collections.newSetFromMap(new ConcurrentHashMap<SizeBufferedStorage, Boolean>());
+    private final ScheduledExecutorService executor;
+    private final long tick;
+
+    public SpanChunkFlushScheduler(long maxAge) {
+        if (maxAge <= 0) {
+            throw new IllegalArgumentException("maxAge must be greater than 0");
+        }
+        // a chunk is flushed at most a quarter of maxAge late.
+        this.tick = Math.max(maxAge / 4, MIN_TICK);
+        this.executor = new ScheduledThreadPoolExecutor(1, new ApmThreadFactory(THREAD_NAME, true));
+        this.executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sweep(System.currentTimeMillis());
+            }
+        }, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    void register(SizeBufferedStorage storage) {
+        storages.add(storage);
+    }
+
+    void unregister(SizeBufferedStorage storage) {
+        storages.remove(storage);
+    }
+
+    int size() {
+        return storages.size();
+    }
+
+    long getTick() {
+        return tick;
+    }
+
+    void sweep(long currentTime) {
+        for (SizeBufferedStorage storage : storages) {
+            try {
+                storage.flushIfExpired(currentTime);
+            } catch (Exception e) {
+                logger.warn("span chunk flush fail. Caused:{}", e.getMessage(), e);
+            }
+        }
+    }
+
+    public void stop() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(3000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        storages.clear();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+
+import com.baidu.oped.apm.thrift.io.ByteArrayOutputStreamTransport;
+import com.baidu.oped.apm.thrift.io.UnsafeByteArrayOutputStream;
+
+/**
+ * TCompactProtocol encode buffer of {@link TailSamplingStorage}, reused by the transactions of a thread.
+ * A transaction borrows the buffer of the current thread, or a new one if the thread already lent it out,
+ * and gives it back reset when it is done with its span events.
+ */
+final class SpanEventEncodeBuffer {
+
+    private static final int INITIAL_BUFFER_SIZE = 512;
+    // a larger buffer is left to the gc instead of being held by the thread
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<SpanEventEncodeBuffer> CACHE = new ThreadLocal<SpanEventEncodeBuffer>();
+
+    private final UnsafeByteArrayOutputStream outputStream = new UnsafeByteArrayOutputStream(INITIAL_BUFFER_SIZE);
+    private final TCompactProtocol protocol = new TCompactProtocol(new ByteArrayOutputStreamTransport(outputStream));
+
+    private SpanEventEncodeBuffer() {
+    }
+
+    static SpanEventEncodeBuffer borrow() {
+        final SpanEventEncodeBuffer buffer = CACHE.get();
+        if (buffer == null) {
+            return new SpanEventEncodeBuffer();
+        }
+        CACHE.set(null);
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer back to the current thread. Must not be used afterwards.
+     */
+    void release() {
+        if (outputStream.size() > MAX_RETAINED_BUFFER_SIZE) {
+            return;
+        }
+        outputStream.reset();
+        protocol.reset();
+        if (CACHE.get() == null) {
+            CACHE.set(this);
+        }
+    }
+
+    TProtocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @return internal array. valid up to {@link #length()}
+     */
+    byte[] getArray() {
+        // UnsafeByteArrayOutputStream does not copy
+        return outputStream.toByteArray();
+    }
+
+    int length() {
+        return outputStream.size();
+    }
+}
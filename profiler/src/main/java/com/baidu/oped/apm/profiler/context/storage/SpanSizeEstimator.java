@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import java.util.List;
+
+import com.baidu.oped.apm.thrift.dto.TAnnotation;
+import com.baidu.oped.apm.thrift.dto.TAnnotationValue;
+import com.baidu.oped.apm.thrift.dto.TIntStringStringValue;
+import com.baidu.oped.apm.thrift.dto.TIntStringValue;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+
+/**
+ * Upper bound of the TCompactProtocol serialized size of span data, without serializing it.
+ * Every field is counted with its longest varint encoding and strings with their UTF-8 length.
+ */
+final class SpanSizeEstimator {
+
+    // field header with a long field id delta
+    private static final int FIELD_HEADER = 3;
+    private static final int I16 = FIELD_HEADER + 3;
+    private static final int I32 = FIELD_HEADER + 5;
+    private static final int I64 = FIELD_HEADER + 10;
+    private static final int STOP = 1;
+    // field header + varint length
+    private static final int STRING_HEADER = FIELD_HEADER + 5;
+    private static final int LIST_HEADER = FIELD_HEADER + 6;
+
+    // spanId, sequence, startElapsed, endElapsed, serviceType, depth, nextSpanId, apiId, asyncId, nextAsyncId, asyncSequence
+    private static final int SPAN_EVENT_FIXED = I64 + I16 + I32 + I32 + I16 + I32 + I64 + I32 + I32 + I32 + I16 + STOP;
+
+    // agentStartTime, serviceType, spanId, applicationServiceType, spanEventList header, struct stop
+    private static final int SPAN_CHUNK_FIXED = I64 + I16 + I64 + I16 + LIST_HEADER + STOP;
+
+    // agentStartTime, spanId, parentSpanId, startTime, elapsed, serviceType, flag, err, parentApplicationType, apiId,
+    // applicationServiceType, loggingTransactionInfo, spanEventList header, struct stop
+    private static final int SPAN_FIXED = I64 + I64 + I64 + I64 + I32 + I16 + I16 + I32 + I16 + I32 + I16 + FIELD_HEADER + 1 + LIST_HEADER + STOP;
+
+    // annotation list header, key, binary value field + length, union stop, annotation stop
+    static final int BINARY_ANNOTATION_OVERHEAD = LIST_HEADER + I32 + FIELD_HEADER + STRING_HEADER + STOP + STOP;
+
+    private SpanSizeEstimator() {
+    }
+
+    static int estimateSpanEvent(TSpanEvent spanEvent) {
+        int size = SPAN_EVENT_FIXED;
+        size += estimateString(spanEvent.getRpc());
+        size += estimateString(spanEvent.getEndPoint());
+        size += estimateString(spanEvent.getDestinationId());
+        final List<TAnnotation> annotations = spanEvent.getAnnotations();
+        if (annotations != null) {
+            size += LIST_HEADER;
+            for (TAnnotation annotation : annotations) {
+                size += estimateAnnotation(annotation);
+            }
+        }
+        if (spanEvent.isSetExceptionInfo()) {
+            size += FIELD_HEADER + estimateIntStringValue(spanEvent.getExceptionInfo());
+        }
+        return size;
+    }
+
+    /**
+     * Size of the span without span events.
+     */
+    static int estimateSpanOverhead(TSpan span) {
+        int size = SPAN_FIXED;
+        size += estimateString(span.getAgentId());
+        size += estimateString(span.getApplicationName());
+        final byte[] transactionId = span.getTransactionId();
+        if (transactionId != null) {
+            size += STRING_HEADER + transactionId.length;
+        }
+        size += estimateString(span.getRpc());
+        size += estimateString(span.getEndPoint());
+        size += estimateString(span.getRemoteAddr());
+        size += estimateString(span.getParentApplicationName());
+        size += estimateString(span.getAcceptorHost());
+        final List<TAnnotation> annotations = span.getAnnotations();
+        if (annotations != null) {
+            size += LIST_HEADER;
+            for (TAnnotation annotation : annotations) {
+                size += estimateAnnotation(annotation);
+            }
+        }
+        if (span.isSetExceptionInfo()) {
+            size += FIELD_HEADER + estimateIntStringValue(span.getExceptionInfo());
+        }
+        return size;
+    }
+
+    /**
+     * Size of a SpanChunk of the span without span events.
+     */
+    static int estimateSpanChunkOverhead(TSpan span) {
+        int size = SPAN_CHUNK_FIXED;
+        size += estimateString(span.getAgentId());
+        size += estimateString(span.getApplicationName());
+        size += estimateString(span.getEndPoint());
+        final byte[] transactionId = span.getTransactionId();
+        if (transactionId != null) {
+            size += STRING_HEADER + transactionId.length;
+        }
+        return size;
+    }
+
+    private static int estimateAnnotation(TAnnotation annotation) {
+        // key + value field header + annotation stop
+        int size = I32 + FIELD_HEADER + STOP;
+        final TAnnotationValue value = annotation.getValue();
+        if (value == null || value.getSetField() == null) {
+            return size;
+        }
+        // union field + union stop
+        switch (value.getSetField()) {
+            case STRING_VALUE:
+                return size + estimateString(value.getStringValue()) + STOP;
+            case BINARY_VALUE:
+                final byte[] binaryValue = value.getBinaryValue();
+                return size + STRING_HEADER + (binaryValue == null ? 0 : binaryValue.length) + STOP;
+            case INT_STRING_VALUE:
+                return size + FIELD_HEADER + estimateIntStringValue(value.getIntStringValue()) + STOP;
+            case INT_STRING_STRING_VALUE:
+                return size + FIELD_HEADER + estimateIntStringStringValue(value.getIntStringStringValue()) + STOP;
+            default:
+                // bool, byte, short, int, long, double
+                return size + I64 + STOP;
+        }
+    }
+
+    private static int estimateIntStringValue(TIntStringValue value) {
+        if (value == null) {
+            return STOP;
+        }
+        return I32 + estimateString(value.getStringValue()) + STOP;
+    }
+
+    private static int estimateIntStringStringValue(TIntStringStringValue value) {
+        if (value == null) {
+            return STOP;
+        }
+        return I32 + estimateString(value.getStringValue1()) + estimateString(value.getStringValue2()) + STOP;
+    }
+
+    static int estimateString(String value) {
+        if (value == null) {
+            return 0;
+        }
+        return STRING_HEADER + utf8Length(value);
+    }
+
+    static int utf8Length(String value) {
+        final int length = value.length();
+        int utf8Length = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x800) {
+                // 3 bytes. a surrogate pair is 4 bytes for 2 chars.
+                utf8Length += 2;
+            } else if (c >= 0x80) {
+                utf8Length += 1;
+            }
+        }
+        return utf8Length;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keep/drop decision of a transaction recorded in tail sampling mode.
+ * Shared by the {@link TailSamplingStorage} of the trace and the ones of its async parts, so that the whole transaction is
+ * either sent or dropped. The first decision wins. Async storages closed before the decision wait for it.
+ */
+public final class TailSamplingDecision {
+
+    static final int UNDECIDED = 0;
+    static final int KEEP = 1;
+    static final int DROP = 2;
+
+    private volatile int state = UNDECIDED;
+    // guarded by this
+    private List<TailSamplingStorage> pending;
+
+    int getState() {
+        return state;
+    }
+
+    /**
+     * @return false if the transaction was already decided
+     */
+    boolean decide(boolean keep) {
+        final List<TailSamplingStorage> pending;
+        synchronized (this) {
+            if (state != UNDECIDED) {
+                return false;
+            }
+            state = keep ? KEEP : DROP;
+            pending = this.pending;
+            this.pending = null;
+        }
+        if (pending != null) {
+            for (TailSamplingStorage storage : pending) {
+                storage.onDecision(keep);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Registers a closed storage to be notified of the decision.
+     * @return the current state. the storage is notified later only if UNDECIDED
+     */
+    synchronized int await(TailSamplingStorage storage) {
+        if (state == UNDECIDED) {
+            if (pending == null) {
+                pending = new ArrayList<TailSamplingStorage>(2);
+            }
+            pending.add(storage);
+        }
+        return state;
+    }
+
+    @Override
+    public String toString() {
+        return "TailSamplingDecision{" +
+                "state=" + state +
+                '}';
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.profiler.context.Span;
+import com.baidu.oped.apm.profiler.context.SpanEvent;
+import com.baidu.oped.apm.profiler.sampler.TailSampler;
+
+/**
+ * Storage of a transaction rejected by the sampler in tail sampling mode.
+ * Until the {@link TailSamplingDecision} is made, span events are kept TCompactProtocol encoded in a buffer
+ * borrowed from the current thread, and the SpanEvents themselves are recycled right away.
+ * Slots of the global buffer limit are reserved in chunks of {@link #BUFFER_CHUNK_SIZE}.
+ * <p>
+ * The transaction is kept as soon as a span event has an error or ends after the threshold. The buffer then goes to the
+ * real storage and later span events pass through. Otherwise the decision is made when the span is stored.
+ * The real storage is created only for kept transactions.
+ * <p>
+ * The storage of an async part does not decide on close. It waits for the decision of the trace instead.
+ * <p>
+ * Span events beyond the per transaction or global buffer limit are dropped. The transaction itself can still be kept.
+ */
+public class TailSamplingStorage implements Storage {
+
+    private static final Logger logger = LoggerFactory.getLogger(TailSamplingStorage.class);
+    private static final boolean isDebug = logger.isDebugEnabled();
+
+    static final int BUFFER_CHUNK_SIZE = 16;
+
+    private final StorageFactory storageFactory;
+    private final TailSampler tailSampler;
+    private final TailSamplingDecision decision;
+    // false for the storage of an async part
+    private final boolean decisionOwner;
+
+    private SpanEventEncodeBuffer buffer;
+    // span of the buffered span events
+    private Span span;
+    private int size;
+    // slots reserved from the global buffer limit and not used yet
+    private int reserved;
+    private int dropCount;
+    // created once the transaction is kept
+    private Storage storage;
+    private boolean closed;
+
+    public TailSamplingStorage(StorageFactory storageFactory, TailSampler tailSampler) {
+        this(storageFactory, tailSampler, new TailSamplingDecision(), true);
+    }
+
+    /**
+     * @param decision decision shared by the trace and its async parts
+     * @param decisionOwner true for the storage of the trace, false for the one of an async part
+     */
+    public TailSamplingStorage(StorageFactory storageFactory, TailSampler tailSampler, TailSamplingDecision decision, boolean decisionOwner) {
+        if (storageFactory == null) {
+            throw new NullPointerException("storageFactory must not be null");
+        }
+        if (tailSampler == null) {
+            throw new NullPointerException("tailSampler must not be null");
+        }
+        if (decision == null) {
+            throw new NullPointerException("decision must not be null");
+        }
+        this.storageFactory = storageFactory;
+        this.tailSampler = tailSampler;
+        this.decision = decision;
+        this.decisionOwner = decisionOwner;
+    }
+
+    @Override
+    public void store(SpanEvent spanEvent) {
+        if (spanEvent == null) {
+            throw new NullPointerException("spanEvent must not be null");
+        }
+        if (storage != null) {
+            storage.store(spanEvent);
+            return;
+        }
+        if (closed) {
+            drop(spanEvent);
+            return;
+        }
+        int state = decision.getState();
+        if (state == TailSamplingDecision.UNDECIDED) {
+            // the transaction is at least as long as any of its span events
+            final int elapsed = spanEvent.getStartElapsed() + spanEvent.getEndElapsed();
+            if (tailSampler.isKeep(elapsed, spanEvent.isSetExceptionInfo())) {
+                state = decide(true);
+            }
+        }
+        switch (state) {
+            case TailSamplingDecision.KEEP:
+                flushBuffer();
+                storage.store(spanEvent);
+                break;
+            case TailSamplingDecision.DROP:
+                discard();
+                drop(spanEvent);
+                break;
+            default:
+                buffer(spanEvent);
+        }
+    }
+
+    private void buffer(SpanEvent spanEvent) {
+        final int bufferSize = tailSampler.getBufferSize();
+        if (size >= bufferSize) {
+            drop(spanEvent);
+            return;
+        }
+        if (reserved == 0) {
+            reserved = tailSampler.acquireBuffer(Math.min(BUFFER_CHUNK_SIZE, bufferSize - size));
+            if (reserved == 0) {
+                drop(spanEvent);
+                return;
+            }
+        }
+        if (buffer == null) {
+            this.buffer = SpanEventEncodeBuffer.borrow();
+            this.span = spanEvent.getSpan();
+        }
+        try {
+            spanEvent.write(buffer.getProtocol());
+            size++;
+            reserved--;
+        } catch (TException e) {
+            // a partially written event corrupts the buffer. it is not given back to the thread.
+            logger.warn("span event encoding failed. discard buffered span events. Caused:{}", e.getMessage(), e);
+            dropCount += size + 1;
+            buffer = null;
+            discard();
+        }
+        spanEvent.recycle();
+    }
+
+    private void drop(SpanEvent spanEvent) {
+        dropCount++;
+        spanEvent.recycle();
+    }
+
+    private int decide(boolean keep) {
+        if (decision.decide(keep)) {
+            if (keep) {
+                tailSampler.incrementKeepCount();
+            } else {
+                tailSampler.incrementDiscardCount();
+            }
+            if (isDebug) {
+                logger.debug("transaction decided. keep:{} spanEvent:{} dropped:{}", keep, size, dropCount);
+            }
+        }
+        return decision.getState();
+    }
+
+    @Override
+    public void store(Span span) {
+        if (span == null) {
+            throw new NullPointerException("span must not be null");
+        }
+        if (storage == null) {
+            int state = decision.getState();
+            if (state == TailSamplingDecision.UNDECIDED) {
+                final boolean spanError = span.isSetErrCode() && span.getErrCode() != 0;
+                state = decide(tailSampler.isKeep(span.getElapsed(), spanError));
+            }
+            if (state != TailSamplingDecision.KEEP) {
+                discard();
+                return;
+            }
+            flushBuffer();
+        }
+        storage.store(span);
+    }
+
+    @Override
+    public void flush() {
+        if (storage != null) {
+            storage.flush();
+        }
+        // nothing to send until the transaction is kept.
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (storage != null) {
+            storage.close();
+            return;
+        }
+        if (decisionOwner) {
+            // the span was never stored. corrupted call stack.
+            decide(false);
+            discard();
+            return;
+        }
+        final int state = decision.await(this);
+        if (state != TailSamplingDecision.UNDECIDED) {
+            onDecision(state == TailSamplingDecision.KEEP);
+        }
+        // otherwise the buffer is held until the trace decides.
+    }
+
+    /**
+     * Called by {@link TailSamplingDecision} for an async part closed before the decision.
+     */
+    void onDecision(boolean keep) {
+        if (keep) {
+            flushBuffer();
+            storage.close();
+        } else {
+            discard();
+        }
+    }
+
+    private void flushBuffer() {
+        if (storage == null) {
+            storage = storageFactory.createStorage();
+        }
+        if (size == 0) {
+            return;
+        }
+        final TMemoryInputTransport transport = new TMemoryInputTransport(buffer.getArray(), 0, buffer.length());
+        final TProtocol protocol = new TCompactProtocol(transport);
+        try {
+            for (int i = 0; i < size; i++) {
+                final SpanEvent spanEvent = new SpanEvent(span);
+                spanEvent.read(protocol);
+                storage.store(spanEvent);
+            }
+        } catch (TException e) {
+            logger.warn("span event decoding failed. Caused:{}", e.getMessage(), e);
+        }
+        discard();
+    }
+
+    private void discard() {
+        tailSampler.releaseBuffer(size + reserved);
+        size = 0;
+        reserved = 0;
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+        span = null;
+    }
+
+    @Override
+    public String toString() {
+        return "TailSamplingStorage{" +
+                "size=" + size +
+                ", dropCount=" + dropCount +
+                ", decision=" + decision +
+                ", tailSampler=" + tailSampler +
+                '}';
+    }
+}
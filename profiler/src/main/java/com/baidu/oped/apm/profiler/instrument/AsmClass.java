@@ -0,0 +1,825 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.bootstrap.instrument.ClassFilter;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentException;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentMethod;
+import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
+import com.baidu.oped.apm.bootstrap.instrument.MethodFilter;
+import com.baidu.oped.apm.bootstrap.instrument.MethodFilters;
+import com.baidu.oped.apm.bootstrap.instrument.NotFoundInstrumentException;
+import com.baidu.oped.apm.bootstrap.interceptor.annotation.TargetConstructor;
+import com.baidu.oped.apm.bootstrap.interceptor.annotation.TargetConstructors;
+import com.baidu.oped.apm.bootstrap.interceptor.annotation.TargetFilter;
+import com.baidu.oped.apm.bootstrap.interceptor.annotation.TargetMethod;
+import com.baidu.oped.apm.bootstrap.interceptor.annotation.TargetMethods;
+import com.baidu.oped.apm.bootstrap.interceptor.group.ExecutionPolicy;
+import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
+import com.baidu.oped.apm.bootstrap.plugin.ObjectRecipe;
+import com.baidu.oped.apm.common.util.Asserts;
+import com.baidu.oped.apm.exception.ApmException;
+import com.baidu.oped.apm.profiler.instrument.AccessorAnalyzer.AccessorDetails;
+import com.baidu.oped.apm.profiler.instrument.GetterAnalyzer.GetterDetails;
+import com.baidu.oped.apm.profiler.instrument.asm.AspectWeaver;
+import com.baidu.oped.apm.profiler.instrument.asm.ClassEdit;
+import com.baidu.oped.apm.profiler.instrument.asm.ClassEditVisitor;
+import com.baidu.oped.apm.profiler.instrument.asm.ClassFileLocator;
+import com.baidu.oped.apm.profiler.instrument.asm.ClassMetadata;
+import com.baidu.oped.apm.profiler.instrument.asm.HierarchyClassWriter;
+import com.baidu.oped.apm.profiler.interceptor.registry.InterceptorRegistryBinder;
+import com.baidu.oped.apm.profiler.objectfactory.AutoBindingObjectFactory;
+import com.baidu.oped.apm.profiler.objectfactory.InterceptorArgumentProvider;
+import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
+
+/**
+ * InstrumentClass on top of ASM.
+ * Changes are collected into a {@link ClassEdit} and applied in a single pass over the original class file by {@link #toBytecode()}.
+ */
+public class AsmClass implements InstrumentClass {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final boolean isDebug = logger.isDebugEnabled();
+
+    private static final String FIELD_PREFIX = "_$APM$_";
+    private static final int MAX_HIERARCHY_DEPTH = 64;
+
+    private final Instrumentor pluginContext;
+    private final InterceptorRegistryBinder interceptorRegistryBinder;
+    private final ClassFileLocator classFileLocator;
+    private final ClassLoader classLoader;
+    private final byte[] classFileBuffer;
+    private final ClassMetadata metadata;
+    private final ClassEdit edit = new ClassEdit();
+    // declared methods including the ones added by this class. constructors and the static initializer are excluded.
+    private final List<ClassMetadata.MethodMetadata> declaredMethods;
+
+    public AsmClass(Instrumentor pluginContext, InterceptorRegistryBinder interceptorRegistryBinder, ClassFileLocator classFileLocator, ClassLoader classLoader, byte[] classFileBuffer) {
+        if (classFileBuffer == null) {
+            throw new NullPointerException("classFileBuffer must not be null");
+        }
+        this.pluginContext = pluginContext;
+        this.interceptorRegistryBinder = interceptorRegistryBinder;
+        this.classFileLocator = classFileLocator;
+        this.classLoader = classLoader;
+        this.classFileBuffer = classFileBuffer;
+        this.metadata = ClassMetadata.read(classFileBuffer);
+        this.declaredMethods = new ArrayList<ClassMetadata.MethodMetadata>();
+        for (ClassMetadata.MethodMetadata method : metadata.getMethods()) {
+            if (!method.isConstructor() && !method.isStaticInitializer()) {
+                declaredMethods.add(method);
+            }
+        }
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    ClassEdit getClassEdit() {
+        return edit;
+    }
+
+    ClassMetadata.MethodDebugInfo readDebugInfo(String methodName, String methodDesc) {
+        return ClassMetadata.readDebugInfo(classFileBuffer, methodName, methodDesc);
+    }
+
+    @Override
+    public boolean isInterceptable() {
+        return !metadata.isInterface() && !metadata.isAnnotation() && !edit.isModified();
+    }
+
+    @Override
+    public boolean isInterface() {
+        return metadata.isInterface();
+    }
+
+    @Override
+    public String getName() {
+        return JavaAssistUtils.jvmNameToJavaName(metadata.getName());
+    }
+
+    @Override
+    public String getSuperClass() {
+        final String superName = metadata.getSuperName();
+        return superName == null ? null : JavaAssistUtils.jvmNameToJavaName(superName);
+    }
+
+    @Override
+    public String[] getInterfaces() {
+        final String[] interfaces = metadata.getInterfaces();
+        final String[] result = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            result[i] = JavaAssistUtils.jvmNameToJavaName(interfaces[i]);
+        }
+        return result;
+    }
+
+    private static ClassMetadata.MethodMetadata findMethod(List<ClassMetadata.MethodMetadata> methods, String methodName, String[] parameterTypes) {
+        final String jvmSignature = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+
+        for (ClassMetadata.MethodMetadata method : methods) {
+            if (!method.getName().equals(methodName)) {
+                continue;
+            }
+            if (method.getDesc().startsWith(jvmSignature)) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public InstrumentMethod getDeclaredMethod(String name, String... parameterTypes) {
+        final ClassMetadata.MethodMetadata method = findMethod(declaredMethods, name, parameterTypes);
+        return method == null ? null : new AsmMethod(pluginContext, interceptorRegistryBinder, this, method);
+    }
+
+    @Override
+    public List<InstrumentMethod> getDeclaredMethods() {
+        return getDeclaredMethods(MethodFilters.ACCEPT_ALL);
+    }
+
+    @Override
+    public List<InstrumentMethod> getDeclaredMethods(MethodFilter methodFilter) {
+        if (methodFilter == null) {
+            throw new NullPointerException("methodFilter must not be null");
+        }
+        // copy. interceptors of a filter may add methods
+        final List<ClassMetadata.MethodMetadata> declaredMethod = new ArrayList<ClassMetadata.MethodMetadata>(declaredMethods);
+        final List<InstrumentMethod> candidateList = new ArrayList<InstrumentMethod>(declaredMethod.size());
+        for (ClassMetadata.MethodMetadata methodMetadata : declaredMethod) {
+            final InstrumentMethod method = new AsmMethod(pluginContext, interceptorRegistryBinder, this, methodMetadata);
+            if (methodFilter.accept(method)) {
+                candidateList.add(method);
+            }
+        }
+
+        return candidateList;
+    }
+
+    private ClassMetadata.MethodMetadata findConstructor(String[] parameterTypes) {
+        final String jvmSignature = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+        for (ClassMetadata.MethodMetadata method : metadata.getMethods()) {
+            // skip return type check
+            if (method.isConstructor() && method.getDesc().startsWith(jvmSignature)) {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public InstrumentMethod getConstructor(String... parameterTypes) {
+        final ClassMetadata.MethodMetadata constructor = findConstructor(parameterTypes);
+        return constructor == null ? null : new AsmMethod(pluginContext, interceptorRegistryBinder, this, constructor);
+    }
+
+    @Override
+    public boolean hasDeclaredMethod(String methodName, String... args) {
+        return findMethod(declaredMethods, methodName, args) != null;
+    }
+
+    @Override
+    public boolean hasMethod(String methodName, String... parameterTypes) {
+        if (findMethod(declaredMethods, methodName, parameterTypes) != null) {
+            return true;
+        }
+
+        final List<String> visited = new ArrayList<String>();
+        final List<String> pending = new ArrayList<String>();
+        addSuperTypes(pending, metadata);
+        while (!pending.isEmpty() && visited.size() < MAX_HIERARCHY_DEPTH) {
+            final String typeName = pending.remove(0);
+            if (visited.contains(typeName)) {
+                continue;
+            }
+            visited.add(typeName);
+
+            final ClassMetadata superType = readClassMetadata(typeName);
+            if (superType == null) {
+                continue;
+            }
+            final ClassMetadata.MethodMetadata method = findMethod(superType.getMethods(), methodName, parameterTypes);
+            if (method != null && !method.isConstructor() && (method.getAccess() & Opcodes.ACC_PRIVATE) == 0) {
+                return true;
+            }
+            addSuperTypes(pending, superType);
+        }
+
+        return false;
+    }
+
+    private static void addSuperTypes(List<String> pending, ClassMetadata classMetadata) {
+        if (classMetadata.getSuperName() != null) {
+            pending.add(classMetadata.getSuperName());
+        }
+        pending.addAll(Arrays.asList(classMetadata.getInterfaces()));
+    }
+
+    /**
+     * @return null if the class file is not found
+     */
+    private ClassMetadata readClassMetadata(String classInternalName) {
+        final byte[] classFile = classFileLocator.getClassFile(classLoader, classInternalName);
+        if (classFile == null) {
+            return null;
+        }
+        return ClassMetadata.read(classFile);
+    }
+
+    @Override
+    public boolean hasEnclosingMethod(String methodName, String... parameterTypes) {
+        final String enclosingMethodName = metadata.getEnclosingMethodName();
+        if (enclosingMethodName == null) {
+            return false;
+        }
+        if (!enclosingMethodName.equals(methodName)) {
+            return false;
+        }
+
+        final String jvmSignature = JavaAssistUtils.javaTypeToJvmSignature(parameterTypes);
+        return metadata.getEnclosingMethodDesc().startsWith(jvmSignature);
+    }
+
+    @Override
+    public boolean hasConstructor(String... parameterTypeArray) {
+        final String signature = JavaAssistUtils.javaTypeToJvmSignature(parameterTypeArray, "void");
+        for (ClassMetadata.MethodMetadata method : metadata.getMethods()) {
+            if (method.isConstructor() && method.getDesc().equals(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasField(String name, String type) {
+        final String vmType = type == null ? null : JavaAssistUtils.toJvmSignature(type);
+        return findField(name, vmType) != null;
+    }
+
+    @Override
+    public boolean hasField(String name) {
+        return hasField(name, null);
+    }
+
+    /**
+     * Looks up the field in this class, its super classes and interfaces.
+     *
+     * @param desc null to match any type
+     */
+    private ClassMetadata.FieldMetadata findField(String name, String desc) {
+        for (FieldNode added : edit.getFields()) {
+            if (added.name.equals(name) && (desc == null || added.desc.equals(desc))) {
+                return new ClassMetadata.FieldMetadata(added.access, added.name, added.desc);
+            }
+        }
+
+        final List<String> visited = new ArrayList<String>();
+        ClassMetadata current = metadata;
+        final List<String> pending = new ArrayList<String>();
+        while (current != null) {
+            final ClassMetadata.FieldMetadata field = current.getField(name);
+            if (field != null && (desc == null || field.getDesc().equals(desc))) {
+                return field;
+            }
+            addSuperTypes(pending, current);
+
+            current = null;
+            while (!pending.isEmpty() && visited.size() < MAX_HIERARCHY_DEPTH) {
+                final String typeName = pending.remove(0);
+                if (visited.contains(typeName)) {
+                    continue;
+                }
+                visited.add(typeName);
+                current = readClassMetadata(typeName);
+                if (current != null) {
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void weave(String adviceClassName) throws InstrumentException {
+        final Class<?> adviceType = pluginContext.injectClass(classLoader, adviceClassName);
+
+        final String adviceInternalName = JavaAssistUtils.javaNameToJvmName(adviceClassName);
+        final ClassLoader adviceClassLoader = adviceType == null ? classLoader : adviceType.getClassLoader();
+        byte[] adviceClassFile = classFileLocator.getClassFile(adviceClassLoader, adviceInternalName);
+        if (adviceClassFile == null && adviceClassLoader != classLoader) {
+            adviceClassFile = classFileLocator.getClassFile(classLoader, adviceInternalName);
+        }
+        if (adviceClassFile == null) {
+            throw new NotFoundInstrumentException(adviceClassName + " not found. Caused:class file of the advice is not readable from " + adviceClassLoader);
+        }
+
+        try {
+            final List<String> adviceSuperClasses = getSuperClassNames(adviceClassLoader, ClassMetadata.read(adviceClassFile));
+            final AspectWeaver weaver = new AspectWeaver();
+            weaver.weaving(metadata, adviceClassFile, adviceSuperClasses, edit);
+        } catch (IllegalArgumentException e) {
+            throw new InstrumentException("weaving fail. sourceClassName:" + getName() + " adviceClassName:" + adviceClassName + " Caused:" + e.getMessage(), e);
+        }
+    }
+
+    private List<String> getSuperClassNames(ClassLoader loader, ClassMetadata classMetadata) {
+        final List<String> superClassNames = new ArrayList<String>();
+        String superName = classMetadata.getSuperName();
+        while (superName != null && superClassNames.size() < MAX_HIERARCHY_DEPTH) {
+            superClassNames.add(superName);
+            final byte[] classFile = classFileLocator.getClassFile(loader, superName);
+            if (classFile == null) {
+                break;
+            }
+            superName = ClassMetadata.read(classFile).getSuperName();
+        }
+        return superClassNames;
+    }
+
+    @Override
+    public InstrumentMethod addDelegatorMethod(String methodName, String... paramTypes) throws InstrumentException {
+        if (findMethod(declaredMethods, methodName, paramTypes) != null) {
+            throw new InstrumentException(getName() + "already have method(" + methodName + ").");
+        }
+
+        final String superName = metadata.getSuperName();
+        final ClassMetadata superClass = superName == null ? null : readClassMetadata(superName);
+        if (superClass == null) {
+            throw new InstrumentException(getName() + "don't have super class(" + getSuperClass() + "). Cause:class file not found");
+        }
+        final ClassMetadata.MethodMetadata superMethod = findMethod(superClass.getMethods(), methodName, paramTypes);
+        if (superMethod == null) {
+            throw new NotFoundInstrumentException(methodName + Arrays.toString(paramTypes) + " is not found in " + JavaAssistUtils.jvmNameToJavaName(superName));
+        }
+
+        final int access = superMethod.getAccess() & ~(Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE | Opcodes.ACC_SYNCHRONIZED);
+        final MethodNode delegator = new MethodNode(access, superMethod.getName(), superMethod.getDesc(), superMethod.getSignature(), superMethod.getExceptions());
+        delegator.visitCode();
+        int slot = 0;
+        if (!superMethod.isStatic()) {
+            delegator.visitVarInsn(Opcodes.ALOAD, slot++);
+        }
+        for (Type argumentType : Type.getArgumentTypes(superMethod.getDesc())) {
+            delegator.visitVarInsn(argumentType.getOpcode(Opcodes.ILOAD), slot);
+            slot += argumentType.getSize();
+        }
+        final int opcode = superMethod.isStatic() ? Opcodes.INVOKESTATIC : Opcodes.INVOKESPECIAL;
+        delegator.visitMethodInsn(opcode, superName, superMethod.getName(), superMethod.getDesc(), false);
+        delegator.visitInsn(Type.getReturnType(superMethod.getDesc()).getOpcode(Opcodes.IRETURN));
+        delegator.visitMaxs(0, 0);
+        delegator.visitEnd();
+
+        return new AsmMethod(pluginContext, interceptorRegistryBinder, this, addMethod(delegator));
+    }
+
+    private ClassMetadata.MethodMetadata addMethod(MethodNode method) {
+        edit.addMethod(method);
+        final String[] exceptions = method.exceptions == null ? null : method.exceptions.toArray(new String[method.exceptions.size()]);
+        final ClassMetadata.MethodMetadata methodMetadata = new ClassMetadata.MethodMetadata(method.access, method.name, method.desc, method.signature, exceptions);
+        declaredMethods.add(methodMetadata);
+        return methodMetadata;
+    }
+
+    @Override
+    public byte[] toBytecode() {
+        try {
+            final ClassReader classReader = new ClassReader(classFileBuffer);
+            // the StackMapTable of java 6+ class files is recomputed. older class files only need max stack/locals.
+            final boolean computeFrames = (metadata.getVersion() & 0xFFFF) >= Opcodes.V1_6;
+            final int writerFlags = computeFrames ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS;
+            final int readerFlags = computeFrames ? ClassReader.SKIP_FRAMES : 0;
+
+            final ClassWriter classWriter = new HierarchyClassWriter(classReader, writerFlags, classFileLocator, classLoader, metadata);
+            classReader.accept(new ClassEditVisitor(classWriter, edit), readerFlags);
+            return classWriter.toByteArray();
+        } catch (RuntimeException e) {
+            logger.info("Fail to transform class:{} Caused:{}", getName(), e.getMessage(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public void addField(String accessorTypeName) throws InstrumentException {
+        addField0(accessorTypeName, null);
+    }
+
+    @Override
+    public void addField(String accessorTypeName, String initValExp) throws InstrumentException {
+        addField0(accessorTypeName, initValExp);
+    }
+
+    private void addField0(String accessorTypeName, String initValExp) throws InstrumentException {
+        try {
+            Class<?> accessorType = pluginContext.injectClass(classLoader, accessorTypeName);
+            AccessorDetails accessorDetails = new AccessorAnalyzer().analyze(accessorType);
+
+            final String fieldName = FIELD_PREFIX + accessorTypeName.replace('.', '_').replace('$', '_');
+            final String fieldDesc = Type.getDescriptor(accessorDetails.getFieldType());
+            // only "new Type()" and "new Type(int, ...)" with int literals are supported. there is no source compiler.
+            final InitValue initValue = parseInitValue(initValExp);
+
+            edit.addField(new FieldNode(Opcodes.ACC_PRIVATE, fieldName, fieldDesc, null, null));
+            if (initValue != null) {
+                edit.addFieldInitializer(fieldName, fieldDesc, JavaAssistUtils.javaNameToJvmName(initValue.type), initValue.arguments);
+            }
+            edit.addInterface(JavaAssistUtils.javaNameToJvmName(accessorTypeName));
+
+            addMethod(createGetter(accessorDetails.getGetter().getName(), metadata.getName(), fieldName, fieldDesc, false));
+            addMethod(createSetter(accessorDetails.getSetter().getName(), fieldName, fieldDesc));
+        } catch (Exception e) {
+            throw new InstrumentException("Failed to add field with accessor [" + accessorTypeName + "]. Cause:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return java class name and int arguments of "new java.util.HashMap()" or "new java.util.HashMap(16)". null if initValExp is null
+     */
+    static InitValue parseInitValue(String initValExp) {
+        if (initValExp == null) {
+            return null;
+        }
+        String exp = initValExp.trim();
+        if (exp.endsWith(";")) {
+            exp = exp.substring(0, exp.length() - 1).trim();
+        }
+        final int argumentsStart = exp.indexOf('(');
+        if (!exp.startsWith("new ") || argumentsStart == -1 || !exp.endsWith(")")) {
+            throw new IllegalArgumentException("unsupported initValExp:" + initValExp + ". only 'new Type()' or 'new Type(int, ...)' is supported");
+        }
+        final String type = exp.substring("new ".length(), argumentsStart).trim();
+        final String arguments = exp.substring(argumentsStart + 1, exp.length() - 1).trim();
+        if (arguments.isEmpty()) {
+            return new InitValue(type, new int[0]);
+        }
+        final String[] tokens = arguments.split(",");
+        final int[] values = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            try {
+                values[i] = Integer.parseInt(tokens[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("unsupported initValExp:" + initValExp + ". only int literal arguments are supported");
+            }
+        }
+        return new InitValue(type, values);
+    }
+
+    static class InitValue {
+        final String type;
+        final int[] arguments;
+
+        private InitValue(String type, int[] arguments) {
+            this.type = type;
+            this.arguments = arguments;
+        }
+    }
+
+    private MethodNode createGetter(String methodName, String fieldOwner, String fieldName, String fieldDesc, boolean staticField) {
+        final Type fieldType = Type.getType(fieldDesc);
+        final MethodNode getter = new MethodNode(Opcodes.ACC_PUBLIC, methodName, "()" + fieldDesc, null, null);
+        getter.visitCode();
+        if (staticField) {
+            getter.visitFieldInsn(Opcodes.GETSTATIC, fieldOwner, fieldName, fieldDesc);
+        } else {
+            getter.visitVarInsn(Opcodes.ALOAD, 0);
+            getter.visitFieldInsn(Opcodes.GETFIELD, fieldOwner, fieldName, fieldDesc);
+        }
+        getter.visitInsn(fieldType.getOpcode(Opcodes.IRETURN));
+        getter.visitMaxs(0, 0);
+        getter.visitEnd();
+        return getter;
+    }
+
+    private MethodNode createSetter(String methodName, String fieldName, String fieldDesc) {
+        final Type fieldType = Type.getType(fieldDesc);
+        final MethodNode setter = new MethodNode(Opcodes.ACC_PUBLIC, methodName, "(" + fieldDesc + ")V", null, null);
+        setter.visitCode();
+        setter.visitVarInsn(Opcodes.ALOAD, 0);
+        setter.visitVarInsn(fieldType.getOpcode(Opcodes.ILOAD), 1);
+        setter.visitFieldInsn(Opcodes.PUTFIELD, metadata.getName(), fieldName, fieldDesc);
+        setter.visitInsn(Opcodes.RETURN);
+        setter.visitMaxs(0, 0);
+        setter.visitEnd();
+        return setter;
+    }
+
+    @Override
+    public void addGetter(String getterTypeName, String fieldName) throws InstrumentException {
+        try {
+            Class<?> getterType = pluginContext.injectClass(classLoader, getterTypeName);
+
+            GetterDetails getterDetails = new GetterAnalyzer().analyze(getterType);
+
+            final ClassMetadata.FieldMetadata field = findField(fieldName, null);
+            if (field == null) {
+                throw new NotFoundInstrumentException("field not found. " + fieldName);
+            }
+
+            final String getterFieldDesc = Type.getDescriptor(getterDetails.getFieldType());
+            if (!field.getDesc().equals(getterFieldDesc)) {
+                throw new IllegalArgumentException("Return type of the getter is different with the field type. getterMethod: " + getterDetails.getGetter() + ", fieldType: " + Type.getType(field.getDesc()).getClassName());
+            }
+
+            final boolean staticField = (field.getAccess() & Opcodes.ACC_STATIC) != 0;
+            addMethod(createGetter(getterDetails.getGetter().getName(), metadata.getName(), fieldName, field.getDesc(), staticField));
+
+            edit.addInterface(JavaAssistUtils.javaNameToJvmName(getterTypeName));
+        } catch (Exception e) {
+            throw new InstrumentException("Fail to add getter: " + getterTypeName, e);
+        }
+    }
+
+    @Override
+    public int addInterceptor(String interceptorClassName) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        return addInterceptor0(interceptorClassName, null, null, null);
+    }
+
+    @Override
+    public int addInterceptor(String interceptorClassName, Object[] constructorArgs) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        return addInterceptor0(interceptorClassName, constructorArgs, null, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, String groupName) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(groupName, "groupName");
+        final InterceptorGroup interceptorGroup = pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, null, interceptorGroup, ExecutionPolicy.BOUNDARY);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, InterceptorGroup group) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(group, "group");
+        return addInterceptor0(interceptorClassName, null, group, ExecutionPolicy.BOUNDARY);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, String groupName) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(groupName, "groupName");
+        final InterceptorGroup interceptorGroup = pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, constructorArgs, interceptorGroup, ExecutionPolicy.BOUNDARY);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(group, "group");
+        return addInterceptor0(interceptorClassName, constructorArgs, group, ExecutionPolicy.BOUNDARY);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, String groupName, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(groupName, "groupName");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        final InterceptorGroup interceptorGroup = pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, null, interceptorGroup, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(group, "group");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        return addInterceptor0(interceptorClassName, null, group, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, String groupName, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(groupName, "groupName");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        final InterceptorGroup interceptorGroup = pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, constructorArgs, interceptorGroup, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(group, "group");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        return addInterceptor0(interceptorClassName, constructorArgs, group, executionPolicy);
+    }
+
+    private int addInterceptor0(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+
+        int interceptorId = -1;
+        Class<?> interceptorType = pluginContext.injectClass(classLoader, interceptorClassName);
+
+        TargetMethods targetMethods = interceptorType.getAnnotation(TargetMethods.class);
+        if (targetMethods != null) {
+            for (TargetMethod m : targetMethods.value()) {
+                interceptorId = addInterceptor0(m, interceptorClassName, constructorArgs, group, executionPolicy);
+            }
+        }
+
+        TargetMethod targetMethod = interceptorType.getAnnotation(TargetMethod.class);
+        if (targetMethod != null) {
+            interceptorId = addInterceptor0(targetMethod, interceptorClassName, constructorArgs, group, executionPolicy);
+        }
+
+        TargetConstructors targetConstructors = interceptorType.getAnnotation(TargetConstructors.class);
+        if (targetConstructors != null) {
+            for (TargetConstructor c : targetConstructors.value()) {
+                interceptorId = addInterceptor0(c, interceptorClassName, group, executionPolicy, constructorArgs);
+            }
+        }
+
+        TargetConstructor targetConstructor = interceptorType.getAnnotation(TargetConstructor.class);
+        if (targetConstructor != null) {
+            interceptorId = addInterceptor0(targetConstructor, interceptorClassName, group, executionPolicy, constructorArgs);
+        }
+
+        TargetFilter targetFilter = interceptorType.getAnnotation(TargetFilter.class);
+        if (targetFilter != null) {
+            interceptorId = addInterceptor0(targetFilter, interceptorClassName, group, executionPolicy, constructorArgs);
+        }
+
+        if (interceptorId == -1) {
+            throw new ApmException("No target is specified. At least one of @Targets, @TargetMethod, @TargetConstructor, @TargetFilter must present. interceptor: " + interceptorClassName);
+        }
+
+        return interceptorId;
+    }
+
+    private int addInterceptor0(TargetConstructor c, String interceptorClassName, InterceptorGroup group, ExecutionPolicy executionPolicy, Object... constructorArgs) throws InstrumentException {
+        InstrumentMethod constructor = getConstructor(c.value());
+
+        if (constructor == null) {
+            throw new NotFoundInstrumentException("Cannot find constructor with parameter types: " + Arrays.toString(c.value()));
+        }
+        return ((AsmMethod) constructor).addInterceptorInternal(interceptorClassName, constructorArgs, group, executionPolicy);
+    }
+
+    private int addInterceptor0(TargetMethod m, String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        InstrumentMethod method = getDeclaredMethod(m.name(), m.paramTypes());
+
+        if (method == null) {
+            throw new NotFoundInstrumentException("Cannot find method " + m.name() + " with parameter types: " + Arrays.toString(m.paramTypes()));
+        }
+        return ((AsmMethod) method).addInterceptorInternal(interceptorClassName, constructorArgs, group, executionPolicy);
+    }
+
+    private int addInterceptor0(TargetFilter annotation, String interceptorClassName, InterceptorGroup group, ExecutionPolicy executionPolicy, Object[] constructorArgs) throws InstrumentException {
+        String filterTypeName = annotation.type();
+        Asserts.notNull(filterTypeName, "type of @TargetFilter");
+
+        AutoBindingObjectFactory filterFactory = new AutoBindingObjectFactory(pluginContext, classLoader, new InterceptorArgumentProvider(pluginContext.getTraceContext(), this));
+        MethodFilter filter = (MethodFilter) filterFactory.createInstance(ObjectRecipe.byConstructor(filterTypeName, (Object[]) annotation.constructorArguments()));
+
+        boolean singleton = annotation.singleton();
+        int interceptorId = -1;
+
+        for (InstrumentMethod m : getDeclaredMethods(filter)) {
+            if (singleton && interceptorId != -1) {
+                m.addInterceptor(interceptorId);
+            } else {
+                interceptorId = ((AsmMethod) m).addInterceptorInternal(interceptorClassName, constructorArgs, group, executionPolicy);
+            }
+        }
+
+        if (interceptorId == -1) {
+            logger.warn("No methods are intercepted. target: " + getName(), ", interceptor: " + interceptorClassName + ", methodFilter: " + filterTypeName);
+        }
+
+        return interceptorId;
+    }
+
+    @Override
+    public int addInterceptor(MethodFilter filter, String interceptorClassName) throws InstrumentException {
+        Asserts.notNull(filter, "filter");
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        return addGroupedInterceptor0(filter, interceptorClassName, null, null, null);
+    }
+
+    @Override
+    public int addInterceptor(MethodFilter filter, String interceptorClassName, Object[] constructorArgs) throws InstrumentException {
+        Asserts.notNull(filter, "filter");
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        return addGroupedInterceptor0(filter, interceptorClassName, constructorArgs, null, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(MethodFilter filter, String interceptorClassName, String groupName, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(filter, "filter");
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(groupName, "groupName");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        final InterceptorGroup interceptorGroup = pluginContext.getInterceptorGroup(groupName);
+        return addGroupedInterceptor0(filter, interceptorClassName, null, interceptorGroup, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(MethodFilter filter, String interceptorClassName, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(filter, "filter");
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(group, "group");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        return addGroupedInterceptor0(filter, interceptorClassName, null, group, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(MethodFilter filter, String interceptorClassName, Object[] constructorArgs, String groupName, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(filter, "filter");
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(groupName, "groupName");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        final InterceptorGroup interceptorGroup = pluginContext.getInterceptorGroup(groupName);
+        return addGroupedInterceptor0(filter, interceptorClassName, null, interceptorGroup, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(MethodFilter filter, String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(filter, "filter");
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(group, "group");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        return addGroupedInterceptor0(filter, interceptorClassName, constructorArgs, group, executionPolicy);
+    }
+
+    private int addGroupedInterceptor0(MethodFilter filter, String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        int interceptorId = -1;
+
+        for (InstrumentMethod m : getDeclaredMethods(filter)) {
+            if (interceptorId != -1) {
+                m.addInterceptor(interceptorId);
+            } else {
+                interceptorId = ((AsmMethod) m).addInterceptorInternal(interceptorClassName, constructorArgs, group, executionPolicy);
+            }
+        }
+
+        if (interceptorId == -1) {
+            logger.warn("No methods are intercepted. target: " + getName(), ", interceptor: " + interceptorClassName + ", methodFilter: " + filter.getClass().getName());
+        }
+
+        return interceptorId;
+    }
+
+    @Override
+    public List<InstrumentClass> getNestedClasses(ClassFilter filter) {
+        final List<InstrumentClass> list = new ArrayList<InstrumentClass>();
+        // same rule as CtClass.getNestedClasses()
+        final String prefix = metadata.getName() + "$";
+        for (String innerClass : metadata.getInnerClasses()) {
+            if (!innerClass.startsWith(prefix) || innerClass.lastIndexOf('$') >= prefix.length()) {
+                continue;
+            }
+            final byte[] classFile = classFileLocator.getClassFile(classLoader, innerClass);
+            if (classFile == null) {
+                if (isDebug) {
+                    logger.debug("nested class file not found. class:{}", innerClass);
+                }
+                continue;
+            }
+            final InstrumentClass clazz = new AsmClass(pluginContext, interceptorRegistryBinder, classFileLocator, classLoader, classFile);
+            if (filter.accept(clazz)) {
+                list.add(clazz);
+            }
+        }
+
+        return list;
+    }
+}
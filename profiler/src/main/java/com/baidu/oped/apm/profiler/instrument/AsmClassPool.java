@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument;
+
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentClassPool;
+import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
+import com.baidu.oped.apm.bootstrap.instrument.NotFoundInstrumentException;
+import com.baidu.oped.apm.exception.ApmException;
+import com.baidu.oped.apm.profiler.instrument.asm.ClassFileLocator;
+import com.baidu.oped.apm.profiler.interceptor.registry.InterceptorRegistryBinder;
+import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
+
+/**
+ * Unlike {@link JavassistClassPool}, no class pool is kept per ClassLoader.
+ * The class being transformed is read from the buffer handed to the transformer and
+ * the rest of the hierarchy is read on demand from the resources of its ClassLoader.
+ */
+public class AsmClassPool implements InstrumentClassPool {
+
+    private final InterceptorRegistryBinder interceptorRegistryBinder;
+    private final ClassFileLocator classFileLocator = new ClassFileLocator();
+
+    public AsmClassPool(InterceptorRegistryBinder interceptorRegistryBinder, String bootStrapJar) {
+        if (interceptorRegistryBinder == null) {
+            throw new NullPointerException("interceptorRegistryBinder must not be null");
+        }
+        this.interceptorRegistryBinder = interceptorRegistryBinder;
+        if (bootStrapJar != null) {
+            // append bootstrap-core
+            try {
+                classFileLocator.appendBootstrapJar(bootStrapJar);
+            } catch (IllegalArgumentException ex) {
+                throw new ApmException("bootStrapJar not found. Caused by:" + ex.getMessage(), ex);
+            }
+        }
+    }
+
+    @Override
+    public InstrumentClass getClass(Instrumentor pluginContext, ClassLoader classLoader, String classInternalName, byte[] classFileBuffer) throws NotFoundInstrumentException {
+        if (classFileBuffer == null) {
+            final String jvmClassName = JavaAssistUtils.javaNameToJvmName(classInternalName);
+            classFileBuffer = classFileLocator.getClassFile(classLoader, jvmClassName);
+            if (classFileBuffer == null) {
+                throw new NotFoundInstrumentException(classInternalName + " class not found. Cause:class file not found from " + classLoader);
+            }
+        }
+        return new AsmClass(pluginContext, interceptorRegistryBinder, classFileLocator, classLoader, classFileBuffer);
+    }
+
+    @Override
+    public boolean hasClass(ClassLoader classLoader, String classBinaryName) {
+        return classFileLocator.exists(classLoader, JavaAssistUtils.javaNameToJvmName(classBinaryName));
+    }
+
+    @Override
+    public void appendToBootstrapClassPath(String jar) {
+        try {
+            classFileLocator.appendBootstrapJar(jar);
+        } catch (IllegalArgumentException e) {
+            throw new ApmException(e);
+        }
+    }
+}
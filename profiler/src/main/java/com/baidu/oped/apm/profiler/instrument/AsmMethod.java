@@ -0,0 +1,401 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument;
+
+import java.lang.reflect.Method;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.FieldNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
+import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentException;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentMethod;
+import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
+import com.baidu.oped.apm.bootstrap.interceptor.Interceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.annotation.Group;
+import com.baidu.oped.apm.bootstrap.interceptor.group.ExecutionPolicy;
+import com.baidu.oped.apm.bootstrap.interceptor.group.InterceptorGroup;
+import com.baidu.oped.apm.bootstrap.interceptor.registry.InterceptorRegistry;
+import com.baidu.oped.apm.common.util.Asserts;
+import com.baidu.oped.apm.profiler.context.DefaultMethodDescriptor;
+import com.baidu.oped.apm.profiler.instrument.asm.ClassMetadata;
+import com.baidu.oped.apm.profiler.instrument.asm.InterceptorDefinition;
+import com.baidu.oped.apm.profiler.instrument.interceptor.InvokeCodeGenerator;
+import com.baidu.oped.apm.profiler.interceptor.factory.AnnotatedInterceptorFactory;
+import com.baidu.oped.apm.profiler.interceptor.registry.InterceptorRegistryBinder;
+import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
+
+public class AsmMethod implements InstrumentMethod {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final boolean isDebug = logger.isDebugEnabled();
+
+    private static final String INTERCEPTOR_DESC = Type.getDescriptor(Interceptor.class);
+
+    private final Instrumentor pluginContext;
+    private final InterceptorRegistryBinder interceptorRegistryBinder;
+
+    private final AsmClass declaringClass;
+    private final ClassMetadata.MethodMetadata method;
+    private final String[] parameterTypes;
+    private MethodDescriptor descriptor;
+
+    public AsmMethod(Instrumentor pluginContext, InterceptorRegistryBinder interceptorRegistryBinder, AsmClass declaringClass, ClassMetadata.MethodMetadata method) {
+        this.pluginContext = pluginContext;
+        this.interceptorRegistryBinder = interceptorRegistryBinder;
+        this.declaringClass = declaringClass;
+        this.method = method;
+        this.parameterTypes = JavaAssistUtils.parseParameterSignature(method.getDesc());
+    }
+
+    @Override
+    public String getName() {
+        if (method.isConstructor()) {
+            // same as CtConstructor.getName()
+            final String className = declaringClass.getName();
+            return className.substring(className.lastIndexOf('.') + 1);
+        }
+        return method.getName();
+    }
+
+    @Override
+    public String[] getParameterTypes() {
+        return parameterTypes.clone();
+    }
+
+    @Override
+    public String getReturnType() {
+        if (method.isConstructor()) {
+            return null;
+        }
+        return Type.getReturnType(method.getDesc()).getClassName();
+    }
+
+    @Override
+    public int getModifiers() {
+        return method.getAccess() & 0xFFFF;
+    }
+
+    @Override
+    public boolean isConstructor() {
+        return method.isConstructor();
+    }
+
+    /**
+     * The debug attributes are read on the first call. Most methods are never asked for.
+     */
+    @Override
+    public MethodDescriptor getDescriptor() {
+        if (descriptor == null) {
+            descriptor = createDescriptor();
+        }
+        return descriptor;
+    }
+
+    private MethodDescriptor createDescriptor() {
+        final ClassMetadata.MethodDebugInfo debugInfo = declaringClass.readDebugInfo(method.getName(), method.getDesc());
+        String[] parameterVariableNames = debugInfo == null ? null : debugInfo.getParameterNames();
+        if (parameterVariableNames == null) {
+            parameterVariableNames = getParameterDefaultVariableName();
+        }
+        final int lineNumber = debugInfo == null ? -1 : debugInfo.getLineNumber();
+
+        final DefaultMethodDescriptor descriptor = new DefaultMethodDescriptor(declaringClass.getName(), getName(), getParameterTypes(), parameterVariableNames);
+        descriptor.setLineNumber(lineNumber);
+        return descriptor;
+    }
+
+    private String[] getParameterDefaultVariableName() {
+        final String[] variableName = new String[parameterTypes.length];
+        for (int i = 0; i < variableName.length; i++) {
+            final String parameterType = parameterTypes[i];
+            variableName[i] = parameterType.substring(parameterType.lastIndexOf('.') + 1).toLowerCase();
+        }
+        return variableName;
+    }
+
+    String getKey() {
+        return method.getKey();
+    }
+
+    @Override
+    public int addInterceptor(String interceptorClassName) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        return addInterceptor0(interceptorClassName, null, null, null);
+    }
+
+    @Override
+    public int addInterceptor(String interceptorClassName, Object[] constructorArgs) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        return addInterceptor0(interceptorClassName, constructorArgs, null, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, String groupName) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(groupName, "groupName");
+        final InterceptorGroup interceptorGroup = this.pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, null, interceptorGroup, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, InterceptorGroup group) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(group, "group");
+        return addInterceptor0(interceptorClassName, null, group, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, String groupName, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(groupName, "groupName");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        final InterceptorGroup interceptorGroup = this.pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, null, interceptorGroup, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(group, "group");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        return addInterceptor0(interceptorClassName, null, group, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, String groupName) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(groupName, "groupName");
+        final InterceptorGroup interceptorGroup = this.pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, constructorArgs, interceptorGroup, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(group, "group");
+        return addInterceptor0(interceptorClassName, constructorArgs, group, null);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, String groupName, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(groupName, "groupName");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        final InterceptorGroup interceptorGroup = this.pluginContext.getInterceptorGroup(groupName);
+        return addInterceptor0(interceptorClassName, constructorArgs, interceptorGroup, executionPolicy);
+    }
+
+    @Override
+    public int addGroupedInterceptor(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        Asserts.notNull(interceptorClassName, "interceptorClassName");
+        Asserts.notNull(constructorArgs, "constructorArgs");
+        Asserts.notNull(group, "group");
+        Asserts.notNull(executionPolicy, "executionPolicy");
+        return addInterceptor0(interceptorClassName, constructorArgs, group, executionPolicy);
+    }
+
+    @Override
+    public void addInterceptor(int interceptorId) throws InstrumentException {
+        Interceptor interceptor = InterceptorRegistry.getInterceptor(interceptorId);
+
+        try {
+            addInterceptor0(interceptor, interceptorId);
+        } catch (InstrumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InstrumentException("Failed to add interceptor " + interceptor.getClass().getName() + " to " + getLongName(), e);
+        }
+    }
+
+    private GroupInfo resolveGroupInfo(String interceptorClassName, InterceptorGroup group, ExecutionPolicy policy) {
+        Class<? extends Interceptor> interceptorType = pluginContext.injectClass(declaringClass.getClassLoader(), interceptorClassName);
+
+        if (group == null) {
+            Group interceptorGroup = interceptorType.getAnnotation(Group.class);
+
+            if (interceptorGroup != null) {
+                String groupName = interceptorGroup.value();
+                group = pluginContext.getInterceptorGroup(groupName);
+                policy = interceptorGroup.executionPolicy();
+            }
+        }
+
+        if (group == null) {
+            policy = null;
+        } else if (policy == null) {
+            policy = ExecutionPolicy.BOUNDARY;
+        }
+
+        return new GroupInfo(group, policy);
+    }
+
+    private static class GroupInfo {
+        private final InterceptorGroup group;
+        private final ExecutionPolicy policy;
+
+        public GroupInfo(InterceptorGroup group, ExecutionPolicy policy) {
+            this.group = group;
+            this.policy = policy;
+        }
+
+        public InterceptorGroup getGroup() {
+            return group;
+        }
+
+        public ExecutionPolicy getPolicy() {
+            return policy;
+        }
+    }
+
+    // for internal api
+    int addInterceptorInternal(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        if (interceptorClassName == null) {
+            throw new NullPointerException("interceptorClassName must not be null");
+        }
+        return addInterceptor0(interceptorClassName, constructorArgs, group, executionPolicy);
+    }
+
+    private int addInterceptor0(String interceptorClassName, Object[] constructorArgs, InterceptorGroup group, ExecutionPolicy executionPolicy) throws InstrumentException {
+        if (!method.hasBody()) {
+            throw new InstrumentException("Failed to add interceptor " + interceptorClassName + " to " + getLongName() + ". Cause:no method body");
+        }
+        GroupInfo groupInfo = resolveGroupInfo(interceptorClassName, group, executionPolicy);
+        Interceptor interceptor = createInterceptor(interceptorClassName, groupInfo, constructorArgs);
+        int interceptorId = interceptorRegistryBinder.getInterceptorRegistryAdaptor().addInterceptor(interceptor);
+
+        addInterceptor0(interceptor, interceptorId);
+        return interceptorId;
+    }
+
+    private Interceptor createInterceptor(String interceptorClassName, GroupInfo groupInfo, Object[] constructorArgs) {
+        ClassLoader classLoader = declaringClass.getClassLoader();
+
+        AnnotatedInterceptorFactory factory = new AnnotatedInterceptorFactory(pluginContext);
+        Interceptor interceptor = factory.getInterceptor(classLoader, interceptorClassName, constructorArgs, groupInfo.getGroup(), groupInfo.getPolicy(), declaringClass, this);
+
+        return interceptor;
+    }
+
+    private void addInterceptor0(Interceptor interceptor, int interceptorId) throws InstrumentException {
+        if (!method.hasBody()) {
+            throw new InstrumentException("Failed to add interceptor " + interceptor.getClass().getName() + " to " + getLongName() + ". Cause:no method body");
+        }
+        // the interceptor id is only valid in this JVM
+        TransformCacheScope.markUncacheable();
+        final String interceptorField = bindInterceptorField(interceptorId);
+
+        final Class<?> interceptorClass = interceptor.getClass();
+        // target, arguments
+        final Method beforeMethod = findMethod(interceptorClass, "before", parameterTypes.length + 1);
+        // target, arguments, result, throwable
+        final Method afterMethod = findMethod(interceptorClass, "after", parameterTypes.length + 3);
+        if (isDebug) {
+            if (beforeMethod == null) {
+                logger.debug("Skip adding before interceptor because the interceptor doesn't have before method: {}", interceptorClass.getName());
+            }
+            if (afterMethod == null) {
+                logger.debug("Skip adding after interceptor because the interceptor doesn't have after method: {}", interceptorClass.getName());
+            }
+        }
+
+        final int apiId = isApiIdAware(interceptorClass, beforeMethod, afterMethod) ? pluginContext.getTraceContext().cacheApi(getDescriptor()) : -1;
+        final InterceptorDefinition definition = new InterceptorDefinition(interceptorId, interceptorClass, beforeMethod, afterMethod, interceptorField,
+                apiId, declaringClass.getName(), getName(), JavaAssistUtils.getParameterDescription(parameterTypes));
+        declaringClass.getClassEdit().addInterceptor(method.getKey(), definition);
+
+        if (isDebug) {
+            logger.debug("addInterceptor method:{} interceptorId:{} interceptor:{}", getLongName(), interceptorId, interceptorClass.getName());
+        }
+    }
+
+    private boolean isApiIdAware(Class<?> interceptorClass, Method beforeMethod, Method afterMethod) {
+        if (beforeMethod != null && InterceptorDefinition.getType(interceptorClass, beforeMethod) == InterceptorDefinition.Type.API_ID_AWARE) {
+            return true;
+        }
+        return afterMethod != null && InterceptorDefinition.getType(interceptorClass, afterMethod) == InterceptorDefinition.Type.API_ID_AWARE;
+    }
+
+    /**
+     * Adds a static final field holding the interceptor to the declaring class, so the woven code reads a constant
+     * instead of looking up the registry on every call.
+     *
+     * @return field name. null if the interceptor has to be looked up from the registry.
+     */
+    private String bindInterceptorField(int interceptorId) {
+        final ProfilerConfig profilerConfig = pluginContext.getTraceContext().getProfilerConfig();
+        if (profilerConfig == null || !profilerConfig.isInterceptorFieldBindEnable()) {
+            return null;
+        }
+        if (RetransformScope.isRetransform()) {
+            // fields can not be added to a loaded class.
+            return null;
+        }
+        if (declaringClass.isInterface()) {
+            return null;
+        }
+
+        final String fieldName = InvokeCodeGenerator.getInterceptorField(interceptorId);
+        if (declaringClass.getClassEdit().hasField(fieldName)) {
+            // same interceptor added to another method of this class.
+            return fieldName;
+        }
+        final int access = Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL | Opcodes.ACC_SYNTHETIC;
+        declaringClass.getClassEdit().addField(new FieldNode(access, fieldName, INTERCEPTOR_DESC, null, null));
+        declaringClass.getClassEdit().addInterceptorField(fieldName, interceptorId);
+
+        if (isDebug) {
+            logger.debug("bind interceptor field class:{} field:{} interceptorId:{}", declaringClass.getName(), fieldName, interceptorId);
+        }
+        return fieldName;
+    }
+
+    /**
+     * Prefers the arity-specific signature (BeforeInterceptorN, AfterInterceptorN) matching the target method,
+     * so the arguments are passed without allocating an argument array.
+     *
+     * @param arityParameterCount parameter count of the arity-specific signature for the target method
+     */
+    private static Method findMethod(Class<?> interceptorClass, String name, int arityParameterCount) {
+        Method found = null;
+        for (Method m : interceptorClass.getMethods()) {
+            if (!m.getName().equals(name)) {
+                continue;
+            }
+            final boolean argumentArray = InvokeCodeGenerator.isArgumentArrayMethod(m);
+            if (!argumentArray && m.getParameterTypes().length == arityParameterCount) {
+                return m;
+            }
+            if (found == null || (argumentArray && !InvokeCodeGenerator.isArgumentArrayMethod(found))) {
+                found = m;
+            }
+        }
+
+        return found;
+    }
+
+    private String getLongName() {
+        return declaringClass.getName() + "." + getName() + JavaAssistUtils.getParameterDescription(parameterTypes);
+    }
+}
@@ -65,7 +65,11 @@ public class JarProfilerPluginClassInjector implements ClassInjector {
     
     public static JarProfilerPluginClassInjector of(Instrumentation instrumentation, InstrumentClassPool classPool, URL pluginJar) {
         try {
-            JarFile jarFile = new JarFile(new File(pluginJar.toURI()));
+            // the JarFile is opened on the first injection. most plugins never inject a class.
+            final File jarFile = new File(pluginJar.toURI());
+            if (!jarFile.isFile()) {
+                throw new IOException("not a file. " + jarFile);
+            }
             return new JarProfilerPluginClassInjector(instrumentation, classPool, pluginJar, jarFile);
         } catch (Exception e) {
             logger.warn("Failed to get JarFile {}", pluginJar, e);
@@ -78,10 +82,10 @@ public class JarProfilerPluginClassInjector implements ClassInjector {
     private final AtomicBoolean injectedToRoot = new AtomicBoolean(false);
     private final URL pluginJarURL;
     private final String pluginJarURLExternalForm;
-    private final JarFile pluginJar;
+    private final File pluginJar;
     
     
-    private JarProfilerPluginClassInjector(Instrumentation instrumentation, InstrumentClassPool classPool, URL pluginJarURL, JarFile pluginJar) {
+    private JarProfilerPluginClassInjector(Instrumentation instrumentation, InstrumentClassPool classPool, URL pluginJarURL, File pluginJar) {
         this.instrumentation = instrumentation;
         this.classPool = classPool;
         this.pluginJarURL = pluginJarURL;
@@ -106,10 +110,17 @@ public class JarProfilerPluginClassInjector implements ClassInjector {
         }
     }
 
-    private Class<?> injectToBootstrapClassLoader(String className) throws IllegalArgumentException, IllegalAccessException, InvocationTargetException, ClassNotFoundException {
+    private Class<?> injectToBootstrapClassLoader(String className) throws IOException, IllegalArgumentException, IllegalAccessException, InvocationTargetException, ClassNotFoundException {
         if (injectedToRoot.compareAndSet(false, true)) {
-            instrumentation.appendToBootstrapClassLoaderSearch(pluginJar);
-            classPool.appendToBootstrapClassPath(pluginJar.getName());
+            final JarFile jarFile;
+            try {
+                jarFile = new JarFile(pluginJar);
+            } catch (IOException e) {
+                injectedToRoot.set(false);
+                throw e;
+            }
+            instrumentation.appendToBootstrapClassLoaderSearch(jarFile);
+            classPool.appendToBootstrapClassPath(pluginJar.getPath());
         }
         
         return Class.forName(className, false, null);
@@ -142,7 +153,7 @@ public class JarProfilerPluginClassInjector implements ClassInjector {
         ClassPool pool = new ClassPool();
         
         pool.appendClassPath(new LoaderClassPath(classLoader));
-        pool.appendClassPath(pluginJar.getName());
+        pool.appendClassPath(pluginJar.getPath());
         
         return injectToPlainClassLoader(pool, classLoader, className);
     }
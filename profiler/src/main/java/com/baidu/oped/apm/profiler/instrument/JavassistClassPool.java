@@ -33,7 +33,6 @@ import com.baidu.oped.apm.bootstrap.instrument.NotFoundInstrumentException;
 import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
 import com.baidu.oped.apm.exception.ApmException;
 import com.baidu.oped.apm.profiler.instrument.classpool.IsolateMultipleClassPool;
-import com.baidu.oped.apm.profiler.instrument.classpool.MultipleClassPool;
 import com.baidu.oped.apm.profiler.instrument.classpool.NamedClassPool;
 import com.baidu.oped.apm.profiler.interceptor.registry.InterceptorRegistryBinder;
 
@@ -46,13 +45,21 @@ public class JavassistClassPool implements InstrumentClassPool {
     private final boolean isInfo = logger.isInfoEnabled();
     private final boolean isDebug = logger.isDebugEnabled();
 
-    private final MultipleClassPool childClassPool;
+    private final IsolateMultipleClassPool childClassPool;
     private final InterceptorRegistryBinder interceptorRegistryBinder;
 
     private final IsolateMultipleClassPool.EventListener classPoolEventListener =  new IsolateMultipleClassPool.EventListener() {
         @Override
         public void onCreateClassPool(ClassLoader classLoader, NamedClassPool classPool) {
             dumpClassLoaderLibList(classLoader, classPool);
+            dumpClassPoolStatistics();
+        }
+
+        private void dumpClassPoolStatistics() {
+            if (isDebug) {
+                logger.debug("classPool count:{} cachedClass:{} evictedClass:{} throwawayClassLoader:{}",
+                        getClassPoolCount(), getCachedClassCount(), getEvictedClassCount(), getThrowawayClassLoaderCount());
+            }
         }
 
         private void dumpClassLoaderLibList(ClassLoader classLoader, NamedClassPool classPool) {
@@ -75,11 +82,15 @@ public class JavassistClassPool implements InstrumentClassPool {
     };
 
     public JavassistClassPool(InterceptorRegistryBinder interceptorRegistryBinder, final String bootStrapJar) {
+        this(interceptorRegistryBinder, bootStrapJar, NamedClassPool.UNLIMITED_CACHE_SIZE);
+    }
+
+    public JavassistClassPool(InterceptorRegistryBinder interceptorRegistryBinder, final String bootStrapJar, int maxCachedClassSize) {
         if (interceptorRegistryBinder == null) {
             throw new NullPointerException("interceptorRegistryBinder must not be null");
         }
 
-        this.childClassPool = new IsolateMultipleClassPool(classPoolEventListener, new IsolateMultipleClassPool.ClassPoolHandler() {
+        this.childClassPool = new IsolateMultipleClassPool(IsolateMultipleClassPool.DEFAULT_CHILD_FIRST_LOOKUP, classPoolEventListener, new IsolateMultipleClassPool.ClassPoolHandler() {
             @Override
             public void handleClassPool(NamedClassPool systemClassPool) {
                 try {
@@ -93,7 +104,7 @@ public class JavassistClassPool implements InstrumentClassPool {
                 // append apm classLoader
                 systemClassPool.appendClassPath(new ClassClassPath(this.getClass()));
             }
-        });
+        }, maxCachedClassSize);
         
         this.interceptorRegistryBinder = interceptorRegistryBinder;
     }
@@ -122,6 +133,22 @@ public class JavassistClassPool implements InstrumentClassPool {
         return childClassPool.getClassPool(classLoader);
     }
 
+    public int getClassPoolCount() {
+        return childClassPool.size();
+    }
+
+    public int getCachedClassCount() {
+        return childClassPool.getCachedClassCount();
+    }
+
+    public long getEvictedClassCount() {
+        return childClassPool.getEvictedClassCount();
+    }
+
+    public long getThrowawayClassLoaderCount() {
+        return childClassPool.getThrowawayClassLoaderCount();
+    }
+
     public boolean hasClass(String javassistClassName, ClassPool classPool) {
         URL url = classPool.find(javassistClassName);
         if (url == null) {
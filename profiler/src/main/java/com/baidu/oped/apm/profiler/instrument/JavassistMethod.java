@@ -22,9 +22,11 @@ import javassist.CannotCompileException;
 import javassist.CtBehavior;
 import javassist.CtClass;
 import javassist.CtConstructor;
+import javassist.CtField;
 import javassist.CtMethod;
 import javassist.Modifier;
 import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
 import javassist.bytecode.BadBytecode;
 import javassist.bytecode.Bytecode;
 import javassist.bytecode.CodeAttribute;
@@ -37,6 +39,7 @@ import javassist.compiler.Javac;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
 import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
 import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
 import com.baidu.oped.apm.bootstrap.instrument.InstrumentException;
@@ -286,6 +289,10 @@ public class JavassistMethod implements InstrumentMethod {
     }
     
     private void addInterceptor0(Interceptor interceptor, int interceptorId) throws CannotCompileException, NotFoundException {
+        // the interceptor id is only valid in this JVM
+        TransformCacheScope.markUncacheable();
+        final String interceptorField = bindInterceptorField(interceptorId);
+
         StringBuilder initVars = new StringBuilder();
         
         String interceptorInstanceVar = InvokeCodeGenerator.getInterceptorVar(interceptorId);
@@ -297,29 +304,90 @@ public class JavassistMethod implements InstrumentMethod {
 
         boolean localVarsInitialized = false;
         
-        int offset = addBeforeInterceptor(interceptor, interceptorId, originalCodeOffset);
+        int offset = addBeforeInterceptor(interceptor, interceptorId, interceptorField, originalCodeOffset);
         
         if (offset != -1) {
             localVarsInitialized = true;
             originalCodeOffset = offset;
         }
 
-        addAfterInterceptor(interceptor, interceptorId, localVarsInitialized, originalCodeOffset);
+        addAfterInterceptor(interceptor, interceptorId, interceptorField, localVarsInitialized, originalCodeOffset);
     }
-    
-    private static Method findMethod(Class<?> interceptorClass, String name) {
+
+    /**
+     * Adds a static final field holding the interceptor to the declaring class, so the woven code reads a constant
+     * instead of looking up the registry on every call.
+     *
+     * @return field name. null if the interceptor has to be looked up from the registry.
+     */
+    private String bindInterceptorField(int interceptorId) throws CannotCompileException, NotFoundException {
+        final ProfilerConfig profilerConfig = pluginContext.getTraceContext().getProfilerConfig();
+        if (profilerConfig == null || !profilerConfig.isInterceptorFieldBindEnable()) {
+            return null;
+        }
+        if (RetransformScope.isRetransform()) {
+            // fields can not be added to a loaded class.
+            return null;
+        }
+        final CtClass ctClass = behavior.getDeclaringClass();
+        if (ctClass.isInterface()) {
+            return null;
+        }
+
+        final String fieldName = InvokeCodeGenerator.getInterceptorField(interceptorId);
+        if (hasDeclaredField(ctClass, fieldName)) {
+            // same interceptor added to another method of this class.
+            return fieldName;
+        }
+        final CtField field = new CtField(ctClass.getClassPool().get(Interceptor.class.getName()), fieldName, ctClass);
+        field.setModifiers(Modifier.PRIVATE | Modifier.STATIC | Modifier.FINAL);
+        field.getFieldInfo().setAccessFlags(field.getFieldInfo().getAccessFlags() | AccessFlag.SYNTHETIC);
+        final String initializer = InterceptorRegistry.class.getName() + ".getInterceptor(" + interceptorId + ")";
+        ctClass.addField(field, CtField.Initializer.byExpr(initializer));
+
+        if (isDebug) {
+            logger.debug("bind interceptor field class:{} field:{} = {}", ctClass.getName(), fieldName, initializer);
+        }
+        return fieldName;
+    }
+
+    private boolean hasDeclaredField(CtClass ctClass, String fieldName) {
+        try {
+            ctClass.getDeclaredField(fieldName);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prefers the arity-specific signature (BeforeInterceptorN, AfterInterceptorN) matching the target method,
+     * so the arguments are passed without allocating an argument array.
+     *
+     * @param arityParameterCount parameter count of the arity-specific signature for the target method
+     */
+    private static Method findMethod(Class<?> interceptorClass, String name, int arityParameterCount) {
+        Method found = null;
         for (Method m : interceptorClass.getMethods()) {
-            if (m.getName().equals(name)) {
+            if (!m.getName().equals(name)) {
+                continue;
+            }
+            final boolean argumentArray = InvokeCodeGenerator.isArgumentArrayMethod(m);
+            if (!argumentArray && m.getParameterTypes().length == arityParameterCount) {
                 return m;
             }
+            if (found == null || (argumentArray && !InvokeCodeGenerator.isArgumentArrayMethod(found))) {
+                found = m;
+            }
         }
 
-        return null;
+        return found;
     }
 
-    private void addAfterInterceptor(Interceptor interceptor, int interceptorId, boolean localVarsInitialized, int originalCodeOffset) throws NotFoundException, CannotCompileException {
+    private void addAfterInterceptor(Interceptor interceptor, int interceptorId, String interceptorField, boolean localVarsInitialized, int originalCodeOffset) throws NotFoundException, CannotCompileException {
         Class<?> interceptorClass = interceptor.getClass();
-        Method interceptorMethod = findMethod(interceptorClass, "after");
+        // target, arguments, result, throwable
+        Method interceptorMethod = findMethod(interceptorClass, "after", getParameterTypes().length + 3);
 
         if (interceptorMethod == null) {
             if (isDebug) {
@@ -329,7 +397,7 @@ public class JavassistMethod implements InstrumentMethod {
         }
         
         
-        InvokeAfterCodeGenerator catchGenerator = new InvokeAfterCodeGenerator(interceptorId, interceptorClass, interceptorMethod, declaringClass, this, pluginContext.getTraceContext(), localVarsInitialized, true);
+        InvokeAfterCodeGenerator catchGenerator = new InvokeAfterCodeGenerator(interceptorId, interceptorClass, interceptorMethod, declaringClass, this, pluginContext.getTraceContext(), localVarsInitialized, true, interceptorField);
         String catchCode = catchGenerator.generate();
         
         if (isDebug) {
@@ -340,7 +408,7 @@ public class JavassistMethod implements InstrumentMethod {
         insertCatch(originalCodeOffset, catchCode, throwable, "$e");
 
         
-        InvokeAfterCodeGenerator afterGenerator = new InvokeAfterCodeGenerator(interceptorId, interceptorClass, interceptorMethod, declaringClass, this, pluginContext.getTraceContext(), localVarsInitialized, false);
+        InvokeAfterCodeGenerator afterGenerator = new InvokeAfterCodeGenerator(interceptorId, interceptorClass, interceptorMethod, declaringClass, this, pluginContext.getTraceContext(), localVarsInitialized, false, interceptorField);
         final String afterCode = afterGenerator.generate();
 
         if (isDebug) {
@@ -350,9 +418,10 @@ public class JavassistMethod implements InstrumentMethod {
         behavior.insertAfter(afterCode);
     }
 
-    private int addBeforeInterceptor(Interceptor interceptor, int interceptorId, int pos) throws CannotCompileException, NotFoundException {
+    private int addBeforeInterceptor(Interceptor interceptor, int interceptorId, String interceptorField, int pos) throws CannotCompileException, NotFoundException {
         Class<?> interceptorClass = interceptor.getClass();
-        Method interceptorMethod = findMethod(interceptorClass, "before");
+        // target, arguments
+        Method interceptorMethod = findMethod(interceptorClass, "before", getParameterTypes().length + 1);
 
         if (interceptorMethod == null) {
             if (isDebug) {
@@ -361,7 +430,7 @@ public class JavassistMethod implements InstrumentMethod {
             return -1;
         }
 
-        InvokeBeforeCodeGenerator generator = new InvokeBeforeCodeGenerator(interceptorId, interceptorClass, interceptorMethod, declaringClass, this, pluginContext.getTraceContext());
+        InvokeBeforeCodeGenerator generator = new InvokeBeforeCodeGenerator(interceptorId, interceptorClass, interceptorMethod, declaringClass, this, pluginContext.getTraceContext(), interceptorField);
         String beforeCode = generator.generate();
 
         if (isDebug) {
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument;
+
+/**
+ * Marks the current thread while a class which is already loaded is being transformed again.<br>
+ * The JVM rejects retransformed class files that change the class schema, so no field or method may be added then.
+ */
+public final class RetransformScope {
+
+    private static final ThreadLocal<Boolean> RETRANSFORM = new ThreadLocal<Boolean>();
+
+    private RetransformScope() {
+    }
+
+    public static void enter() {
+        RETRANSFORM.set(Boolean.TRUE);
+    }
+
+    public static void leave() {
+        RETRANSFORM.remove();
+    }
+
+    public static boolean isRetransform() {
+        return RETRANSFORM.get() != null;
+    }
+}
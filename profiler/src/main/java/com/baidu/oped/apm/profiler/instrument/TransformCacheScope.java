@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tracks what the transformation running on the current thread did besides rewriting the class file.<br>
+ * Plugin classes injected into the target class loader are recorded, so a cache hit can inject them again.
+ * Registering an interceptor or requesting another transformation changes the agent state in a way that can not be
+ * replayed, so the resulting class file is only valid in this JVM and must not be reused from a persistent cache.
+ */
+public final class TransformCacheScope {
+
+    private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<Scope>();
+
+    private TransformCacheScope() {
+    }
+
+    /**
+     * @return the enclosing scope. a class loaded during a transformation is transformed on the same thread.
+     */
+    public static Object enter() {
+        final Scope before = SCOPE.get();
+        SCOPE.set(new Scope());
+        return before;
+    }
+
+    /**
+     * @return the classes injected by the transformation in injection order, or null if the transformation can not be cached
+     */
+    public static List<String> leave(Object before) {
+        final Scope scope = SCOPE.get();
+        if (before == null) {
+            SCOPE.remove();
+        } else {
+            SCOPE.set((Scope) before);
+        }
+        if (scope == null || !scope.cacheable) {
+            return null;
+        }
+        if (scope.injectedClasses == null) {
+            return Collections.emptyList();
+        }
+        return scope.injectedClasses;
+    }
+
+    public static void markUncacheable() {
+        final Scope scope = SCOPE.get();
+        if (scope != null) {
+            scope.cacheable = false;
+        }
+    }
+
+    public static void recordInjectedClass(String className) {
+        final Scope scope = SCOPE.get();
+        if (scope == null) {
+            return;
+        }
+        if (scope.injectedClasses == null) {
+            scope.injectedClasses = new ArrayList<String>();
+        }
+        if (!scope.injectedClasses.contains(className)) {
+            scope.injectedClasses.add(className);
+        }
+    }
+
+    private static final class Scope {
+        private boolean cacheable = true;
+        private List<String> injectedClasses;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.AnnotationNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.bootstrap.instrument.aspect.Aspect;
+import com.baidu.oped.apm.bootstrap.instrument.aspect.JointPoint;
+import com.baidu.oped.apm.bootstrap.instrument.aspect.PointCut;
+
+/**
+ * Bytecode counterpart of AspectWeaverClass.
+ * The original @PointCut methods are renamed and made private, the advice bodies take their place,
+ * and the @JointPoint calls of the advice invoke the renamed original methods.
+ */
+public class AspectWeaver {
+
+    private static final String PREFIX = "__";
+    private static final String POSTFIX = "_$$apm";
+
+    private static final String ASPECT = Type.getDescriptor(Aspect.class);
+    private static final String POINT_CUT = Type.getDescriptor(PointCut.class);
+    private static final String JOINT_POINT = Type.getDescriptor(JointPoint.class);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    public void weaving(ClassMetadata sourceClass, byte[] adviceClassFile, List<String> adviceSuperClasses, ClassEdit edit) {
+        final ClassNode adviceClass = new ClassNode();
+        new ClassReader(adviceClassFile).accept(adviceClass, ClassReader.SKIP_FRAMES);
+        if (logger.isInfoEnabled()) {
+            logger.info("weaving sourceClass:{} advice:{}", sourceClass.getName(), adviceClass.name);
+        }
+        if (!hasAnnotation(adviceClass.visibleAnnotations, adviceClass.invisibleAnnotations, ASPECT)) {
+            throw new IllegalArgumentException("@Aspect not found. adviceClass:" + adviceClass.name);
+        }
+        // advice class hierarchy check
+        if (!adviceSuperClasses.contains(sourceClass.getName()) && !"java/lang/Object".equals(adviceClass.superName)) {
+            throw new IllegalArgumentException("invalid class hierarchy. " + sourceClass.getName() + " adviceSuperClass:" + adviceClass.superName);
+        }
+
+        final List<MethodNode> pointCutList = new ArrayList<MethodNode>();
+        final List<MethodNode> jointPointList = new ArrayList<MethodNode>();
+        final List<MethodNode> utilMethodList = new ArrayList<MethodNode>();
+        for (MethodNode method : adviceClass.methods) {
+            if (method.name.startsWith("<")) {
+                continue;
+            }
+            if (hasAnnotation(method.visibleAnnotations, method.invisibleAnnotations, POINT_CUT)) {
+                pointCutList.add(method);
+            } else if (hasAnnotation(method.visibleAnnotations, method.invisibleAnnotations, JOINT_POINT)) {
+                jointPointList.add(method);
+            } else {
+                if ((method.access & Opcodes.ACC_PRIVATE) == 0) {
+                    throw new IllegalArgumentException("non private UtilMethod unsupported. method:" + method.name + method.desc);
+                }
+                utilMethodList.add(method);
+            }
+        }
+
+        for (MethodNode utilMethod : utilMethodList) {
+            final MethodNode copy = copyMethod(utilMethod, utilMethod.access, utilMethod.signature, utilMethod.exceptions);
+            remap(copy, adviceClass.name, sourceClass.getName());
+            edit.addMethod(copy);
+        }
+
+        for (MethodNode adviceMethod : pointCutList) {
+            final ClassMetadata.MethodMetadata sourceMethod = findSourceMethod(sourceClass, adviceMethod);
+            if (logger.isInfoEnabled()) {
+                logger.info("weaving method:{}{}", sourceMethod.getName(), sourceMethod.getDesc());
+            }
+            final String replacedName = replaceMethodName(sourceMethod.getName());
+            edit.renameMethod(sourceMethod.getKey(), replacedName);
+
+            final List<String> exceptions = sourceMethod.getExceptions() == null ? null : Arrays.asList(sourceMethod.getExceptions());
+            final MethodNode body = copyMethod(adviceMethod, sourceMethod.getAccess(), sourceMethod.getSignature(), exceptions);
+            replaceJointPoint(body, jointPointList, sourceClass.getName(), sourceMethod, replacedName);
+            remap(body, adviceClass.name, sourceClass.getName());
+            edit.addMethod(body);
+        }
+    }
+
+    private ClassMetadata.MethodMetadata findSourceMethod(ClassMetadata sourceClass, MethodNode adviceMethod) {
+        final String parameterDesc = adviceMethod.desc.substring(0, adviceMethod.desc.indexOf(')') + 1);
+        for (ClassMetadata.MethodMetadata method : sourceClass.getMethods()) {
+            if (!method.getName().equals(adviceMethod.name) || !method.getDesc().startsWith(parameterDesc)) {
+                continue;
+            }
+            if (!method.getDesc().equals(adviceMethod.desc)) {
+                throw new IllegalArgumentException("Signature miss match. method:" + adviceMethod.name + " source:" + method.getDesc() + " advice:" + adviceMethod.desc);
+            }
+            return method;
+        }
+        throw new IllegalArgumentException(adviceMethod.name + adviceMethod.desc + " is not found in " + sourceClass.getName());
+    }
+
+    private MethodNode copyMethod(MethodNode method, int access, String signature, List<String> exceptions) {
+        final String[] exceptionArray = exceptions == null ? null : exceptions.toArray(new String[exceptions.size()]);
+        final MethodNode copy = new MethodNode(access, method.name, method.desc, signature, exceptionArray);
+        method.accept(copy);
+        copy.visibleAnnotations = null;
+        copy.invisibleAnnotations = null;
+        copy.visibleParameterAnnotations = null;
+        copy.invisibleParameterAnnotations = null;
+        return copy;
+    }
+
+    private void replaceJointPoint(MethodNode body, List<MethodNode> jointPointList, String sourceClassName, ClassMetadata.MethodMetadata sourceMethod, String replacedName) {
+        final ListIterator<AbstractInsnNode> iterator = body.instructions.iterator();
+        while (iterator.hasNext()) {
+            final AbstractInsnNode insn = iterator.next();
+            if (!(insn instanceof MethodInsnNode)) {
+                continue;
+            }
+            final MethodInsnNode methodInsn = (MethodInsnNode) insn;
+            if (!isJointPoint(jointPointList, methodInsn.name, methodInsn.desc)) {
+                continue;
+            }
+            if (!methodInsn.desc.equals(sourceMethod.getDesc())) {
+                throw new IllegalArgumentException("Signature miss match. method:" + sourceMethod.getName() + " source:" + sourceMethod.getDesc() + " jointPoint:" + methodInsn.desc);
+            }
+            final int opcode = sourceMethod.isStatic() ? Opcodes.INVOKESTATIC : Opcodes.INVOKESPECIAL;
+            iterator.set(new MethodInsnNode(opcode, sourceClassName, replacedName, sourceMethod.getDesc(), false));
+        }
+    }
+
+    private boolean isJointPoint(List<MethodNode> jointPointList, String name, String desc) {
+        for (MethodNode method : jointPointList) {
+            if (method.name.equals(name) && method.desc.equals(desc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces references to the advice class with the source class.
+     */
+    private void remap(MethodNode method, String adviceClassName, String sourceClassName) {
+        final String adviceDesc = Type.getObjectType(adviceClassName).getDescriptor();
+        final String sourceDesc = Type.getObjectType(sourceClassName).getDescriptor();
+
+        final ListIterator<AbstractInsnNode> iterator = method.instructions.iterator();
+        while (iterator.hasNext()) {
+            final AbstractInsnNode insn = iterator.next();
+            if (insn instanceof MethodInsnNode) {
+                final MethodInsnNode methodInsn = (MethodInsnNode) insn;
+                if (methodInsn.owner.equals(adviceClassName)) {
+                    methodInsn.owner = sourceClassName;
+                }
+            } else if (insn instanceof FieldInsnNode) {
+                final FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+                if (fieldInsn.owner.equals(adviceClassName)) {
+                    fieldInsn.owner = sourceClassName;
+                }
+            } else if (insn instanceof TypeInsnNode) {
+                final TypeInsnNode typeInsn = (TypeInsnNode) insn;
+                if (typeInsn.desc.equals(adviceClassName)) {
+                    typeInsn.desc = sourceClassName;
+                }
+            } else if (insn instanceof LdcInsnNode) {
+                final LdcInsnNode ldcInsn = (LdcInsnNode) insn;
+                if (ldcInsn.cst instanceof Type && ((Type) ldcInsn.cst).getInternalName().equals(adviceClassName)) {
+                    ldcInsn.cst = Type.getObjectType(sourceClassName);
+                }
+            }
+        }
+
+        if (method.localVariables != null) {
+            for (LocalVariableNode node : method.localVariables) {
+                if (node.desc.equals(adviceDesc)) {
+                    node.desc = sourceDesc;
+                }
+            }
+        }
+    }
+
+    private static boolean hasAnnotation(List<AnnotationNode> visibleAnnotations, List<AnnotationNode> invisibleAnnotations, String annotationDesc) {
+        return containsAnnotation(visibleAnnotations, annotationDesc) || containsAnnotation(invisibleAnnotations, annotationDesc);
+    }
+
+    private static boolean containsAnnotation(List<AnnotationNode> annotations, String annotationDesc) {
+        if (annotations == null) {
+            return false;
+        }
+        for (AnnotationNode annotation : annotations) {
+            if (annotation.desc.equals(annotationDesc)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static String replaceMethodName(String methodName) {
+        return PREFIX + methodName + POSTFIX;
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Changes requested on a class, applied in a single pass by {@link ClassEditVisitor}.
+ */
+public class ClassEdit {
+
+    private final List<String> interfaces = new ArrayList<String>();
+    private final List<FieldNode> fields = new ArrayList<FieldNode>();
+    private final List<FieldInitializer> fieldInitializers = new ArrayList<FieldInitializer>();
+    private final Map<String, Integer> interceptorFields = new LinkedHashMap<String, Integer>();
+    private final List<MethodNode> methods = new ArrayList<MethodNode>();
+    private final Map<String, String> renamedMethods = new LinkedHashMap<String, String>();
+    private final Map<String, List<InterceptorDefinition>> interceptors = new LinkedHashMap<String, List<InterceptorDefinition>>();
+
+    public boolean isModified() {
+        return !interfaces.isEmpty() || !fields.isEmpty() || !methods.isEmpty() || !renamedMethods.isEmpty() || !interceptors.isEmpty();
+    }
+
+    public void addInterface(String internalName) {
+        if (!interfaces.contains(internalName)) {
+            interfaces.add(internalName);
+        }
+    }
+
+    public List<String> getInterfaces() {
+        return interfaces;
+    }
+
+    public void addField(FieldNode field) {
+        fields.add(field);
+    }
+
+    public boolean hasField(String name) {
+        for (FieldNode field : fields) {
+            if (field.name.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<FieldNode> getFields() {
+        return fields;
+    }
+
+    /**
+     * The field is assigned a new instance of the given type in every constructor calling super().
+     * The instance is created with the constructor taking one int per argument.
+     */
+    public void addFieldInitializer(String name, String desc, String typeInternalName, int... arguments) {
+        fieldInitializers.add(new FieldInitializer(name, desc, typeInternalName, arguments));
+    }
+
+    public List<FieldInitializer> getFieldInitializers() {
+        return fieldInitializers;
+    }
+
+    /**
+     * The static field is assigned the interceptor from the registry in the static initializer.
+     */
+    public void addInterceptorField(String name, int interceptorId) {
+        interceptorFields.put(name, interceptorId);
+    }
+
+    public Map<String, Integer> getInterceptorFields() {
+        return interceptorFields;
+    }
+
+    public void addMethod(MethodNode method) {
+        methods.add(method);
+    }
+
+    public List<MethodNode> getMethods() {
+        return methods;
+    }
+
+    /**
+     * The original method is renamed and made private. The body is replaced with a method added by {@link #addMethod(MethodNode)}.
+     */
+    public void renameMethod(String methodKey, String newName) {
+        renamedMethods.put(methodKey, newName);
+    }
+
+    public String getRenamedMethod(String methodKey) {
+        return renamedMethods.get(methodKey);
+    }
+
+    /**
+     * Interceptors of a method are nested in the order of addition. The last one is the outermost.
+     */
+    public void addInterceptor(String methodKey, InterceptorDefinition interceptor) {
+        List<InterceptorDefinition> list = interceptors.get(methodKey);
+        if (list == null) {
+            list = new ArrayList<InterceptorDefinition>();
+            interceptors.put(methodKey, list);
+        }
+        list.add(interceptor);
+    }
+
+    public List<InterceptorDefinition> getInterceptors(String methodKey) {
+        final List<InterceptorDefinition> list = interceptors.get(methodKey);
+        if (list == null) {
+            return Collections.emptyList();
+        }
+        return list;
+    }
+
+    public static class FieldInitializer {
+        private final String name;
+        private final String desc;
+        private final String typeInternalName;
+        private final int[] arguments;
+
+        public FieldInitializer(String name, String desc, String typeInternalName, int[] arguments) {
+            this.name = name;
+            this.desc = desc;
+            this.typeInternalName = typeInternalName;
+            this.arguments = arguments == null ? new int[0] : arguments;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+
+        public String getTypeInternalName() {
+            return typeInternalName;
+        }
+
+        public int[] getArguments() {
+            return arguments;
+        }
+
+        public String getConstructorDesc() {
+            final StringBuilder desc = new StringBuilder(arguments.length + 3);
+            desc.append('(');
+            for (int i = 0; i < arguments.length; i++) {
+                desc.append('I');
+            }
+            desc.append(")V");
+            return desc.toString();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.TryCatchBlockSorter;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Applies a {@link ClassEdit} while the class file is streamed from a ClassReader to a ClassWriter.
+ * Methods without changes are passed through untouched.
+ */
+public class ClassEditVisitor extends ClassVisitor {
+
+    private final ClassEdit edit;
+    private String className;
+    private boolean staticInitializerVisited = false;
+
+    public ClassEditVisitor(ClassVisitor cv, ClassEdit edit) {
+        super(ClassMetadata.ASM_API, cv);
+        if (edit == null) {
+            throw new NullPointerException("edit must not be null");
+        }
+        this.edit = edit;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.className = name;
+        super.visit(version, access, name, signature, superName, mergeInterfaces(interfaces));
+    }
+
+    private String[] mergeInterfaces(String[] interfaces) {
+        final List<String> addedInterfaces = edit.getInterfaces();
+        if (addedInterfaces.isEmpty()) {
+            return interfaces;
+        }
+        final List<String> merged = new ArrayList<String>();
+        if (interfaces != null) {
+            merged.addAll(Arrays.asList(interfaces));
+        }
+        for (String addedInterface : addedInterfaces) {
+            if (!merged.contains(addedInterface)) {
+                merged.add(addedInterface);
+            }
+        }
+        return merged.toArray(new String[merged.size()]);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        final String renamed = edit.getRenamedMethod(name + desc);
+        if (renamed != null) {
+            final int privateAccess = (access & ~(Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED)) | Opcodes.ACC_PRIVATE;
+            return super.visitMethod(privateAccess, renamed, desc, signature, exceptions);
+        }
+        if ("<clinit>".equals(name)) {
+            staticInitializerVisited = true;
+        }
+        final MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        if (mv == null) {
+            return null;
+        }
+        return editMethod(mv, access, name, desc);
+    }
+
+    private MethodVisitor editMethod(MethodVisitor mv, int access, String name, String desc) {
+        final List<InterceptorDefinition> interceptors = edit.getInterceptors(name + desc);
+        final boolean fieldInitializer = "<init>".equals(name) && !edit.getFieldInitializers().isEmpty();
+        final boolean interceptorField = "<clinit>".equals(name) && !edit.getInterceptorFields().isEmpty();
+        if (interceptors.isEmpty() && !fieldInitializer && !interceptorField) {
+            return mv;
+        }
+        if (!interceptors.isEmpty()) {
+            // handlers of the interceptors are visited before the ones of the original code
+            mv = new TryCatchBlockSorter(mv, access, name, desc, null, null);
+        }
+        return new MethodEditAdapter(mv, className, access, name, desc, interceptors, edit.getFieldInitializers(), edit.getInterceptorFields());
+    }
+
+    @Override
+    public void visitEnd() {
+        for (FieldNode field : edit.getFields()) {
+            field.accept(cv);
+        }
+
+        if (!staticInitializerVisited && !edit.getInterceptorFields().isEmpty()) {
+            final MethodVisitor mv = cv.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+            mv.visitCode();
+            MethodEditAdapter.emitInterceptorFields(mv, className, edit.getInterceptorFields());
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        for (MethodNode method : edit.getMethods()) {
+            final String[] exceptions = method.exceptions == null ? null : method.exceptions.toArray(new String[method.exceptions.size()]);
+            final MethodVisitor mv = cv.visitMethod(method.access, method.name, method.desc, method.signature, exceptions);
+            if (mv != null) {
+                method.accept(editMethod(mv, method.access, method.name, method.desc));
+            }
+        }
+
+        super.visitEnd();
+    }
+}
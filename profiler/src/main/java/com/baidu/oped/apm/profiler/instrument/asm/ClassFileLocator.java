@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads class files as resources of a class loader, without loading or caching the classes.
+ * Jars appended to the bootstrap class loader are searched as well, because their entries are not
+ * visible through {@link ClassLoader#getSystemResource(String)}.
+ */
+public class ClassFileLocator {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final List<JarFile> bootstrapJars = new CopyOnWriteArrayList<JarFile>();
+
+    public void appendBootstrapJar(String jar) {
+        if (jar == null) {
+            throw new NullPointerException("jar must not be null");
+        }
+        try {
+            bootstrapJars.add(new JarFile(jar));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid jar:" + jar + " Caused:" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param classLoader null for the bootstrap class loader
+     * @param classInternalName e.g. java/lang/String
+     * @return null if the class file is not found
+     */
+    public byte[] getClassFile(ClassLoader classLoader, String classInternalName) {
+        final String resourceName = toResourceName(classInternalName);
+        InputStream in = null;
+        try {
+            in = openStream(classLoader, resourceName);
+            if (in == null) {
+                return null;
+            }
+            return readFully(in);
+        } catch (IOException e) {
+            logger.info("class file read fail. class:{} Caused:{}", classInternalName, e.getMessage(), e);
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    public boolean exists(ClassLoader classLoader, String classInternalName) {
+        final String resourceName = toResourceName(classInternalName);
+        if (classLoader != null) {
+            return classLoader.getResource(resourceName) != null;
+        }
+        if (ClassLoader.getSystemResource(resourceName) != null) {
+            return true;
+        }
+        return findBootstrapJarEntry(resourceName) != null;
+    }
+
+    private InputStream openStream(ClassLoader classLoader, String resourceName) throws IOException {
+        if (classLoader != null) {
+            return classLoader.getResourceAsStream(resourceName);
+        }
+        final InputStream in = ClassLoader.getSystemResourceAsStream(resourceName);
+        if (in != null) {
+            return in;
+        }
+        for (JarFile jar : bootstrapJars) {
+            final JarEntry entry = jar.getJarEntry(resourceName);
+            if (entry != null) {
+                return jar.getInputStream(entry);
+            }
+        }
+        return null;
+    }
+
+    private JarEntry findBootstrapJarEntry(String resourceName) {
+        for (JarFile jar : bootstrapJars) {
+            final JarEntry entry = jar.getJarEntry(resourceName);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static String toResourceName(String className) {
+        if (className == null) {
+            throw new NullPointerException("className must not be null");
+        }
+        return className.replace('.', '/') + ".class";
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static void close(InputStream in) {
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+                // skip
+            }
+        }
+    }
+}
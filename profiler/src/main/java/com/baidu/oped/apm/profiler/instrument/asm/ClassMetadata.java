@@ -0,0 +1,354 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * Class level structure of a class file. Method bodies are not parsed.
+ */
+public class ClassMetadata {
+
+    public static final int ASM_API = Opcodes.ASM5;
+
+    private final int version;
+    private final int access;
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+
+    private String enclosingMethodName;
+    private String enclosingMethodDesc;
+    private final List<String> innerClasses = new ArrayList<String>();
+    private final List<FieldMetadata> fields = new ArrayList<FieldMetadata>();
+    private final List<MethodMetadata> methods = new ArrayList<MethodMetadata>();
+
+    private ClassMetadata(int version, int access, String name, String superName, String[] interfaces) {
+        this.version = version;
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces == null ? new String[0] : interfaces;
+    }
+
+    public static ClassMetadata read(byte[] classFileBuffer) {
+        if (classFileBuffer == null) {
+            throw new NullPointerException("classFileBuffer must not be null");
+        }
+        final ClassReader reader = new ClassReader(classFileBuffer);
+        final MetadataVisitor visitor = new MetadataVisitor();
+        reader.accept(visitor, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return visitor.metadata;
+    }
+
+    /**
+     * Reads the parameter names and the first line number of a method from the debug attributes.
+     *
+     * @return null if the method is not found
+     */
+    public static MethodDebugInfo readDebugInfo(byte[] classFileBuffer, final String methodName, final String methodDesc) {
+        final ClassReader reader = new ClassReader(classFileBuffer);
+        final DebugInfoVisitor visitor = new DebugInfoVisitor(methodName, methodDesc);
+        reader.accept(visitor, ClassReader.SKIP_FRAMES);
+        return visitor.debugInfo;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public boolean isInterface() {
+        return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    public boolean isAnnotation() {
+        return (access & Opcodes.ACC_ANNOTATION) != 0;
+    }
+
+    /**
+     * @return internal name. e.g. java/lang/String
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return internal name. null for java/lang/Object
+     */
+    public String getSuperName() {
+        return superName;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    public String getEnclosingMethodName() {
+        return enclosingMethodName;
+    }
+
+    public String getEnclosingMethodDesc() {
+        return enclosingMethodDesc;
+    }
+
+    public List<String> getInnerClasses() {
+        return Collections.unmodifiableList(innerClasses);
+    }
+
+    public List<FieldMetadata> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    public List<MethodMetadata> getMethods() {
+        return Collections.unmodifiableList(methods);
+    }
+
+    public FieldMetadata getField(String fieldName) {
+        for (FieldMetadata field : fields) {
+            if (field.getName().equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    public static class FieldMetadata {
+        private final int access;
+        private final String name;
+        private final String desc;
+
+        public FieldMetadata(int access, String name, String desc) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+        }
+
+        public int getAccess() {
+            return access;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+    }
+
+    public static class MethodMetadata {
+        private final int access;
+        private final String name;
+        private final String desc;
+        private final String signature;
+        private final String[] exceptions;
+
+        public MethodMetadata(int access, String name, String desc, String signature, String[] exceptions) {
+            this.access = access;
+            this.name = name;
+            this.desc = desc;
+            this.signature = signature;
+            this.exceptions = exceptions;
+        }
+
+        public int getAccess() {
+            return access;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDesc() {
+            return desc;
+        }
+
+        public String getSignature() {
+            return signature;
+        }
+
+        public String[] getExceptions() {
+            return exceptions;
+        }
+
+        public boolean isConstructor() {
+            return "<init>".equals(name);
+        }
+
+        public boolean isStaticInitializer() {
+            return "<clinit>".equals(name);
+        }
+
+        public boolean isStatic() {
+            return (access & Opcodes.ACC_STATIC) != 0;
+        }
+
+        public boolean hasBody() {
+            return (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0;
+        }
+
+        public String getKey() {
+            return name + desc;
+        }
+    }
+
+    public static class MethodDebugInfo {
+        private final String[] parameterNames;
+        private final int lineNumber;
+
+        public MethodDebugInfo(String[] parameterNames, int lineNumber) {
+            this.parameterNames = parameterNames;
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * @return null if the method has no local variable table
+         */
+        public String[] getParameterNames() {
+            return parameterNames;
+        }
+
+        /**
+         * @return -1 if the method has no line number table
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+    }
+
+    private static class MetadataVisitor extends ClassVisitor {
+        private ClassMetadata metadata;
+
+        private MetadataVisitor() {
+            super(ASM_API);
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            this.metadata = new ClassMetadata(version, access, name, superName, interfaces);
+        }
+
+        @Override
+        public void visitOuterClass(String owner, String name, String desc) {
+            metadata.enclosingMethodName = name;
+            metadata.enclosingMethodDesc = desc;
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            metadata.innerClasses.add(name);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            metadata.fields.add(new FieldMetadata(access, name, desc));
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            metadata.methods.add(new MethodMetadata(access, name, desc, signature, exceptions));
+            return null;
+        }
+    }
+
+    private static class DebugInfoVisitor extends ClassVisitor {
+        private final String methodName;
+        private final String methodDesc;
+        private MethodDebugInfo debugInfo;
+
+        private DebugInfoVisitor(String methodName, String methodDesc) {
+            super(ASM_API);
+            this.methodName = methodName;
+            this.methodDesc = methodDesc;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, String name, String desc, String signature, String[] exceptions) {
+            if (!methodName.equals(name) || !methodDesc.equals(desc)) {
+                return null;
+            }
+            final Type[] parameterTypes = Type.getArgumentTypes(desc);
+            final int[] slots = new int[parameterTypes.length];
+            int slot = (access & Opcodes.ACC_STATIC) != 0 ? 0 : 1;
+            for (int i = 0; i < parameterTypes.length; i++) {
+                slots[i] = slot;
+                slot += parameterTypes[i].getSize();
+            }
+
+            // label offsets are not resolved while reading. the method is buffered to find the labels at offset 0.
+            return new MethodNode(ASM_API, access, name, desc, signature, exceptions) {
+                @Override
+                public void visitEnd() {
+                    debugInfo = new MethodDebugInfo(getParameterNames(this, slots), getFirstLineNumber(this));
+                }
+            };
+        }
+
+        private static String[] getParameterNames(MethodNode method, int[] slots) {
+            if (method.localVariables == null || method.localVariables.isEmpty()) {
+                return null;
+            }
+            final List<LabelNode> codeStart = new ArrayList<LabelNode>();
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null && insn.getOpcode() < 0; insn = insn.getNext()) {
+                if (insn instanceof LabelNode) {
+                    codeStart.add((LabelNode) insn);
+                }
+            }
+
+            final String[] parameterNames = new String[slots.length];
+            for (LocalVariableNode localVariable : method.localVariables) {
+                if (!codeStart.contains(localVariable.start)) {
+                    continue;
+                }
+                for (int i = 0; i < slots.length; i++) {
+                    if (slots[i] == localVariable.index) {
+                        parameterNames[i] = localVariable.name;
+                    }
+                }
+            }
+            return parameterNames;
+        }
+
+        private static int getFirstLineNumber(MethodNode method) {
+            for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn instanceof LineNumberNode) {
+                    return ((LineNumberNode) insn).line;
+                }
+            }
+            return -1;
+        }
+    }
+}
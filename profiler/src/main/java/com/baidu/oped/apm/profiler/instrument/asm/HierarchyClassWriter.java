@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * Resolves common super classes for the frame computation from class files of the class loader,
+ * instead of loading classes as {@link ClassWriter} does by default.
+ * A class file that can not be read fails the transform rather than guessing java/lang/Object,
+ * which could produce a stack map frame the verifier rejects.
+ */
+public class HierarchyClassWriter extends ClassWriter {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final int MAX_HIERARCHY_DEPTH = 64;
+
+    private final ClassFileLocator classFileLocator;
+    private final ClassLoader classLoader;
+    // the class being written is not necessarily readable from the class loader.
+    private final ClassMetadata currentClass;
+
+    public HierarchyClassWriter(ClassReader classReader, int flags, ClassFileLocator classFileLocator, ClassLoader classLoader, ClassMetadata currentClass) {
+        super(classReader, flags);
+        if (classFileLocator == null) {
+            throw new NullPointerException("classFileLocator must not be null");
+        }
+        this.classFileLocator = classFileLocator;
+        this.classLoader = classLoader;
+        this.currentClass = currentClass;
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+        if (OBJECT.equals(type1) || OBJECT.equals(type2)) {
+            return OBJECT;
+        }
+        final ClassMetadata class1 = getRequiredMetadata(type1);
+        final ClassMetadata class2 = getRequiredMetadata(type2);
+        if (class1.isInterface() || class2.isInterface()) {
+            return OBJECT;
+        }
+
+        final List<String> superClasses1 = getSuperClasses(class1);
+        if (superClasses1.contains(type2)) {
+            return type2;
+        }
+        final List<String> superClasses2 = getSuperClasses(class2);
+        for (String superClass : superClasses2) {
+            if (superClasses1.contains(superClass)) {
+                return superClass;
+            }
+        }
+        return OBJECT;
+    }
+
+    /**
+     * @return the class itself and its super classes
+     */
+    private List<String> getSuperClasses(ClassMetadata metadata) {
+        final List<String> superClasses = new ArrayList<String>();
+        superClasses.add(metadata.getName());
+        ClassMetadata current = metadata;
+        while (current.getSuperName() != null && !OBJECT.equals(current.getSuperName())) {
+            if (superClasses.size() >= MAX_HIERARCHY_DEPTH) {
+                throw new IllegalStateException("class hierarchy too deep. class:" + metadata.getName());
+            }
+            superClasses.add(current.getSuperName());
+            current = getRequiredMetadata(current.getSuperName());
+        }
+        superClasses.add(OBJECT);
+        return superClasses;
+    }
+
+    private ClassMetadata getRequiredMetadata(String classInternalName) {
+        final ClassMetadata metadata = getMetadata(classInternalName);
+        if (metadata == null) {
+            // caught by the caller of ClassWriter.toByteArray(). the class is left as it is.
+            throw new IllegalStateException("class file not found. class:" + classInternalName + " classLoader:" + classLoader);
+        }
+        return metadata;
+    }
+
+    private ClassMetadata getMetadata(String classInternalName) {
+        if (currentClass != null && currentClass.getName().equals(classInternalName)) {
+            return currentClass;
+        }
+        final byte[] classFile = classFileLocator.getClassFile(classLoader, classInternalName);
+        if (classFile == null) {
+            return null;
+        }
+        try {
+            return ClassMetadata.read(classFile);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.lang.reflect.Method;
+
+import com.baidu.oped.apm.bootstrap.interceptor.AfterInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.ApiIdAwareAroundInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.BeforeInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.StaticAroundInterceptor;
+
+/**
+ * An interceptor bound to a method, resolved to everything the bytecode emitter needs.
+ * Argument binding follows InvokeCodeGenerator of the javassist engine.
+ */
+public class InterceptorDefinition {
+
+    public enum Type {
+        ARRAY_ARGS, STATIC, BASIC, API_ID_AWARE
+    }
+
+    private final int interceptorId;
+    private final Class<?> interceptorClass;
+    private final Method beforeMethod;
+    private final Method afterMethod;
+    // static field of the target class holding the interceptor. null if the interceptor is looked up from the registry.
+    private final String interceptorField;
+    private final int apiId;
+    private final String className;
+    private final String methodName;
+    private final String parameterDescription;
+
+    public InterceptorDefinition(int interceptorId, Class<?> interceptorClass, Method beforeMethod, Method afterMethod, String interceptorField,
+                                 int apiId, String className, String methodName, String parameterDescription) {
+        if (interceptorClass == null) {
+            throw new NullPointerException("interceptorClass must not be null");
+        }
+        this.interceptorId = interceptorId;
+        this.interceptorClass = interceptorClass;
+        this.beforeMethod = beforeMethod;
+        this.afterMethod = afterMethod;
+        this.interceptorField = interceptorField;
+        this.apiId = apiId;
+        this.className = className;
+        this.methodName = methodName;
+        this.parameterDescription = parameterDescription;
+    }
+
+    public static Type getType(Class<?> interceptorClass, Method interceptorMethod) {
+        if (interceptorMethod != null && !isArgumentArrayMethod(interceptorMethod)) {
+            // arity-specific signature (AroundInterceptor0..5), whatever else the interceptor implements. no argument array.
+            return Type.BASIC;
+        }
+        if (BeforeInterceptor.class.isAssignableFrom(interceptorClass) || AfterInterceptor.class.isAssignableFrom(interceptorClass)) {
+            return Type.ARRAY_ARGS;
+        }
+        if (StaticAroundInterceptor.class.isAssignableFrom(interceptorClass)) {
+            return Type.STATIC;
+        }
+        if (ApiIdAwareAroundInterceptor.class.isAssignableFrom(interceptorClass)) {
+            return Type.API_ID_AWARE;
+        }
+        return Type.BASIC;
+    }
+
+    private static boolean isArgumentArrayMethod(Method interceptorMethod) {
+        for (Class<?> parameterType : interceptorMethod.getParameterTypes()) {
+            if (parameterType == Object[].class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getInterceptorId() {
+        return interceptorId;
+    }
+
+    public Class<?> getInterceptorClass() {
+        return interceptorClass;
+    }
+
+    public Method getBeforeMethod() {
+        return beforeMethod;
+    }
+
+    public Type getBeforeType() {
+        return getType(interceptorClass, beforeMethod);
+    }
+
+    public Method getAfterMethod() {
+        return afterMethod;
+    }
+
+    public Type getAfterType() {
+        return getType(interceptorClass, afterMethod);
+    }
+
+    public String getInterceptorField() {
+        return interceptorField;
+    }
+
+    public int getApiId() {
+        return apiId;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    public String getParameterDescription() {
+        return parameterDescription;
+    }
+}
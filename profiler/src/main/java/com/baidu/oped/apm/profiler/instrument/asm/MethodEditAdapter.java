@@ -0,0 +1,422 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.AdviceAdapter;
+
+import com.baidu.oped.apm.bootstrap.interceptor.Interceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.InterceptorInvokerHelper;
+import com.baidu.oped.apm.bootstrap.interceptor.registry.InterceptorRegistry;
+
+/**
+ * Emits the interceptor invocations of a method with the same semantics as the javassist engine.
+ * <pre>
+ * interceptor = null;
+ * try { interceptor = lookup; interceptor.before(...); } catch (Throwable t) { InterceptorInvokerHelper.handleException(t); }
+ * try {
+ *     original body. each return jumps to the after block below
+ * } catch (Throwable e) {
+ *     try { interceptor.after(..., null, e); } catch (Throwable t) { InterceptorInvokerHelper.handleException(t); }
+ *     throw e;
+ * }
+ * try { interceptor.after(..., result, null); } catch (Throwable t) { InterceptorInvokerHelper.handleException(t); }
+ * return result;
+ * </pre>
+ * Several interceptors of a method are nested. The last added one is the outermost.
+ * The body of a constructor is the code after the super() or this() call.
+ * Field initializers and interceptor fields of the class are assigned on method entry as well.
+ * <p>
+ * The exception table must be sorted by the next visitor (TryCatchBlockSorter), because the handlers
+ * covering the whole body are visited before the handlers of the original code.
+ */
+public class MethodEditAdapter extends AdviceAdapter {
+
+    private static final String THROWABLE = "java/lang/Throwable";
+    private static final Type THROWABLE_TYPE = Type.getObjectType(THROWABLE);
+    private static final Type INTERCEPTOR_TYPE = Type.getType(Interceptor.class);
+    private static final String INTERCEPTOR_REGISTRY = Type.getInternalName(InterceptorRegistry.class);
+    private static final String GET_INTERCEPTOR_DESC = Type.getMethodDescriptor(INTERCEPTOR_TYPE, Type.INT_TYPE);
+    private static final String INTERCEPTOR_INVOKER_HELPER = Type.getInternalName(InterceptorInvokerHelper.class);
+
+    private static final int THIS_RETURN_EXCEPTION_SIZE = 3;
+
+    private final String owner;
+    private final boolean constructor;
+    private final boolean staticMethod;
+    private final Type[] argumentTypes;
+    private final Type returnType;
+
+    private final List<InterceptorDefinition> interceptors;
+    private final List<ClassEdit.FieldInitializer> fieldInitializers;
+    private final Map<String, Integer> interceptorFields;
+
+    // owner of the last <init> call. tells super() from this() on constructor entry.
+    private String lastInitOwner;
+    private boolean entered = false;
+
+    private int[] interceptorVars;
+    private int resultVar = -1;
+    private int exceptionVar = -1;
+    private Label[] regionEnds;
+    private Label[] handlers;
+    private Label[] normalExits;
+
+    /**
+     * @param interceptors interceptors of this method in the order of addition
+     * @param fieldInitializers applied when this method is a constructor calling super()
+     * @param interceptorFields applied when this method is the static initializer
+     */
+    public MethodEditAdapter(MethodVisitor mv, String owner, int access, String name, String desc, List<InterceptorDefinition> interceptors,
+                             List<ClassEdit.FieldInitializer> fieldInitializers, Map<String, Integer> interceptorFields) {
+        super(ClassMetadata.ASM_API, mv, access, name, desc);
+        if (owner == null) {
+            throw new NullPointerException("owner must not be null");
+        }
+        this.owner = owner;
+        this.constructor = "<init>".equals(name);
+        this.staticMethod = (access & ACC_STATIC) != 0;
+        this.argumentTypes = Type.getArgumentTypes(desc);
+        this.returnType = Type.getReturnType(desc);
+        this.interceptors = interceptors;
+        this.fieldInitializers = constructor ? fieldInitializers : null;
+        this.interceptorFields = "<clinit>".equals(name) ? interceptorFields : null;
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+        if (opcode == INVOKESPECIAL && "<init>".equals(name)) {
+            this.lastInitOwner = owner;
+        }
+        super.visitMethodInsn(opcode, owner, name, desc, itf);
+    }
+
+    @Override
+    protected void onMethodEnter() {
+        if (fieldInitializers != null && !owner.equals(lastInitOwner)) {
+            emitFieldInitializers();
+        }
+        if (interceptorFields != null) {
+            emitInterceptorFields();
+        }
+        if (interceptors == null || interceptors.isEmpty()) {
+            return;
+        }
+        this.entered = true;
+
+        final int size = interceptors.size();
+        this.interceptorVars = new int[size];
+        this.regionEnds = new Label[size];
+        this.handlers = new Label[size];
+        this.normalExits = new Label[size];
+        final Label[] regionStarts = new Label[size];
+        for (int i = 0; i < size; i++) {
+            regionStarts[i] = new Label();
+            normalExits[i] = new Label();
+            if (hasAfter(i)) {
+                regionEnds[i] = new Label();
+                handlers[i] = new Label();
+                mv.visitTryCatchBlock(regionStarts[i], regionEnds[i], handlers[i], THROWABLE);
+                if (exceptionVar == -1) {
+                    exceptionVar = newLocal(THROWABLE_TYPE);
+                }
+            }
+        }
+        if (returnType.getSort() != Type.VOID) {
+            resultVar = newLocal(returnType);
+        }
+
+        // outermost first
+        for (int i = size - 1; i >= 0; i--) {
+            interceptorVars[i] = newLocal(INTERCEPTOR_TYPE);
+            mv.visitInsn(ACONST_NULL);
+            storeLocal(interceptorVars[i], INTERCEPTOR_TYPE);
+            if (interceptors.get(i).getBeforeMethod() != null) {
+                emitBefore(i);
+            }
+            mv.visitLabel(regionStarts[i]);
+        }
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        if (entered && opcode >= IRETURN && opcode <= RETURN) {
+            if (resultVar != -1) {
+                storeLocal(resultVar, returnType);
+            }
+            mv.visitJumpInsn(GOTO, normalExits[0]);
+            return;
+        }
+        super.visitInsn(opcode);
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        if (entered) {
+            emitExits();
+        }
+        super.visitMaxs(maxStack, maxLocals);
+    }
+
+    private boolean hasAfter(int index) {
+        return interceptors.get(index).getAfterMethod() != null;
+    }
+
+    private void emitExits() {
+        final int size = interceptors.size();
+        // innermost first
+        for (int i = 0; i < size; i++) {
+            if (hasAfter(i)) {
+                mv.visitLabel(regionEnds[i]);
+                mv.visitLabel(handlers[i]);
+                storeLocal(exceptionVar, THROWABLE_TYPE);
+                emitAfter(i, true);
+                loadLocal(exceptionVar, THROWABLE_TYPE);
+                mv.visitInsn(ATHROW);
+            }
+            mv.visitLabel(normalExits[i]);
+            if (hasAfter(i)) {
+                emitAfter(i, false);
+            }
+            if (i + 1 < size && hasAfter(i + 1)) {
+                // skip the exception handler of the next interceptor
+                mv.visitJumpInsn(GOTO, normalExits[i + 1]);
+            }
+        }
+        if (resultVar != -1) {
+            loadLocal(resultVar, returnType);
+        }
+        mv.visitInsn(returnType.getOpcode(IRETURN));
+    }
+
+    private void emitBefore(int index) {
+        final InterceptorDefinition interceptor = interceptors.get(index);
+        final Label start = new Label();
+        final Label end = new Label();
+        final Label handler = new Label();
+        final Label done = new Label();
+
+        mv.visitTryCatchBlock(start, end, handler, THROWABLE);
+        mv.visitLabel(start);
+        emitInterceptorLookup(interceptor);
+        storeLocal(interceptorVars[index], INTERCEPTOR_TYPE);
+        invokeInterceptor(index, interceptor.getBeforeMethod(), interceptor.getBeforeType(), false, false);
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, done);
+        mv.visitLabel(handler);
+        mv.visitMethodInsn(INVOKESTATIC, INTERCEPTOR_INVOKER_HELPER, "handleException", "(Ljava/lang/Throwable;)V", false);
+        mv.visitLabel(done);
+    }
+
+    private void emitAfter(int index, boolean catchClause) {
+        final InterceptorDefinition interceptor = interceptors.get(index);
+        final Label start = new Label();
+        final Label end = new Label();
+        final Label handler = new Label();
+        final Label done = new Label();
+
+        mv.visitTryCatchBlock(start, end, handler, THROWABLE);
+        mv.visitLabel(start);
+        if (interceptor.getBeforeMethod() == null) {
+            // local variable is not initialized by the before block
+            emitInterceptorLookup(interceptor);
+            storeLocal(interceptorVars[index], INTERCEPTOR_TYPE);
+        }
+        invokeInterceptor(index, interceptor.getAfterMethod(), interceptor.getAfterType(), true, catchClause);
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, done);
+        mv.visitLabel(handler);
+        mv.visitMethodInsn(INVOKESTATIC, INTERCEPTOR_INVOKER_HELPER, "handleException", "(Ljava/lang/Throwable;)V", false);
+        mv.visitLabel(done);
+    }
+
+    private void emitInterceptorLookup(InterceptorDefinition interceptor) {
+        final String interceptorField = interceptor.getInterceptorField();
+        if (interceptorField != null) {
+            mv.visitFieldInsn(GETSTATIC, owner, interceptorField, INTERCEPTOR_TYPE.getDescriptor());
+        } else {
+            emitRegistryLookup(mv, interceptor.getInterceptorId());
+        }
+    }
+
+    private static void emitRegistryLookup(MethodVisitor mv, int interceptorId) {
+        mv.visitLdcInsn(interceptorId);
+        mv.visitMethodInsn(INVOKESTATIC, INTERCEPTOR_REGISTRY, "getInterceptor", GET_INTERCEPTOR_DESC, false);
+    }
+
+    private void invokeInterceptor(int index, Method method, InterceptorDefinition.Type type, boolean after, boolean catchClause) {
+        final InterceptorDefinition interceptor = interceptors.get(index);
+        final Type interceptorType = Type.getType(interceptor.getInterceptorClass());
+
+        loadLocal(interceptorVars[index], INTERCEPTOR_TYPE);
+        checkCast(interceptorType);
+        switch (type) {
+            case ARRAY_ARGS:
+                pushTarget();
+                pushArgumentArray();
+                pushResultAndException(after, catchClause);
+                break;
+            case STATIC:
+                pushTarget();
+                push(interceptor.getClassName());
+                push(interceptor.getMethodName());
+                push(interceptor.getParameterDescription());
+                pushArgumentArray();
+                pushResultAndException(after, catchClause);
+                break;
+            case API_ID_AWARE:
+                pushTarget();
+                push(interceptor.getApiId());
+                pushArgumentArray();
+                pushResultAndException(after, catchClause);
+                break;
+            case BASIC:
+                pushBasicArguments(method, after, catchClause);
+                break;
+        }
+        final Type methodReturnType = Type.getReturnType(method);
+        mv.visitMethodInsn(INVOKEVIRTUAL, interceptorType.getInternalName(), method.getName(), Type.getMethodDescriptor(method), false);
+        if (methodReturnType.getSize() == 1) {
+            mv.visitInsn(POP);
+        } else if (methodReturnType.getSize() == 2) {
+            mv.visitInsn(POP2);
+        }
+    }
+
+    private void pushBasicArguments(Method method, boolean after, boolean catchClause) {
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length == 0) {
+            return;
+        }
+        final int interceptorArgNum = parameterTypes.length - (after ? THIS_RETURN_EXCEPTION_SIZE : 1);
+        if (interceptorArgNum < 0) {
+            throw new IllegalStateException("interceptor arguments not matched. interceptorSize:" + parameterTypes.length + " bindSize:" + THIS_RETURN_EXCEPTION_SIZE);
+        }
+
+        pushTarget();
+        castIfNeeded(parameterTypes[0]);
+
+        final int matchNum = Math.min(argumentTypes.length, interceptorArgNum);
+        int i = 0;
+        for (; i < matchNum; i++) {
+            loadArg(i);
+            valueOf(argumentTypes[i]);
+            castIfNeeded(parameterTypes[i + 1]);
+        }
+        for (; i < interceptorArgNum; i++) {
+            mv.visitInsn(ACONST_NULL);
+        }
+
+        if (after) {
+            pushResult(catchClause);
+            castIfNeeded(parameterTypes[parameterTypes.length - 2]);
+            pushException(catchClause);
+        }
+    }
+
+    private void castIfNeeded(Class<?> parameterType) {
+        if (parameterType.isPrimitive() || parameterType == Object.class) {
+            return;
+        }
+        checkCast(Type.getType(parameterType));
+    }
+
+    private void pushTarget() {
+        if (staticMethod) {
+            mv.visitInsn(ACONST_NULL);
+        } else {
+            loadThis();
+        }
+    }
+
+    private void pushArgumentArray() {
+        if (argumentTypes.length == 0) {
+            mv.visitInsn(ACONST_NULL);
+        } else {
+            loadArgArray();
+        }
+    }
+
+    private void pushResultAndException(boolean after, boolean catchClause) {
+        if (after) {
+            pushResult(catchClause);
+            pushException(catchClause);
+        }
+    }
+
+    private void pushResult(boolean catchClause) {
+        if (catchClause || resultVar == -1) {
+            mv.visitInsn(ACONST_NULL);
+            return;
+        }
+        loadLocal(resultVar, returnType);
+        valueOf(returnType);
+    }
+
+    private void pushException(boolean catchClause) {
+        if (catchClause) {
+            loadLocal(exceptionVar, THROWABLE_TYPE);
+        } else {
+            mv.visitInsn(ACONST_NULL);
+        }
+    }
+
+    private void emitFieldInitializers() {
+        for (ClassEdit.FieldInitializer initializer : fieldInitializers) {
+            loadThis();
+            mv.visitTypeInsn(NEW, initializer.getTypeInternalName());
+            mv.visitInsn(DUP);
+            for (int argument : initializer.getArguments()) {
+                pushInt(argument);
+            }
+            mv.visitMethodInsn(INVOKESPECIAL, initializer.getTypeInternalName(), "<init>", initializer.getConstructorDesc(), false);
+            mv.visitFieldInsn(PUTFIELD, owner, initializer.getName(), initializer.getDesc());
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private void emitInterceptorFields() {
+        emitInterceptorFields(mv, owner, interceptorFields);
+    }
+
+    /**
+     * Assigns the interceptors of the registry to the static fields. Used for a new static initializer as well.
+     */
+    static void emitInterceptorFields(MethodVisitor mv, String owner, Map<String, Integer> interceptorFields) {
+        for (Map.Entry<String, Integer> entry : interceptorFields.entrySet()) {
+            emitRegistryLookup(mv, entry.getValue());
+            mv.visitFieldInsn(PUTSTATIC, owner, entry.getKey(), INTERCEPTOR_TYPE.getDescriptor());
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.baidu.oped.apm.profiler.instrument.classpool;
 import java.util.Collection;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javassist.ClassPath;
 import javassist.LoaderClassPath;
@@ -35,6 +36,12 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
 
     private static final ClassLoader AGENT_CLASS_LOADER = IsolateMultipleClassPool.class.getClassLoader();
 
+    // class loaders created for a single generated class. e.g. reflection accessors (MethodAccessorGenerator)
+    private static final String[] THROWAWAY_CLASS_LOADERS = {
+            "sun.reflect.DelegatingClassLoader",
+            "jdk.internal.reflect.DelegatingClassLoader"
+    };
+
     private final NamedClassPool rootClassPool;
 
     private final ConcurrentMap<ClassLoader, NamedClassPool> classPoolMap;
@@ -44,6 +51,10 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
     public static final boolean DEFAULT_CHILD_FIRST_LOOKUP = true;
     private final boolean childFirstLookup;
 
+    private final int maxCachedClassSize;
+
+    private final AtomicLong throwawayClassLoaderCount = new AtomicLong();
+
 
     public static final EventListener EMPTY_EVENT_LISTENER = new EventListener() {
         @Override
@@ -68,10 +79,15 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
     }
 
     public IsolateMultipleClassPool(boolean childFirstLookup, EventListener eventListener, ClassPoolHandler rootClassPoolHandler) {
+        this(childFirstLookup, eventListener, rootClassPoolHandler, NamedClassPool.UNLIMITED_CACHE_SIZE);
+    }
+
+    public IsolateMultipleClassPool(boolean childFirstLookup, EventListener eventListener, ClassPoolHandler rootClassPoolHandler, int maxCachedClassSize) {
         if (eventListener == null) {
             throw new NullPointerException("eventListener must not be null");
         }
 
+        this.maxCachedClassSize = maxCachedClassSize;
         this.rootClassPool = createRootClassPool(rootClassPoolHandler);
         this.classPoolMap = Maps.newWeakConcurrentMap();
         this.eventListener = eventListener;
@@ -81,7 +97,7 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
 
 
     private NamedClassPool createRootClassPool(ClassPoolHandler rootClassPoolHandler) {
-        NamedClassPool systemClassPool = new NamedClassPool("rootClassPool");
+        NamedClassPool systemClassPool = new NamedClassPool("rootClassPool", maxCachedClassSize);
         systemClassPool.appendSystemPath();
         if (rootClassPoolHandler != null ) {
             rootClassPoolHandler.handleClassPool(systemClassPool);
@@ -103,6 +119,11 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
         if (hit != null) {
             return hit;
         }
+        if (isThrowawayClassLoader(classLoader)) {
+            // don't keep a pool for a class loader that defines only one class.
+            throwawayClassLoaderCount.incrementAndGet();
+            return createClassPool(classLoader);
+        }
         NamedClassPool newClassPool = createClassPool(classLoader);
         return put(classLoader, newClassPool);
     }
@@ -123,7 +144,7 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
 
     private NamedClassPool createClassPool(ClassLoader classLoader) {
         String classLoaderName = classLoader.toString();
-        NamedClassPool newClassPool = new NamedClassPool(rootClassPool, classLoaderName + "-" + getNextId());
+        NamedClassPool newClassPool = new NamedClassPool(rootClassPool, classLoaderName + "-" + getNextId(), maxCachedClassSize);
         if (childFirstLookup) {
             newClassPool.childFirstLookup = true;
         }
@@ -139,10 +160,43 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
     }
 
 
+    public static boolean isThrowawayClassLoader(ClassLoader classLoader) {
+        if (classLoader == null) {
+            return false;
+        }
+        final String classLoaderName = classLoader.getClass().getName();
+        for (String throwawayClassLoader : THROWAWAY_CLASS_LOADERS) {
+            if (throwawayClassLoader.equals(classLoaderName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int size() {
         return this.classPoolMap.size();
     }
 
+    public int getCachedClassCount() {
+        int count = rootClassPool.getCachedClassCount();
+        for (NamedClassPool classPool : classPoolMap.values()) {
+            count += classPool.getCachedClassCount();
+        }
+        return count;
+    }
+
+    public long getEvictedClassCount() {
+        long count = rootClassPool.getEvictedClassCount();
+        for (NamedClassPool classPool : classPoolMap.values()) {
+            count += classPool.getEvictedClassCount();
+        }
+        return count;
+    }
+
+    public long getThrowawayClassLoaderCount() {
+        return throwawayClassLoaderCount.get();
+    }
+
     // for Test
     Collection<NamedClassPool> values() {
         return classPoolMap.values();
@@ -152,6 +206,7 @@ public class IsolateMultipleClassPool implements MultipleClassPool {
     public String toString() {
         final StringBuilder sb = new StringBuilder("IsolateMultipleClassPool{");
         sb.append("classPoolMap=").append(classPoolMap);
+        sb.append(", maxCachedClassSize=").append(maxCachedClassSize);
         sb.append('}');
         return sb.toString();
     }
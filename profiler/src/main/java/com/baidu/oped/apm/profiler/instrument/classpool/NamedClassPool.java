@@ -16,32 +16,120 @@
 
 package com.baidu.oped.apm.profiler.instrument.classpool;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javassist.ClassPool;
+import javassist.CtClass;
 
 /**
  * @author emeroad
  */
 public class NamedClassPool extends ClassPool {
+
+    public static final int UNLIMITED_CACHE_SIZE = 0;
+
     private final String name;
 
+    private final int maxCachedClassSize;
+    // access ordered mirror of the CtClasses cached by ClassPool.
+    private final LinkedHashMap<String, CtClass> cachedClassLru = new LinkedHashMap<String, CtClass>(16, 0.75f, true);
+    private volatile long evictedClassCount;
+
     public NamedClassPool(String name) {
+        this(name, UNLIMITED_CACHE_SIZE);
+    }
+
+    public NamedClassPool(String name, int maxCachedClassSize) {
         this.name = name;
+        this.maxCachedClassSize = maxCachedClassSize;
     }
 
     public NamedClassPool(boolean useDefaultPath, String name) {
         super(useDefaultPath);
         this.name = name;
+        this.maxCachedClassSize = UNLIMITED_CACHE_SIZE;
     }
 
     public NamedClassPool(ClassPool parent, String name) {
+        this(parent, name, UNLIMITED_CACHE_SIZE);
+    }
+
+    public NamedClassPool(ClassPool parent, String name, int maxCachedClassSize) {
         super(parent);
         this.name = name;
+        this.maxCachedClassSize = maxCachedClassSize;
     }
 
     public String getName() {
         return name;
     }
 
+    public int getMaxCachedClassSize() {
+        return maxCachedClassSize;
+    }
+
+    @Override
+    protected synchronized CtClass getCached(String classname) {
+        final CtClass ctClass = super.getCached(classname);
+        if (ctClass != null) {
+            // touch
+            cachedClassLru.get(classname);
+        }
+        return ctClass;
+    }
+
+    @Override
+    protected synchronized void cacheCtClass(String classname, CtClass ctClass, boolean dynamic) {
+        super.cacheCtClass(classname, ctClass, dynamic);
+        // classes made by makeClass() can't be loaded again. never evict them.
+        if (dynamic) {
+            return;
+        }
+        cachedClassLru.put(classname, ctClass);
+        if (maxCachedClassSize > UNLIMITED_CACHE_SIZE) {
+            evictEldest();
+        }
+    }
+
+    @Override
+    protected synchronized CtClass removeCached(String classname) {
+        cachedClassLru.remove(classname);
+        return super.removeCached(classname);
+    }
+
+    private void evictEldest() {
+        int overflow = cachedClassLru.size() - maxCachedClassSize;
+        if (overflow <= 0) {
+            return;
+        }
+        final Iterator<Map.Entry<String, CtClass>> iterator = cachedClassLru.entrySet().iterator();
+        while (overflow > 0 && iterator.hasNext()) {
+            final Map.Entry<String, CtClass> entry = iterator.next();
+            final CtClass ctClass = entry.getValue();
+            // a modified CtClass is in the middle of weaving. it is detached by toBytecode().
+            if (ctClass.isModified() && !ctClass.isFrozen()) {
+                continue;
+            }
+            iterator.remove();
+            super.removeCached(entry.getKey());
+            evictedClassCount++;
+            overflow--;
+        }
+    }
+
+    /**
+     * @return number of CtClasses loaded and held by this pool. primitive types are not counted.
+     */
+    public synchronized int getCachedClassCount() {
+        return cachedClassLru.size();
+    }
+
+    public long getEvictedClassCount() {
+        return evictedClassCount;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("NamedClassPool{");
@@ -28,16 +28,18 @@ public class InvokeAfterCodeGenerator extends InvokeCodeGenerator {
 
     private static final int THIS_RETURN_EXCEPTION_SIZE = 3;
 
-    private final int interceptorId;
     private final Method interceptorMethod;
     private final InstrumentClass targetClass;
     private final boolean localVarsInitialized;
     private final boolean catchClause;
 
     public InvokeAfterCodeGenerator(int interceptorId, Class<?> interceptorClass, Method interceptorMethod, InstrumentClass targetClass, InstrumentMethod targetMethod, TraceContext traceContext, boolean localVarsInitialized, boolean catchClause) {
-        super(interceptorId, interceptorClass, targetMethod, traceContext);
+        this(interceptorId, interceptorClass, interceptorMethod, targetClass, targetMethod, traceContext, localVarsInitialized, catchClause, null);
+    }
+
+    public InvokeAfterCodeGenerator(int interceptorId, Class<?> interceptorClass, Method interceptorMethod, InstrumentClass targetClass, InstrumentMethod targetMethod, TraceContext traceContext, boolean localVarsInitialized, boolean catchClause, String interceptorField) {
+        super(interceptorId, interceptorClass, interceptorMethod, targetMethod, traceContext, interceptorField);
         
-        this.interceptorId = interceptorId;
         this.interceptorMethod = interceptorMethod;
         this.targetClass = targetClass;
         this.localVarsInitialized = localVarsInitialized;
@@ -60,7 +62,7 @@ public class InvokeAfterCodeGenerator extends InvokeCodeGenerator {
         builder.append("try { ");
 
         if (!localVarsInitialized) {
-            builder.format("%1$s = %2$s.getInterceptor(%3$d); ", getInterceptorVar(), getInterceptorRegistryClassName(), interceptorId);
+            builder.format("%1$s = %2$s; ", getInterceptorVar(), getInterceptorLookup());
         } 
         
         if (interceptorMethod != null) {
@@ -25,14 +25,16 @@ import com.baidu.oped.apm.bootstrap.instrument.InstrumentMethod;
  *
  */
 public class InvokeBeforeCodeGenerator extends InvokeCodeGenerator {
-    private final int interceptorId;
     private final Method interceptorMethod;
     private final InstrumentClass targetClass;
     
     public InvokeBeforeCodeGenerator(int interceptorId, Class<?> interceptorClass, Method interceptorMethod, InstrumentClass targetClass, InstrumentMethod targetMethod, TraceContext traceContext) {
-        super(interceptorId, interceptorClass, targetMethod, traceContext);
+        this(interceptorId, interceptorClass, interceptorMethod, targetClass, targetMethod, traceContext, null);
+    }
+
+    public InvokeBeforeCodeGenerator(int interceptorId, Class<?> interceptorClass, Method interceptorMethod, InstrumentClass targetClass, InstrumentMethod targetMethod, TraceContext traceContext, String interceptorField) {
+        super(interceptorId, interceptorClass, interceptorMethod, targetMethod, traceContext, interceptorField);
         
-        this.interceptorId = interceptorId;
         this.interceptorMethod = interceptorMethod;
         this.targetClass = targetClass;
     }
@@ -50,7 +52,7 @@ public class InvokeBeforeCodeGenerator extends InvokeCodeGenerator {
         // }
         
         builder.append("try { ");
-        builder.format("%1$s = %2$s.getInterceptor(%3$d); ", getInterceptorVar(), getInterceptorRegistryClassName(), interceptorId);
+        builder.format("%1$s = %2$s; ", getInterceptorVar(), getInterceptorLookup());
         
         if (interceptorMethod != null) {
             builder.format("((%1$s)%2$s).before(", getInterceptorType(), getInterceptorVar());
@@ -14,6 +14,7 @@
  */
 package com.baidu.oped.apm.profiler.instrument.interceptor;
 
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 
 import com.baidu.oped.apm.bootstrap.context.MethodDescriptor;
@@ -37,14 +38,20 @@ public class InvokeCodeGenerator {
     protected final InstrumentMethod targetMethod;
     protected final int interceptorId;
     protected final Type type;
+    // static field of the target class holding the interceptor. null if the interceptor is looked up from the registry.
+    private final String interceptorField;
     
-    public InvokeCodeGenerator(int interceptorId, Class<?> interceptorClass, InstrumentMethod targetMethod, TraceContext traceContext) {
+    public InvokeCodeGenerator(int interceptorId, Class<?> interceptorClass, Method interceptorMethod, InstrumentMethod targetMethod, TraceContext traceContext, String interceptorField) {
         this.interceptorClass = interceptorClass;
         this.targetMethod = targetMethod;
         this.interceptorId = interceptorId;
         this.traceContext = traceContext;
+        this.interceptorField = interceptorField;
         
-        if (BeforeInterceptor.class.isAssignableFrom(interceptorClass) || AfterInterceptor.class.isAssignableFrom(interceptorClass)) {
+        if (!isArgumentArrayMethod(interceptorMethod)) {
+            // arity-specific signature (AroundInterceptor0..5), whatever else the interceptor implements. no argument array.
+            type = Type.BASIC;
+        } else if (BeforeInterceptor.class.isAssignableFrom(interceptorClass) || AfterInterceptor.class.isAssignableFrom(interceptorClass)) {
             type = Type.ARRAY_ARGS;
         } else if (StaticAroundInterceptor.class.isAssignableFrom(interceptorClass)) {
             type = Type.STATIC;
@@ -55,6 +62,18 @@ public class InvokeCodeGenerator {
         }
     }
 
+    public static boolean isArgumentArrayMethod(Method interceptorMethod) {
+        if (interceptorMethod == null) {
+            return true;
+        }
+        for (Class<?> parameterType : interceptorMethod.getParameterTypes()) {
+            if (parameterType == Object[].class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     protected enum Type {
         ARRAY_ARGS, STATIC, BASIC, API_ID_AWARE
     }
@@ -97,8 +116,19 @@ public class InvokeCodeGenerator {
     protected String getInterceptorVar() {
         return getInterceptorVar(interceptorId);
     }
+
+    protected String getInterceptorLookup() {
+        if (interceptorField != null) {
+            return interceptorField;
+        }
+        return getInterceptorRegistryClassName() + ".getInterceptor(" + interceptorId + ")";
+    }
     
     public static String getInterceptorVar(int interceptorId) {
         return "_$APM$_interceptor" + interceptorId;
     }
-}
\ No newline at end of file
+
+    public static String getInterceptorField(int interceptorId) {
+        return "_$APM$_interceptorField" + interceptorId;
+    }
+}
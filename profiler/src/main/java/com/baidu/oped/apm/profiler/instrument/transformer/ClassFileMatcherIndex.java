@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.transformer;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.baidu.oped.apm.common.util.BytesUtils;
+
+/**
+ * Index of transformers matched by the contents of the class file: super class, declared interfaces and class annotations.<br>
+ * Every target name is also a CONSTANT_Utf8 entry of a matching class, so the constant pool is scanned byte by byte first
+ * and only classes containing one of the target names are parsed.
+ *
+ * Not thread safe for writes. All entries must be added before the first lookup.
+ */
+final class ClassFileMatcherIndex {
+
+    private final Map<String, ClassFileTransformer> superClassMap = new HashMap<String, ClassFileTransformer>();
+    private final Map<String, ClassFileTransformer> interfaceMap = new HashMap<String, ClassFileTransformer>();
+    // key: type descriptor. Lcom/foo/Bar;
+    private final Map<String, ClassFileTransformer> annotationMap = new HashMap<String, ClassFileTransformer>();
+
+    private final List<byte[]> candidateList = new ArrayList<byte[]>();
+    private byte[][][] candidatesByLength = new byte[0][][];
+
+    public void addSuperClass(String jvmClassName, ClassFileTransformer transformer) {
+        put(superClassMap, jvmClassName, jvmClassName, transformer);
+    }
+
+    public void addInterface(String jvmClassName, ClassFileTransformer transformer) {
+        put(interfaceMap, jvmClassName, jvmClassName, transformer);
+    }
+
+    public void addAnnotation(String jvmClassName, ClassFileTransformer transformer) {
+        final String descriptor = "L" + jvmClassName + ";";
+        put(annotationMap, descriptor, jvmClassName, transformer);
+    }
+
+    private void put(Map<String, ClassFileTransformer> map, String key, String jvmClassName, ClassFileTransformer transformer) {
+        final ClassFileTransformer old = map.put(key, transformer);
+        if (old != null) {
+            throw new IllegalStateException("Transformer already exist. className:" + jvmClassName + " new:" + transformer.getClass() + " old:" + old.getClass());
+        }
+        candidateList.add(BytesUtils.toBytes(key));
+        this.candidatesByLength = buildCandidates(candidateList);
+    }
+
+    private static byte[][][] buildCandidates(List<byte[]> candidateList) {
+        int maxLength = 0;
+        for (byte[] candidate : candidateList) {
+            maxLength = Math.max(maxLength, candidate.length);
+        }
+        final byte[][][] candidatesByLength = new byte[maxLength + 1][][];
+        for (byte[] candidate : candidateList) {
+            final byte[][] before = candidatesByLength[candidate.length];
+            if (before == null) {
+                candidatesByLength[candidate.length] = new byte[][] {candidate};
+            } else {
+                final byte[][] after = new byte[before.length + 1][];
+                System.arraycopy(before, 0, after, 0, before.length);
+                after[before.length] = candidate;
+                candidatesByLength[candidate.length] = after;
+            }
+        }
+        return candidatesByLength;
+    }
+
+    public boolean isEmpty() {
+        return candidateList.isEmpty();
+    }
+
+    /**
+     * Cheap byte level check. false means no transformer of this index can match the class.
+     */
+    public boolean mayMatch(byte[] classFileBuffer) {
+        if (isEmpty()) {
+            return false;
+        }
+        return ClassFileReader.containsUtf8(classFileBuffer, candidatesByLength);
+    }
+
+    /**
+     * Looks up the super class first, then the declared interfaces, then the class annotations.
+     */
+    public ClassFileTransformer findTransformer(byte[] classFileBuffer) {
+        final ClassFileReader reader = new ClassFileReader(classFileBuffer);
+        if (!superClassMap.isEmpty()) {
+            final String superClassName = reader.getSuperClassName();
+            if (superClassName != null) {
+                final ClassFileTransformer transformer = superClassMap.get(superClassName);
+                if (transformer != null) {
+                    return transformer;
+                }
+            }
+        }
+        if (!interfaceMap.isEmpty()) {
+            for (String interfaceName : reader.getInterfaceNames()) {
+                final ClassFileTransformer transformer = interfaceMap.get(interfaceName);
+                if (transformer != null) {
+                    return transformer;
+                }
+            }
+        }
+        if (!annotationMap.isEmpty()) {
+            for (String annotationDescriptor : reader.getAnnotationDescriptors()) {
+                final ClassFileTransformer transformer = annotationMap.get(annotationDescriptor);
+                if (transformer != null) {
+                    return transformer;
+                }
+            }
+        }
+        return null;
+    }
+}
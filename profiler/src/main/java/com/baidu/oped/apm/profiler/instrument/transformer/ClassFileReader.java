@@ -0,0 +1,318 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.transformer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Minimal reader for the raw class file bytes given to {@link java.lang.instrument.ClassFileTransformer}.<br>
+ * Reads the super class, the declared interfaces and the class level RuntimeVisibleAnnotations without loading any class.
+ * Method bodies and field values are skipped.
+ */
+final class ClassFileReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_FLOAT = 4;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+    private static final int CONSTANT_METHOD_HANDLE = 15;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+    private static final int CONSTANT_DYNAMIC = 17;
+    private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+    private static final int CONSTANT_MODULE = 19;
+    private static final int CONSTANT_PACKAGE = 20;
+
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = {
+            'R', 'u', 'n', 't', 'i', 'm', 'e', 'V', 'i', 's', 'i', 'b', 'l', 'e', 'A', 'n', 'n', 'o', 't', 'a', 't', 'i', 'o', 'n', 's'
+    };
+
+    private final byte[] b;
+    // offset of the tag byte of each constant pool entry
+    private final int[] constantOffsets;
+    // offset of access_flags
+    private final int header;
+
+    ClassFileReader(byte[] classFileBuffer) {
+        if (classFileBuffer == null) {
+            throw new NullPointerException("classFileBuffer must not be null");
+        }
+        this.b = classFileBuffer;
+        if (classFileBuffer.length < 10 || readInt(classFileBuffer, 0) != MAGIC) {
+            throw new IllegalArgumentException("invalid class file");
+        }
+        final int constantCount = readUnsignedShort(classFileBuffer, 8);
+        this.constantOffsets = new int[constantCount];
+        int offset = 10;
+        for (int i = 1; i < constantCount; i++) {
+            constantOffsets[i] = offset;
+            final int tag = classFileBuffer[offset];
+            offset += constantSize(classFileBuffer, offset);
+            if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                // 8-byte constants take up two entries
+                i++;
+            }
+        }
+        this.header = offset;
+    }
+
+    /**
+     * Scans the constant pool for an utf8 entry equal to one of the candidates, comparing raw bytes.<br>
+     * No String is created, so this check is cheap enough to run on every loaded class.
+     *
+     * @param candidatesByLength candidate utf8 bytes, indexed by their length
+     */
+    static boolean containsUtf8(byte[] classFileBuffer, byte[][][] candidatesByLength) {
+        if (classFileBuffer == null || classFileBuffer.length < 10 || readInt(classFileBuffer, 0) != MAGIC) {
+            return false;
+        }
+        final int constantCount = readUnsignedShort(classFileBuffer, 8);
+        int offset = 10;
+        for (int i = 1; i < constantCount; i++) {
+            final int tag = classFileBuffer[offset];
+            if (tag == CONSTANT_UTF8) {
+                final int length = readUnsignedShort(classFileBuffer, offset + 1);
+                if (length < candidatesByLength.length) {
+                    final byte[][] candidates = candidatesByLength[length];
+                    if (candidates != null && matchAny(classFileBuffer, offset + 3, length, candidates)) {
+                        return true;
+                    }
+                }
+            } else if (tag == CONSTANT_LONG || tag == CONSTANT_DOUBLE) {
+                i++;
+            }
+            offset += constantSize(classFileBuffer, offset);
+        }
+        return false;
+    }
+
+    private static boolean matchAny(byte[] buffer, int offset, int length, byte[][] candidates) {
+        for (byte[] candidate : candidates) {
+            if (equals(buffer, offset, candidate, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equals(byte[] buffer, int offset, byte[] candidate, int length) {
+        // compare from the end. class names in the same package share long prefixes.
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[offset + i] != candidate[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int constantSize(byte[] b, int offset) {
+        final int tag = b[offset];
+        switch (tag) {
+            case CONSTANT_UTF8:
+                return 3 + readUnsignedShort(b, offset + 1);
+            case CONSTANT_CLASS:
+            case CONSTANT_STRING:
+            case CONSTANT_METHOD_TYPE:
+            case CONSTANT_MODULE:
+            case CONSTANT_PACKAGE:
+                return 3;
+            case CONSTANT_METHOD_HANDLE:
+                return 4;
+            case CONSTANT_INTEGER:
+            case CONSTANT_FLOAT:
+            case CONSTANT_FIELDREF:
+            case CONSTANT_METHODREF:
+            case CONSTANT_INTERFACE_METHODREF:
+            case CONSTANT_NAME_AND_TYPE:
+            case CONSTANT_DYNAMIC:
+            case CONSTANT_INVOKE_DYNAMIC:
+                return 5;
+            case CONSTANT_LONG:
+            case CONSTANT_DOUBLE:
+                return 9;
+            default:
+                throw new IllegalArgumentException("unknown constant pool tag:" + tag + " offset:" + offset);
+        }
+    }
+
+    public String getClassName() {
+        return readClass(header + 2);
+    }
+
+    /**
+     * @return jvm name of the super class. null for java/lang/Object and module-info.
+     */
+    public String getSuperClassName() {
+        return readClass(header + 4);
+    }
+
+    public List<String> getInterfaceNames() {
+        final int count = readUnsignedShort(b, header + 6);
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        final List<String> interfaceNames = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            interfaceNames.add(readClass(header + 8 + (i * 2)));
+        }
+        return interfaceNames;
+    }
+
+    /**
+     * @return type descriptors ("Lcom/foo/Bar;") of the runtime visible annotations of the class.
+     */
+    public List<String> getAnnotationDescriptors() {
+        int offset = header + 8 + (readUnsignedShort(b, header + 6) * 2);
+        // fields
+        offset = skipMembers(offset);
+        // methods
+        offset = skipMembers(offset);
+
+        final int attributeCount = readUnsignedShort(b, offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            final int nameIndex = readUnsignedShort(b, offset);
+            final int length = readInt(b, offset + 2);
+            if (isUtf8(nameIndex, RUNTIME_VISIBLE_ANNOTATIONS)) {
+                return readAnnotationTypes(offset + 6);
+            }
+            offset += 6 + length;
+        }
+        return Collections.emptyList();
+    }
+
+    private int skipMembers(int offset) {
+        final int memberCount = readUnsignedShort(b, offset);
+        offset += 2;
+        for (int i = 0; i < memberCount; i++) {
+            // access_flags, name_index, descriptor_index
+            offset += 6;
+            offset = skipAttributes(offset);
+        }
+        return offset;
+    }
+
+    private int skipAttributes(int offset) {
+        final int attributeCount = readUnsignedShort(b, offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            offset += 6 + readInt(b, offset + 2);
+        }
+        return offset;
+    }
+
+    private List<String> readAnnotationTypes(int offset) {
+        final int annotationCount = readUnsignedShort(b, offset);
+        offset += 2;
+        final List<String> annotationTypes = new ArrayList<String>(annotationCount);
+        for (int i = 0; i < annotationCount; i++) {
+            annotationTypes.add(readUtf8(readUnsignedShort(b, offset)));
+            offset = skipAnnotation(offset);
+        }
+        return annotationTypes;
+    }
+
+    private int skipAnnotation(int offset) {
+        // type_index
+        offset += 2;
+        final int pairCount = readUnsignedShort(b, offset);
+        offset += 2;
+        for (int i = 0; i < pairCount; i++) {
+            // element_name_index
+            offset = skipElementValue(offset + 2);
+        }
+        return offset;
+    }
+
+    private int skipElementValue(int offset) {
+        final int tag = b[offset];
+        offset++;
+        switch (tag) {
+            case 'e':
+                // enum_const_value
+                return offset + 4;
+            case '@':
+                return skipAnnotation(offset);
+            case '[':
+                final int valueCount = readUnsignedShort(b, offset);
+                offset += 2;
+                for (int i = 0; i < valueCount; i++) {
+                    offset = skipElementValue(offset);
+                }
+                return offset;
+            default:
+                // const_value_index or class_info_index
+                return offset + 2;
+        }
+    }
+
+    private String readClass(int offset) {
+        final int classIndex = readUnsignedShort(b, offset);
+        if (classIndex == 0) {
+            return null;
+        }
+        final int nameIndex = readUnsignedShort(b, constantOffsets[classIndex] + 1);
+        return readUtf8(nameIndex);
+    }
+
+    private boolean isUtf8(int index, byte[] expected) {
+        final int offset = constantOffsets[index];
+        final int length = readUnsignedShort(b, offset + 1);
+        return length == expected.length && equals(b, offset + 3, expected, length);
+    }
+
+    private String readUtf8(int index) {
+        final int offset = constantOffsets[index];
+        final int length = readUnsignedShort(b, offset + 1);
+        return decodeModifiedUtf8(b, offset + 3, length);
+    }
+
+    private static String decodeModifiedUtf8(byte[] b, int offset, int length) {
+        final char[] chars = new char[length];
+        final int end = offset + length;
+        int count = 0;
+        while (offset < end) {
+            final int c = b[offset++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (b[offset++] & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0x0F) << 12) | ((b[offset++] & 0x3F) << 6) | (b[offset++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private static int readUnsignedShort(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 8) | (b[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] b, int offset) {
+        return ((b[offset] & 0xFF) << 24) | ((b[offset + 1] & 0xFF) << 16) | ((b[offset + 2] & 0xFF) << 8) | (b[offset + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.transformer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent cache of transformed class files.<br>
+ * Entries live in a sub directory named after a fingerprint of the agent version, the agent and plugin jars and the configuration,
+ * so any change there starts an empty cache. An entry is keyed by the class loader type, the class name and the original class file,
+ * and stores either the transformed class file or the fact that the transformer left the class unchanged, together with the plugin
+ * classes the transformer injected into the class loader.<br>
+ * Each entry file carries its key and a CRC32 of the content. A broken entry is deleted and treated as a miss.
+ * Classes whose transformation can not be cached are remembered by class loader type and class name, so later runs skip the lookup.
+ * Writes stop once maxEntries or maxBytes is reached. Fingerprint directories of older agents are deleted, oldest first, while the
+ * whole cache is over maxBytes.
+ */
+public class ClassFileTransformCache {
+
+    private static final int MAGIC = 0x41504d43;
+    private static final byte VERSION = 2;
+    private static final byte TYPE_NOT_MODIFIED = 0;
+    private static final byte TYPE_CLASS_FILE = 1;
+
+    private static final String FILE_SUFFIX = ".cls";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String UNCACHEABLE_FILE = "uncacheable.lst";
+    private static final String CHARSET = "UTF-8";
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File directory;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile boolean full = false;
+
+    // "classLoaderType className" of classes whose transformation can not be cached
+    private final Set<String> uncacheable = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Object uncacheableWriteLock = new Object();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong corruptCount = new AtomicLong();
+    private final AtomicLong skipCount = new AtomicLong();
+
+    public ClassFileTransformCache(File baseDirectory, String fingerprint, int maxEntries, long maxBytes) {
+        if (baseDirectory == null) {
+            throw new NullPointerException("baseDirectory must not be null");
+        }
+        if (fingerprint == null) {
+            throw new NullPointerException("fingerprint must not be null");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.directory = new File(baseDirectory, fingerprint);
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.warn("transform cache directory create fail. {}", directory);
+        }
+        deleteStaleDirectory(baseDirectory);
+        countEntries();
+        loadUncacheable();
+        logger.info("transform cache {} entries:{} bytes:{} uncacheable:{}", directory, entries.get(), bytes.get(), uncacheable.size());
+    }
+
+    private void deleteStaleDirectory(File baseDirectory) {
+        final File[] files = baseDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final List<File> staleDirectories = new ArrayList<File>();
+        long totalBytes = 0;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                totalBytes += directorySize(file);
+                if (!file.equals(directory)) {
+                    staleDirectories.add(file);
+                }
+            }
+        }
+        Collections.sort(staleDirectories, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                final long m1 = o1.lastModified();
+                final long m2 = o2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+        for (File staleDirectory : staleDirectories) {
+            if (totalBytes <= maxBytes) {
+                return;
+            }
+            totalBytes -= directorySize(staleDirectory);
+            deleteDirectory(staleDirectory);
+            logger.info("stale transform cache deleted. {}", staleDirectory);
+        }
+    }
+
+    private void countEntries() {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(FILE_SUFFIX)) {
+                entries.incrementAndGet();
+                bytes.addAndGet(file.length());
+            } else if (name.endsWith(TEMP_FILE_SUFFIX)) {
+                // left over from a crash
+                file.delete();
+            }
+        }
+        full = entries.get() >= maxEntries || bytes.get() >= maxBytes;
+    }
+
+    private void loadUncacheable() {
+        final File file = new File(directory, UNCACHEABLE_FILE);
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    uncacheable.add(line);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("uncacheable class list read fail. file:{} Caused:{}", file, e.getMessage());
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * @return true if an earlier transformation of the class could not be cached. such a class is transformed without a lookup.
+     */
+    public boolean isUncacheable(ClassLoader classLoader, String jvmClassName) {
+        if (uncacheable.contains(uncacheableKey(classLoader, jvmClassName))) {
+            skipCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public void markUncacheable(ClassLoader classLoader, String jvmClassName) {
+        if (uncacheable.size() >= maxEntries) {
+            return;
+        }
+        final String key = uncacheableKey(classLoader, jvmClassName);
+        if (!uncacheable.add(key)) {
+            return;
+        }
+        final File file = new File(directory, UNCACHEABLE_FILE);
+        synchronized (uncacheableWriteLock) {
+            BufferedWriter writer = null;
+            try {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), CHARSET));
+                writer.write(key);
+                writer.write('\n');
+            } catch (IOException e) {
+                logger.debug("uncacheable class list write fail. file:{} Caused:{}", file, e.getMessage());
+            } finally {
+                close(writer);
+            }
+        }
+    }
+
+    private static String uncacheableKey(ClassLoader classLoader, String jvmClassName) {
+        return getClassLoaderType(classLoader) + ' ' + jvmClassName;
+    }
+
+    /**
+     * @return null if not cached
+     */
+    public Entry get(ClassLoader classLoader, String jvmClassName, byte[] classFileBuffer) {
+        final byte[] key = key(classLoader, jvmClassName, classFileBuffer);
+        final File file = getFile(key);
+        if (!file.exists()) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final Entry entry = readEntry(in, key, classFileBuffer.length);
+            if (entry != null) {
+                hitCount.incrementAndGet();
+                return entry;
+            }
+        } catch (IOException e) {
+            logger.debug("transform cache read fail. file:{} Caused:{}", file, e.getMessage());
+        } finally {
+            close(in);
+        }
+        corruptCount.incrementAndGet();
+        missCount.incrementAndGet();
+        logger.info("broken transform cache entry deleted. className:{} file:{}", jvmClassName, file);
+        deleteEntry(file);
+        return null;
+    }
+
+    private Entry readEntry(DataInputStream in, byte[] key, int originalLength) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            return null;
+        }
+        final byte[] entryKey = new byte[key.length];
+        in.readFully(entryKey);
+        if (!Arrays.equals(key, entryKey) || in.readInt() != originalLength) {
+            return null;
+        }
+        final int length = in.readInt();
+        if (length < 0 || length > maxBytes) {
+            return null;
+        }
+        final byte[] content = new byte[length];
+        in.readFully(content);
+        if (in.readLong() != crc32(content)) {
+            return null;
+        }
+
+        final DataInputStream contentIn = new DataInputStream(new ByteArrayInputStream(content));
+        final byte type = contentIn.readByte();
+        final int injectedClassCount = contentIn.readInt();
+        if (injectedClassCount < 0 || injectedClassCount > length) {
+            return null;
+        }
+        final List<String> injectedClasses = new ArrayList<String>(injectedClassCount);
+        for (int i = 0; i < injectedClassCount; i++) {
+            injectedClasses.add(contentIn.readUTF());
+        }
+        final byte[] classFile = new byte[contentIn.available()];
+        contentIn.readFully(classFile);
+        if (type == TYPE_NOT_MODIFIED && classFile.length == 0) {
+            return new Entry(null, injectedClasses);
+        }
+        if (type == TYPE_CLASS_FILE && classFile.length > 0) {
+            return new Entry(classFile, injectedClasses);
+        }
+        return null;
+    }
+
+    /**
+     * @param transformed null if the transformer left the class unchanged
+     * @param injectedClasses plugin classes the transformer injected into the class loader, in injection order
+     */
+    public boolean put(ClassLoader classLoader, String jvmClassName, byte[] classFileBuffer, byte[] transformed, List<String> injectedClasses) {
+        if (injectedClasses == null) {
+            throw new NullPointerException("injectedClasses must not be null");
+        }
+        if (full) {
+            return false;
+        }
+        final byte[] key = key(classLoader, jvmClassName, classFileBuffer);
+        final File file = getFile(key);
+        if (file.exists()) {
+            return false;
+        }
+        final File tempFile = new File(directory, file.getName() + '.' + Thread.currentThread().getId() + TEMP_FILE_SUFFIX);
+        DataOutputStream out = null;
+        try {
+            final byte[] content = writeContent(transformed, injectedClasses);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.write(key);
+            out.writeInt(classFileBuffer.length);
+            out.writeInt(content.length);
+            out.write(content);
+            out.writeLong(crc32(content));
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                // written by another thread
+                tempFile.delete();
+                return false;
+            }
+        } catch (IOException e) {
+            logger.debug("transform cache write fail. file:{} Caused:{}", file, e.getMessage());
+            tempFile.delete();
+            return false;
+        } finally {
+            close(out);
+        }
+        writeCount.incrementAndGet();
+        final int currentEntries = entries.incrementAndGet();
+        final long currentBytes = bytes.addAndGet(file.length());
+        if (currentEntries >= maxEntries || currentBytes >= maxBytes) {
+            full = true;
+            logger.info("transform cache is full. entries:{} bytes:{}", currentEntries, currentBytes);
+        }
+        return true;
+    }
+
+    private static byte[] writeContent(byte[] transformed, List<String> injectedClasses) throws IOException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(transformed == null ? TYPE_NOT_MODIFIED : TYPE_CLASS_FILE);
+        out.writeInt(injectedClasses.size());
+        for (String injectedClass : injectedClasses) {
+            out.writeUTF(injectedClass);
+        }
+        if (transformed != null) {
+            out.write(transformed);
+        }
+        out.flush();
+        return buffer.toByteArray();
+    }
+
+    private void deleteEntry(File file) {
+        final long length = file.length();
+        if (file.delete()) {
+            entries.decrementAndGet();
+            bytes.addAndGet(-length);
+        }
+    }
+
+    private File getFile(byte[] key) {
+        return new File(directory, toHex(key) + FILE_SUFFIX);
+    }
+
+    private static byte[] key(ClassLoader classLoader, String jvmClassName, byte[] classFileBuffer) {
+        final MessageDigest digest = newDigest();
+        update(digest, getClassLoaderType(classLoader));
+        update(digest, jvmClassName);
+        digest.update(classFileBuffer);
+        return digest.digest();
+    }
+
+    private static String getClassLoaderType(ClassLoader classLoader) {
+        return classLoader == null ? "bootstrap" : classLoader.getClass().getName();
+    }
+
+    private static long crc32(byte[] bytes) {
+        final CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        return crc32.getValue();
+    }
+
+    /**
+     * Identifies everything a transformation may depend on besides the class file itself.
+     * Jars are identified by path, size and modification time.
+     */
+    public static String fingerprint(String agentVersion, List<URL> jars, Properties properties) {
+        final MessageDigest digest = newDigest();
+        update(digest, agentVersion);
+        for (URL jar : jars) {
+            update(digest, jar.toExternalForm());
+            final File file = toFile(jar);
+            if (file != null) {
+                update(digest, file.length() + ":" + file.lastModified());
+            }
+        }
+        if (properties != null) {
+            final Map<String, String> sorted = new TreeMap<String, String>();
+            for (String name : properties.stringPropertyNames()) {
+                sorted.put(name, properties.getProperty(name));
+            }
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                update(digest, entry.getKey());
+                update(digest, entry.getValue());
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static File toFile(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every jvm supports SHA-1
+            throw new IllegalStateException(DIGEST_ALGORITHM + " not supported", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        try {
+            digest.update(value.getBytes(CHARSET));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        // separator
+        digest.update((byte) 0);
+    }
+
+    private static String toHex(byte[] bytes) {
+        final char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static long directorySize(File directory) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        return size;
+    }
+
+    private static void deleteDirectory(File directory) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+            // skip
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getCorruptCount() {
+        return corruptCount.get();
+    }
+
+    public long getSkipCount() {
+        return skipCount.get();
+    }
+
+    public int getEntries() {
+        return entries.get();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassFileTransformCache{" +
+                "directory=" + directory +
+                ", entries=" + entries.get() +
+                ", bytes=" + bytes.get() +
+                ", hit=" + hitCount.get() +
+                ", miss=" + missCount.get() +
+                ", write=" + writeCount.get() +
+                ", corrupt=" + corruptCount.get() +
+                ", uncacheable=" + uncacheable.size() +
+                ", skip=" + skipCount.get() +
+                '}';
+    }
+
+    public static final class Entry {
+        // null if the transformer left the class unchanged
+        private final byte[] classFile;
+        private final List<String> injectedClasses;
+
+        private Entry(byte[] classFile, List<String> injectedClasses) {
+            this.classFile = classFile;
+            this.injectedClasses = injectedClasses;
+        }
+
+        /**
+         * @return null if the transformer left the class unchanged
+         */
+        public byte[] getClassFile() {
+            return classFile;
+        }
+
+        public List<String> getInjectedClasses() {
+            return injectedClasses;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.transformer;
+
+/**
+ * Character trie of jvm package names ("org/springframework/web").<br>
+ * Lookup walks the jvm class name given to {@link java.lang.instrument.ClassFileTransformer} once, without converting it to a java name or creating substrings.
+ * A package matches its classes and the classes of its sub packages. The longest registered package wins.
+ *
+ * Not thread safe for writes. All entries must be added before the first lookup.
+ */
+final class ClassNamePrefixTrie<T> {
+
+    private final Node<T> root = new Node<T>();
+    private int size = 0;
+
+    public void put(String jvmPackageName, T value) {
+        if (jvmPackageName == null) {
+            throw new NullPointerException("jvmPackageName must not be null");
+        }
+        if (value == null) {
+            throw new NullPointerException("value must not be null");
+        }
+        Node<T> node = root;
+        for (int i = 0; i < jvmPackageName.length(); i++) {
+            node = node.getOrCreateChild(jvmPackageName.charAt(i));
+        }
+        if (node.value != null) {
+            throw new IllegalStateException("Transformer already exist. packageName:" + jvmPackageName + " new:" + value + " old:" + node.value);
+        }
+        node.value = value;
+        size++;
+    }
+
+    public T findLongestPrefix(String jvmClassName) {
+        if (size == 0) {
+            return null;
+        }
+        T found = null;
+        Node<T> node = root;
+        final int length = jvmClassName.length();
+        for (int i = 0; i < length; i++) {
+            final char c = jvmClassName.charAt(i);
+            if (c == '/' && node.value != null) {
+                // package boundary
+                found = node.value;
+            }
+            node = node.getChild(c);
+            if (node == null) {
+                return found;
+            }
+        }
+        // the class name is equal to a package name. not a member of the package.
+        return found;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static final class Node<T> {
+        private static final char[] EMPTY_KEYS = new char[0];
+
+        // package names fan out slowly. linear search over a small array is faster than hashing.
+        private char[] keys = EMPTY_KEYS;
+        @SuppressWarnings("unchecked")
+        private Node<T>[] children = new Node[0];
+        private T value;
+
+        private Node<T> getChild(char c) {
+            final char[] keys = this.keys;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<T> getOrCreateChild(char c) {
+            final Node<T> child = getChild(c);
+            if (child != null) {
+                return child;
+            }
+            final int length = keys.length;
+            final char[] newKeys = new char[length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, length);
+            final Node<T>[] newChildren = new Node[length + 1];
+            System.arraycopy(children, 0, newChildren, 0, length);
+
+            final Node<T> newChild = new Node<T>();
+            newKeys[length] = c;
+            newChildren[length] = newChild;
+            this.keys = newKeys;
+            this.children = newChildren;
+            return newChild;
+        }
+    }
+}
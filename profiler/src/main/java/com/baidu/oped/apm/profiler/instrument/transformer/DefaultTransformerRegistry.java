@@ -17,16 +17,32 @@
 package com.baidu.oped.apm.profiler.instrument.transformer;
 
 import java.lang.instrument.ClassFileTransformer;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.bootstrap.instrument.matcher.AnnotationMatcher;
 import com.baidu.oped.apm.bootstrap.instrument.matcher.ClassNameMatcher;
+import com.baidu.oped.apm.bootstrap.instrument.matcher.InterfaceMatcher;
 import com.baidu.oped.apm.bootstrap.instrument.matcher.Matcher;
 import com.baidu.oped.apm.bootstrap.instrument.matcher.MultiClassNameMatcher;
+import com.baidu.oped.apm.bootstrap.instrument.matcher.PackageNameMatcher;
+import com.baidu.oped.apm.bootstrap.instrument.matcher.SuperClassMatcher;
 import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
+import com.baidu.oped.apm.profiler.util.Maps;
 
 /**
+ * Lookup order: exact class name, longest package prefix, then super class / interface / annotation.<br>
+ * Class name lookups work on the jvm name directly. Class file matchers are guarded by a byte level constant pool check,
+ * and classes rejected after parsing are remembered per class loader so retransformation does not parse them again.
+ *
  * @author emeroad
  * @author netspider
  * @author hyungil.jeong
@@ -35,15 +51,82 @@ import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
  */
 public class DefaultTransformerRegistry implements TransformerRegistry {
 
+    public static final int DEFAULT_MAX_REJECTED_CLASS_PER_CLASS_LOADER = 4096;
+
+    private static final Object BOOTSTRAP_CLASS_LOADER = new Object();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     // No concurrent issue because only one thread put entries to the map and get operations are started AFTER the map is completely build.
     // Set the map size big intentionally to keep hash collision low.
     private final Map<String, ClassFileTransformer> registry = new HashMap<String, ClassFileTransformer>(512);
 
+    private final ClassNamePrefixTrie<ClassFileTransformer> packageRegistry = new ClassNamePrefixTrie<ClassFileTransformer>();
+
+    private final ClassFileMatcherIndex classFileRegistry = new ClassFileMatcherIndex();
+
+    // class loader -> jvm class names rejected by the class file matchers
+    private final ConcurrentMap<Object, Set<String>> rejectedClassCache = Maps.newWeakConcurrentMap();
+    private final int maxRejectedClassPerClassLoader;
+
+    public DefaultTransformerRegistry() {
+        this(DEFAULT_MAX_REJECTED_CLASS_PER_CLASS_LOADER);
+    }
+
+    public DefaultTransformerRegistry(int maxRejectedClassPerClassLoader) {
+        this.maxRejectedClassPerClassLoader = maxRejectedClassPerClassLoader;
+    }
+
     @Override
     public ClassFileTransformer findTransformer(String className) {
-        return registry.get(className);
+        final ClassFileTransformer transformer = registry.get(className);
+        if (transformer != null) {
+            return transformer;
+        }
+        return packageRegistry.findLongestPrefix(className);
     }
-    
+
+    @Override
+    public ClassFileTransformer findTransformer(ClassLoader classLoader, String className, byte[] classFileBuffer) {
+        final ClassFileTransformer transformer = findTransformer(className);
+        if (transformer != null) {
+            return transformer;
+        }
+        if (!classFileRegistry.mayMatch(classFileBuffer)) {
+            return null;
+        }
+
+        final Set<String> rejectedClasses = getRejectedClasses(classLoader);
+        if (rejectedClasses.contains(className)) {
+            return null;
+        }
+        try {
+            final ClassFileTransformer classFileTransformer = classFileRegistry.findTransformer(classFileBuffer);
+            if (classFileTransformer == null && rejectedClasses.size() < maxRejectedClassPerClassLoader) {
+                rejectedClasses.add(className);
+            }
+            return classFileTransformer;
+        } catch (RuntimeException e) {
+            // broken or unsupported class file. let the jvm report it.
+            logger.warn("class file parse fail. className:{} Caused:{}", className, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private Set<String> getRejectedClasses(ClassLoader classLoader) {
+        final Object key = classLoader == null ? BOOTSTRAP_CLASS_LOADER : classLoader;
+        final Set<String> rejectedClasses = rejectedClassCache.get(key);
+        if (rejectedClasses != null) {
+            return rejectedClasses;
+        }
+        final Set<String> newRejectedClasses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> before = rejectedClassCache.putIfAbsent(key, newRejectedClasses);
+        if (before != null) {
+            return before;
+        }
+        return newRejectedClasses;
+    }
+
     public void addTransformer(Matcher matcher, ClassFileTransformer transformer) {
         // TODO extract matcher process
         if (matcher instanceof ClassNameMatcher) {
@@ -56,6 +139,19 @@ public class DefaultTransformerRegistry implements TransformerRegistry {
             for (String className : classNameList) {
                 addModifier0(transformer, className);
             }
+        } else if (matcher instanceof PackageNameMatcher) {
+            final PackageNameMatcher packageNameMatcher = (PackageNameMatcher)matcher;
+            final String jvmPackageName = JavaAssistUtils.javaNameToJvmName(packageNameMatcher.getPackageName());
+            packageRegistry.put(jvmPackageName, transformer);
+        } else if (matcher instanceof SuperClassMatcher) {
+            final SuperClassMatcher superClassMatcher = (SuperClassMatcher)matcher;
+            classFileRegistry.addSuperClass(JavaAssistUtils.javaNameToJvmName(superClassMatcher.getSuperClassName()), transformer);
+        } else if (matcher instanceof InterfaceMatcher) {
+            final InterfaceMatcher interfaceMatcher = (InterfaceMatcher)matcher;
+            classFileRegistry.addInterface(JavaAssistUtils.javaNameToJvmName(interfaceMatcher.getInterfaceName()), transformer);
+        } else if (matcher instanceof AnnotationMatcher) {
+            final AnnotationMatcher annotationMatcher = (AnnotationMatcher)matcher;
+            classFileRegistry.addAnnotation(JavaAssistUtils.javaNameToJvmName(annotationMatcher.getAnnotationName()), transformer);
         } else {
             throw new IllegalArgumentException("unsupported matcher :" + matcher);
         }
@@ -25,4 +25,13 @@ public interface TransformerRegistry {
 
     ClassFileTransformer findTransformer(String className);
 
+    /**
+     * Also checks the matchers which need the class file, such as annotation, interface and super class matchers.
+     *
+     * @param classLoader defining class loader. null for the bootstrap class loader
+     * @param className jvm class name
+     * @param classFileBuffer class file given to the {@link java.lang.instrument.ClassFileTransformer}
+     */
+    ClassFileTransformer findTransformer(ClassLoader classLoader, String className, byte[] classFileBuffer);
+
 }
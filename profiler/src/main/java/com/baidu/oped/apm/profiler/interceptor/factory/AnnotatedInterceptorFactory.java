@@ -87,11 +87,61 @@ public class AnnotatedInterceptorFactory implements InterceptorFactory {
         Interceptor interceptor = (Interceptor)factory.createInstance(recipe, interceptorArgumentProvider);
         
         if (group != null) {
-            interceptor = wrapByGroup(interceptor, group, policy == null ? ExecutionPolicy.BOUNDARY : policy);
+            interceptor = wrapByGroup(interceptor, targetMethod, group, policy == null ? ExecutionPolicy.BOUNDARY : policy);
         }
         
         return interceptor;
     }
+
+    private Interceptor wrapByGroup(Interceptor interceptor, InstrumentMethod targetMethod, InterceptorGroup group, ExecutionPolicy policy) {
+        if (targetMethod != null) {
+            // an interceptor implementing several arity-specific signatures is wrapped by the one matching the target method,
+            // otherwise the woven code would fall back to the argument array of the first matching wrapper.
+            final Interceptor arityInterceptor = wrapByGroup(interceptor, targetMethod.getParameterTypes().length, group, policy);
+            if (arityInterceptor != null) {
+                return arityInterceptor;
+            }
+        }
+        return wrapByGroup(interceptor, group, policy);
+    }
+
+    private Interceptor wrapByGroup(Interceptor interceptor, int arity, InterceptorGroup group, ExecutionPolicy policy) {
+        switch (arity) {
+        case 0:
+            if (interceptor instanceof AroundInterceptor0) {
+                return new GroupedInterceptor0((BeforeInterceptor0)interceptor, (AfterInterceptor0)interceptor, group, policy);
+            }
+            break;
+        case 1:
+            if (interceptor instanceof AroundInterceptor1) {
+                return new GroupedInterceptor1((BeforeInterceptor1)interceptor, (AfterInterceptor1)interceptor, group, policy);
+            }
+            break;
+        case 2:
+            if (interceptor instanceof AroundInterceptor2) {
+                return new GroupedInterceptor2((BeforeInterceptor2)interceptor, (AfterInterceptor2)interceptor, group, policy);
+            }
+            break;
+        case 3:
+            if (interceptor instanceof AroundInterceptor3) {
+                return new GroupedInterceptor3((BeforeInterceptor3)interceptor, (AfterInterceptor3)interceptor, group, policy);
+            }
+            break;
+        case 4:
+            if (interceptor instanceof AroundInterceptor4) {
+                return new GroupedInterceptor4((BeforeInterceptor4)interceptor, (AfterInterceptor4)interceptor, group, policy);
+            }
+            break;
+        case 5:
+            if (interceptor instanceof AroundInterceptor5) {
+                return new GroupedInterceptor5((BeforeInterceptor5)interceptor, (AfterInterceptor5)interceptor, group, policy);
+            }
+            break;
+        default:
+            break;
+        }
+        return null;
+    }
     
     private Interceptor wrapByGroup(Interceptor interceptor, InterceptorGroup group, ExecutionPolicy policy) {
         if (interceptor instanceof AroundInterceptor) {
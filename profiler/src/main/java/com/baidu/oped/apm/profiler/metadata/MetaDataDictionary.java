@@ -0,0 +1,294 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.metadata;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import com.baidu.oped.apm.common.util.BytesUtils;
+import com.baidu.oped.apm.profiler.monitor.CounterMonitor;
+import com.baidu.oped.apm.profiler.monitor.MonitorName;
+import com.baidu.oped.apm.profiler.monitor.MonitorRegistry;
+import com.baidu.oped.apm.profiler.monitor.codahale.MetricMonitorRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Metadata id dictionary. Same contract as {@link SimpleCache} but ids are never re-issued for a value which is in the dictionary.<br>
+ * The first maxSize values are pinned and never evicted. Values beyond that go to a bounded LRU overflow cache,
+ * and get a new id (and are sent again) only when they come back after eviction.
+ * Ids are never reused for a different value.
+ * <p>
+ * The pinned entries can be persisted with {@link #writeTo(DataOutputStream)} and loaded on the next start with {@link #readFrom(DataInputStream)}.
+ * The collector keys metadata by agentStartTime, so a loaded entry keeps its id but is reported as new once, on first use.
+ */
+public class MetaDataDictionary {
+
+    public static final String MONITOR_PREFIX = "metadata.";
+
+    private static final int FILE_MAGIC = 0x41504d44;
+    private static final byte FILE_VERSION = 1;
+
+    private final String name;
+    private final int maxSize;
+
+    // pinned values. never evicted.
+    private final ConcurrentMap<String, Entry> dictionary;
+    private final AtomicInteger dictionarySize = new AtomicInteger();
+    // values which did not fit into the dictionary.
+    private final ConcurrentMap<String, Result> overflow;
+
+    // zero means not exist.
+    private final AtomicInteger idGen = new AtomicInteger(1);
+
+    private final CounterMonitor hitCounter;
+    private final CounterMonitor missCounter;
+    private final CounterMonitor evictionCounter;
+    private final CounterMonitor resendCounter;
+
+    public MetaDataDictionary(String name, int maxSize) {
+        this(name, maxSize, LRUCache.DEFAULT_CACHE_SIZE, new MetricMonitorRegistry());
+    }
+
+    public MetaDataDictionary(String name, int maxSize, int overflowSize, MonitorRegistry monitorRegistry) {
+        if (name == null) {
+            throw new NullPointerException("name must not be null");
+        }
+        if (monitorRegistry == null) {
+            throw new NullPointerException("monitorRegistry must not be null");
+        }
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("negative maxSize:" + maxSize);
+        }
+        if (overflowSize < 0) {
+            throw new IllegalArgumentException("negative overflowSize:" + overflowSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        this.dictionary = new ConcurrentHashMap<String, Entry>(Math.min(maxSize, 1024), 0.75f, 64);
+
+        final String prefix = MONITOR_PREFIX + name;
+        this.hitCounter = monitorRegistry.newCounterMonitor(new MonitorName(prefix + ".hit"));
+        this.missCounter = monitorRegistry.newCounterMonitor(new MonitorName(prefix + ".miss"));
+        this.evictionCounter = monitorRegistry.newCounterMonitor(new MonitorName(prefix + ".eviction"));
+        this.resendCounter = monitorRegistry.newCounterMonitor(new MonitorName(prefix + ".resend"));
+
+        this.overflow = createOverflowCache(overflowSize);
+    }
+
+    private ConcurrentMap<String, Result> createOverflowCache(int overflowSize) {
+        final CacheBuilder<Object, Object> cacheBuilder = CacheBuilder.newBuilder();
+        cacheBuilder.concurrencyLevel(64);
+        cacheBuilder.maximumSize(overflowSize);
+        final CacheBuilder<String, Result> listenerCacheBuilder = cacheBuilder.removalListener(new RemovalListener<String, Result>() {
+            @Override
+            public void onRemoval(RemovalNotification<String, Result> notification) {
+                if (notification.wasEvicted()) {
+                    evictionCounter.incr();
+                }
+            }
+        });
+        return listenerCacheBuilder.<String, Result>build().asMap();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Result put(String value) {
+        final Entry entry = this.dictionary.get(value);
+        if (entry != null) {
+            return entryResult(entry);
+        }
+        final Result find = this.overflow.get(value);
+        if (find != null) {
+            hitCounter.incr();
+            return find;
+        }
+
+        missCounter.incr();
+        // Use negative values too to reduce data size
+        final int newId = BytesUtils.zigzagToInt(idGen.getAndIncrement());
+        if (reserveSlot()) {
+            final Entry newEntry = new Entry(newId, true);
+            final Entry before = this.dictionary.putIfAbsent(value, newEntry);
+            if (before != null) {
+                dictionarySize.decrementAndGet();
+                return entryResult(before);
+            }
+            return new Result(true, newId);
+        }
+
+        final Result result = new Result(false, newId);
+        final Result before = this.overflow.putIfAbsent(value, result);
+        if (before != null) {
+            return before;
+        }
+        return new Result(true, newId);
+    }
+
+    private Result entryResult(Entry entry) {
+        if (entry.markSent()) {
+            // loaded from file. not sent by this agent yet.
+            resendCounter.incr();
+            return new Result(true, entry.id);
+        }
+        hitCounter.incr();
+        return entry.result;
+    }
+
+    private boolean reserveSlot() {
+        while (true) {
+            final int size = dictionarySize.get();
+            if (size >= maxSize) {
+                return false;
+            }
+            if (dictionarySize.compareAndSet(size, size + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int size() {
+        return dictionarySize.get();
+    }
+
+    public long getHitCount() {
+        return hitCounter.getCount();
+    }
+
+    public long getMissCount() {
+        return missCounter.getCount();
+    }
+
+    public long getEvictionCount() {
+        return evictionCounter.getCount();
+    }
+
+    public long getResendCount() {
+        return resendCounter.getCount();
+    }
+
+    /**
+     * Write the pinned entries and the id sequence. Overflow entries are not written.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        // read the sequence first. ids of the entries in the snapshot are always smaller.
+        final int nextId = idGen.get();
+        final List<Map.Entry<String, Entry>> snapshot = new ArrayList<Map.Entry<String, Entry>>(dictionary.entrySet());
+
+        out.writeInt(FILE_MAGIC);
+        out.writeByte(FILE_VERSION);
+        out.writeUTF(name);
+        out.writeInt(nextId);
+        out.writeInt(snapshot.size());
+        for (Map.Entry<String, Entry> mapEntry : snapshot) {
+            final byte[] value = BytesUtils.toBytes(mapEntry.getKey());
+            out.writeInt(mapEntry.getValue().id);
+            out.writeInt(value.length);
+            out.write(value);
+        }
+    }
+
+    /**
+     * Load entries written by {@link #writeTo(DataOutputStream)}. Must be called before the first {@link #put(String)}.
+     *
+     * @return number of loaded entries
+     */
+    public int readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != FILE_MAGIC) {
+            throw new IOException("invalid dictionary file");
+        }
+        final byte version = in.readByte();
+        if (version != FILE_VERSION) {
+            throw new IOException("unsupported dictionary version:" + version);
+        }
+        final String fileName = in.readUTF();
+        if (!name.equals(fileName)) {
+            throw new IOException("dictionary name mismatch. expected:" + name + " file:" + fileName);
+        }
+        final int nextId = in.readInt();
+        final int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("invalid entry count:" + count);
+        }
+        int loaded = 0;
+        for (int i = 0; i < count; i++) {
+            final int id = in.readInt();
+            final int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("invalid value length:" + length);
+            }
+            final byte[] value = new byte[length];
+            in.readFully(value);
+            if (!reserveSlot()) {
+                // the dictionary was shrunk by config. the rest is dropped.
+                break;
+            }
+            if (this.dictionary.putIfAbsent(BytesUtils.toString(value), new Entry(id, false)) != null) {
+                dictionarySize.decrementAndGet();
+                continue;
+            }
+            loaded++;
+        }
+        // ids issued by the previous agent are never issued again.
+        while (true) {
+            final int current = idGen.get();
+            if (current >= nextId || idGen.compareAndSet(current, nextId)) {
+                break;
+            }
+        }
+        return loaded;
+    }
+
+    @Override
+    public String toString() {
+        return "MetaDataDictionary{name=" + name + ", size=" + dictionarySize.get() + "/" + maxSize + ", overflow=" + overflow.size() + '}';
+    }
+
+    private static final class Entry {
+        private static final AtomicIntegerFieldUpdater<Entry> SENT_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "sent");
+
+        private final int id;
+        private final Result result;
+        // 0 until the metadata is sent by this agent.
+        private volatile int sent;
+
+        private Entry(int id, boolean sent) {
+            this.id = id;
+            this.result = new Result(false, id);
+            this.sent = sent ? 1 : 0;
+        }
+
+        private boolean markSent() {
+            return sent == 0 && SENT_UPDATER.compareAndSet(this, 0, 1);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.metadata;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps {@link MetaDataDictionary} files of one agent in a directory. One file per dictionary.
+ * A broken or missing file is ignored, the dictionary then starts empty.
+ */
+public class MetaDataDictionaryStore {
+
+    private static final String FILE_SUFFIX = ".dict";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File directory;
+
+    public MetaDataDictionaryStore(File directory) {
+        if (directory == null) {
+            throw new NullPointerException("directory must not be null");
+        }
+        this.directory = directory;
+    }
+
+    public boolean load(MetaDataDictionary dictionary) {
+        final File file = getFile(dictionary);
+        if (!file.exists()) {
+            return false;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            final int loaded = dictionary.readFrom(in);
+            logger.info("metadata dictionary loaded. {} entries:{}", dictionary.getName(), loaded);
+            return true;
+        } catch (IOException e) {
+            logger.warn("metadata dictionary load fail. file:{} Caused:{}", file, e.getMessage(), e);
+            return false;
+        } finally {
+            close(in);
+        }
+    }
+
+    public boolean save(MetaDataDictionary dictionary) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.warn("metadata dictionary directory create fail. {}", directory);
+            return false;
+        }
+        final File file = getFile(dictionary);
+        final File tempFile = new File(directory, dictionary.getName() + FILE_SUFFIX + TEMP_FILE_SUFFIX);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            dictionary.writeTo(out);
+            out.close();
+            out = null;
+            // rename over an existing file fails on some platforms.
+            if (file.exists() && !file.delete()) {
+                throw new IOException("delete fail. " + file);
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("rename fail. " + tempFile);
+            }
+            logger.info("metadata dictionary saved. {} entries:{}", dictionary.getName(), dictionary.size());
+            return true;
+        } catch (IOException e) {
+            logger.warn("metadata dictionary save fail. file:{} Caused:{}", file, e.getMessage(), e);
+            tempFile.delete();
+            return false;
+        } finally {
+            close(out);
+        }
+    }
+
+    private File getFile(MetaDataDictionary dictionary) {
+        return new File(directory, dictionary.getName() + FILE_SUFFIX);
+    }
+
+    private void close(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+            // skip
+        }
+    }
+}
@@ -50,13 +50,20 @@ public class AgentStatCollectorFactory {
     private final TransactionMetricCollector transactionMetricCollector;
 
     public AgentStatCollectorFactory(TransactionCounter transactionCounter) {
-        this.monitorRegistry = createRegistry();
+        this(createRegistry(), transactionCounter);
+    }
+
+    public AgentStatCollectorFactory(MetricMonitorRegistry monitorRegistry, TransactionCounter transactionCounter) {
+        if (monitorRegistry == null) {
+            throw new NullPointerException("monitorRegistry must not be null");
+        }
+        this.monitorRegistry = monitorRegistry;
         this.garbageCollector = createGarbageCollector();
         this.cpuLoadCollector = createCpuLoadCollector();
         this.transactionMetricCollector = createTransactionMetricCollector(transactionCounter);
     }
 
-    private MetricMonitorRegistry createRegistry() {
+    private static MetricMonitorRegistry createRegistry() {
         final MetricMonitorRegistry monitorRegistry = new MetricMonitorRegistry();
         return monitorRegistry;
     }
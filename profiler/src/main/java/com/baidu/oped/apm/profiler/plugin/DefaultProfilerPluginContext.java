@@ -34,6 +34,7 @@ import com.baidu.oped.apm.bootstrap.plugin.ProfilerPluginSetupContext;
 import com.baidu.oped.apm.profiler.DefaultAgent;
 import com.baidu.oped.apm.profiler.DynamicTransformService;
 import com.baidu.oped.apm.profiler.instrument.ClassInjector;
+import com.baidu.oped.apm.profiler.instrument.TransformCacheScope;
 import com.baidu.oped.apm.profiler.interceptor.group.DefaultInterceptorGroup;
 import com.baidu.oped.apm.profiler.util.JavaAssistUtils;
 import com.baidu.oped.apm.profiler.util.NameValueList;
@@ -89,7 +90,7 @@ public class DefaultProfilerPluginContext implements ProfilerPluginSetupContext,
             throw new NullPointerException("className must not be null");
         }
         try {
-            return agent.getClassPool().getClass(this, classLoader, className, classFileBuffer);
+            return agent.getInstrumentClassPool().getClass(this, classLoader, className, classFileBuffer);
         } catch (NotFoundInstrumentException e) {
             return null;
         }
@@ -101,7 +102,7 @@ public class DefaultProfilerPluginContext implements ProfilerPluginSetupContext,
             throw new NullPointerException("className must not be null");
         }
 
-        return agent.getClassPool().hasClass(classLoader, className);
+        return agent.getInstrumentClassPool().hasClass(classLoader, className);
     }
 
     @Override
@@ -155,6 +156,7 @@ public class DefaultProfilerPluginContext implements ProfilerPluginSetupContext,
         if (className == null) {
             throw new NullPointerException("className must not be null");
         }
+        TransformCacheScope.recordInjectedClass(className);
 
         return classInjector.injectClass(targetClassLoader, className);
     }
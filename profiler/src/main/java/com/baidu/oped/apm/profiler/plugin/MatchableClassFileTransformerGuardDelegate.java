@@ -53,6 +53,10 @@ public class MatchableClassFileTransformerGuardDelegate implements MatchableClas
     }
 
 
+    public Instrumentor getInstrumentor() {
+        return instrumentor;
+    }
+
     @Override
     public Matcher getMatcher() {
         return matcher;
@@ -17,12 +17,19 @@ package com.baidu.oped.apm.profiler.plugin;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baidu.oped.apm.bootstrap.plugin.ProfilerPlugin;
 import com.baidu.oped.apm.common.plugin.PluginLoader;
+import com.baidu.oped.apm.common.util.ApmThreadFactory;
+import com.baidu.oped.apm.exception.ApmException;
 import com.baidu.oped.apm.profiler.DefaultAgent;
 import com.baidu.oped.apm.profiler.instrument.ClassInjector;
 import com.baidu.oped.apm.profiler.instrument.JarProfilerPluginClassInjector;
@@ -40,31 +47,86 @@ public class ProfilerPluginLoader {
     }
     
     public List<DefaultProfilerPluginContext> load(URL[] pluginJars) {
+        final List<String> disabled = agent.getProfilerConfig().getDisabledPlugins();
+        final int threads = Math.min(agent.getProfilerConfig().getPluginLoadThreads(), pluginJars.length);
+        if (threads <= 1) {
+            return loadSerial(pluginJars, disabled);
+        }
+        return loadParallel(pluginJars, disabled, threads);
+    }
+
+    private List<DefaultProfilerPluginContext> loadSerial(URL[] pluginJars, List<String> disabled) {
         List<DefaultProfilerPluginContext> pluginContexts = new ArrayList<DefaultProfilerPluginContext>(pluginJars.length);
-        List<String> disabled = agent.getProfilerConfig().getDisabledPlugins();
-        
         for (URL jar : pluginJars) {
-            List<ProfilerPlugin> plugins = PluginLoader.load(ProfilerPlugin.class, new URL[] { jar });
-            
-            for (ProfilerPlugin plugin : plugins) {
-                if (disabled.contains(plugin.getClass().getName())) {
-                    logger.info("Skip disabled plugin: {}", plugin.getClass().getName());
-                    continue;
-                }
-                
-                logger.info("Loading plugin: {}", plugin.getClass().getName());
+            pluginContexts.addAll(loadPluginJar(jar, disabled));
+        }
+        return pluginContexts;
+    }
 
-                final DefaultProfilerPluginContext context = setupPlugin(jar, plugin);
-                pluginContexts.add(context);
+    private List<DefaultProfilerPluginContext> loadParallel(URL[] pluginJars, final List<String> disabled, int threads) {
+        logger.info("Loading {} plugin jars with {} threads", pluginJars.length, threads);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new ApmThreadFactory("Apm-PluginLoader", true));
+        try {
+            final List<Future<List<DefaultProfilerPluginContext>>> futures = new ArrayList<Future<List<DefaultProfilerPluginContext>>>(pluginJars.length);
+            for (final URL jar : pluginJars) {
+                futures.add(executor.submit(new Callable<List<DefaultProfilerPluginContext>>() {
+                    @Override
+                    public List<DefaultProfilerPluginContext> call() throws Exception {
+                        return loadPluginJar(jar, disabled);
+                    }
+                }));
+            }
+
+            // merge in jar order so that transformers are registered in the same order as the serial loading.
+            List<DefaultProfilerPluginContext> pluginContexts = new ArrayList<DefaultProfilerPluginContext>(pluginJars.length);
+            for (int i = 0; i < pluginJars.length; i++) {
+                pluginContexts.addAll(getResult(futures.get(i), pluginJars[i]));
             }
+            return pluginContexts;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<DefaultProfilerPluginContext> getResult(Future<List<DefaultProfilerPluginContext>> future, URL jar) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApmException("Interrupted while loading plugin jar " + jar, e);
+        } catch (ExecutionException e) {
+            // rethrow as it is, same as the serial loading.
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ApmException("Failed to load plugin jar " + jar, cause);
+        }
+    }
+
+    private List<DefaultProfilerPluginContext> loadPluginJar(URL jar, List<String> disabled) {
+        List<DefaultProfilerPluginContext> pluginContexts = new ArrayList<DefaultProfilerPluginContext>();
+        List<ProfilerPlugin> plugins = PluginLoader.load(ProfilerPlugin.class, new URL[] { jar });
+
+        for (ProfilerPlugin plugin : plugins) {
+            if (disabled.contains(plugin.getClass().getName())) {
+                logger.info("Skip disabled plugin: {}", plugin.getClass().getName());
+                continue;
+            }
+
+            logger.info("Loading plugin: {}", plugin.getClass().getName());
+
+            final DefaultProfilerPluginContext context = setupPlugin(jar, plugin);
+            pluginContexts.add(context);
         }
-        
-        
         return pluginContexts;
     }
 
     private DefaultProfilerPluginContext setupPlugin(URL jar, ProfilerPlugin plugin) {
-        final ClassInjector classInjector = JarProfilerPluginClassInjector.of(agent.getInstrumentation(), agent.getClassPool(), jar);
+        final ClassInjector classInjector = JarProfilerPluginClassInjector.of(agent.getInstrumentation(), agent.getInstrumentClassPool(), jar);
         final DefaultProfilerPluginContext context = new DefaultProfilerPluginContext(agent, classInjector);
         final GuardProfilerPluginContext guard = new GuardProfilerPluginContext(context);
         try {
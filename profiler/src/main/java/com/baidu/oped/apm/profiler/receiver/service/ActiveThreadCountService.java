@@ -20,9 +20,8 @@
 package com.baidu.oped.apm.profiler.receiver.service;
 
 import com.baidu.oped.apm.common.trace.HistogramSchema;
-import com.baidu.oped.apm.common.trace.HistogramSlot;
 import com.baidu.oped.apm.common.trace.SlotType;
-import com.baidu.oped.apm.profiler.context.active.ActiveTraceInfo;
+import com.baidu.oped.apm.profiler.context.active.ActiveTraceHistogram;
 import com.baidu.oped.apm.profiler.context.active.ActiveTraceLocator;
 import com.baidu.oped.apm.profiler.receiver.CommandSerializer;
 import com.baidu.oped.apm.profiler.receiver.ProfilerRequestCommandService;
@@ -44,9 +43,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -80,7 +77,6 @@ public class ActiveThreadCountService implements ProfilerRequestCommandService,
     }
 
     private final ActiveTraceLocator activeTraceLocator;
-    private final int activeThreadSlotsCount;
     private final HistogramSchema histogramSchema = HistogramSchema.NORMAL_SCHEMA;
 
     public ActiveThreadCountService(ActiveTraceLocator activeTraceLocator) {
@@ -92,7 +88,6 @@ public class ActiveThreadCountService implements ProfilerRequestCommandService,
             throw new NullPointerException("activeTraceLocator");
         }
         this.activeTraceLocator = activeTraceLocator;
-        this.activeThreadSlotsCount = ACTIVE_THREAD_SLOTS_ORDER.size();
 
         this.flushDelay = flushDelay;
     }
@@ -119,23 +114,9 @@ public class ActiveThreadCountService implements ProfilerRequestCommandService,
     }
 
     private TCmdActiveThreadCountRes getActiveThreadCountResponse() {
-        Map<SlotType, IntAdder> mappedSlot = new LinkedHashMap<SlotType, IntAdder>(activeThreadSlotsCount);
-        for (SlotType slotType : ACTIVE_THREAD_SLOTS_ORDER) {
-            mappedSlot.put(slotType, new IntAdder(0));
-        }
-
-        long currentTime = System.currentTimeMillis();
-
-        List<ActiveTraceInfo> collectedActiveTraceInfo = activeTraceLocator.collect();
-        for (ActiveTraceInfo activeTraceInfo : collectedActiveTraceInfo) {
-            HistogramSlot slot = histogramSchema.findHistogramSlot((int) (currentTime - activeTraceInfo.getStartTime()));
-            mappedSlot.get(slot.getSlotType()).incrementAndGet();
-        }
-
-        List<Integer> activeThreadCount = new ArrayList<Integer>(activeThreadSlotsCount);
-        for (IntAdder statusCount : mappedSlot.values()) {
-            activeThreadCount.add(statusCount.get());
-        }
+        // live counters. no need to walk every active trace.
+        ActiveTraceHistogram activeTraceHistogram = activeTraceLocator.getActiveTraceHistogram(histogramSchema);
+        List<Integer> activeThreadCount = activeTraceHistogram.getCounts(ACTIVE_THREAD_SLOTS_ORDER);
 
         TCmdActiveThreadCountRes response = new TCmdActiveThreadCountRes();
         response.setHistogramSchemaType(histogramSchema.getTypeCode());
@@ -145,22 +126,6 @@ public class ActiveThreadCountService implements ProfilerRequestCommandService,
         return response;
     }
 
-    private static class IntAdder {
-        private int value = 0;
-
-        public IntAdder(int defaultValue) {
-            this.value = defaultValue;
-        }
-
-        public int incrementAndGet() {
-            return ++value;
-        }
-
-        public int get() {
-            return this.value;
-        }
-    }
-
     private class ActiveThreadCountStreamChannelStateChangeEventHandler implements StreamChannelStateChangeEventHandler<ServerStreamChannel> {
 
         @Override
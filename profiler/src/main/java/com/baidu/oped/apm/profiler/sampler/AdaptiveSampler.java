@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+import com.baidu.oped.apm.bootstrap.util.StripedCounter;
+import com.baidu.oped.apm.common.util.Clock;
+import com.baidu.oped.apm.common.util.SystemClock;
+import com.baidu.oped.apm.profiler.sender.DataSenderStatus;
+
+/**
+ * 1-in-N sampler whose N follows the pressure on the span sender.
+ * N doubles (up to maxSamplingRate) when the sender queue fills up or drops data,
+ * and halves back towards baseSamplingRate when the queue is nearly empty.
+ * The adjustment runs at most once per interval on whichever request thread arrives first.
+ */
+public class AdaptiveSampler implements Sampler {
+
+    static final int HIGH_WATERMARK_PERCENT = 50;
+    static final int LOW_WATERMARK_PERCENT = 10;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final StripedCounter counter = new StripedCounter();
+
+    private final int baseSamplingRate;
+    private final int maxSamplingRate;
+    private final DataSenderStatus dataSenderStatus;
+    private final long adjustIntervalMillis;
+    private final Clock clock;
+
+    private volatile int samplingRate;
+
+    private final AtomicLong nextAdjustTime;
+    // written by the thread which won nextAdjustTime only.
+    private volatile long lastOfferFailCount;
+
+    public AdaptiveSampler(int baseSamplingRate, int maxSamplingRate, DataSenderStatus dataSenderStatus, long adjustIntervalMillis) {
+        this(baseSamplingRate, maxSamplingRate, dataSenderStatus, adjustIntervalMillis, SystemClock.INSTANCE);
+    }
+
+    public AdaptiveSampler(int baseSamplingRate, int maxSamplingRate, DataSenderStatus dataSenderStatus, long adjustIntervalMillis, Clock clock) {
+        if (baseSamplingRate <= 0) {
+            throw new IllegalArgumentException("Invalid baseSamplingRate " + baseSamplingRate);
+        }
+        if (maxSamplingRate < baseSamplingRate) {
+            throw new IllegalArgumentException("maxSamplingRate must be equal to or greater than baseSamplingRate. maxSamplingRate:" + maxSamplingRate);
+        }
+        if (dataSenderStatus == null) {
+            throw new NullPointerException("dataSenderStatus must not be null");
+        }
+        if (adjustIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Invalid adjustIntervalMillis " + adjustIntervalMillis);
+        }
+        if (clock == null) {
+            throw new NullPointerException("clock must not be null");
+        }
+        this.baseSamplingRate = baseSamplingRate;
+        this.maxSamplingRate = maxSamplingRate;
+        this.dataSenderStatus = dataSenderStatus;
+        this.adjustIntervalMillis = adjustIntervalMillis;
+        this.clock = clock;
+
+        this.samplingRate = baseSamplingRate;
+        this.nextAdjustTime = new AtomicLong(clock.getTime() + adjustIntervalMillis);
+        this.lastOfferFailCount = dataSenderStatus.getOfferFailCount();
+    }
+
+    @Override
+    public boolean isSampling() {
+        final long now = clock.getTime();
+        final long next = nextAdjustTime.get();
+        if (now >= next && nextAdjustTime.compareAndSet(next, now + adjustIntervalMillis)) {
+            adjust();
+        }
+        return StripedRateSampler.isSampling(counter, samplingRate);
+    }
+
+    void adjust() {
+        final long offerFailCount = dataSenderStatus.getOfferFailCount();
+        final long dropCount = offerFailCount - lastOfferFailCount;
+        this.lastOfferFailCount = offerFailCount;
+
+        final int usagePercent = getQueueUsagePercent();
+        final int currentRate = this.samplingRate;
+        int newRate = currentRate;
+        if (dropCount > 0 || usagePercent >= HIGH_WATERMARK_PERCENT) {
+            newRate = (int) Math.min((long) currentRate * 2, maxSamplingRate);
+        } else if (usagePercent <= LOW_WATERMARK_PERCENT) {
+            newRate = Math.max(currentRate / 2, baseSamplingRate);
+        }
+        if (newRate != currentRate) {
+            this.samplingRate = newRate;
+            if (logger.isInfoEnabled()) {
+                logger.info("samplingRate changed. {} -> {} queueUsage:{}%, dropCount:{}", currentRate, newRate, usagePercent, dropCount);
+            }
+        }
+    }
+
+    private int getQueueUsagePercent() {
+        final int capacity = dataSenderStatus.getQueueCapacity();
+        if (capacity <= 0) {
+            return 0;
+        }
+        return (int) ((long) dataSenderStatus.getQueueSize() * 100 / capacity);
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveSampler{" +
+                "baseSamplingRate=" + baseSamplingRate +
+                ", maxSamplingRate=" + maxSamplingRate +
+                ", samplingRate=" + samplingRate +
+                ", adjustIntervalMillis=" + adjustIntervalMillis +
+                '}';
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+
+/**
+ * Applies a sampling rate per entry point.
+ * A pattern is either an exact entry point ("/api/order") or a prefix ending with '*' ("/static/*").
+ * Exact matches win, then the longest prefix. Everything else goes to the default sampler.
+ */
+public class EntryPointRateSampler implements EntryPointSampler {
+
+    private static final String WILDCARD = "*";
+
+    private final Sampler defaultSampler;
+    private final Map<String, Sampler> exactSamplers;
+    private final PrefixSampler[] prefixSamplers;
+
+    /**
+     * @param samplingRates entry point pattern -> sampling rate. 0 means never sample.
+     */
+    public EntryPointRateSampler(Sampler defaultSampler, Map<String, Integer> samplingRates) {
+        if (defaultSampler == null) {
+            throw new NullPointerException("defaultSampler must not be null");
+        }
+        if (samplingRates == null) {
+            throw new NullPointerException("samplingRates must not be null");
+        }
+        this.defaultSampler = defaultSampler;
+
+        final Map<String, Sampler> exactSamplers = new HashMap<String, Sampler>();
+        final List<PrefixSampler> prefixSamplers = new ArrayList<PrefixSampler>();
+        for (Map.Entry<String, Integer> entry : samplingRates.entrySet()) {
+            final String pattern = entry.getKey();
+            final Sampler sampler = createSampler(entry.getValue());
+            if (pattern.endsWith(WILDCARD)) {
+                prefixSamplers.add(new PrefixSampler(pattern.substring(0, pattern.length() - 1), sampler));
+            } else {
+                exactSamplers.put(pattern, sampler);
+            }
+        }
+        Collections.sort(prefixSamplers, new Comparator<PrefixSampler>() {
+            @Override
+            public int compare(PrefixSampler o1, PrefixSampler o2) {
+                return o2.prefix.length() - o1.prefix.length();
+            }
+        });
+        this.exactSamplers = exactSamplers;
+        this.prefixSamplers = prefixSamplers.toArray(new PrefixSampler[prefixSamplers.size()]);
+    }
+
+    private Sampler createSampler(int samplingRate) {
+        if (samplingRate <= 0) {
+            return new FalseSampler();
+        }
+        if (samplingRate == 1) {
+            return new TrueSampler();
+        }
+        return new StripedRateSampler(samplingRate);
+    }
+
+    @Override
+    public boolean isSampling() {
+        return defaultSampler.isSampling();
+    }
+
+    @Override
+    public boolean isSampling(String entryPoint) {
+        return findSampler(entryPoint).isSampling();
+    }
+
+    Sampler findSampler(String entryPoint) {
+        if (entryPoint == null) {
+            return defaultSampler;
+        }
+        final Sampler exact = exactSamplers.get(entryPoint);
+        if (exact != null) {
+            return exact;
+        }
+        for (PrefixSampler prefixSampler : prefixSamplers) {
+            if (entryPoint.startsWith(prefixSampler.prefix)) {
+                return prefixSampler.sampler;
+            }
+        }
+        return defaultSampler;
+    }
+
+    @Override
+    public String toString() {
+        return "EntryPointRateSampler{" +
+                "defaultSampler=" + defaultSampler +
+                ", exactSamplers=" + exactSamplers.size() +
+                ", prefixSamplers=" + prefixSamplers.length +
+                '}';
+    }
+
+    private static class PrefixSampler {
+        private final String prefix;
+        private final Sampler sampler;
+
+        private PrefixSampler(String prefix, Sampler sampler) {
+            this.prefix = prefix;
+            this.sampler = sampler;
+        }
+    }
+}
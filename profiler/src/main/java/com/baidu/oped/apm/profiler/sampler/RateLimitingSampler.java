@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+import com.baidu.oped.apm.common.util.Clock;
+import com.baidu.oped.apm.common.util.SystemClock;
+
+/**
+ * Caps the number of sampled transactions per second on top of another sampler.
+ * The limit is split into cache line padded token buckets selected by thread id, each refilled continuously at its share of maxTps.
+ * A bucket holds a tenth of a second of its share, at least one token, so any one second window samples at most
+ * maxTps + max(1, maxTps / 10) transactions.
+ * A thread whose bucket is empty borrows from the other buckets. Transactions rejected by the delegate never touch the buckets,
+ * and an empty bucket is only read.
+ */
+public class RateLimitingSampler implements EntryPointSampler {
+
+    // 16 longs = 128 bytes between stripes
+    private static final int PADDING = 16;
+    private static final int MAX_STRIPES = 64;
+    private static final long MICROS_PER_SECOND = 1000 * 1000;
+
+    private final Sampler delegate;
+    private final int maxTps;
+    private final Clock clock;
+
+    // theoretical arrival time of the next token of each stripe in microseconds. a past time means a full bucket.
+    private final AtomicLongArray arrivalTimes;
+    private final int mask;
+    private final long emissionInterval;
+    private final long burstTolerance;
+
+    public RateLimitingSampler(Sampler delegate, int maxTps) {
+        this(delegate, maxTps, SystemClock.INSTANCE);
+    }
+
+    public RateLimitingSampler(Sampler delegate, int maxTps, Clock clock) {
+        this(delegate, maxTps, clock, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public RateLimitingSampler(Sampler delegate, int maxTps, Clock clock, int stripes) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate must not be null");
+        }
+        if (maxTps <= 0) {
+            throw new IllegalArgumentException("Invalid maxTps " + maxTps);
+        }
+        if (clock == null) {
+            throw new NullPointerException("clock must not be null");
+        }
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Invalid stripes " + stripes);
+        }
+        this.delegate = delegate;
+        this.maxTps = maxTps;
+        this.clock = clock;
+
+        // a stripe holds at least one token, so stripes beyond a tenth of maxTps would loosen the limit
+        final int size = Integer.highestOneBit(Math.min(Math.min(stripes, MAX_STRIPES), Math.max(1, maxTps / 10)));
+        this.mask = size - 1;
+        this.arrivalTimes = new AtomicLongArray(size * PADDING);
+        this.emissionInterval = size * MICROS_PER_SECOND / maxTps;
+        final int burst = Math.max(1, maxTps / size / 10);
+        this.burstTolerance = (burst - 1) * emissionInterval;
+    }
+
+    @Override
+    public boolean isSampling() {
+        if (!delegate.isSampling()) {
+            return false;
+        }
+        return acquire();
+    }
+
+    @Override
+    public boolean isSampling(String entryPoint) {
+        final boolean sampling;
+        if (delegate instanceof EntryPointSampler) {
+            sampling = ((EntryPointSampler) delegate).isSampling(entryPoint);
+        } else {
+            sampling = delegate.isSampling();
+        }
+        if (!sampling) {
+            return false;
+        }
+        return acquire();
+    }
+
+    private boolean acquire() {
+        final long now = clock.getTime() * 1000;
+        final int stripe = (int) Thread.currentThread().getId() & mask;
+        for (int i = 0; i <= mask; i++) {
+            if (acquire((stripe + i) & mask, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean acquire(int stripe, long now) {
+        final int index = stripe * PADDING;
+        while (true) {
+            final long arrivalTime = arrivalTimes.get(index);
+            final long start = Math.max(arrivalTime, now);
+            if (start - now > burstTolerance) {
+                return false;
+            }
+            if (arrivalTimes.compareAndSet(index, arrivalTime, start + emissionInterval)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitingSampler{" +
+                "delegate=" + delegate +
+                ", maxTps=" + maxTps +
+                ", stripes=" + (mask + 1) +
+                '}';
+    }
+}
@@ -16,12 +16,24 @@
 
 package com.baidu.oped.apm.profiler.sampler;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.bootstrap.config.ProfilerConfig;
 import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+import com.baidu.oped.apm.profiler.sender.DataSenderStatus;
 
 /**
  * @author emeroad
  */
 public class SamplerFactory {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     public Sampler createSampler(boolean sampling, int samplingRate) {
         if (!sampling || samplingRate <= 0) {
             return new FalseSampler();
@@ -31,4 +43,79 @@ public class SamplerFactory {
         }
         return new SamplingRateSampler(samplingRate);
     }
+
+    /**
+     * @param dataSenderStatus status of the span sender. used by {@link SamplerType#ADAPTIVE}. nullable
+     */
+    public Sampler createSampler(ProfilerConfig profilerConfig, DataSenderStatus dataSenderStatus) {
+        if (profilerConfig == null) {
+            throw new NullPointerException("profilerConfig must not be null");
+        }
+        final boolean samplingEnable = profilerConfig.isSamplingEnable();
+        final int samplingRate = profilerConfig.getSamplingRate();
+        if (!samplingEnable || samplingRate <= 0) {
+            return new FalseSampler();
+        }
+
+        Sampler sampler = createBaseSampler(profilerConfig, dataSenderStatus);
+
+        final Map<String, Integer> entryPointSamplingRate = parseEntryPointSamplingRate(profilerConfig.getSamplingEntryPointRate());
+        if (!entryPointSamplingRate.isEmpty()) {
+            sampler = new EntryPointRateSampler(sampler, entryPointSamplingRate);
+        }
+
+        final int maxTps = profilerConfig.getSamplingMaxTps();
+        if (maxTps > 0) {
+            sampler = new RateLimitingSampler(sampler, maxTps);
+        }
+
+        if (profilerConfig.isSamplingTailEnable()) {
+            sampler = new TailSampler(sampler, profilerConfig.getSamplingTailThreshold(), profilerConfig.getSamplingTailBufferSize(), profilerConfig.getSamplingTailBufferMax());
+        }
+        return sampler;
+    }
+
+    private Sampler createBaseSampler(ProfilerConfig profilerConfig, DataSenderStatus dataSenderStatus) {
+        final int samplingRate = profilerConfig.getSamplingRate();
+        final SamplerType samplerType = SamplerType.getType(profilerConfig.getSamplingType(), SamplerType.RATE);
+        if (samplerType == SamplerType.ADAPTIVE) {
+            if (dataSenderStatus == null) {
+                logger.warn("ADAPTIVE sampler requires DataSenderStatus. fall back to RATE sampler.");
+            } else {
+                final int maxSamplingRate = Math.max(samplingRate, profilerConfig.getSamplingAdaptiveMaxRate());
+                return new AdaptiveSampler(samplingRate, maxSamplingRate, dataSenderStatus, profilerConfig.getSamplingAdaptiveInterval());
+            }
+        }
+        if (samplingRate == 1) {
+            return new TrueSampler();
+        }
+        return new StripedRateSampler(samplingRate);
+    }
+
+    // pattern:rate
+    Map<String, Integer> parseEntryPointSamplingRate(List<String> entryPointSamplingRateList) {
+        final Map<String, Integer> result = new LinkedHashMap<String, Integer>();
+        if (entryPointSamplingRateList == null) {
+            return result;
+        }
+        for (String entryPointSamplingRate : entryPointSamplingRateList) {
+            final String value = entryPointSamplingRate.trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            final int separator = value.lastIndexOf(':');
+            if (separator <= 0) {
+                logger.warn("invalid entry point sampling rate:{}", value);
+                continue;
+            }
+            try {
+                final String pattern = value.substring(0, separator).trim();
+                final int rate = Integer.parseInt(value.substring(separator + 1).trim());
+                result.put(pattern, rate);
+            } catch (NumberFormatException e) {
+                logger.warn("invalid entry point sampling rate:{}", value);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+import com.baidu.oped.apm.bootstrap.util.StripedCounter;
+
+/**
+ * 1-in-N sampler counting on {@link StripedCounter}.
+ * Every stripe samples 1 of N, so the overall rate is still 1 of N.
+ * The stripes start from different offsets, so sampling is not bunched up right after startup.
+ */
+public class StripedRateSampler implements Sampler {
+
+    private final StripedCounter counter = new StripedCounter();
+    private final int samplingRate;
+
+    public StripedRateSampler(int samplingRate) {
+        if (samplingRate <= 0) {
+            throw new IllegalArgumentException("Invalid samplingRate " + samplingRate);
+        }
+        this.samplingRate = samplingRate;
+    }
+
+    @Override
+    public boolean isSampling() {
+        return isSampling(counter, samplingRate);
+    }
+
+    static boolean isSampling(StripedCounter counter, int samplingRate) {
+        final long count = counter.increment();
+        return (count - 1) % samplingRate == 0;
+    }
+
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    @Override
+    public String toString() {
+        return "StripedRateSampler{" +
+                "samplingRate=" + samplingRate +
+                '}';
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+
+/**
+ * Tail sampling on top of another sampler.
+ * The delegate decides up front as before. A transaction rejected by the delegate is still recorded, but its span events
+ * are buffered and the transaction is sent only if it turns out slow or erroneous. see TailSamplingStorage.
+ * <p>
+ * Buffered span events are capped per transaction (bufferSize) and across all transactions (bufferMax).
+ * The global budget is split into cache line padded stripes selected by thread id, and transactions reserve it in chunks,
+ * so buffering a span event rarely writes shared state. A thread whose stripe is empty borrows from the others.
+ */
+public class TailSampler implements EntryPointSampler {
+
+    /**
+     * TraceId flag of a transaction recorded tentatively. The next nodes do not record it, since it may be dropped.
+     */
+    public static final short DEFERRED_FLAG = 0x01;
+
+    // 16 longs = 128 bytes between stripes
+    private static final int PADDING = 16;
+    private static final int MAX_STRIPES = 64;
+    // smallest share of bufferMax worth a stripe
+    private static final int MIN_STRIPE_BUFFER = 64;
+
+    private final Sampler delegate;
+    private final int threshold;
+    private final int bufferSize;
+    private final int bufferMax;
+
+    // span events which can still be buffered by all transactions, per stripe.
+    private final AtomicLongArray availableBuffers;
+    private final int mask;
+
+    private final AtomicLong keepCount = new AtomicLong();
+    private final AtomicLong discardCount = new AtomicLong();
+
+    /**
+     * @param threshold elapsed time(ms) from which a transaction is kept
+     * @param bufferSize max span events buffered per transaction
+     * @param bufferMax max span events buffered by all transactions
+     */
+    public TailSampler(Sampler delegate, int threshold, int bufferSize, int bufferMax) {
+        if (delegate == null) {
+            throw new NullPointerException("delegate must not be null");
+        }
+        if (threshold < 0) {
+            throw new IllegalArgumentException("negative threshold:" + threshold);
+        }
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("negative bufferSize:" + bufferSize);
+        }
+        if (bufferMax < 0) {
+            throw new IllegalArgumentException("negative bufferMax:" + bufferMax);
+        }
+        this.delegate = delegate;
+        this.threshold = threshold;
+        this.bufferSize = bufferSize;
+        this.bufferMax = bufferMax;
+
+        final int stripes = Runtime.getRuntime().availableProcessors() * 2;
+        final int size = Integer.highestOneBit(Math.min(Math.min(stripes, MAX_STRIPES), Math.max(1, bufferMax / MIN_STRIPE_BUFFER)));
+        this.mask = size - 1;
+        this.availableBuffers = new AtomicLongArray(size * PADDING);
+        for (int i = 0; i < size; i++) {
+            this.availableBuffers.set(i * PADDING, bufferMax / size);
+        }
+        this.availableBuffers.addAndGet(0, bufferMax % size);
+    }
+
+    @Override
+    public boolean isSampling() {
+        return delegate.isSampling();
+    }
+
+    @Override
+    public boolean isSampling(String entryPoint) {
+        if (delegate instanceof EntryPointSampler) {
+            return ((EntryPointSampler) delegate).isSampling(entryPoint);
+        }
+        return delegate.isSampling();
+    }
+
+    public boolean isKeep(int elapsed, boolean error) {
+        return error || elapsed >= threshold;
+    }
+
+    public void incrementKeepCount() {
+        keepCount.incrementAndGet();
+    }
+
+    public void incrementDiscardCount() {
+        discardCount.incrementAndGet();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Reserve slots for up to count span events.
+     * @return number of reserved slots. 0 if all transactions together already reserved bufferMax slots
+     */
+    public int acquireBuffer(int count) {
+        final int stripe = (int) Thread.currentThread().getId() & mask;
+        for (int i = 0; i <= mask; i++) {
+            final int acquired = acquireBuffer((stripe + i) & mask, count);
+            if (acquired > 0) {
+                return acquired;
+            }
+        }
+        return 0;
+    }
+
+    private int acquireBuffer(int stripe, int count) {
+        final int index = stripe * PADDING;
+        while (true) {
+            final long available = availableBuffers.get(index);
+            if (available <= 0) {
+                return 0;
+            }
+            final int acquired = (int) Math.min(available, count);
+            if (availableBuffers.compareAndSet(index, available, available - acquired)) {
+                return acquired;
+            }
+        }
+    }
+
+    public void releaseBuffer(int count) {
+        if (count > 0) {
+            final int stripe = (int) Thread.currentThread().getId() & mask;
+            availableBuffers.addAndGet(stripe * PADDING, count);
+        }
+    }
+
+    public int getAvailableBuffer() {
+        long available = 0;
+        for (int i = 0; i <= mask; i++) {
+            available += availableBuffers.get(i * PADDING);
+        }
+        return (int) available;
+    }
+
+    public long getKeepCount() {
+        return keepCount.get();
+    }
+
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "TailSampler{" +
+                "delegate=" + delegate +
+                ", threshold=" + threshold +
+                ", bufferSize=" + bufferSize +
+                ", bufferMax=" + bufferMax +
+                '}';
+    }
+}
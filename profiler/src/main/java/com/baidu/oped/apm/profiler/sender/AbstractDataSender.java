@@ -22,6 +22,8 @@ import org.apache.thrift.TBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueue;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
 import com.baidu.oped.apm.rpc.FutureListener;
 import com.baidu.oped.apm.rpc.ResponseMessage;
 import com.baidu.oped.apm.thrift.io.HeaderTBaseDeserializer;
@@ -56,7 +58,20 @@ public abstract class AbstractDataSender implements DataSender {
     }
 
     protected AsyncQueueingExecutor<Object> createAsyncQueueingExecutor(int queueSize, String executorName) {
-        final AsyncQueueingExecutor<Object> executor = new AsyncQueueingExecutor<Object>(queueSize, executorName);
+        return createAsyncQueueingExecutor(AsyncQueueFactory.DEFAULT, queueSize, AsyncQueueingExecutor.DEFAULT_MAX_DRAIN_SIZE, executorName);
+    }
+
+    protected AsyncQueueingExecutor<Object> createAsyncQueueingExecutor(AsyncQueueFactory queueFactory, int queueSize, int maxDrainSize, String executorName) {
+        final AsyncQueueingExecutor<Object> executor = new AsyncQueueingExecutor<Object>(queueFactory, queueSize, maxDrainSize, executorName);
+        return setExecutorListener(executor);
+    }
+
+    protected AsyncQueueingExecutor<Object> createAsyncQueueingExecutor(AsyncQueue<Object> queue, int maxDrainSize, String executorName) {
+        final AsyncQueueingExecutor<Object> executor = new AsyncQueueingExecutor<Object>(queue, maxDrainSize, executorName);
+        return setExecutorListener(executor);
+    }
+
+    private AsyncQueueingExecutor<Object> setExecutorListener(AsyncQueueingExecutor<Object> executor) {
         executor.setListener(new AsyncQueueingExecutorListener<Object>() {
             @Override
             public void execute(Collection<Object> messageList) {
@@ -17,15 +17,17 @@
 package com.baidu.oped.apm.profiler.sender;
 
 import java.util.Collection;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.baidu.oped.apm.common.util.ApmThreadFactory;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueue;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
 
 /**
  * @author emeroad
@@ -34,10 +36,12 @@ public class AsyncQueueingExecutor<T> implements Runnable {
 
     private static final AsyncQueueingExecutorListener EMPTY_LISTENER = new EmptyAsyncQueueingExecutorListener();
 
+    public static final int DEFAULT_MAX_DRAIN_SIZE = 10;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     private final boolean isWarn = logger.isWarnEnabled();
 
-    private final LinkedBlockingQueue<T> queue;
+    private final AsyncQueue<T> queue;
     private final AtomicBoolean isRun = new AtomicBoolean(true);
     private final Thread executeThread;
     private final String executorName;
@@ -46,6 +50,8 @@ public class AsyncQueueingExecutor<T> implements Runnable {
     // Caution. single thread only. this Collection is simpler than ArrayList.
     private final Collection<T> drain;
 
+    private final AtomicLong offerFailCount = new AtomicLong();
+
     private AsyncQueueingExecutorListener<T> listener = EMPTY_LISTENER;
 
 
@@ -54,18 +60,39 @@ public class AsyncQueueingExecutor<T> implements Runnable {
     }
 
     public AsyncQueueingExecutor(int queueSize, String executorName) {
+        this(AsyncQueueFactory.DEFAULT, queueSize, DEFAULT_MAX_DRAIN_SIZE, executorName);
+    }
+
+    public AsyncQueueingExecutor(AsyncQueueFactory queueFactory, int queueSize, int maxDrainSize, String executorName) {
+        this(AsyncQueueingExecutor.<T>createQueue(queueFactory, queueSize), maxDrainSize, executorName);
+    }
+
+    public AsyncQueueingExecutor(AsyncQueue<T> queue, int maxDrainSize, String executorName) {
+        if (queue == null) {
+            throw new NullPointerException("queue must not be null");
+        }
+        if (maxDrainSize <= 0) {
+            throw new IllegalArgumentException("maxDrainSize");
+        }
         if (executorName == null) {
             throw new NullPointerException("executorName must not be null");
         }
         // BEFORE executeThread start
-        this.maxDrainSize = 10;
+        this.maxDrainSize = maxDrainSize;
         this.drain = new UnsafeArrayCollection<T>(maxDrainSize);
-        this.queue = new LinkedBlockingQueue<T>(queueSize);
+        this.queue = queue;
 
         this.executeThread = this.createExecuteThread(executorName);
         this.executorName = executeThread.getName();
     }
 
+    private static <T> AsyncQueue<T> createQueue(AsyncQueueFactory queueFactory, int queueSize) {
+        if (queueFactory == null) {
+            throw new NullPointerException("queueFactory must not be null");
+        }
+        return queueFactory.createQueue(queueSize);
+    }
+
     private Thread createExecuteThread(String executorName) {
         final ThreadFactory threadFactory = new ApmThreadFactory(executorName, true);
         Thread thread = threadFactory.newThread(this);
@@ -150,6 +177,7 @@ public class AsyncQueueingExecutor<T> implements Runnable {
         }
         boolean offer = queue.offer(data);
         if (!offer) {
+            offerFailCount.incrementAndGet();
             if (isWarn) {
                 logger.warn("{} Drop data. queue is full. size:{}", executorName, queue.size());
             }
@@ -176,6 +204,22 @@ public class AsyncQueueingExecutor<T> implements Runnable {
         return queue.isEmpty();
     }
 
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getQueueCapacity() {
+        return queue.capacity();
+    }
+
+    public long getOfferFailCount() {
+        return offerFailCount.get();
+    }
+
+    public int getMaxDrainSize() {
+        return maxDrainSize;
+    }
+
     public boolean isRun() {
         return isRun.get();
     }
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender;
+
+/**
+ * Reachability of the collector as seen by a connection oriented sender.
+ * UDP senders cannot tell whether the collector receives their packets, so they ask this instead.
+ */
+public interface CollectorStatus {
+
+    boolean isCollectorAvailable();
+
+}
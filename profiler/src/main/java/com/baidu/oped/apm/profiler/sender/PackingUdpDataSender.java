@@ -0,0 +1,364 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.thrift.TBase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.profiler.context.SpanEventPool;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
+import com.baidu.oped.apm.profiler.util.ByteBufferUtils;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanChunk;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+import com.baidu.oped.apm.thrift.io.ChunkHeaderTBaseDeserializerFactory;
+import com.baidu.oped.apm.thrift.io.Header;
+import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializer;
+import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializerFactory;
+
+/**
+ * Packs several serialized messages into one datagram (chunk header + header/body pairs).
+ * The pack is flushed when the next message does not fit, and at the end of every batch drained from the queue,
+ * so an idle sender still sends each message immediately.
+ * Spans and span chunks which do not fit into one datagram are split into span chunks.
+ *
+ * only use pair collector-ChunkedUDPReceiver
+ */
+public class PackingUdpDataSender extends AbstractDataSender implements DataSender, DataSenderStatus {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+    private final boolean isDebug = logger.isDebugEnabled();
+
+    public static final int DEFAULT_PACKET_SIZE = 1024 * 16;
+
+    private final DatagramChannel udpChannel;
+
+    // Caution. not thread safe
+    private final HeaderTBaseSerializer serializer;
+
+    // allocated once and reused by the executor thread.
+    private final ByteBuffer chunkHeaderBuffer;
+    private final ByteBuffer packBuffer;
+    private final ByteBuffer[] sendBuffers;
+    private int packedCount = 0;
+    // true while sendPacketN() is running. the pack is flushed once at the end of the batch.
+    private boolean batching = false;
+
+    private final AsyncQueueingExecutor<Object> executor;
+
+    public PackingUdpDataSender(String host, int port, String threadName, int queueSize) {
+        this(host, port, threadName, queueSize, UdpDataSender.SOCKET_TIMEOUT, UdpDataSender.SEND_BUFFER_SIZE, DEFAULT_PACKET_SIZE);
+    }
+
+    public PackingUdpDataSender(String host, int port, String threadName, int queueSize, int timeout, int sendBufferSize, int packetSize) {
+        this(host, port, threadName, queueSize, timeout, sendBufferSize, packetSize, AsyncQueueFactory.DEFAULT, AsyncQueueingExecutor.DEFAULT_MAX_DRAIN_SIZE);
+    }
+
+    public PackingUdpDataSender(String host, int port, String threadName, int queueSize, int timeout, int sendBufferSize, int packetSize, AsyncQueueFactory queueFactory, int maxDrainSize) {
+        if (host == null) {
+            throw new NullPointerException("host must not be null");
+        }
+        if (threadName == null) {
+            throw new NullPointerException("threadName must not be null");
+        }
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("queueSize");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout");
+        }
+        if (sendBufferSize <= 0) {
+            throw new IllegalArgumentException("sendBufferSize");
+        }
+        if (packetSize <= Header.HEADER_SIZE * 2 || packetSize > UdpDataSender.UDP_MAX_PACKET_LENGTH) {
+            throw new IllegalArgumentException("Invalid packetSize " + packetSize);
+        }
+
+        logger.info("PackingUdpDataSender initialized. host={}, port={}, packetSize={}", host, port, packetSize);
+        this.udpChannel = createChannel(host, port, timeout, sendBufferSize);
+
+        // oversized messages are measured before being split.
+        this.serializer = new HeaderTBaseSerializerFactory(false, packetSize, true).createSerializer();
+
+        this.chunkHeaderBuffer = createChunkHeaderBuffer();
+        this.packBuffer = ByteBuffer.allocateDirect(packetSize - Header.HEADER_SIZE);
+        this.sendBuffers = new ByteBuffer[] {chunkHeaderBuffer, packBuffer};
+
+        this.executor = createAsyncQueueingExecutor(queueFactory, queueSize, maxDrainSize, threadName);
+    }
+
+    private ByteBuffer createChunkHeaderBuffer() {
+        final Header chunkHeader = ChunkHeaderTBaseDeserializerFactory.DEFAULT_FACTORY.getLocator().getChunkHeader();
+        final short type = chunkHeader.getType();
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(Header.HEADER_SIZE);
+        buffer.put(chunkHeader.getSignature());
+        buffer.put(chunkHeader.getVersion());
+        buffer.put((byte) (type >> 8));
+        buffer.put((byte) type);
+        buffer.flip();
+        return buffer;
+    }
+
+    private DatagramChannel createChannel(String host, int port, int timeout, int sendBufferSize) {
+        DatagramChannel datagramChannel = null;
+        try {
+            datagramChannel = DatagramChannel.open();
+            final DatagramSocket socket = datagramChannel.socket();
+            socket.setSoTimeout(timeout);
+            socket.setSendBufferSize(sendBufferSize);
+            if (logger.isWarnEnabled()) {
+                final int checkSendBufferSize = socket.getSendBufferSize();
+                if (sendBufferSize != checkSendBufferSize) {
+                    logger.warn("DatagramChannel.setSendBufferSize() error. {}!={}", sendBufferSize, checkSendBufferSize);
+                }
+            }
+
+            InetSocketAddress serverAddress = new InetSocketAddress(host, port);
+            datagramChannel.connect(serverAddress);
+            return datagramChannel;
+        } catch (IOException e) {
+            if (datagramChannel != null) {
+                try {
+                    datagramChannel.close();
+                } catch (IOException ignore) {
+                    // skip
+                }
+            }
+            throw new IllegalStateException("DatagramChannel create fail. Cause" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean send(TBase<?, ?> data) {
+        return executor.execute(data);
+    }
+
+    @Override
+    public void stop() {
+        executor.stop();
+        try {
+            udpChannel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close udp channel.", e);
+        }
+    }
+
+    @Override
+    public boolean isNetworkAvailable() {
+        return false;
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueueSize();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return executor.getQueueCapacity();
+    }
+
+    @Override
+    public long getOfferFailCount() {
+        return executor.getOfferFailCount();
+    }
+
+    @Override
+    protected void sendPacketN(Collection<Object> messageList) {
+        this.batching = true;
+        try {
+            super.sendPacketN(messageList);
+        } finally {
+            this.batching = false;
+            flush();
+        }
+    }
+
+    @Override
+    protected void sendPacket(Object message) {
+        try {
+            pack(message);
+        } finally {
+            SpanEventPool.recycle(message);
+        }
+        if (!batching) {
+            flush();
+        }
+    }
+
+    private void pack(Object message) {
+        if (!(message instanceof TBase)) {
+            logger.warn("sendPacket fail. invalid type:{}", message != null ? message.getClass() : null);
+            return;
+        }
+        final TBase<?, ?> dto = (TBase<?, ?>) message;
+        final byte[] internalBufferData = serialize(this.serializer, dto);
+        if (internalBufferData == null) {
+            logger.warn("interBufferData is null");
+            return;
+        }
+        final int internalBufferSize = this.serializer.getInterBufferSize();
+        if (internalBufferSize <= packBuffer.capacity()) {
+            append(internalBufferData, internalBufferSize);
+            return;
+        }
+
+        if (dto instanceof TSpan) {
+            packSplitSpan((TSpan) dto);
+        } else if (dto instanceof TSpanChunk) {
+            packSplitSpanChunk((TSpanChunk) dto);
+        } else {
+            logger.warn("discard packet. Caused:too large message. size:{}, {}", internalBufferSize, dto);
+        }
+    }
+
+    // TSpan = TSpan + TSpanChunk
+    private void packSplitSpan(TSpan span) {
+        final List<TSpanEvent> spanEventList = span.getSpanEventList();
+        if (spanEventList == null || spanEventList.isEmpty()) {
+            logger.warn("discard packet. Caused:too large span. {}", span);
+            return;
+        }
+        // the span itself goes without events. restore the list so that pooled SpanEvents can be recycled.
+        span.setSpanEventList(null);
+        try {
+            if (!packOne(span)) {
+                logger.warn("discard packet. Caused:too large span. {}", span);
+                return;
+            }
+        } finally {
+            span.setSpanEventList(spanEventList);
+        }
+        packSpanChunk(newSpanChunk(span), spanEventList, 0, spanEventList.size());
+    }
+
+    // TSpanChunk = TSpanChunk + TSpanChunk
+    private void packSplitSpanChunk(TSpanChunk spanChunk) {
+        final List<TSpanEvent> spanEventList = spanChunk.getSpanEventList();
+        if (spanEventList == null || spanEventList.size() <= 1) {
+            logger.warn("discard packet. Caused:too large spanChunk. {}", spanChunk);
+            return;
+        }
+        packSpanChunk(newSpanChunk(spanChunk), spanEventList, 0, spanEventList.size());
+    }
+
+    // halve the range until each part fits into a datagram.
+    private void packSpanChunk(TSpanChunk template, List<TSpanEvent> spanEventList, int from, int to) {
+        template.setSpanEventList(spanEventList.subList(from, to));
+        try {
+            if (packOne(template)) {
+                return;
+            }
+        } finally {
+            template.setSpanEventList(null);
+        }
+
+        if (to - from == 1) {
+            logger.warn("discard spanEvent. Caused:too large spanEvent. {}", spanEventList.get(from));
+            return;
+        }
+        final int middle = (from + to) >>> 1;
+        packSpanChunk(template, spanEventList, from, middle);
+        packSpanChunk(template, spanEventList, middle, to);
+    }
+
+    private boolean packOne(TBase<?, ?> dto) {
+        final byte[] internalBufferData = serialize(this.serializer, dto);
+        if (internalBufferData == null) {
+            return false;
+        }
+        final int internalBufferSize = this.serializer.getInterBufferSize();
+        if (internalBufferSize > packBuffer.capacity()) {
+            return false;
+        }
+        append(internalBufferData, internalBufferSize);
+        return true;
+    }
+
+    private void append(byte[] data, int length) {
+        if (packBuffer.remaining() < length) {
+            flush();
+        }
+        packBuffer.put(data, 0, length);
+        packedCount++;
+    }
+
+    void flush() {
+        if (packedCount == 0) {
+            return;
+        }
+        final int count = packedCount;
+        packedCount = 0;
+
+        chunkHeaderBuffer.rewind();
+        packBuffer.flip();
+        final int size = ByteBufferUtils.getRemaining(sendBuffers);
+        try {
+            // gathering write. one datagram.
+            final long sent = udpChannel.write(sendBuffers);
+            if (sent != size) {
+                logger.warn("sent buffer {}/{}.", sent, size);
+            } else if (isDebug) {
+                logger.debug("Data sent. size:{}, count:{}", size, count);
+            }
+        } catch (IOException e) {
+            logger.warn("packet send error. size:{}, count:{}", size, count, e);
+        } finally {
+            packBuffer.clear();
+        }
+    }
+
+    static TSpanChunk newSpanChunk(TSpan span) {
+        final TSpanChunk spanChunk = new TSpanChunk();
+        spanChunk.setAgentId(span.getAgentId());
+        spanChunk.setApplicationName(span.getApplicationName());
+        spanChunk.setAgentStartTime(span.getAgentStartTime());
+        spanChunk.setServiceType(span.getServiceType());
+        spanChunk.setTransactionId(span.getTransactionId());
+        spanChunk.setSpanId(span.getSpanId());
+        spanChunk.setEndPoint(span.getEndPoint());
+        if (span.isSetApplicationServiceType()) {
+            spanChunk.setApplicationServiceType(span.getApplicationServiceType());
+        }
+        return spanChunk;
+    }
+
+    static TSpanChunk newSpanChunk(TSpanChunk source) {
+        final TSpanChunk spanChunk = new TSpanChunk();
+        spanChunk.setAgentId(source.getAgentId());
+        spanChunk.setApplicationName(source.getApplicationName());
+        spanChunk.setAgentStartTime(source.getAgentStartTime());
+        spanChunk.setServiceType(source.getServiceType());
+        spanChunk.setTransactionId(source.getTransactionId());
+        spanChunk.setSpanId(source.getSpanId());
+        spanChunk.setEndPoint(source.getEndPoint());
+        if (source.isSetApplicationServiceType()) {
+            spanChunk.setApplicationServiceType(source.getApplicationServiceType());
+        }
+        return spanChunk;
+    }
+}
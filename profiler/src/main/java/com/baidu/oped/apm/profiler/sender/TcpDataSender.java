@@ -17,6 +17,8 @@
 package com.baidu.oped.apm.profiler.sender;
 
 
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -30,11 +32,18 @@ import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueue;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
+import com.baidu.oped.apm.profiler.sender.queue.LaneSelector;
+import com.baidu.oped.apm.profiler.sender.queue.LaneStatus;
+import com.baidu.oped.apm.profiler.sender.queue.PriorityLaneAsyncQueue;
 import com.baidu.oped.apm.rpc.Future;
 import com.baidu.oped.apm.rpc.FutureListener;
 import com.baidu.oped.apm.rpc.ResponseMessage;
 import com.baidu.oped.apm.rpc.client.ApmClient;
 import com.baidu.oped.apm.rpc.client.ApmClientReconnectEventListener;
+import com.baidu.oped.apm.rpc.packet.SendPacketBatch;
+import com.baidu.oped.apm.rpc.util.ChannelBufferPool;
 import com.baidu.oped.apm.rpc.util.TimerFactory;
 import com.baidu.oped.apm.thrift.dto.TResult;
 import com.baidu.oped.apm.thrift.io.HeaderTBaseDeserializer;
@@ -47,7 +56,18 @@ import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializerFactory;
  * @author koo.taejin
  * @author netspider
  */
-public class TcpDataSender extends AbstractDataSender implements EnhancedDataSender {
+public class TcpDataSender extends AbstractDataSender implements EnhancedDataSender, DataSenderStatus, CollectorStatus {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1024 * 5;
+    private static final long LANE_STATUS_LOG_INTERVAL = 60 * 1000;
+
+    // requests carry agent info and api/sql/string metadata. spans referencing them are useless if they are dropped.
+    private static final LaneSelector<Object> REQUEST_LANE_SELECTOR = new LaneSelector<Object>() {
+        @Override
+        public boolean isPriority(Object data) {
+            return data instanceof RequestMarker;
+        }
+    };
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     static {
@@ -67,13 +87,96 @@ public class TcpDataSender extends AbstractDataSender implements EnhancedDataSen
 
     private final RetryQueue retryQueue = new RetryQueue();
 
+    private final AsyncQueue<Object> queue;
+    // timer thread only
+    private long lastDropAndSpillCount;
     private AsyncQueueingExecutor<Object> executor;
 
+    // null if write coalescing is disabled.
+    private final ChannelBufferPool bufferPool;
+    private final int coalescingMaxBytes;
+
     public TcpDataSender(ApmClient client) {
+        this(client, AsyncQueueFactory.DEFAULT, AsyncQueueingExecutor.DEFAULT_MAX_DRAIN_SIZE);
+    }
+
+    public TcpDataSender(ApmClient client, AsyncQueueFactory queueFactory, int maxDrainSize) {
+        this(client, queueFactory, maxDrainSize, false, 0);
+    }
+
+    /**
+     * @param writeCoalescing    write the messages drained from the queue as one channel write, serialized into pooled buffers
+     * @param coalescingMaxBytes a batch is written as soon as it reaches this size
+     */
+    public TcpDataSender(ApmClient client, AsyncQueueFactory queueFactory, int maxDrainSize, boolean writeCoalescing, int coalescingMaxBytes) {
+        this(client, queueFactory.<Object>createQueue(DEFAULT_QUEUE_SIZE), maxDrainSize, writeCoalescing, coalescingMaxBytes);
+    }
+
+    public TcpDataSender(ApmClient client, AsyncQueue<Object> queue, int maxDrainSize, boolean writeCoalescing, int coalescingMaxBytes) {
+        if (queue == null) {
+            throw new NullPointerException("queue must not be null");
+        }
         this.client = client;
         this.timer = createTimer();
         writeFailFutureListener = new WriteFailFutureListener(logger, "io write fail.", "host", -1);
-        this.executor = createAsyncQueueingExecutor(1024 * 5, "Apm-TcpDataExecutor");
+        if (writeCoalescing) {
+            if (coalescingMaxBytes <= 0) {
+                throw new IllegalArgumentException("negative coalescingMaxBytes:" + coalescingMaxBytes);
+            }
+            this.coalescingMaxBytes = coalescingMaxBytes;
+            // a batch can overshoot maxBytes by one message.
+            this.bufferPool = new ChannelBufferPool(4, Math.min(coalescingMaxBytes, 1024 * 4), coalescingMaxBytes * 2);
+        } else {
+            this.coalescingMaxBytes = 0;
+            this.bufferPool = null;
+        }
+        this.queue = queue;
+        this.executor = createAsyncQueueingExecutor(queue, maxDrainSize, "Apm-TcpDataExecutor");
+        if (queue instanceof PriorityLaneAsyncQueue) {
+            scheduleLaneStatusLog();
+        }
+    }
+
+    private void scheduleLaneStatusLog() {
+        try {
+            timer.newTimeout(new TimerTask() {
+                @Override
+                public void run(Timeout timeout) throws Exception {
+                    if (timeout.isCancelled()) {
+                        return;
+                    }
+                    logLaneStatus();
+                    scheduleLaneStatusLog();
+                }
+            }, LANE_STATUS_LOG_INTERVAL, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // timer stopped
+        }
+    }
+
+    private void logLaneStatus() {
+        long dropAndSpillCount = 0;
+        final LaneStatus[] laneStatus = getLaneStatus();
+        for (LaneStatus status : laneStatus) {
+            dropAndSpillCount += status.getDropCount() + status.getSpillCount();
+        }
+        // info only while lanes overflow
+        if (dropAndSpillCount != lastDropAndSpillCount) {
+            lastDropAndSpillCount = dropAndSpillCount;
+            logger.info("{} {}", this.getClass().getSimpleName(), queue);
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("{} {}", this.getClass().getSimpleName(), queue);
+        }
+    }
+
+    /**
+     * Queue that keeps requests in a lane of their own, so that a flood of plain sends can not push them out.
+     *
+     * @param priorityCapacity capacity of the request lane. plain sends get {@link #DEFAULT_QUEUE_SIZE}.
+     * @param priorityWeight   requests taken for every plain send while both lanes have data
+     */
+    public static AsyncQueue<Object> createPriorityLaneQueue(AsyncQueueFactory queueFactory, int priorityCapacity, int priorityWeight) {
+        return new PriorityLaneAsyncQueue<Object>(queueFactory, priorityCapacity, DEFAULT_QUEUE_SIZE, priorityWeight, REQUEST_LANE_SELECTOR);
     }
     
     private Timer createTimer() {
@@ -114,9 +217,43 @@ public class TcpDataSender extends AbstractDataSender implements EnhancedDataSen
         return this.client.removeApmClientReconnectEventListener(eventListener);
     }
 
+    @Override
+    public boolean isCollectorAvailable() {
+        return this.client.isConnected();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueueSize();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return executor.getQueueCapacity();
+    }
+
+    @Override
+    public long getOfferFailCount() {
+        return executor.getOfferFailCount();
+    }
+
+    /**
+     * @return empty if the queue has no lanes
+     */
+    public LaneStatus[] getLaneStatus() {
+        if (queue instanceof PriorityLaneAsyncQueue) {
+            final PriorityLaneAsyncQueue<Object> laneQueue = (PriorityLaneAsyncQueue<Object>) queue;
+            return new LaneStatus[] {laneQueue.getPriorityLaneStatus(), laneQueue.getBulkLaneStatus()};
+        }
+        return new LaneStatus[0];
+    }
+
     @Override
     public void stop() {
         executor.stop();
+        if (queue instanceof PriorityLaneAsyncQueue) {
+            logger.info("{} stopped. {}", this.getClass().getSimpleName(), queue);
+        }
 
         Set<Timeout> stop = timer.stop();
         if (!stop.isEmpty()) {
@@ -124,10 +261,79 @@ public class TcpDataSender extends AbstractDataSender implements EnhancedDataSen
         }
     }
 
+    @Override
+    protected void sendPacketN(Collection<Object> messageList) {
+        if (bufferPool == null) {
+            super.sendPacketN(messageList);
+            return;
+        }
+        final Object[] dataList = messageList.toArray();
+        final int size = messageList.size();
+
+        SendPacketBatch batch = null;
+        for (int i = 0; i < size; i++) {
+            final Object message = dataList[i];
+            try {
+                if (message instanceof TBase) {
+                    if (batch == null) {
+                        batch = new SendPacketBatch(bufferPool);
+                    }
+                    appendPacket(batch, (TBase) message);
+                    if (batch.readableBytes() >= coalescingMaxBytes) {
+                        final SendPacketBatch full = batch;
+                        batch = null;
+                        writeBatch(full);
+                    }
+                } else {
+                    // requests need their own future. keep the order by writing what was batched before them first.
+                    if (batch != null) {
+                        final SendPacketBatch before = batch;
+                        batch = null;
+                        writeBatch(before);
+                    }
+                    sendPacket(message);
+                }
+            } catch (Throwable th) {
+                logger.warn("Unexpected Error. Cause:{}", th.getMessage(), th);
+            }
+        }
+        if (batch != null) {
+            try {
+                writeBatch(batch);
+            } catch (Throwable th) {
+                logger.warn("Unexpected Error. Cause:{}", th.getMessage(), th);
+            }
+        }
+    }
+
+    private void appendPacket(SendPacketBatch batch, TBase tBase) {
+        final OutputStream out = batch.beginPacket();
+        try {
+            serializer.serialize(tBase, out);
+            batch.endPacket();
+        } catch (Exception e) {
+            batch.cancelPacket();
+            logger.warn("Serialize fail. tBase:{} Caused:{}", tBase, e.getMessage(), e);
+        }
+    }
+
+    private void writeBatch(SendPacketBatch batch) {
+        if (batch.isEmpty()) {
+            batch.release();
+            return;
+        }
+        Future write = this.client.sendAsync(batch);
+        write.setListener(writeFailFutureListener);
+    }
+
     @Override
     protected void sendPacket(Object message) {
         try {
-            if (message instanceof TBase) {
+            if (message instanceof TBase && bufferPool != null) {
+                final SendPacketBatch batch = new SendPacketBatch(bufferPool);
+                appendPacket(batch, (TBase) message);
+                writeBatch(batch);
+            } else if (message instanceof TBase) {
                 byte[] copy = serialize(serializer, (TBase) message);
                 if (copy == null) {
                     return;
@@ -22,7 +22,14 @@ import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.util.Arrays;
+import java.util.Collection;
 
+import com.baidu.oped.apm.profiler.context.SpanEventPool;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
+import com.baidu.oped.apm.profiler.sender.spool.SpoolFile;
+import com.baidu.oped.apm.profiler.sender.spool.SpoolReplayListener;
+import com.baidu.oped.apm.profiler.sender.spool.SpoolReplayWorker;
+import com.baidu.oped.apm.thrift.io.DirectSpanSerializer;
 import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializer;
 import com.baidu.oped.apm.thrift.io.HeaderTBaseSerializerFactory;
 import com.baidu.oped.apm.thrift.io.NetworkAvailabilityCheckPacket;
@@ -36,7 +43,7 @@ import org.slf4j.LoggerFactory;
  * @author emeroad
  * @author koo.taejin
  */
-public class UdpDataSender extends AbstractDataSender implements DataSender {
+public class UdpDataSender extends AbstractDataSender implements DataSender, DataSenderStatus {
 
     protected final Logger logger = LoggerFactory.getLogger(this.getClass());
     protected final boolean isTrace = logger.isTraceEnabled();
@@ -45,6 +52,8 @@ public class UdpDataSender extends AbstractDataSender implements DataSender {
     public static final int SOCKET_TIMEOUT = 1000 * 5;
     public static final int SEND_BUFFER_SIZE = 1024 * 64 * 16;
     public static final int UDP_MAX_PACKET_LENGTH = 65507;
+    // no replay until the collector has been available for this period.
+    public static final long SPOOL_REPLAY_WAIT = 1000 * 5;
 
     // Caution. not thread safe
     protected DatagramPacket reusePacket = new DatagramPacket(new byte[1], 1);
@@ -53,14 +62,41 @@ public class UdpDataSender extends AbstractDataSender implements DataSender {
 
     // Caution. not thread safe
     private final HeaderTBaseSerializer serializer = new HeaderTBaseSerializerFactory(false, UDP_MAX_PACKET_LENGTH, false).createSerializer();
+    // Caution. not thread safe. null if disabled.
+    private final DirectSpanSerializer spanSerializer;
 
     private AsyncQueueingExecutor<Object> executor;
 
+    // null if disabled.
+    private final SpoolFile spool;
+    private final CollectorStatus collectorStatus;
+    private final SpoolReplayWorker spoolReplayWorker;
+    // serializes and spools the messages overflowed from the executor queue.
+    private final AsyncQueueingExecutor<Object> spoolExecutor;
+
     public UdpDataSender(String host, int port, String threadName, int queueSize) {
         this(host, port, threadName, queueSize, SOCKET_TIMEOUT, SEND_BUFFER_SIZE);
     }
 
     public UdpDataSender(String host, int port, String threadName, int queueSize, int timeout, int sendBufferSize) {
+        this(host, port, threadName, queueSize, timeout, sendBufferSize, AsyncQueueFactory.DEFAULT, AsyncQueueingExecutor.DEFAULT_MAX_DRAIN_SIZE);
+    }
+
+    public UdpDataSender(String host, int port, String threadName, int queueSize, int timeout, int sendBufferSize, AsyncQueueFactory queueFactory, int maxDrainSize) {
+        this(host, port, threadName, queueSize, timeout, sendBufferSize, queueFactory, maxDrainSize, false);
+    }
+
+    public UdpDataSender(String host, int port, String threadName, int queueSize, int timeout, int sendBufferSize, AsyncQueueFactory queueFactory, int maxDrainSize, boolean directSpanSerialize) {
+        this(host, port, threadName, queueSize, timeout, sendBufferSize, queueFactory, maxDrainSize, directSpanSerialize, null, null, SpoolReplayWorker.DEFAULT_REPLAY_RATE);
+    }
+
+    /**
+     * @param spool stores packets while the collector is unavailable, and packets dropped by a full queue or a send error. null to disable.
+     * @param collectorStatus tells whether the collector is available. UDP sends do not fail when the collector is down.
+     * @param spoolReplayRate max packets per second replayed from the spool
+     */
+    public UdpDataSender(String host, int port, String threadName, int queueSize, int timeout, int sendBufferSize, AsyncQueueFactory queueFactory, int maxDrainSize, boolean directSpanSerialize,
+                         SpoolFile spool, CollectorStatus collectorStatus, int spoolReplayRate) {
         if (host == null ) {
             throw new NullPointerException("host must not be null");
         }
@@ -76,22 +112,105 @@ public class UdpDataSender extends AbstractDataSender implements DataSender {
         if (sendBufferSize <= 0) {
             throw new IllegalArgumentException("sendBufferSize");
         }
+        if (spool != null && collectorStatus == null) {
+            throw new NullPointerException("collectorStatus must not be null");
+        }
 
         // TODO If fail to create socket, stop agent start
         logger.info("UdpDataSender initialized. host={}, port={}", host, port);
         this.udpSocket = createSocket(host, port, timeout, sendBufferSize);
+        if (directSpanSerialize) {
+            this.spanSerializer = new DirectSpanSerializer();
+        } else {
+            this.spanSerializer = null;
+        }
+
+        this.executor = createAsyncQueueingExecutor(queueFactory, queueSize, maxDrainSize, threadName);
+
+        this.spool = spool;
+        this.collectorStatus = collectorStatus;
+        if (spool != null) {
+            logger.info("UdpDataSender spool enabled. {}", spool);
+            this.spoolExecutor = createSpoolExecutor(queueFactory, queueSize, maxDrainSize, threadName + "-Spool");
+            this.spoolReplayWorker = new SpoolReplayWorker(spool, new UdpSpoolReplayListener(), spoolReplayRate, threadName + "-SpoolReplay");
+        } else {
+            this.spoolExecutor = null;
+            this.spoolReplayWorker = null;
+        }
+    }
+
+    private AsyncQueueingExecutor<Object> createSpoolExecutor(AsyncQueueFactory queueFactory, int queueSize, int maxDrainSize, String executorName) {
+        final AsyncQueueingExecutor<Object> spoolExecutor = new AsyncQueueingExecutor<Object>(queueFactory, queueSize, maxDrainSize, executorName);
+        // Caution. not thread safe. used by the spool executor thread only.
+        final HeaderTBaseSerializer spoolSerializer = new HeaderTBaseSerializerFactory(false, UDP_MAX_PACKET_LENGTH, false).createSerializer();
+        spoolExecutor.setListener(new AsyncQueueingExecutorListener<Object>() {
+            @Override
+            public void execute(Collection<Object> messageList) {
+                for (Object message : messageList) {
+                    execute(message);
+                }
+            }
 
-        this.executor = createAsyncQueueingExecutor(queueSize, threadName);
+            @Override
+            public void execute(Object message) {
+                try {
+                    final byte[] internalBufferData = serialize(spoolSerializer, (TBase<?, ?>) message);
+                    if (internalBufferData != null) {
+                        spool(internalBufferData, spoolSerializer.getInterBufferSize());
+                    }
+                } finally {
+                    SpanEventPool.recycle(message);
+                }
+            }
+        });
+        return spoolExecutor;
     }
 
     @Override
     public boolean send(TBase<?, ?> data) {
-        return executor.execute(data);
+        final boolean offer = executor.execute(data);
+        if (!offer && spoolExecutor != null && data != null) {
+            // serialized by the spool executor thread. never by the caller.
+            return spoolExecutor.execute(data);
+        }
+        return offer;
+    }
+
+    private boolean spool(byte[] data, int length) {
+        final boolean append = spool.append(data, 0, length);
+        if (!append && isDebug) {
+            logger.debug("spool append fail. size:{}", length);
+        }
+        return append;
     }
 
     @Override
     public void stop() {
+        if (spoolReplayWorker != null) {
+            spoolReplayWorker.stop();
+        }
         executor.stop();
+        if (spoolExecutor != null) {
+            spoolExecutor.stop();
+        }
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    @Override
+    public int getQueueSize() {
+        return executor.getQueueSize();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return executor.getQueueCapacity();
+    }
+
+    @Override
+    public long getOfferFailCount() {
+        return executor.getOfferFailCount();
     }
 
     public boolean isNetworkAvailable() {
@@ -143,21 +262,42 @@ public class UdpDataSender extends AbstractDataSender implements DataSender {
     }
 
     protected void sendPacket(Object message) {
+        try {
+            sendPacket0(message);
+        } finally {
+            // serialized bytes are already in the buffer. SpanEvents can be reused from now on.
+            SpanEventPool.recycle(message);
+        }
+    }
+
+    private void sendPacket0(Object message) {
         if (message instanceof TBase) {
             final TBase dto = (TBase) message;
             // do not copy bytes because it's single threaded
-            final byte[] internalBufferData = serialize(this.serializer, dto);
+            final byte[] internalBufferData;
+            final int internalBufferSize;
+            if (spanSerializer != null && DirectSpanSerializer.isSupport(dto)) {
+                internalBufferData = serializeSpan(dto);
+                internalBufferSize = this.spanSerializer.getInterBufferSize();
+            } else {
+                internalBufferData = serialize(this.serializer, dto);
+                internalBufferSize = this.serializer.getInterBufferSize();
+            }
             if (internalBufferData == null) {
                 logger.warn("interBufferData is null");
                 return;
             }
 
-            final int internalBufferSize = this.serializer.getInterBufferSize();
             if (isLimit(internalBufferSize)) {
                 // When packet size is greater than UDP packet size limit, it's better to discard packet than let the socket API fails.
                 logger.warn("discard packet. Caused:too large message. size:{}, {}", internalBufferSize, dto);
                 return;
             }
+            if (spool != null && !collectorStatus.isCollectorAvailable()) {
+                // a datagram to a dead collector is lost silently.
+                spool(internalBufferData, internalBufferSize);
+                return;
+            }
             // it's safe to reuse because it's single threaded
             reusePacket.setData(internalBufferData, 0, internalBufferSize);
 
@@ -167,14 +307,76 @@ public class UdpDataSender extends AbstractDataSender implements DataSender {
                     logger.debug("Data sent. size:{}, {}", internalBufferSize, dto);
                 }
             } catch (IOException e) {
-                logger.warn("packet send error. size:{}, {}", internalBufferSize, dto, e);
+                if (spool != null && spool(internalBufferData, internalBufferSize)) {
+                    logger.warn("packet send error. spooled. size:{} Caused:{}", internalBufferSize, e.getMessage());
+                } else {
+                    logger.warn("packet send error. size:{}, {}", internalBufferSize, dto, e);
+                }
             }
+        } else if (message instanceof byte[]) {
+            sendSpooledPacket((byte[]) message);
         } else {
             logger.warn("sendPacket fail. invalid type:{}", message != null ? message.getClass() : null);
             return;
         }
     }
 
+    private void sendSpooledPacket(byte[] packet) {
+        if (!collectorStatus.isCollectorAvailable()) {
+            // lost the collector during the replay. keep it for the next one.
+            spool(packet, packet.length);
+            return;
+        }
+        reusePacket.setData(packet, 0, packet.length);
+        try {
+            udpSocket.send(reusePacket);
+            if (isDebug) {
+                logger.debug("Spooled data sent. size:{}", packet.length);
+            }
+        } catch (IOException e) {
+            if (!spool(packet, packet.length)) {
+                logger.warn("spooled packet send error. size:{}", packet.length, e);
+            }
+        }
+    }
+
+    private class UdpSpoolReplayListener implements SpoolReplayListener {
+        // used by the replay worker thread only. 0 while the collector is unavailable.
+        private long collectorAvailableTime;
+
+        @Override
+        public boolean isReplayable() {
+            if (!collectorStatus.isCollectorAvailable()) {
+                collectorAvailableTime = 0;
+                return false;
+            }
+            final long currentTime = System.currentTimeMillis();
+            if (collectorAvailableTime == 0) {
+                collectorAvailableTime = currentTime;
+            }
+            // the connection may be flapping.
+            if (currentTime - collectorAvailableTime < SPOOL_REPLAY_WAIT) {
+                return false;
+            }
+            // leave the queue to live data.
+            return executor.getQueueSize() < executor.getQueueCapacity() / 2;
+        }
+
+        @Override
+        public boolean replay(byte[] packet) {
+            return executor.execute(packet);
+        }
+    }
+
+    private byte[] serializeSpan(TBase dto) {
+        try {
+            return spanSerializer.serialize(dto);
+        } catch (Exception e) {
+            logger.warn("Serialize {} failed. Error:{}", dto, e.getMessage(), e);
+            return null;
+        }
+    }
+
     // for test
     protected boolean isLimit(int interBufferSize) {
         if (interBufferSize > UDP_MAX_PACKET_LENGTH) {
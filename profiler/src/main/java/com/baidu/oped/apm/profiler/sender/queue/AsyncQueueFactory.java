@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+public class AsyncQueueFactory {
+
+    public static final AsyncQueueFactory DEFAULT = new AsyncQueueFactory(AsyncQueueType.LINKED, WaitStrategyType.PARK);
+
+    private final AsyncQueueType queueType;
+    private final WaitStrategy waitStrategy;
+
+    public AsyncQueueFactory(AsyncQueueType queueType, WaitStrategy waitStrategy) {
+        if (queueType == null) {
+            throw new NullPointerException("queueType must not be null");
+        }
+        if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy must not be null");
+        }
+        this.queueType = queueType;
+        this.waitStrategy = waitStrategy;
+    }
+
+    public AsyncQueueFactory(String queueType, String waitStrategy) {
+        this(AsyncQueueType.getType(queueType, AsyncQueueType.LINKED), WaitStrategyType.getType(waitStrategy, WaitStrategyType.PARK));
+    }
+
+    public <T> AsyncQueue<T> createQueue(int capacity) {
+        switch (queueType) {
+            case RING_BUFFER:
+                return new MpscRingBufferQueue<T>(capacity, waitStrategy);
+            case LINKED:
+            default:
+                return new LinkedBlockingAsyncQueue<T>(capacity);
+        }
+    }
+
+    public AsyncQueueType getQueueType() {
+        return queueType;
+    }
+
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncQueueFactory{" +
+                "queueType=" + queueType +
+                ", waitStrategy=" + waitStrategy +
+                '}';
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+public enum AsyncQueueType {
+
+    // java.util.concurrent.LinkedBlockingQueue
+    LINKED,
+    // lock-free multi-producer/single-consumer ring buffer
+    RING_BUFFER;
+
+    public static AsyncQueueType getType(String name, AsyncQueueType defaultType) {
+        if (name == null) {
+            return defaultType;
+        }
+        for (AsyncQueueType type : values()) {
+            if (type.name().equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        return defaultType;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of one lane of a {@link PriorityLaneAsyncQueue}.
+ * Offer counters are updated by application threads, drain counters only by the executor thread.
+ */
+public class LaneStatus {
+
+    private final String name;
+
+    private final AtomicLong offerCount = new AtomicLong();
+    private final AtomicLong dropCount = new AtomicLong();
+    private final AtomicLong spillCount = new AtomicLong();
+
+    private volatile long drainCount;
+    private volatile long totalWaitNanos;
+    private volatile long maxWaitNanos;
+
+    public LaneStatus(String name) {
+        if (name == null) {
+            throw new NullPointerException("name must not be null");
+        }
+        this.name = name;
+    }
+
+    void offered() {
+        offerCount.incrementAndGet();
+    }
+
+    void dropped() {
+        dropCount.incrementAndGet();
+    }
+
+    void spilled() {
+        spillCount.incrementAndGet();
+    }
+
+    // executor thread only
+    void drained(long waitNanos) {
+        drainCount++;
+        totalWaitNanos += waitNanos;
+        if (waitNanos > maxWaitNanos) {
+            maxWaitNanos = waitNanos;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getOfferCount() {
+        return offerCount.get();
+    }
+
+    /**
+     * Elements rejected because this lane (and any lane it spills into) was full.
+     */
+    public long getDropCount() {
+        return dropCount.get();
+    }
+
+    /**
+     * Elements accepted by another lane because this lane was full.
+     */
+    public long getSpillCount() {
+        return spillCount.get();
+    }
+
+    public long getDrainCount() {
+        return drainCount;
+    }
+
+    public long getAverageWaitMillis() {
+        final long drainCount = this.drainCount;
+        if (drainCount == 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos / drainCount);
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("LaneStatus{");
+        sb.append("name=").append(name);
+        sb.append(", offerCount=").append(offerCount.get());
+        sb.append(", dropCount=").append(dropCount.get());
+        sb.append(", spillCount=").append(spillCount.get());
+        sb.append(", drainCount=").append(drainCount);
+        sb.append(", averageWaitMillis=").append(getAverageWaitMillis());
+        sb.append(", maxWaitMillis=").append(getMaxWaitMillis());
+        sb.append('}');
+        return sb.toString();
+    }
+}
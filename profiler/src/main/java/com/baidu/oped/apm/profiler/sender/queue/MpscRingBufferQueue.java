@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded, preallocated multi-producer/single-consumer ring buffer.
+ * Producers claim a slot with a single CAS and never allocate, the consumer thread never takes a lock.
+ * Capacity is rounded up to the next power of 2.
+ *
+ * Caution. poll() and drainTo() must be called by one thread only.
+ */
+public class MpscRingBufferQueue<T> implements AsyncQueue<T> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+
+    private final PaddedAtomicLong producerIndex = new PaddedAtomicLong();
+    private final PaddedAtomicLong consumerIndex = new PaddedAtomicLong();
+
+    private final WaitStrategy waitStrategy;
+
+    public MpscRingBufferQueue(int capacity) {
+        this(capacity, WaitStrategyType.PARK);
+    }
+
+    public MpscRingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity is too large. capacity:" + capacity);
+        }
+        if (waitStrategy == null) {
+            throw new NullPointerException("waitStrategy must not be null");
+        }
+        this.capacity = roundToPowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<T>(this.capacity);
+        this.waitStrategy = waitStrategy;
+    }
+
+    static int roundToPowerOfTwo(int value) {
+        return 1 << (32 - Integer.numberOfLeadingZeros(value - 1));
+    }
+
+    @Override
+    public boolean offer(T data) {
+        if (data == null) {
+            throw new NullPointerException("data must not be null");
+        }
+        long currentProducerIndex;
+        do {
+            currentProducerIndex = producerIndex.get();
+            if (currentProducerIndex - consumerIndex.get() >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(currentProducerIndex, currentProducerIndex + 1));
+
+        // publish. the consumer spins on a claimed but not yet visible slot.
+        buffer.lazySet(offset(currentProducerIndex), data);
+        return true;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        T data = poll();
+        if (data != null) {
+            return data;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idleCounter = 0;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            data = poll();
+            if (data != null) {
+                return data;
+            }
+            final long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                return null;
+            }
+            idleCounter = waitStrategy.idle(idleCounter, remainingNanos);
+        }
+    }
+
+    /**
+     * Non-blocking poll. returns null if the queue is empty.
+     */
+    public T poll() {
+        final long currentConsumerIndex = consumerIndex.get();
+        final int offset = offset(currentConsumerIndex);
+        T data = buffer.get(offset);
+        if (data == null) {
+            if (currentConsumerIndex == producerIndex.get()) {
+                return null;
+            }
+            // slot is claimed by a producer which has not stored the element yet.
+            do {
+                data = buffer.get(offset);
+            } while (data == null);
+        }
+        buffer.lazySet(offset, null);
+        consumerIndex.lazySet(currentConsumerIndex + 1);
+        return data;
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> drain, int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            final T data = poll();
+            if (data == null) {
+                break;
+            }
+            drain.add(data);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int size() {
+        // read the consumer first. the producer index can only move forward afterwards.
+        final long currentConsumerIndex = consumerIndex.get();
+        final long size = producerIndex.get() - currentConsumerIndex;
+        if (size > capacity) {
+            return capacity;
+        }
+        return (int) size;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex.get() == producerIndex.get();
+    }
+
+    private int offset(long index) {
+        return (int) index & mask;
+    }
+
+    // prevent false sharing between producer and consumer index.
+    @SuppressWarnings("unused")
+    private static class PaddedAtomicLong extends AtomicLong {
+        public volatile long p1, p2, p3, p4, p5, p6 = 7L;
+    }
+}
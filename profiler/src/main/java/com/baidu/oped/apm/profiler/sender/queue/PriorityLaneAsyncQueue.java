@@ -0,0 +1,222 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link AsyncQueue} with a priority lane and a bulk lane, each with its own capacity.
+ * A flood of bulk data fills only the bulk lane, so priority data (metadata, agent info) still gets in.
+ * A full priority lane spills into the bulk lane before anything is dropped.
+ * <p>
+ * While both lanes have data, the consumer takes up to priorityWeight priority elements for every bulk element,
+ * so bulk data is delayed but not starved.
+ */
+public class PriorityLaneAsyncQueue<T> implements AsyncQueue<T> {
+
+    private final AsyncQueue<Entry<T>> priorityLane;
+    private final AsyncQueue<Entry<T>> bulkLane;
+    private final LaneSelector<T> laneSelector;
+    private final int priorityWeight;
+
+    private final LaneStatus priorityStatus = new LaneStatus("priority");
+    private final LaneStatus bulkStatus = new LaneStatus("bulk");
+
+    // consumer thread only
+    private int priorityCredit;
+
+    private volatile Thread waiter;
+
+    public PriorityLaneAsyncQueue(AsyncQueueFactory queueFactory, int priorityCapacity, int bulkCapacity, int priorityWeight, LaneSelector<T> laneSelector) {
+        if (queueFactory == null) {
+            throw new NullPointerException("queueFactory must not be null");
+        }
+        if (laneSelector == null) {
+            throw new NullPointerException("laneSelector must not be null");
+        }
+        if (priorityWeight <= 0) {
+            throw new IllegalArgumentException("negative priorityWeight:" + priorityWeight);
+        }
+        this.priorityLane = queueFactory.createQueue(priorityCapacity);
+        this.bulkLane = queueFactory.createQueue(bulkCapacity);
+        this.laneSelector = laneSelector;
+        this.priorityWeight = priorityWeight;
+    }
+
+    @Override
+    public boolean offer(T data) {
+        if (laneSelector.isPriority(data)) {
+            final Entry<T> entry = new Entry<T>(data, System.nanoTime(), priorityStatus);
+            priorityStatus.offered();
+            if (priorityLane.offer(entry)) {
+                return signal();
+            }
+            if (bulkLane.offer(entry)) {
+                priorityStatus.spilled();
+                return signal();
+            }
+            priorityStatus.dropped();
+            return false;
+        } else {
+            final Entry<T> entry = new Entry<T>(data, System.nanoTime(), bulkStatus);
+            bulkStatus.offered();
+            if (bulkLane.offer(entry)) {
+                return signal();
+            }
+            bulkStatus.dropped();
+            return false;
+        }
+    }
+
+    private boolean signal() {
+        final Thread waiter = this.waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+        return true;
+    }
+
+    @Override
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        T data = pollNext();
+        if (data != null) {
+            return data;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            // publish the waiter before checking again, so that an offer in between unparks us.
+            this.waiter = Thread.currentThread();
+            try {
+                data = pollNext();
+                if (data != null) {
+                    return data;
+                }
+                final long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remainingNanos);
+            } finally {
+                this.waiter = null;
+            }
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super T> drain, int maxElements) {
+        int count = 0;
+        while (count < maxElements) {
+            final T data = pollNext();
+            if (data == null) {
+                break;
+            }
+            drain.add(data);
+            count++;
+        }
+        return count;
+    }
+
+    private T pollNext() {
+        if (priorityCredit < priorityWeight) {
+            final Entry<T> priority = pollLane(priorityLane);
+            if (priority != null) {
+                priorityCredit++;
+                return take(priority);
+            }
+            priorityCredit = 0;
+            return take(pollLane(bulkLane));
+        }
+        priorityCredit = 0;
+        final Entry<T> bulk = pollLane(bulkLane);
+        if (bulk != null) {
+            return take(bulk);
+        }
+        final Entry<T> priority = pollLane(priorityLane);
+        if (priority != null) {
+            priorityCredit++;
+        }
+        return take(priority);
+    }
+
+    private Entry<T> pollLane(AsyncQueue<Entry<T>> lane) {
+        try {
+            return lane.poll(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private T take(Entry<T> entry) {
+        if (entry == null) {
+            return null;
+        }
+        // spilled entries are counted in the lane they were offered to.
+        entry.status.drained(System.nanoTime() - entry.offerNanos);
+        return entry.data;
+    }
+
+    @Override
+    public int size() {
+        return priorityLane.size() + bulkLane.size();
+    }
+
+    @Override
+    public int capacity() {
+        return priorityLane.capacity() + bulkLane.capacity();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return priorityLane.isEmpty() && bulkLane.isEmpty();
+    }
+
+    public LaneStatus getPriorityLaneStatus() {
+        return priorityStatus;
+    }
+
+    public LaneStatus getBulkLaneStatus() {
+        return bulkStatus;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PriorityLaneAsyncQueue{");
+        sb.append("priorityWeight=").append(priorityWeight);
+        sb.append(", priority=").append(priorityStatus);
+        sb.append(", bulk=").append(bulkStatus);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static class Entry<T> {
+        private final T data;
+        private final long offerNanos;
+        private final LaneStatus status;
+
+        private Entry(T data, long offerNanos, LaneStatus status) {
+            this.data = data;
+            this.offerNanos = offerNanos;
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+/**
+ * Decides how the consumer thread of {@link MpscRingBufferQueue} waits while the queue is empty.
+ */
+public interface WaitStrategy {
+
+    /**
+     * @param idleCounter number of consecutive empty polls so far
+     * @param remainingNanos time left before the poll times out
+     * @return the idle counter to pass on the next call
+     */
+    int idle(int idleCounter, long remainingNanos);
+
+}
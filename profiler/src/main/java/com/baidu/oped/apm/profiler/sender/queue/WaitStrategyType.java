@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+public enum WaitStrategyType implements WaitStrategy {
+
+    // lowest latency, burns a whole core while idle.
+    SPIN {
+        @Override
+        public int idle(int idleCounter, long remainingNanos) {
+            return idleCounter + 1;
+        }
+    },
+
+    YIELD {
+        @Override
+        public int idle(int idleCounter, long remainingNanos) {
+            Thread.yield();
+            return idleCounter + 1;
+        }
+    },
+
+    // spin and yield for a while, then park. cheapest for a mostly idle sender.
+    PARK {
+        @Override
+        public int idle(int idleCounter, long remainingNanos) {
+            if (idleCounter < SPIN_TRIES) {
+                return idleCounter + 1;
+            }
+            if (idleCounter < SPIN_TRIES + YIELD_TRIES) {
+                Thread.yield();
+                return idleCounter + 1;
+            }
+            LockSupport.parkNanos(Math.min(remainingNanos, MAX_PARK_NANOS));
+            return idleCounter;
+        }
+    };
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    public static WaitStrategyType getType(String name, WaitStrategyType defaultType) {
+        if (name == null) {
+            return defaultType;
+        }
+        for (WaitStrategyType type : values()) {
+            if (type.name().equalsIgnoreCase(name.trim())) {
+                return type;
+            }
+        }
+        return defaultType;
+    }
+}
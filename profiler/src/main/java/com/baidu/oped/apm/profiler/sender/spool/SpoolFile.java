@@ -0,0 +1,278 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.spool;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded on-disk spool of serialized packets.
+ * Records are appended to memory-mapped segment files of a fixed size. When the spool reaches its maximum size,
+ * the oldest segment is deleted with its unread records. Consumed segments are deleted as soon as they are read up.
+ * Unread records survive an agent restart.
+ */
+public class SpoolFile {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024 * 8;
+    public static final long DEFAULT_MAX_SIZE = 1024L * 1024 * 128;
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File directory;
+    private final int segmentSize;
+    private final int maxSegmentCount;
+
+    // oldest first. the last one is the write segment.
+    private final LinkedList<SpoolSegment> segments = new LinkedList<SpoolSegment>();
+    private long nextSegmentId;
+
+    private long appendCount;
+    private long rejectCount;
+    private long evictCount;
+    private boolean closed = false;
+
+    public SpoolFile(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SIZE);
+    }
+
+    public SpoolFile(File directory, int segmentSize, long maxSize) throws IOException {
+        if (directory == null) {
+            throw new NullPointerException("directory must not be null");
+        }
+        if (segmentSize <= SpoolSegment.RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("invalid segmentSize:" + segmentSize);
+        }
+        if (maxSize < segmentSize * 2L) {
+            throw new IllegalArgumentException("maxSize must be at least 2 segments. maxSize:" + maxSize + " segmentSize:" + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegmentCount = (int) Math.min(maxSize / segmentSize, Integer.MAX_VALUE);
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("spool directory create fail. " + directory);
+        }
+        if (!directory.isDirectory()) {
+            throw new IOException("not a directory. " + directory);
+        }
+        recover();
+    }
+
+    private void recover() throws IOException {
+        final List<Long> segmentIds = findSegmentIds();
+        for (Long segmentId : segmentIds) {
+            final SpoolSegment segment = new SpoolSegment(segmentId, segmentFile(segmentId), segmentSize);
+            segments.addLast(segment);
+            this.nextSegmentId = segmentId + 1;
+        }
+        while (segments.size() > maxSegmentCount) {
+            evictOldest();
+        }
+        if (segments.isEmpty()) {
+            rollSegment();
+        }
+        final long unreadCount = getUnreadCount0();
+        if (unreadCount > 0) {
+            logger.info("spool recovered. directory:{} segments:{} unread records:{}", directory, segments.size(), unreadCount);
+        }
+    }
+
+    private List<Long> findSegmentIds() {
+        final String[] names = directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        final List<Long> segmentIds = new ArrayList<Long>(names.length);
+        for (String name : names) {
+            final String id = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+            try {
+                segmentIds.add(Long.parseLong(id));
+            } catch (NumberFormatException e) {
+                logger.warn("invalid spool segment name:{}", name);
+            }
+        }
+        Collections.sort(segmentIds);
+        return segmentIds;
+    }
+
+    private File segmentFile(long segmentId) {
+        // zero padded to keep the directory listing in order.
+        return new File(directory, SEGMENT_PREFIX + String.format("%019d", segmentId) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * @return false if the record is larger than a segment or the spool is closed
+     */
+    public synchronized boolean append(byte[] data, int offset, int length) {
+        if (data == null) {
+            throw new NullPointerException("data must not be null");
+        }
+        if (closed) {
+            return false;
+        }
+        if (length <= 0 || length > segmentSize - SpoolSegment.RECORD_HEADER_SIZE) {
+            rejectCount++;
+            return false;
+        }
+        SpoolSegment writeSegment = segments.getLast();
+        if (!writeSegment.hasRemaining(length)) {
+            try {
+                writeSegment = rollSegment();
+            } catch (IOException e) {
+                rejectCount++;
+                logger.warn("spool segment create fail. directory:{} Caused:{}", directory, e.getMessage(), e);
+                return false;
+            }
+        }
+        writeSegment.append(data, offset, length);
+        appendCount++;
+        return true;
+    }
+
+    public boolean append(byte[] data) {
+        return append(data, 0, data.length);
+    }
+
+    private SpoolSegment rollSegment() throws IOException {
+        while (segments.size() >= maxSegmentCount) {
+            evictOldest();
+        }
+        final long segmentId = nextSegmentId++;
+        final SpoolSegment segment = new SpoolSegment(segmentId, segmentFile(segmentId), segmentSize);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void evictOldest() {
+        final SpoolSegment oldest = segments.removeFirst();
+        final int unreadCount = oldest.getUnreadCount();
+        evictCount += unreadCount;
+        if (unreadCount > 0) {
+            logger.warn("spool is full. discard {} records of {}", unreadCount, oldest.getFile());
+        }
+        oldest.delete();
+    }
+
+    /**
+     * Remove the oldest unread record.
+     *
+     * @return null if the spool is empty
+     */
+    public synchronized byte[] poll() {
+        if (closed) {
+            return null;
+        }
+        while (true) {
+            final SpoolSegment segment = segments.getFirst();
+            final byte[] data = segment.poll();
+            if (data != null) {
+                return data;
+            }
+            if (segments.size() == 1) {
+                // write segment
+                return null;
+            }
+            segments.removeFirst();
+            segment.delete();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return getUnreadCount0() == 0;
+    }
+
+    public synchronized long getUnreadCount() {
+        return getUnreadCount0();
+    }
+
+    private long getUnreadCount0() {
+        long unreadCount = 0;
+        for (SpoolSegment segment : segments) {
+            unreadCount += segment.getUnreadCount();
+        }
+        return unreadCount;
+    }
+
+    public synchronized long getSize() {
+        long size = 0;
+        for (SpoolSegment segment : segments) {
+            size += segment.getCapacity();
+        }
+        return size;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized long getAppendCount() {
+        return appendCount;
+    }
+
+    public synchronized long getRejectCount() {
+        return rejectCount;
+    }
+
+    public synchronized long getEvictCount() {
+        return evictCount;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (SpoolSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        logger.info("spool closed. directory:{} append:{} reject:{} evict:{}", directory, appendCount, rejectCount, evictCount);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SpoolFile{" +
+                "directory=" + directory +
+                ", segmentSize=" + segmentSize +
+                ", maxSegmentCount=" + maxSegmentCount +
+                ", segments=" + segments.size() +
+                ", appendCount=" + appendCount +
+                ", rejectCount=" + rejectCount +
+                ", evictCount=" + evictCount +
+                '}';
+    }
+}
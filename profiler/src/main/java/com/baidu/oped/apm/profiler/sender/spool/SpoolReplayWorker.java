@@ -0,0 +1,129 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.spool;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.baidu.oped.apm.common.util.ApmThreadFactory;
+
+/**
+ * Hands spooled packets back to the sender at a limited rate while the sender reports that it can take them.
+ */
+public class SpoolReplayWorker implements Runnable {
+
+    public static final int DEFAULT_REPLAY_RATE = 1000;
+
+    private static final long REPLAY_INTERVAL = 100;
+    private static final int TICKS_PER_SECOND = (int) (TimeUnit.SECONDS.toMillis(1) / REPLAY_INTERVAL);
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final SpoolFile spool;
+    private final SpoolReplayListener listener;
+    private final int replayPerTick;
+
+    private final AtomicBoolean isRun = new AtomicBoolean(true);
+    private final AtomicLong replayCount = new AtomicLong();
+    private final Thread workerThread;
+
+    /**
+     * @param replayRate max packets replayed per second
+     */
+    public SpoolReplayWorker(SpoolFile spool, SpoolReplayListener listener, int replayRate, String workerName) {
+        if (spool == null) {
+            throw new NullPointerException("spool must not be null");
+        }
+        if (listener == null) {
+            throw new NullPointerException("listener must not be null");
+        }
+        if (replayRate <= 0) {
+            throw new IllegalArgumentException("invalid replayRate:" + replayRate);
+        }
+        if (workerName == null) {
+            throw new NullPointerException("workerName must not be null");
+        }
+        this.spool = spool;
+        this.listener = listener;
+        this.replayPerTick = Math.max(1, replayRate / TICKS_PER_SECOND);
+
+        final ThreadFactory threadFactory = new ApmThreadFactory(workerName, true);
+        this.workerThread = threadFactory.newThread(this);
+        this.workerThread.start();
+    }
+
+    @Override
+    public void run() {
+        logger.info("{} started. spool:{}", workerThread.getName(), spool.getDirectory());
+        while (isRun.get()) {
+            try {
+                replay();
+            } catch (Throwable th) {
+                logger.warn("{} replay fail. Caused:{}", workerThread.getName(), th.getMessage(), th);
+            }
+            try {
+                Thread.sleep(REPLAY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        logger.info("{} stopped. replay:{}", workerThread.getName(), replayCount.get());
+    }
+
+    private int replay() {
+        if (spool.isEmpty() || !listener.isReplayable()) {
+            return 0;
+        }
+        int replayed = 0;
+        while (replayed < replayPerTick) {
+            final byte[] packet = spool.poll();
+            if (packet == null) {
+                break;
+            }
+            if (!listener.replay(packet)) {
+                spool.append(packet);
+                break;
+            }
+            replayed++;
+        }
+        replayCount.addAndGet(replayed);
+        return replayed;
+    }
+
+    public long getReplayCount() {
+        return replayCount.get();
+    }
+
+    public void stop() {
+        if (!isRun.compareAndSet(true, false)) {
+            return;
+        }
+        workerThread.interrupt();
+        try {
+            workerThread.join(3000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("{} stopped incompletely.", workerThread.getName());
+        }
+    }
+}
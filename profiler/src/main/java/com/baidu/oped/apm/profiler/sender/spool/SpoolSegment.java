@@ -0,0 +1,204 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.spool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A memory-mapped, fixed size spool file.
+ * record format : int length + bytes. A consumed record keeps its negative length so that it is skipped after restart.
+ * A zero length marks the end of the written records because a newly mapped file is filled with zeros.
+ * Not thread safe. guarded by {@link SpoolFile}.
+ */
+class SpoolSegment {
+
+    static final int RECORD_HEADER_SIZE = 4;
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolSegment.class);
+
+    private final long id;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer buffer;
+
+    private int writePosition;
+    private int readPosition;
+    private int unreadCount;
+
+    SpoolSegment(long id, File file, int segmentSize) throws IOException {
+        if (file == null) {
+            throw new NullPointerException("file must not be null");
+        }
+        this.id = id;
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            final long length = randomAccessFile.length();
+            // keep the size of a recovered segment even if segment.size has been changed.
+            final int mapSize = length > 0 ? (int) length : segmentSize;
+            this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+        } catch (IOException e) {
+            closeFile();
+            throw e;
+        }
+        recover();
+    }
+
+    private void recover() {
+        final int capacity = buffer.capacity();
+        int position = 0;
+        int firstUnread = -1;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            final int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            final int size = Math.abs(length);
+            if (size > capacity - position - RECORD_HEADER_SIZE) {
+                // torn write. ignore the rest.
+                logger.warn("corrupted spool record. file:{} position:{}", file, position);
+                break;
+            }
+            if (length > 0) {
+                unreadCount++;
+                if (firstUnread == -1) {
+                    firstUnread = position;
+                }
+            }
+            position += RECORD_HEADER_SIZE + size;
+        }
+        this.writePosition = position;
+        this.readPosition = firstUnread == -1 ? position : firstUnread;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getWritePosition() {
+        return writePosition;
+    }
+
+    int getUnreadCount() {
+        return unreadCount;
+    }
+
+    boolean hasRemaining(int length) {
+        return buffer.capacity() - writePosition >= RECORD_HEADER_SIZE + length;
+    }
+
+    void append(byte[] data, int offset, int length) {
+        final int position = writePosition;
+        // write the body first. the record becomes visible with its length.
+        buffer.position(position + RECORD_HEADER_SIZE);
+        buffer.put(data, offset, length);
+        buffer.putInt(position, length);
+        writePosition = position + RECORD_HEADER_SIZE + length;
+        unreadCount++;
+    }
+
+    /**
+     * @return null if there is no unread record in this segment
+     */
+    byte[] poll() {
+        while (readPosition < writePosition) {
+            final int position = readPosition;
+            final int length = buffer.getInt(position);
+            final int size = Math.abs(length);
+            readPosition = position + RECORD_HEADER_SIZE + size;
+            if (length < 0) {
+                continue;
+            }
+            final byte[] data = new byte[length];
+            buffer.position(position + RECORD_HEADER_SIZE);
+            buffer.get(data);
+            // mark consumed
+            buffer.putInt(position, -length);
+            unreadCount--;
+            return data;
+        }
+        return null;
+    }
+
+    void close() {
+        try {
+            buffer.force();
+        } catch (Exception e) {
+            logger.debug("force() fail. file:{} Caused:{}", file, e.getMessage());
+        }
+        unmap(buffer);
+        closeFile();
+    }
+
+    void delete() {
+        unmap(buffer);
+        closeFile();
+        if (!file.delete()) {
+            logger.warn("spool segment delete fail. file:{}", file);
+        }
+    }
+
+    private void closeFile() {
+        try {
+            randomAccessFile.close();
+        } catch (IOException e) {
+            logger.debug("close fail. file:{} Caused:{}", file, e.getMessage());
+        }
+    }
+
+    // A mapping is released only by GC. Release it early on the JVMs that expose the cleaner.
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            final Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                final Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Throwable ignore) {
+            // wait for GC
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolSegment{" +
+                "file=" + file +
+                ", writePosition=" + writePosition +
+                ", readPosition=" + readPosition +
+                ", unreadCount=" + unreadCount +
+                '}';
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentException;
+import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
+import com.baidu.oped.apm.bootstrap.instrument.transformer.TransformCallback;
+import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
+import com.baidu.oped.apm.common.trace.ServiceType;
+import com.baidu.oped.apm.profiler.instrument.ClassInjector;
+import com.baidu.oped.apm.profiler.instrument.transformer.ClassFileTransformCache;
+import com.baidu.oped.apm.profiler.interceptor.bci.ObjectTraceValue;
+import com.baidu.oped.apm.profiler.interceptor.bci.TestObject;
+import com.baidu.oped.apm.profiler.logging.Slf4jLoggerBinder;
+import com.baidu.oped.apm.profiler.plugin.DefaultProfilerPluginContext;
+import com.baidu.oped.apm.test.MockAgent;
+
+public class ClassFileTransformerDispatcherTest {
+
+    private static final String TEST_OBJECT = TestObject.class.getName();
+    private static final String TEST_OBJECT_JVM_NAME = TEST_OBJECT.replace('.', '/');
+
+    private final AtomicInteger transformCount = new AtomicInteger();
+    private final List<String> injectedClasses = new ArrayList<String>();
+
+    private DefaultAgent agent;
+    private ClassLoader classLoader;
+    private File baseDirectory;
+
+    @Before
+    public void setUp() {
+        PLoggerFactory.initialize(new Slf4jLoggerBinder());
+        DefaultProfilerConfig profilerConfig = new DefaultProfilerConfig();
+        profilerConfig.setApplicationServerType(ServiceType.TEST_STAND_ALONE.getName());
+        agent = MockAgent.of(profilerConfig);
+        classLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        baseDirectory = new File(System.getProperty("java.io.tmpdir"), "transform-dispatcher-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        delete(baseDirectory);
+    }
+
+    @Test
+    public void cacheHitInjectsClasses() throws Exception {
+        final TransformCallback addField = new TransformCallback() {
+            @Override
+            public byte[] doInTransform(Instrumentor instrumentContext, ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws InstrumentException {
+                transformCount.incrementAndGet();
+                InstrumentClass aClass = instrumentContext.getInstrumentClass(loader, className, classfileBuffer);
+                aClass.addField(ObjectTraceValue.class.getName());
+                return aClass.toBytecode();
+            }
+        };
+        final byte[] classFile = readClassFile();
+
+        final byte[] transformed = newDispatcher(addField, newCache()).transform(classLoader, TEST_OBJECT_JVM_NAME, null, null, classFile);
+        assertNotNull(transformed);
+        assertEquals(1, transformCount.get());
+        assertEquals(Collections.singletonList(ObjectTraceValue.class.getName()), injectedClasses);
+
+        // next start
+        final ClassFileTransformCache cache = newCache();
+        final byte[] cached = newDispatcher(addField, cache).transform(classLoader, TEST_OBJECT_JVM_NAME, null, null, classFile);
+        assertArrayEquals(transformed, cached);
+        assertEquals(1, transformCount.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, injectedClasses.size());
+    }
+
+    @Test
+    public void interceptorIsNotCached() throws Exception {
+        final TransformCallback addInterceptor = new TransformCallback() {
+            @Override
+            public byte[] doInTransform(Instrumentor instrumentContext, ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws InstrumentException {
+                transformCount.incrementAndGet();
+                InstrumentClass aClass = instrumentContext.getInstrumentClass(loader, className, classfileBuffer);
+                aClass.getDeclaredMethod("callA").addInterceptor("com.baidu.oped.apm.profiler.interceptor.TestBeforeInterceptor");
+                return aClass.toBytecode();
+            }
+        };
+        final byte[] classFile = readClassFile();
+
+        final ClassFileTransformCache cache = newCache();
+        assertNotNull(newDispatcher(addInterceptor, cache).transform(classLoader, TEST_OBJECT_JVM_NAME, null, null, classFile));
+        assertEquals(0, cache.getEntries());
+
+        // next start skips the lookup
+        final ClassFileTransformCache nextCache = newCache();
+        final ClassLoader nextClassLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        assertTrue(nextCache.isUncacheable(nextClassLoader, TEST_OBJECT_JVM_NAME));
+        assertNotNull(newDispatcher(addInterceptor, nextCache).transform(nextClassLoader, TEST_OBJECT_JVM_NAME, null, null, classFile));
+        assertEquals(2, transformCount.get());
+        assertEquals(0, nextCache.getMissCount());
+        assertEquals(2, nextCache.getSkipCount());
+    }
+
+    private ClassFileTransformerDispatcher newDispatcher(TransformCallback transformCallback, ClassFileTransformCache cache) {
+        final DefaultProfilerPluginContext context = new DefaultProfilerPluginContext(agent, new RecordingClassInjector());
+        context.addClassFileTransformer(TEST_OBJECT, transformCallback);
+        return new ClassFileTransformerDispatcher(agent, Collections.singletonList(context), cache);
+    }
+
+    private ClassFileTransformCache newCache() {
+        return new ClassFileTransformCache(baseDirectory, "v1", 100, 1024 * 1024);
+    }
+
+    private byte[] readClassFile() throws IOException {
+        final InputStream in = getClass().getClassLoader().getResourceAsStream(TEST_OBJECT_JVM_NAME + ".class");
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private class RecordingClassInjector implements ClassInjector {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> Class<? extends T> injectClass(ClassLoader targetClassLoader, String className) {
+            injectedClasses.add(className);
+            try {
+                return (Class<? extends T>) Class.forName(className, false, targetClassLoader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
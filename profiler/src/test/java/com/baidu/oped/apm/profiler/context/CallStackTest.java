@@ -139,4 +139,34 @@ public class CallStackTest {
         assertNull(callStack.pop());
         assertNull(callStack.peek());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void overflow_reuseSpanEvent() {
+        final int maxDepth = 2;
+
+        CallStack callStack = new CallStack(span, maxDepth);
+        for(int i = 0; i < maxDepth + 1; i++) {
+            callStack.push(createSpanEventStackFrame(span));
+        }
+        callStack.push(spanEvent);
+        callStack.push(spanEvent);
+
+        SpanEvent overflow1 = callStack.pop();
+        SpanEvent overflow2 = callStack.pop();
+        assertSame(overflow1, overflow2);
+        assertTrue(callStack.isOverflowSpanEvent(overflow1));
+        assertNotSame(spanEvent, overflow1);
+
+        // shared by all overflow frames. nothing recorded sticks.
+        overflow1.setApiId(10);
+        overflow1.addAnnotation(new Annotation(1));
+        overflow1.attachFrameObject("frame");
+        assertFalse(overflow1.isSetApiId());
+        assertFalse(overflow1.isSetAnnotations());
+        assertNull(overflow1.getFrameObject());
+        assertFalse(overflow1.isTimeRecording());
+
+        SpanEvent stacked = callStack.pop();
+        assertFalse(callStack.isOverflowSpanEvent(stacked));
+    }
+}
@@ -60,4 +60,34 @@ public class DefaultCachingSqlNormalizerTest {
         boolean newCache_parsingResult1_recached = normalizer.normalizedSql(parsingResult1_recached);
         Assert.assertTrue(newCache_parsingResult1_recached);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testNormalizedSql_originalSqlCache() throws Exception {
+        CachingSqlNormalizer normalizer = new DefaultCachingSqlNormalizer(10);
+        ParsingResult parsingResult = normalizer.wrapSql("select * from table1 where id = 1");
+        Assert.assertTrue(normalizer.normalizedSql(parsingResult));
+
+        ParsingResult sameSql = normalizer.wrapSql("select * from table1 where id = 1");
+        Assert.assertFalse(normalizer.normalizedSql(sameSql));
+        Assert.assertEquals(parsingResult.getId(), sameSql.getId());
+        Assert.assertEquals(parsingResult.getSql(), sameSql.getSql());
+        Assert.assertEquals(parsingResult.getOutput(), sameSql.getOutput());
+
+        ParsingResult otherLiteral = normalizer.wrapSql("select * from table1 where id = 2");
+        Assert.assertFalse(normalizer.normalizedSql(otherLiteral));
+        Assert.assertEquals(parsingResult.getId(), otherLiteral.getId());
+        Assert.assertEquals("2", otherLiteral.getOutput());
+    }
+
+    @Test
+    public void testNormalizedSql_originalSqlCache_disabled() throws Exception {
+        CachingSqlNormalizer normalizer = new DefaultCachingSqlNormalizer(10, 0);
+        ParsingResult parsingResult = normalizer.wrapSql("select * from table1 where id = 1");
+        Assert.assertTrue(normalizer.normalizedSql(parsingResult));
+
+        ParsingResult sameSql = normalizer.wrapSql("select * from table1 where id = 1");
+        Assert.assertFalse(normalizer.normalizedSql(sameSql));
+        Assert.assertEquals(parsingResult.getId(), sameSql.getId());
+        Assert.assertEquals("1", sameSql.getOutput());
+    }
+}
@@ -16,10 +16,18 @@
 
 package com.baidu.oped.apm.profiler.context;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.thrift.TBase;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
 import com.baidu.oped.apm.profiler.context.DefaultTrace;
 import com.baidu.oped.apm.profiler.context.DefaultTraceContext;
 import com.baidu.oped.apm.profiler.context.storage.SpanStorage;
 import com.baidu.oped.apm.profiler.logging.Slf4jLoggerBinderInitializer;
+import com.baidu.oped.apm.profiler.sender.DataSender;
 import com.baidu.oped.apm.profiler.sender.LoggingDataSender;
 import com.baidu.oped.apm.test.TestAgentInformation;
 
@@ -54,4 +62,46 @@ public class DefaultTraceTest {
         trace.traceBlockEnd();
         trace.close();
     }
+
+    @Test
+    public void recycleSpanEventAfterClose() {
+        Properties properties = new Properties();
+        properties.setProperty("profiler.spanevent.recycle.enable", "true");
+        properties.setProperty("profiler.spanevent.recycle.poolsize", "16");
+        DefaultTraceContext defaultTraceContext = new DefaultTraceContext(new TestAgentInformation());
+        defaultTraceContext.setProfilerConfig(new DefaultProfilerConfig(properties));
+        DefaultTrace trace = new DefaultTrace(defaultTraceContext, 1, true);
+
+        final List<TBase<?, ?>> sent = new ArrayList<TBase<?, ?>>();
+        trace.setStorage(new SpanStorage(new DataSender() {
+            @Override
+            public boolean send(TBase<?, ?> data) {
+                sent.add(data);
+                return true;
+            }
+
+            @Override
+            public void stop() {
+            }
+
+            @Override
+            public boolean isNetworkAvailable() {
+                return true;
+            }
+        }));
+
+        trace.traceBlockBegin();
+        trace.traceBlockEnd();
+        trace.close();
+
+        Assert.assertEquals(1, sent.size());
+        Span span = (Span) sent.get(0);
+        SpanEvent spanEvent = (SpanEvent) span.getSpanEventList().get(0);
+        SpanEventPool pool = SpanEventPool.getLocalPool(16);
+        // closed, but not serialized yet
+        Assert.assertNotSame(spanEvent, pool.acquire(span));
+
+        SpanEventPool.recycle(span);
+        Assert.assertSame(spanEvent, pool.acquire(span));
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+
+public class SpanEventPoolTest {
+
+    @Test
+    public void acquireAndRecycle() {
+        SpanEventPool pool = new SpanEventPool(4);
+        Span span = new Span();
+
+        SpanEvent spanEvent = pool.acquire(span);
+        Assert.assertSame(span, spanEvent.getSpan());
+        spanEvent.setStackId(10);
+        spanEvent.setApiId(100);
+        spanEvent.attachFrameObject("frame");
+
+        Assert.assertTrue(spanEvent.recycle());
+        Assert.assertTrue(spanEvent.releaseByTrace());
+
+        Span nextSpan = new Span();
+        SpanEvent reused = pool.acquire(nextSpan);
+        Assert.assertSame(spanEvent, reused);
+        Assert.assertSame(nextSpan, reused.getSpan());
+        Assert.assertEquals(0, reused.getStackId());
+        Assert.assertFalse(reused.isSetApiId());
+        Assert.assertNull(reused.getFrameObject());
+        Assert.assertTrue(reused.isTimeRecording());
+    }
+
+    @Test
+    public void notRecyclable() {
+        SpanEvent spanEvent = new SpanEvent(new Span());
+        Assert.assertFalse(spanEvent.recycle());
+        Assert.assertFalse(spanEvent.releaseByTrace());
+    }
+
+    @Test
+    public void recycleAfterTraceClosed() {
+        SpanEventPool pool = new SpanEventPool(4);
+        Span span = new Span();
+        SpanEvent spanEvent = pool.acquire(span);
+
+        // serialized, but the trace is still open. the recorder may still write into it.
+        spanEvent.recycle();
+        spanEvent.recycle();
+        Assert.assertNotSame(spanEvent, pool.acquire(span));
+
+        spanEvent.releaseByTrace();
+        Assert.assertSame(spanEvent, pool.acquire(span));
+    }
+
+    @Test
+    public void recycleAfterSerialized() {
+        SpanEventPool pool = new SpanEventPool(4);
+        Span span = new Span();
+        SpanEvent spanEvent = pool.acquire(span);
+
+        // trace closed, but the sender has not serialized it yet.
+        spanEvent.releaseByTrace();
+        Assert.assertNotSame(spanEvent, pool.acquire(span));
+
+        spanEvent.recycle();
+        Assert.assertSame(spanEvent, pool.acquire(span));
+    }
+
+    @Test
+    public void poolFull() {
+        SpanEventPool pool = new SpanEventPool(1);
+        Span span = new Span();
+        SpanEvent spanEvent1 = pool.acquire(span);
+        SpanEvent spanEvent2 = pool.acquire(span);
+        release(spanEvent1);
+        // dropped
+        release(spanEvent2);
+
+        Assert.assertSame(spanEvent1, pool.acquire(span));
+        SpanEvent newSpanEvent = pool.acquire(span);
+        Assert.assertNotSame(spanEvent1, newSpanEvent);
+        Assert.assertNotSame(spanEvent2, newSpanEvent);
+    }
+
+    @Test
+    public void recycleSpan() {
+        SpanEventPool pool = new SpanEventPool(4);
+        Span span = new Span();
+        List<TSpanEvent> spanEventList = new ArrayList<TSpanEvent>();
+        SpanEvent spanEvent1 = pool.acquire(span);
+        SpanEvent spanEvent2 = pool.acquire(span);
+        spanEventList.add(spanEvent1);
+        spanEventList.add(spanEvent2);
+        span.setSpanEventList(spanEventList);
+
+        SpanEventPool.recycle(span);
+        Assert.assertTrue(span.getSpanEventList().isEmpty());
+        spanEvent1.releaseByTrace();
+        spanEvent2.releaseByTrace();
+
+        pool.acquire(span);
+        Assert.assertEquals(1, pool.getFreeCount());
+    }
+
+    @Test
+    public void recycleSpan_notRecyclable() {
+        Span span = new Span();
+        List<TSpanEvent> spanEventList = new ArrayList<TSpanEvent>();
+        spanEventList.add(new SpanEvent(span));
+        span.setSpanEventList(spanEventList);
+
+        SpanEventPool.recycle(span);
+        Assert.assertEquals(1, span.getSpanEventList().size());
+    }
+
+    private void release(SpanEvent spanEvent) {
+        spanEvent.recycle();
+        spanEvent.releaseByTrace();
+    }
+}
@@ -19,7 +19,10 @@ package com.baidu.oped.apm.profiler.context;
 import java.util.Collections;
 
 import com.baidu.oped.apm.bootstrap.context.ServerMetaDataHolder;
+import com.baidu.oped.apm.bootstrap.context.SpanId;
 import com.baidu.oped.apm.bootstrap.context.Trace;
+import com.baidu.oped.apm.bootstrap.context.TraceId;
+import com.baidu.oped.apm.bootstrap.sampler.Sampler;
 import com.baidu.oped.apm.common.Version;
 import com.baidu.oped.apm.common.trace.ServiceType;
 import com.baidu.oped.apm.common.util.JvmUtils;
@@ -30,6 +33,8 @@ import com.baidu.oped.apm.profiler.context.DefaultTraceContext;
 import com.baidu.oped.apm.profiler.context.ThreadLocalTraceFactory;
 import com.baidu.oped.apm.profiler.context.storage.LogStorageFactory;
 import com.baidu.oped.apm.profiler.monitor.metric.MetricRegistry;
+import com.baidu.oped.apm.profiler.sampler.FalseSampler;
+import com.baidu.oped.apm.profiler.sampler.TailSampler;
 import com.baidu.oped.apm.profiler.sampler.TrueSampler;
 
 import org.junit.Assert;
@@ -38,14 +43,17 @@ import org.junit.Test;
 public class ThreadLocalTraceFactoryTest {
 
     private ThreadLocalTraceFactory getTraceFactory() {
+        return getTraceFactory(new TrueSampler());
+    }
+
+    private ThreadLocalTraceFactory getTraceFactory(Sampler sampler) {
         IdGenerator idGenerator = new IdGenerator();
         LogStorageFactory logStorageFactory = new LogStorageFactory();
-        TrueSampler trueSampler = new TrueSampler();
         ServerMetaDataHolder serverMetaDataHolder = new DefaultServerMetaDataHolder(Collections.<String>emptyList());
         AgentInformation agentInformation = new AgentInformation("agentId", "applicationName", System.currentTimeMillis(), 10, "test", "127.0.0.1", ServiceType.STAND_ALONE,
                 JvmUtils.getSystemProperty(SystemPropertyKey.JAVA_VERSION), Version.VERSION);
-        DefaultTraceContext traceContext = new DefaultTraceContext(100, agentInformation, logStorageFactory, trueSampler, serverMetaDataHolder, false);
-        return new ThreadLocalTraceFactory(traceContext, logStorageFactory, trueSampler, idGenerator);
+        DefaultTraceContext traceContext = new DefaultTraceContext(100, agentInformation, logStorageFactory, sampler, serverMetaDataHolder, false);
+        return new ThreadLocalTraceFactory(traceContext, logStorageFactory, sampler, idGenerator);
     }
 
     @Test
@@ -93,6 +101,33 @@ public class ThreadLocalTraceFactoryTest {
 
     }
 
+    @Test
+    public void tailSamplingTraceIsDeferred() throws Exception {
+        ThreadLocalTraceFactory traceFactory = getTraceFactory(new TailSampler(new FalseSampler(), 100, 10, 100));
+
+        Trace trace = traceFactory.newTraceObject();
+        try {
+            Assert.assertTrue("recorded tentatively", trace.canSampled());
+            TraceId nextId = trace.getTraceId().getNextTraceId();
+            Assert.assertTrue((nextId.getFlags() & TailSampler.DEFERRED_FLAG) != 0);
+        } finally {
+            traceFactory.removeTraceObject();
+        }
+    }
+
+    @Test
+    public void continueDeferredTraceObject() throws Exception {
+        ThreadLocalTraceFactory traceFactory = getTraceFactory();
+
+        TraceId traceId = new DefaultTraceId("agentId", 0L, 1L, SpanId.NULL, SpanId.newSpanId(), TailSampler.DEFERRED_FLAG);
+        Trace trace = traceFactory.continueTraceObject(traceId);
+        try {
+            Assert.assertFalse(trace.canSampled());
+        } finally {
+            traceFactory.removeTraceObject();
+        }
+    }
+
     @Test
     public void testDetachTraceObject() throws Exception {
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.active;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.common.trace.HistogramSchema;
+import com.baidu.oped.apm.common.trace.SlotType;
+import com.baidu.oped.apm.common.util.MockClock;
+
+public class ActiveTraceCounterTest {
+
+    private static final long BASE_TIME = 1000000;
+
+    @Test
+    public void histogram() {
+        ActiveTraceCounter counter = new ActiveTraceCounter(new MockClock(), BASE_TIME, 4);
+        final long currentTime = BASE_TIME + 10000;
+
+        counter.add(currentTime - 500);
+        counter.add(currentTime - 900);
+        final long normal = counter.add(currentTime - 2000);
+        counter.add(currentTime - 4000);
+        counter.add(currentTime - 8000);
+
+        ActiveTraceHistogram histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, currentTime);
+        Assert.assertEquals(2, histogram.getCount(SlotType.FAST));
+        Assert.assertEquals(1, histogram.getCount(SlotType.NORMAL));
+        Assert.assertEquals(1, histogram.getCount(SlotType.SLOW));
+        Assert.assertEquals(1, histogram.getCount(SlotType.VERY_SLOW));
+        Assert.assertEquals(0, histogram.getCount(SlotType.ERROR));
+
+        counter.remove(normal);
+        histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, currentTime);
+        Assert.assertEquals(0, histogram.getCount(SlotType.NORMAL));
+        Assert.assertEquals(4, histogram.getTotalCount());
+    }
+
+    @Test
+    public void rollOver() {
+        ActiveTraceCounter counter = new ActiveTraceCounter(new MockClock(), BASE_TIME, 4);
+        final long ringTime = ActiveTraceCounter.TICK_COUNT * ActiveTraceCounter.TICK_MILLIS;
+
+        final long old = counter.add(BASE_TIME + 100);
+        // same slot, next round
+        final long current = counter.add(BASE_TIME + 100 + ringTime);
+
+        final long currentTime = BASE_TIME + 100 + ringTime;
+        ActiveTraceHistogram histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, currentTime);
+        Assert.assertEquals(1, histogram.getCount(SlotType.FAST));
+        Assert.assertEquals(1, histogram.getCount(SlotType.VERY_SLOW));
+
+        counter.remove(old);
+        histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, currentTime);
+        Assert.assertEquals(1, histogram.getCount(SlotType.FAST));
+        Assert.assertEquals(0, histogram.getCount(SlotType.VERY_SLOW));
+
+        counter.remove(current);
+        histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, currentTime);
+        Assert.assertEquals(0, histogram.getTotalCount());
+    }
+
+    @Test
+    public void startedBeforeRing() {
+        ActiveTraceCounter counter = new ActiveTraceCounter(new MockClock(), BASE_TIME, 4);
+        final long currentTime = BASE_TIME + 100000;
+        // a new trace of the same slot index has already rolled it.
+        counter.add(currentTime);
+        counter.add(currentTime - ActiveTraceCounter.TICK_COUNT * ActiveTraceCounter.TICK_MILLIS);
+
+        ActiveTraceHistogram histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, currentTime);
+        Assert.assertEquals(1, histogram.getCount(SlotType.FAST));
+        Assert.assertEquals(1, histogram.getCount(SlotType.VERY_SLOW));
+    }
+
+    @Test
+    public void histogramAtClockTime() {
+        MockClock clock = new MockClock();
+        ActiveTraceCounter counter = new ActiveTraceCounter(clock, BASE_TIME, 4);
+        counter.add(BASE_TIME + 1000);
+
+        clock.setTime(BASE_TIME + 1500);
+        Assert.assertEquals(1, counter.getHistogram(HistogramSchema.NORMAL_SCHEMA).getCount(SlotType.FAST));
+        clock.setTime(BASE_TIME + 9000);
+        Assert.assertEquals(1, counter.getHistogram(HistogramSchema.NORMAL_SCHEMA).getCount(SlotType.VERY_SLOW));
+    }
+
+    @Test
+    public void stripedByThread() throws Exception {
+        final ActiveTraceCounter counter = new ActiveTraceCounter(new MockClock(), BASE_TIME, 4);
+        final long startTime = BASE_TIME + 1000;
+        final long[] keys = new long[8];
+        final Thread[] threads = new Thread[keys.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    keys[index] = counter.add(startTime);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the same tick counted in each stripe
+        ActiveTraceHistogram histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, startTime + 100);
+        Assert.assertEquals(keys.length, histogram.getCount(SlotType.FAST));
+
+        // removed by another thread
+        for (long key : keys) {
+            counter.remove(key);
+        }
+        histogram = counter.getHistogram(HistogramSchema.NORMAL_SCHEMA, startTime + 100);
+        Assert.assertEquals(0, histogram.getTotalCount());
+    }
+}
@@ -35,6 +35,9 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.baidu.oped.apm.bootstrap.context.Trace;
 import com.baidu.oped.apm.bootstrap.sampler.Sampler;
+import com.baidu.oped.apm.common.trace.HistogramSchema;
+import com.baidu.oped.apm.common.util.MockClock;
+import com.baidu.oped.apm.profiler.context.ActiveTrace;
 import com.baidu.oped.apm.profiler.context.DefaultServerMetaDataHolder;
 import com.baidu.oped.apm.profiler.context.DefaultTraceContext;
 import com.baidu.oped.apm.profiler.context.DefaultTraceId;
@@ -112,6 +115,32 @@ public class ActiveTraceRepositoryTest {
         }
     }
 
+    @Test
+    public void sweepLeakedTrace() {
+        final MockClock clock = new MockClock();
+        final long maxAge = 60000;
+        final ActiveTraceRepository repository = new ActiveTraceRepository(64, maxAge, clock);
+        final Trace trace = traceContext.continueTraceObject(new DefaultTraceId("agentId", 0L, 1L));
+        try {
+            // never removed
+            repository.put(new ActiveTrace(trace));
+
+            clock.setTime(trace.getStartTime() + maxAge - 1);
+            assertEquals(1, repository.collect().size());
+
+            // the next sweep is SWEEP_INTERVAL later
+            clock.setTime(trace.getStartTime() + maxAge + 1);
+            assertEquals(1, repository.collect().size());
+
+            clock.setTime(trace.getStartTime() + maxAge - 1 + ActiveTraceRepository.SWEEP_INTERVAL);
+            assertEquals(0, repository.collect().size());
+            assertEquals(0, repository.getActiveTraceHistogram(HistogramSchema.NORMAL_SCHEMA).getTotalCount());
+            assertEquals(null, repository.remove(trace.getId()));
+        } finally {
+            traceContext.removeTraceObject();
+        }
+    }
+
     private ListenableFuture<List<TraceThreadTuple>> executeTransactions(CountDownLatch awaitLatch, CountDownLatch executeLatch, int newTransactionCount, int sampledContinuationCount, int unsampledContinuationCount) {
         final int totalTransactionCount = newTransactionCount + sampledContinuationCount + unsampledContinuationCount;
         final ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(totalTransactionCount));
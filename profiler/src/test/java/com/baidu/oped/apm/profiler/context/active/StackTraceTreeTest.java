@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.active;
+
+import com.baidu.oped.apm.common.buffer.Buffer;
+import com.baidu.oped.apm.common.buffer.FixedBuffer;
+import com.baidu.oped.apm.profiler.context.storage.SizeBufferedStorage;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StackTraceTreeTest {
+
+    private static final StackTraceElement MAIN = new StackTraceElement("Main", "main", "Main.java", 10);
+    private static final StackTraceElement SERVICE = new StackTraceElement("Service", "invoke", "Service.java", 20);
+    private static final StackTraceElement DAO = new StackTraceElement("Dao", "query", "Dao.java", 30);
+    private static final StackTraceElement SLEEP = new StackTraceElement("java.lang.Thread", "sleep", null, -2);
+
+    @Test
+    public void aggregate() {
+        StackTraceTree tree = new StackTraceTree(100);
+        // innermost frame first
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {SLEEP, SERVICE, MAIN});
+
+        assertEquals(3, tree.getSampleCount());
+        assertEquals(0, tree.getTruncatedCount());
+        // MAIN -> SERVICE -> {DAO, SLEEP}
+        assertEquals(4, tree.getNodeCount());
+        assertEquals(4, tree.getFrameCount());
+    }
+
+    @Test
+    public void deduplicateFrame() {
+        StackTraceTree tree = new StackTraceTree(100);
+        // recursion. same frame in different nodes
+        tree.addSample(new StackTraceElement[] {SERVICE, SERVICE, MAIN});
+
+        assertEquals(3, tree.getNodeCount());
+        assertEquals(2, tree.getFrameCount());
+    }
+
+    @Test
+    public void maxNodes() {
+        StackTraceTree tree = new StackTraceTree(3);
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {SLEEP, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+
+        assertEquals(3, tree.getSampleCount());
+        assertEquals(1, tree.getTruncatedCount());
+        assertEquals(3, tree.getNodeCount());
+        assertEquals(3, tree.getFrameCount());
+    }
+
+    @Test
+    public void encode() {
+        StackTraceTree tree = new StackTraceTree(100);
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {SLEEP, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {SERVICE, MAIN});
+
+        Buffer buffer = new FixedBuffer(tree.encode());
+        assertEquals(StackTraceTree.VERSION, buffer.readByte());
+        assertEquals(3, buffer.readVarInt());
+        assertEquals(0, buffer.readVarInt());
+
+        int frameCount = buffer.readVarInt();
+        assertEquals(4, frameCount);
+        StackTraceElement[] frames = new StackTraceElement[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            String className = buffer.readPrefixedString();
+            String methodName = buffer.readPrefixedString();
+            int lineNumber = buffer.readSVarInt();
+            frames[i] = new StackTraceElement(className, methodName, null, lineNumber);
+        }
+
+        // root
+        assertEquals(1, buffer.readVarInt());
+        // MAIN
+        assertFrame(MAIN, frames[buffer.readVarInt()]);
+        assertEquals(3, buffer.readVarInt());
+        assertEquals(1, buffer.readVarInt());
+        // SERVICE
+        assertFrame(SERVICE, frames[buffer.readVarInt()]);
+        assertEquals(3, buffer.readVarInt());
+        assertEquals(2, buffer.readVarInt());
+        // DAO
+        assertFrame(DAO, frames[buffer.readVarInt()]);
+        assertEquals(1, buffer.readVarInt());
+        assertEquals(0, buffer.readVarInt());
+        // SLEEP
+        assertFrame(SLEEP, frames[buffer.readVarInt()]);
+        assertEquals(1, buffer.readVarInt());
+        assertEquals(0, buffer.readVarInt());
+
+        assertEquals(0, buffer.limit());
+    }
+
+    @Test
+    public void encode_trimColdestFirst() {
+        StackTraceTree tree = new StackTraceTree(100);
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {DAO, SERVICE, MAIN});
+        tree.addSample(new StackTraceElement[] {SLEEP, SERVICE, MAIN});
+
+        final int fullSize = tree.encode().length;
+        Buffer buffer = new FixedBuffer(tree.encode(fullSize - 1));
+        assertEquals(StackTraceTree.VERSION, buffer.readByte());
+        assertEquals(3, buffer.readVarInt());
+        // samples of SLEEP
+        assertEquals(1, buffer.readVarInt());
+
+        int frameCount = buffer.readVarInt();
+        assertEquals(3, frameCount);
+        StackTraceElement[] frames = new StackTraceElement[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frames[i] = new StackTraceElement(buffer.readPrefixedString(), buffer.readPrefixedString(), null, buffer.readSVarInt());
+        }
+        assertEquals(1, buffer.readVarInt());
+        assertFrame(MAIN, frames[buffer.readVarInt()]);
+        assertEquals(3, buffer.readVarInt());
+        assertEquals(1, buffer.readVarInt());
+        assertFrame(SERVICE, frames[buffer.readVarInt()]);
+        assertEquals(3, buffer.readVarInt());
+        assertEquals(1, buffer.readVarInt());
+        assertFrame(DAO, frames[buffer.readVarInt()]);
+        assertEquals(2, buffer.readVarInt());
+        assertEquals(0, buffer.readVarInt());
+        assertEquals(0, buffer.limit());
+    }
+
+    @Test
+    public void encode_maxedOutTree() {
+        final int maxNodes = 1024;
+        final int depth = 64;
+        StackTraceTree tree = new StackTraceTree(maxNodes);
+        // hot path
+        final StackTraceElement[] hot = newStackTrace("hot", 0, depth);
+        for (int i = 0; i < 10; i++) {
+            tree.addSample(hot);
+        }
+        // cold paths branching off at different depths until the tree is full
+        int branch = 0;
+        while (tree.getNodeCount() < maxNodes) {
+            final StackTraceElement[] cold = newStackTrace("cold" + branch, branch % depth, depth);
+            tree.addSample(cold);
+            branch++;
+        }
+        assertTrue(tree.encode().length > SizeBufferedStorage.MAX_CHUNK_BYTES);
+
+        final int maxBytes = SizeBufferedStorage.getRemainingAnnotationBytes(new TSpan());
+        final byte[] encoded = tree.encode(maxBytes);
+        assertTrue(encoded.length <= maxBytes);
+
+        Buffer buffer = new FixedBuffer(encoded);
+        assertEquals(StackTraceTree.VERSION, buffer.readByte());
+        assertEquals(tree.getSampleCount(), buffer.readVarInt());
+        assertTrue(buffer.readVarInt() > 0);
+        final int frameCount = buffer.readVarInt();
+        for (int i = 0; i < frameCount; i++) {
+            buffer.readPrefixedString();
+            buffer.readPrefixedString();
+            buffer.readSVarInt();
+        }
+        // the hot path is kept whole
+        int pending = buffer.readVarInt();
+        int hotDepth = 0;
+        boolean onHotPath = true;
+        while (pending > 0) {
+            final int frameIndex = buffer.readVarInt();
+            assertTrue(frameIndex < frameCount);
+            final int count = buffer.readVarInt();
+            final int childCount = buffer.readVarInt();
+            if (onHotPath) {
+                if (count >= 10) {
+                    hotDepth++;
+                } else {
+                    onHotPath = false;
+                }
+            }
+            pending += childCount - 1;
+        }
+        assertEquals(depth, hotDepth);
+        assertEquals(0, buffer.limit());
+    }
+
+    private StackTraceElement[] newStackTrace(String name, int commonDepth, int depth) {
+        final StackTraceElement[] stackTrace = new StackTraceElement[depth];
+        for (int i = 0; i < depth; i++) {
+            // outermost frame last. the outer frames up to commonDepth are shared with the hot path
+            final int level = depth - 1 - i;
+            final String prefix = level < commonDepth ? "hot" : name;
+            stackTrace[i] = new StackTraceElement("com.baidu.oped.apm.test.very.long.pkg." + prefix + ".Service" + level, "invoke" + level, null, level);
+        }
+        return stackTrace;
+    }
+
+    private void assertFrame(StackTraceElement expected, StackTraceElement actual) {
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getMethodName(), actual.getMethodName());
+        assertEquals(expected.getLineNumber(), actual.getLineNumber());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import java.util.Arrays;
+
+import com.baidu.oped.apm.common.Version;
+import com.baidu.oped.apm.common.trace.AnnotationKey;
+import com.baidu.oped.apm.common.trace.ServiceType;
+import com.baidu.oped.apm.common.util.JvmUtils;
+import com.baidu.oped.apm.common.util.SystemPropertyKey;
+import com.baidu.oped.apm.profiler.AgentInformation;
+import com.baidu.oped.apm.profiler.context.Span;
+import com.baidu.oped.apm.profiler.context.SpanChunkFactory;
+import com.baidu.oped.apm.profiler.context.SpanEvent;
+import com.baidu.oped.apm.profiler.sender.CountingDataSender;
+import com.baidu.oped.apm.thrift.dto.TAnnotation;
+import com.baidu.oped.apm.thrift.dto.TAnnotationValue;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SizeBufferedStorageTest {
+
+    private AgentInformation agentInformation = new AgentInformation("agentId", "applicationName", 0, 1, "hostName", "127.0.0.1", ServiceType.STAND_ALONE,
+            JvmUtils.getSystemProperty(SystemPropertyKey.JAVA_VERSION), Version.VERSION);
+    private SpanChunkFactory spanChunkFactory = new SpanChunkFactory(agentInformation);
+    private CountingDataSender countingDataSender = new CountingDataSender();
+
+    @Before
+    public void before() {
+        countingDataSender.stop();
+    }
+
+    private Span newSpan() {
+        Span span = new Span();
+        span.setAgentId("agentId");
+        span.setApplicationName("applicationName");
+        span.setEndPoint("127.0.0.1:8080");
+        return span;
+    }
+
+    private SpanEvent newSpanEvent(Span span) {
+        SpanEvent spanEvent = new SpanEvent(span);
+        spanEvent.setRpc("/test/rpc");
+        spanEvent.setEndPoint("127.0.0.1:8080");
+        return spanEvent;
+    }
+
+    @Test
+    public void testStore_sizeFlush() throws Exception {
+        Span span = newSpan();
+        int overhead = SpanSizeEstimator.estimateSpanChunkOverhead(span);
+        int eventSize = SpanSizeEstimator.estimateSpanEvent(newSpanEvent(span));
+
+        // two events fit, the third does not.
+        SizeBufferedStorage storage = new SizeBufferedStorage(countingDataSender, spanChunkFactory, 100, overhead + eventSize * 2 + 1);
+        storage.store(newSpanEvent(span));
+        storage.store(newSpanEvent(span));
+        Assert.assertEquals(0, countingDataSender.getTotalCount());
+
+        storage.store(newSpanEvent(span));
+        Assert.assertEquals(1, countingDataSender.getSpanChunkCounter());
+        Assert.assertEquals(eventSize, storage.getBufferedBytes());
+    }
+
+    @Test
+    public void testStore_countFlush() throws Exception {
+        SizeBufferedStorage storage = new SizeBufferedStorage(countingDataSender, spanChunkFactory, 2, 0);
+
+        Span span = newSpan();
+        storage.store(newSpanEvent(span));
+        storage.store(newSpanEvent(span));
+
+        Assert.assertEquals(1, countingDataSender.getSpanChunkCounter());
+        Assert.assertEquals(0, storage.getBufferedBytes());
+    }
+
+    @Test
+    public void testStore_spanLastFlush() throws Exception {
+        SizeBufferedStorage storage = new SizeBufferedStorage(countingDataSender, spanChunkFactory, 10, 0);
+
+        Span span = newSpan();
+        storage.store(newSpanEvent(span));
+        storage.store(newSpanEvent(span));
+        storage.store(span);
+
+        Assert.assertEquals(1, countingDataSender.getTotalCount());
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+        Assert.assertEquals(2, span.getSpanEventListSize());
+    }
+
+    @Test
+    public void testStore_largeSpanFlush() throws Exception {
+        SizeBufferedStorage storage = new SizeBufferedStorage(countingDataSender, spanChunkFactory, 10, 0);
+
+        Span span = newSpan();
+        storage.store(newSpanEvent(span));
+        storage.store(newSpanEvent(span));
+        // annotations recorded at the end of the trace, e.g. a stack sample
+        final char[] value = new char[SizeBufferedStorage.MAX_CHUNK_BYTES - SpanSizeEstimator.estimateSpanOverhead(span) - 100];
+        Arrays.fill(value, 'a');
+        span.addToAnnotations(new TAnnotation(AnnotationKey.ARGS0.getCode()));
+        span.getAnnotations().get(0).setValue(TAnnotationValue.stringValue(new String(value)));
+        storage.store(span);
+
+        Assert.assertEquals(1, countingDataSender.getSpanChunkCounter());
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+        Assert.assertEquals(0, span.getSpanEventListSize());
+        Assert.assertTrue(SpanSizeEstimator.estimateSpanOverhead(span) <= SizeBufferedStorage.MAX_CHUNK_BYTES);
+    }
+
+    @Test
+    public void testMaxChunkBytes() throws Exception {
+        SizeBufferedStorage storage = new SizeBufferedStorage(countingDataSender, spanChunkFactory, 10, Integer.MAX_VALUE);
+        Assert.assertEquals(SizeBufferedStorage.MAX_CHUNK_BYTES, storage.getMaxChunkBytes());
+    }
+
+    @Test
+    public void testFlushIfExpired() throws Exception {
+        final long maxAge = 60 * 1000;
+        SpanChunkFlushScheduler scheduler = new SpanChunkFlushScheduler(maxAge);
+        try {
+            SizeBufferedStorage storage = new SizeBufferedStorage(countingDataSender, spanChunkFactory, 10, 0, maxAge, scheduler);
+
+            Span span = newSpan();
+            storage.store(newSpanEvent(span));
+            Assert.assertEquals(1, scheduler.size());
+
+            scheduler.sweep(System.currentTimeMillis());
+            Assert.assertEquals(0, countingDataSender.getTotalCount());
+
+            scheduler.sweep(System.currentTimeMillis() + maxAge);
+            Assert.assertEquals(1, countingDataSender.getSpanChunkCounter());
+            Assert.assertEquals(0, scheduler.size());
+        } finally {
+            scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testUtf8Length() throws Exception {
+        Assert.assertEquals(6, SpanSizeEstimator.utf8Length("a\u00e9\u4e2d"));
+    }
+}
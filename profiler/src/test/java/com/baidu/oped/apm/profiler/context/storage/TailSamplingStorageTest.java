@@ -0,0 +1,327 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.context.storage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.oped.apm.profiler.context.Span;
+import com.baidu.oped.apm.profiler.context.SpanEvent;
+import com.baidu.oped.apm.profiler.sampler.FalseSampler;
+import com.baidu.oped.apm.profiler.sampler.TailSampler;
+import com.baidu.oped.apm.profiler.sender.CountingDataSender;
+import com.baidu.oped.apm.thrift.dto.TIntStringValue;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+
+public class TailSamplingStorageTest {
+
+    private final CountingDataSender countingDataSender = new CountingDataSender();
+    private final StorageFactory storageFactory = new SpanStorageFactory(countingDataSender);
+
+    @Before
+    public void before() {
+        countingDataSender.stop();
+    }
+
+    @Test
+    public void discardFastTransaction() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(10);
+        storage.store(new SpanEvent(span));
+        storage.store(span);
+        storage.close();
+
+        Assert.assertEquals(0, countingDataSender.getTotalCount());
+        Assert.assertEquals(1, tailSampler.getDiscardCount());
+        Assert.assertEquals(100, tailSampler.getAvailableBuffer());
+    }
+
+    @Test
+    public void keepSlowTransaction() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(100);
+        storage.store(new SpanEvent(span));
+        storage.store(new SpanEvent(span));
+        storage.store(span);
+        storage.close();
+
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+        Assert.assertEquals(2, span.getSpanEventListSize());
+        Assert.assertEquals(1, tailSampler.getKeepCount());
+        Assert.assertEquals(100, tailSampler.getAvailableBuffer());
+    }
+
+    @Test
+    public void keepErrorTransaction() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(10);
+        SpanEvent spanEvent = new SpanEvent(span);
+        spanEvent.setExceptionInfo(new TIntStringValue(1));
+        storage.store(spanEvent);
+        storage.store(span);
+
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+    }
+
+    @Test
+    public void bufferSizeLimit() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 2, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(100);
+        for (int i = 0; i < 5; i++) {
+            storage.store(new SpanEvent(span));
+        }
+        Assert.assertEquals(98, tailSampler.getAvailableBuffer());
+        storage.store(span);
+
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+        Assert.assertEquals(2, span.getSpanEventListSize());
+    }
+
+    @Test
+    public void globalBufferLimit() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 1);
+        TailSamplingStorage first = new TailSamplingStorage(storageFactory, tailSampler);
+        TailSamplingStorage second = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span firstSpan = newSpan(10);
+        first.store(new SpanEvent(firstSpan));
+        Assert.assertEquals(0, tailSampler.getAvailableBuffer());
+
+        Span secondSpan = newSpan(100);
+        second.store(new SpanEvent(secondSpan));
+
+        first.store(firstSpan);
+        Assert.assertEquals(1, tailSampler.getAvailableBuffer());
+
+        second.store(secondSpan);
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+        Assert.assertEquals(0, secondSpan.getSpanEventListSize());
+    }
+
+    @Test
+    public void reserveBufferInChunks() throws Exception {
+        final int chunk = TailSamplingStorage.BUFFER_CHUNK_SIZE;
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 100, 1000);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(10);
+        for (int i = 0; i < chunk; i++) {
+            storage.store(new SpanEvent(span));
+        }
+        Assert.assertEquals(1000 - chunk, tailSampler.getAvailableBuffer());
+        storage.store(new SpanEvent(span));
+        Assert.assertEquals(1000 - chunk * 2, tailSampler.getAvailableBuffer());
+
+        storage.store(span);
+        storage.close();
+        Assert.assertEquals(1000, tailSampler.getAvailableBuffer());
+    }
+
+    @Test
+    public void reuseEncodeBuffer() throws Exception {
+        SpanEventEncodeBuffer buffer = SpanEventEncodeBuffer.borrow();
+        // lent out. a nested transaction gets its own buffer
+        SpanEventEncodeBuffer nested = SpanEventEncodeBuffer.borrow();
+        Assert.assertNotSame(buffer, nested);
+
+        new SpanEvent(newSpan(0)).write(buffer.getProtocol());
+        Assert.assertTrue(buffer.length() > 0);
+        buffer.release();
+        nested.release();
+
+        SpanEventEncodeBuffer reused = SpanEventEncodeBuffer.borrow();
+        Assert.assertSame(buffer, reused);
+        Assert.assertEquals(0, reused.length());
+        reused.release();
+    }
+
+    @Test
+    public void closeWithoutSpan() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        storage.store(new SpanEvent(newSpan(0)));
+        storage.close();
+
+        Assert.assertEquals(0, countingDataSender.getTotalCount());
+        Assert.assertEquals(100, tailSampler.getAvailableBuffer());
+    }
+
+    @Test
+    public void keepOnSlowSpanEvent() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(10);
+        storage.store(new SpanEvent(span));
+        // a chunk of bufferSize slots is reserved
+        Assert.assertEquals(90, tailSampler.getAvailableBuffer());
+
+        SpanEvent slowSpanEvent = new SpanEvent(span);
+        slowSpanEvent.setEndElapsed(100);
+        storage.store(slowSpanEvent);
+        // decided. the buffer is released before the span is stored.
+        Assert.assertEquals(1, tailSampler.getKeepCount());
+        Assert.assertEquals(100, tailSampler.getAvailableBuffer());
+
+        storage.store(new SpanEvent(span));
+        storage.store(span);
+        storage.close();
+
+        Assert.assertEquals(1, countingDataSender.getSpanCounter());
+        Assert.assertEquals(3, span.getSpanEventListSize());
+    }
+
+    @Test
+    public void encodeSpanEvent() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        TailSamplingStorage storage = new TailSamplingStorage(storageFactory, tailSampler);
+
+        Span span = newSpan(100);
+        SpanEvent spanEvent = new SpanEvent(span);
+        spanEvent.setSequence((short) 3);
+        spanEvent.setDepth(2);
+        spanEvent.setApiId(10);
+        spanEvent.setRpc("rpc");
+        spanEvent.setStartElapsed(5);
+        spanEvent.setEndElapsed(20);
+        final TSpanEvent expected = spanEvent.deepCopy();
+        storage.store(spanEvent);
+        storage.store(span);
+
+        final SpanEvent decoded = (SpanEvent) span.getSpanEventList().get(0);
+        Assert.assertEquals(expected, decoded);
+        Assert.assertSame(span, decoded.getSpan());
+    }
+
+    @Test
+    public void asyncKeep() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        RecordingStorageFactory recordingStorageFactory = new RecordingStorageFactory();
+        TailSamplingDecision decision = new TailSamplingDecision();
+        TailSamplingStorage storage = new TailSamplingStorage(recordingStorageFactory, tailSampler, decision, true);
+        TailSamplingStorage asyncStorage = new TailSamplingStorage(recordingStorageFactory, tailSampler, decision, false);
+
+        asyncStorage.store(new SpanEvent(newSpan(0)));
+        asyncStorage.close();
+        Assert.assertTrue("async part waits for the decision", recordingStorageFactory.storages.isEmpty());
+
+        storage.store(newSpan(100));
+        storage.close();
+
+        Assert.assertEquals(2, recordingStorageFactory.storages.size());
+        RecordingStorage recordingAsyncStorage = recordingStorageFactory.storages.get(0);
+        Assert.assertEquals(1, recordingAsyncStorage.spanEvents.size());
+        Assert.assertTrue(recordingAsyncStorage.closed);
+        Assert.assertEquals(100, tailSampler.getAvailableBuffer());
+    }
+
+    @Test
+    public void asyncDiscard() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        RecordingStorageFactory recordingStorageFactory = new RecordingStorageFactory();
+        TailSamplingDecision decision = new TailSamplingDecision();
+        TailSamplingStorage storage = new TailSamplingStorage(recordingStorageFactory, tailSampler, decision, true);
+        TailSamplingStorage asyncStorage = new TailSamplingStorage(recordingStorageFactory, tailSampler, decision, false);
+
+        asyncStorage.store(new SpanEvent(newSpan(0)));
+        storage.store(newSpan(10));
+        storage.close();
+        // after the decision
+        asyncStorage.store(new SpanEvent(newSpan(0)));
+        asyncStorage.close();
+
+        Assert.assertTrue(recordingStorageFactory.storages.isEmpty());
+        Assert.assertEquals(1, tailSampler.getDiscardCount());
+        Assert.assertEquals(100, tailSampler.getAvailableBuffer());
+    }
+
+    @Test
+    public void asyncErrorKeepsTransaction() throws Exception {
+        TailSampler tailSampler = new TailSampler(new FalseSampler(), 100, 10, 100);
+        RecordingStorageFactory recordingStorageFactory = new RecordingStorageFactory();
+        TailSamplingDecision decision = new TailSamplingDecision();
+        TailSamplingStorage storage = new TailSamplingStorage(recordingStorageFactory, tailSampler, decision, true);
+        TailSamplingStorage asyncStorage = new TailSamplingStorage(recordingStorageFactory, tailSampler, decision, false);
+
+        SpanEvent spanEvent = new SpanEvent(newSpan(0));
+        spanEvent.setExceptionInfo(new TIntStringValue(1));
+        asyncStorage.store(spanEvent);
+        asyncStorage.close();
+
+        storage.store(newSpan(10));
+        storage.close();
+
+        Assert.assertEquals(2, recordingStorageFactory.storages.size());
+        Assert.assertEquals(1, recordingStorageFactory.storages.get(1).spans);
+        Assert.assertEquals(1, tailSampler.getKeepCount());
+    }
+
+    private Span newSpan(int elapsed) {
+        Span span = new Span();
+        span.setElapsed(elapsed);
+        return span;
+    }
+
+    private static class RecordingStorageFactory implements StorageFactory {
+        private final List<RecordingStorage> storages = new ArrayList<RecordingStorage>();
+
+        @Override
+        public Storage createStorage() {
+            RecordingStorage storage = new RecordingStorage();
+            storages.add(storage);
+            return storage;
+        }
+    }
+
+    private static class RecordingStorage implements Storage {
+        private final List<SpanEvent> spanEvents = new ArrayList<SpanEvent>();
+        private int spans;
+        private boolean closed;
+
+        @Override
+        public void store(SpanEvent spanEvent) {
+            spanEvents.add(spanEvent);
+        }
+
+        @Override
+        public void store(Span span) {
+            spans++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
+import com.baidu.oped.apm.bootstrap.instrument.InstrumentException;
+import com.baidu.oped.apm.bootstrap.instrument.Instrumentor;
+import com.baidu.oped.apm.bootstrap.instrument.transformer.TransformCallback;
+import com.baidu.oped.apm.bootstrap.interceptor.Interceptor;
+import com.baidu.oped.apm.bootstrap.logging.PLoggerFactory;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder;
+import com.baidu.oped.apm.common.trace.ServiceType;
+import com.baidu.oped.apm.profiler.DefaultAgent;
+import com.baidu.oped.apm.profiler.interceptor.bci.TestInterceptors;
+import com.baidu.oped.apm.profiler.logging.Slf4jLoggerBinder;
+import com.baidu.oped.apm.test.MockAgent;
+import com.baidu.oped.apm.test.TestClassLoader;
+
+public class AsmClassTest {
+
+    private static final String TEST_OBJECT = "com.baidu.oped.apm.profiler.interceptor.bci.TestObject";
+
+    @Before
+    public void clear() {
+        TestInterceptors.clear();
+    }
+
+    @Test
+    public void asmClassPoolIsSelected() {
+        final DefaultAgent agent = newAsmAgent();
+        assertTrue(agent.getInstrumentClassPool() instanceof AsmClassPool);
+    }
+
+    @Test
+    public void addInterceptor() throws Exception {
+        final TestClassLoader loader = new TestClassLoader(newAsmAgent());
+        loader.addTransformer(TEST_OBJECT, new TransformCallback() {
+            @Override
+            public byte[] doInTransform(Instrumentor instrumentContext, ClassLoader classLoader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws InstrumentException {
+                InstrumentClass aClass = instrumentContext.getInstrumentClass(classLoader, TEST_OBJECT, classfileBuffer);
+                assertTrue(aClass instanceof AsmClass);
+                aClass.getDeclaredMethod("callA").addInterceptor("com.baidu.oped.apm.profiler.interceptor.TestBeforeInterceptor");
+                return aClass.toBytecode();
+            }
+        });
+        loader.initialize();
+
+        final Class<?> testObjectClazz = loader.loadClass(TEST_OBJECT);
+        final Object testObject = testObjectClazz.newInstance();
+        final Method callA = testObjectClazz.getMethod("callA");
+        callA.invoke(testObject);
+
+        final Interceptor interceptor = (Interceptor) loader.loadClass(TestInterceptors.class.getName()).getMethod("get", int.class).invoke(null, 0);
+        assertEquals(1, getField(interceptor, "call"));
+        assertEquals(TEST_OBJECT, getField(interceptor, "className"));
+        assertEquals("callA", getField(interceptor, "methodName"));
+        assertSame(testObject, getField(interceptor, "target"));
+    }
+
+    @Test
+    public void addFieldWithIntArgumentInitializer() throws Exception {
+        final TestClassLoader loader = new TestClassLoader(newAsmAgent());
+        loader.addTransformer(TEST_OBJECT, new TransformCallback() {
+            @Override
+            public byte[] doInTransform(Instrumentor instrumentContext, ClassLoader classLoader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws InstrumentException {
+                InstrumentClass aClass = instrumentContext.getInstrumentClass(classLoader, TEST_OBJECT, classfileBuffer);
+                // same as the jdbc plugins
+                aClass.addField(BindValueAccessor.class.getName(), "new " + BindValueRecorder.class.getName() + "(16)");
+                return aClass.toBytecode();
+            }
+        });
+        loader.initialize();
+
+        final Object testObject = loader.loadClass(TEST_OBJECT).newInstance();
+        assertTrue(testObject instanceof BindValueAccessor);
+        assertNotNull(((BindValueAccessor) testObject)._$APM$_getBindValue());
+    }
+
+    private DefaultAgent newAsmAgent() {
+        PLoggerFactory.initialize(new Slf4jLoggerBinder());
+
+        final Properties properties = new Properties();
+        properties.setProperty("profiler.instrument.engine", DefaultProfilerConfig.INSTRUMENT_ENGINE_ASM);
+        final DefaultProfilerConfig profilerConfig = new DefaultProfilerConfig(properties);
+        profilerConfig.setApplicationServerType(ServiceType.TEST_STAND_ALONE.getName());
+        return MockAgent.of(profilerConfig);
+    }
+
+    private Object getField(Object target, String fieldName) throws Exception {
+        final Field field = target.getClass().getField(fieldName);
+        return field.get(target);
+    }
+
+    @Test
+    public void parseInitValue() {
+        assertNull(AsmClass.parseInitValue(null));
+
+        AsmClass.InitValue initValue = AsmClass.parseInitValue("new java.util.HashMap()");
+        assertEquals("java.util.HashMap", initValue.type);
+        assertArrayEquals(new int[0], initValue.arguments);
+    }
+
+    @Test
+    public void parseInitValue_intArguments() {
+        AsmClass.InitValue initValue = AsmClass.parseInitValue(" new java.util.HashMap( 16, -1 ); ");
+        assertEquals("java.util.HashMap", initValue.type);
+        assertArrayEquals(new int[] {16, -1}, initValue.arguments);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInitValue_notIntArgument() {
+        AsmClass.parseInitValue("new java.util.HashMap(\"a\")");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseInitValue_notNew() {
+        AsmClass.parseInitValue("java.util.Collections.emptyMap()");
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+
+/**
+ * Same cases as AspectWeaverClassTest, woven with ASM.
+ */
+public class AspectWeaverTest {
+
+    private final String ORIGINAL = "com.baidu.oped.apm.profiler.interceptor.bci.mock.Original";
+    private final String ORIGINAL_SUB = "com.baidu.oped.apm.profiler.interceptor.bci.mock.OriginalSub";
+
+    private final String ASPECT = "com.baidu.oped.apm.profiler.interceptor.bci.mock.TestAspect";
+    private final String ASPECT_NO_EXTENTS = "com.baidu.oped.apm.profiler.interceptor.bci.mock.TestAspect_NoExtents";
+    private final String ASPECT_EXTENTS_SUB = "com.baidu.oped.apm.profiler.interceptor.bci.mock.TestAspect_ExtentsSub";
+
+    private final String ERROR_ASPECT1 = "com.baidu.oped.apm.profiler.interceptor.bci.mock.ErrorAspect";
+    private final String ERROR_ASPECT2 = "com.baidu.oped.apm.profiler.interceptor.bci.mock.ErrorAspect2";
+
+    private final String ERROR_ASPECT_INVALID_EXTENTS = "com.baidu.oped.apm.profiler.interceptor.bci.mock.ErrorAspect_InvalidExtents";
+
+    public Object createAspect(String originalName, String aspectName) throws Exception {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final byte[] original = readClassFile(classLoader, originalName);
+        final byte[] advice = readClassFile(classLoader, aspectName);
+
+        final ClassMetadata metadata = ClassMetadata.read(original);
+        final ClassEdit edit = new ClassEdit();
+        new AspectWeaver().weaving(metadata, advice, getSuperClasses(classLoader.loadClass(aspectName)), edit);
+
+        final ClassReader classReader = new ClassReader(original);
+        final ClassWriter classWriter = new HierarchyClassWriter(classReader, ClassWriter.COMPUTE_FRAMES, new ClassFileLocator(), classLoader, metadata);
+        classReader.accept(new ClassEditVisitor(classWriter, edit), ClassReader.SKIP_FRAMES);
+
+        final ClassLoader loader = new TestClassLoader(classLoader, originalName, classWriter.toByteArray());
+        return loader.loadClass(originalName).newInstance();
+    }
+
+    private static List<String> getSuperClasses(Class<?> clazz) {
+        final List<String> superClasses = new ArrayList<String>();
+        for (Class<?> superClass = clazz.getSuperclass(); superClass != null; superClass = superClass.getSuperclass()) {
+            superClasses.add(Type.getInternalName(superClass));
+        }
+        return superClasses;
+    }
+
+    private static byte[] readClassFile(ClassLoader classLoader, String className) throws IOException {
+        final InputStream in = classLoader.getResourceAsStream(className.replace('.', '/') + ".class");
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private Object createDefaultAspect() throws Exception {
+        return createAspect(ORIGINAL, ASPECT);
+    }
+
+    @Test
+    public void testVoid() throws Exception {
+        Object aspectObject = createDefaultAspect();
+
+        invoke(aspectObject, "testVoid");
+        assertBeforeTouchCount(aspectObject, 1);
+        assertAfterTouchCount(aspectObject, 1);
+    }
+
+    @Test
+    public void testInt() throws Exception {
+        Object aspectObject = createDefaultAspect();
+
+        int returnValue = (Integer) invoke(aspectObject, "testInt");
+        Assert.assertEquals(1, returnValue);
+
+        assertBeforeTouchCount(aspectObject, 1);
+        assertAfterTouchCount(aspectObject, 1);
+    }
+
+    @Test
+    public void testString() throws Exception {
+        Object aspectObject = createDefaultAspect();
+
+        String returnValue = (String) invoke(aspectObject, "testString");
+        Assert.assertEquals("testString", returnValue);
+
+        assertBeforeTouchCount(aspectObject, 1);
+        assertAfterTouchCount(aspectObject, 1);
+    }
+
+    @Test
+    public void testUtilMethod() throws Exception {
+        Object aspectObject = createDefaultAspect();
+
+        int returnValue = (Integer) invoke(aspectObject, "testUtilMethod");
+        Assert.assertEquals(1, returnValue);
+
+        assertBeforeTouchCount(aspectObject, 1);
+        assertAfterTouchCount(aspectObject, 1);
+    }
+
+    @Test
+    public void testNoTouch() throws Exception {
+        Object aspectObject = createDefaultAspect();
+
+        Object returnValue = invoke(aspectObject, "testNoTouch");
+        Assert.assertEquals(null, returnValue);
+
+        assertBeforeTouchCount(aspectObject, 0);
+        assertAfterTouchCount(aspectObject, 0);
+    }
+
+    @Test
+    public void testMethodCall() throws Exception {
+        Object aspectObject = createDefaultAspect();
+
+        invoke(aspectObject, "testMethodCall");
+    }
+
+    @Test(expected = Exception.class)
+    public void testSignatureMiss() throws Exception {
+        createAspect(ORIGINAL, ERROR_ASPECT1);
+    }
+
+    @Test(expected = Exception.class)
+    public void testInternalTypeMiss() throws Exception {
+        createAspect(ORIGINAL, ERROR_ASPECT2);
+    }
+
+    @Test
+    public void testNo_extents() throws Exception {
+        Object aspectObject = createAspect(ORIGINAL, ASPECT_NO_EXTENTS);
+
+        Object returnValue = invoke(aspectObject, "testVoid");
+        Assert.assertEquals(null, returnValue);
+    }
+
+    @Test
+    public void testExtents_Sub() throws Exception {
+        Object aspectObject = createAspect(ORIGINAL_SUB, ASPECT_EXTENTS_SUB);
+
+        Object returnValue = invoke(aspectObject, "testVoid");
+        Assert.assertEquals(null, returnValue);
+    }
+
+    @Test(expected = Exception.class)
+    public void testInvalid_extents() throws Exception {
+        createAspect(ORIGINAL, ERROR_ASPECT_INVALID_EXTENTS);
+    }
+
+    private Object invoke(Object o, String methodName, Object... args) {
+        try {
+            Class<?> clazz = o.getClass();
+            Method method = clazz.getMethod(methodName);
+            return method.invoke(o, args);
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private void assertBeforeTouchCount(Object aspectObject, int count) {
+        int touchCount = (Integer) invoke(aspectObject, "getTouchBefore");
+        Assert.assertEquals(count, touchCount);
+    }
+
+    private void assertAfterTouchCount(Object aspectObject, int count) {
+        int touchCount = (Integer) invoke(aspectObject, "getTouchAfter");
+        Assert.assertEquals(count, touchCount);
+    }
+
+    /**
+     * Loads the mock classes itself, so the woven class shares the runtime package with its super class.
+     */
+    private static class TestClassLoader extends ClassLoader {
+        private static final String MOCK_PACKAGE = "com.baidu.oped.apm.profiler.interceptor.bci.mock.";
+
+        private final String wovenClassName;
+        private final byte[] wovenClassFile;
+
+        private TestClassLoader(ClassLoader parent, String wovenClassName, byte[] wovenClassFile) {
+            super(parent);
+            this.wovenClassName = wovenClassName;
+            this.wovenClassFile = wovenClassFile;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(MOCK_PACKAGE)) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    final byte[] classFile = name.equals(wovenClassName) ? wovenClassFile : readClassFile(getParent(), name);
+                    clazz = defineClass(name, classFile, 0, classFile.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import com.baidu.oped.apm.bootstrap.context.Trace;
+import com.baidu.oped.apm.bootstrap.context.TraceContext;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor2;
+import com.baidu.oped.apm.bootstrap.interceptor.Interceptor;
+import com.baidu.oped.apm.bootstrap.interceptor.group.ExecutionPolicy;
+import com.baidu.oped.apm.bootstrap.interceptor.group.GroupedInterceptor2;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.BindValueAccessor;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.bindvalue.BindValueRecorder;
+import com.baidu.oped.apm.bootstrap.plugin.jdbc.interceptor.PreparedStatementBindVariableInterceptor;
+import com.baidu.oped.apm.profiler.context.DefaultMethodDescriptor;
+import com.baidu.oped.apm.profiler.interceptor.group.DefaultInterceptorGroup;
+import com.baidu.oped.apm.profiler.interceptor.registry.DefaultInterceptorRegistryBinder;
+
+public class ClassEditVisitorTest {
+
+    private DefaultInterceptorRegistryBinder binder;
+
+    @Before
+    public void setUp() {
+        binder = new DefaultInterceptorRegistryBinder();
+        binder.bind();
+    }
+
+    @After
+    public void tearDown() {
+        binder.unbind();
+    }
+
+    @Test
+    public void arrayArgsInterceptor() throws Exception {
+        final RecordingInterceptor interceptor = new RecordingInterceptor();
+        final ClassEdit edit = new ClassEdit();
+        edit.addInterceptor("echo(Ljava/lang/String;)Ljava/lang/String;", arrayArgsDefinition(interceptor, null));
+
+        final Class<?> clazz = transform(edit);
+        final Object target = clazz.newInstance();
+        final Object result = clazz.getMethod("echo", String.class).invoke(target, "hello");
+
+        assertEquals("hello", result);
+        assertEquals(Arrays.asList("before", "after"), interceptor.events);
+        assertSame(target, interceptor.target);
+        assertEquals(Arrays.<Object>asList("hello"), Arrays.asList(interceptor.args));
+        assertEquals("hello", interceptor.result);
+        assertNull(interceptor.throwable);
+    }
+
+    @Test
+    public void exceptionIsPassedToAfterAndRethrown() throws Exception {
+        final RecordingInterceptor interceptor = new RecordingInterceptor();
+        final ClassEdit edit = new ClassEdit();
+        edit.addInterceptor("fail()V", arrayArgsDefinition(interceptor, null));
+
+        final Class<?> clazz = transform(edit);
+        try {
+            clazz.getMethod("fail").invoke(clazz.newInstance());
+            fail("exception expected");
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertSame(e.getCause(), interceptor.throwable);
+        }
+        assertEquals(Arrays.asList("before", "after"), interceptor.events);
+        assertNull(interceptor.args);
+        assertNull(interceptor.result);
+    }
+
+    @Test
+    public void arityInterceptorOnStaticMethod() throws Exception {
+        final ArityInterceptor interceptor = new ArityInterceptor();
+        final int interceptorId = binder.getInterceptorRegistryAdaptor().addInterceptor(interceptor);
+        final Method before = ArityInterceptor.class.getMethod("before", Object.class, Object.class, Object.class);
+        final Method after = ArityInterceptor.class.getMethod("after", Object.class, Object.class, Object.class, Object.class, Throwable.class);
+        final ClassEdit edit = new ClassEdit();
+        edit.addInterceptor("add(II)I", new InterceptorDefinition(interceptorId, ArityInterceptor.class, before, after, null, -1, TestObject.class.getName(), "add", "(int, int)"));
+
+        final Class<?> clazz = transform(edit);
+        final Object result = clazz.getMethod("add", int.class, int.class).invoke(null, 1, 2);
+
+        assertEquals(3, result);
+        assertEquals(Arrays.<Object>asList(null, 1, 2, null, 1, 2, 3), interceptor.values);
+    }
+
+    @Test
+    public void bindVariableInterceptorWithoutArgumentArray() throws Exception {
+        final DefaultMethodDescriptor descriptor = new DefaultMethodDescriptor(TestStatement.class.getName(), "setString", new String[] {"int", "java.lang.String"}, new String[] {"parameterIndex", "x"});
+        final PreparedStatementBindVariableInterceptor interceptor = new PreparedStatementBindVariableInterceptor(newTraceContext(), descriptor);
+        // wrapped by the arity of setString, as AnnotatedInterceptorFactory does for a grouped interceptor
+        final GroupedInterceptor2 grouped = new GroupedInterceptor2(interceptor, interceptor, new DefaultInterceptorGroup("TEST"), ExecutionPolicy.BOUNDARY);
+        final int interceptorId = binder.getInterceptorRegistryAdaptor().addInterceptor(grouped);
+        final Method before = GroupedInterceptor2.class.getMethod("before", Object.class, Object.class, Object.class);
+        final Method after = GroupedInterceptor2.class.getMethod("after", Object.class, Object.class, Object.class, Object.class, Throwable.class);
+        final InterceptorDefinition definition = new InterceptorDefinition(interceptorId, GroupedInterceptor2.class, before, after, null, -1, TestStatement.class.getName(), "setString", "(int, String)");
+        assertEquals(InterceptorDefinition.Type.BASIC, definition.getBeforeType());
+        assertEquals(InterceptorDefinition.Type.BASIC, definition.getAfterType());
+
+        final ClassEdit edit = new ClassEdit();
+        edit.addInterceptor("setString(ILjava/lang/String;)V", definition);
+        final byte[] classFile = transformClassFile(TestStatement.class, edit);
+
+        // the woven setter builds no argument array
+        final ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, 0);
+        boolean woven = false;
+        for (MethodNode methodNode : classNode.methods) {
+            if (!methodNode.name.equals("setString")) {
+                continue;
+            }
+            for (AbstractInsnNode insn : methodNode.instructions.toArray()) {
+                assertTrue("argument array", insn.getOpcode() != Opcodes.ANEWARRAY);
+                woven |= insn.getOpcode() == Opcodes.INVOKEINTERFACE || insn.getOpcode() == Opcodes.INVOKEVIRTUAL;
+            }
+        }
+        assertTrue(woven);
+
+        final Class<?> clazz = new TestClassLoader(getClass().getClassLoader()).define(TestStatement.class.getName(), classFile);
+        final Object statement = clazz.newInstance();
+        clazz.getMethod("setString", int.class, String.class).invoke(statement, 2, "abc");
+
+        final BindValueRecorder bindValue = ((BindValueAccessor) statement)._$APM$_getBindValue();
+        assertEquals(2, bindValue.size());
+        assertEquals("abc", bindValue.getBindValue(2));
+    }
+
+    @Test
+    public void nestedInterceptors() throws Exception {
+        final List<String> events = new ArrayList<String>();
+        final RecordingInterceptor inner = new RecordingInterceptor("inner", events);
+        final RecordingInterceptor outer = new RecordingInterceptor("outer", events);
+        final ClassEdit edit = new ClassEdit();
+        edit.addInterceptor("echo(Ljava/lang/String;)Ljava/lang/String;", arrayArgsDefinition(inner, null));
+        edit.addInterceptor("echo(Ljava/lang/String;)Ljava/lang/String;", arrayArgsDefinition(outer, null));
+
+        final Class<?> clazz = transform(edit);
+        clazz.getMethod("echo", String.class).invoke(clazz.newInstance(), "hello");
+
+        assertEquals(Arrays.asList("outer.before", "inner.before", "inner.after", "outer.after"), events);
+    }
+
+    @Test
+    public void constructorInterceptor() throws Exception {
+        final RecordingInterceptor interceptor = new RecordingInterceptor();
+        final ClassEdit edit = new ClassEdit();
+        edit.addInterceptor("<init>()V", arrayArgsDefinition(interceptor, null));
+
+        final Class<?> clazz = transform(edit);
+        final Object target = clazz.newInstance();
+
+        assertEquals(Arrays.asList("before", "after"), interceptor.events);
+        assertSame(target, interceptor.target);
+        assertNull(interceptor.result);
+    }
+
+    @Test
+    public void interceptorField() throws Exception {
+        final RecordingInterceptor interceptor = new RecordingInterceptor();
+        final String fieldName = "_$APM$_interceptorFieldTest";
+        final ClassEdit edit = new ClassEdit();
+        final InterceptorDefinition definition = arrayArgsDefinition(interceptor, fieldName);
+        edit.addField(new FieldNode(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, fieldName, Type.getDescriptor(Interceptor.class), null, null));
+        edit.addInterceptorField(fieldName, definition.getInterceptorId());
+        edit.addInterceptor("echo(Ljava/lang/String;)Ljava/lang/String;", definition);
+
+        final Class<?> clazz = transform(edit);
+        final Field field = clazz.getDeclaredField(fieldName);
+        assertTrue(Modifier.isStatic(field.getModifiers()));
+        field.setAccessible(true);
+        assertSame(interceptor, field.get(null));
+
+        clazz.getMethod("echo", String.class).invoke(clazz.newInstance(), "hello");
+        assertEquals(Arrays.asList("before", "after"), interceptor.events);
+    }
+
+    @Test
+    public void fieldAndInterface() throws Exception {
+        final ClassEdit edit = new ClassEdit();
+        edit.addField(new FieldNode(Opcodes.ACC_PRIVATE, "_$APM$_map", Type.getDescriptor(java.util.Map.class), null, null));
+        edit.addFieldInitializer("_$APM$_map", Type.getDescriptor(java.util.Map.class), Type.getInternalName(java.util.HashMap.class));
+        edit.addInterface(Type.getInternalName(Runnable.class));
+
+        final Class<?> clazz = transform(edit);
+        assertTrue(Runnable.class.isAssignableFrom(clazz));
+        final Field field = clazz.getDeclaredField("_$APM$_map");
+        field.setAccessible(true);
+        assertNotNull(field.get(clazz.newInstance()));
+    }
+
+    @Test
+    public void fieldInitializerWithArguments() throws Exception {
+        final ClassEdit edit = new ClassEdit();
+        final String desc = Type.getDescriptor(Sized.class);
+        edit.addField(new FieldNode(Opcodes.ACC_PRIVATE, "_$APM$_sized", desc, null, null));
+        edit.addFieldInitializer("_$APM$_sized", desc, Type.getInternalName(Sized.class), -1, 100, 1024, 100000);
+
+        final Class<?> clazz = transform(edit);
+        final Field field = clazz.getDeclaredField("_$APM$_sized");
+        field.setAccessible(true);
+        final Sized sized = (Sized) field.get(clazz.newInstance());
+        assertEquals(Arrays.asList(-1, 100, 1024, 100000), Arrays.asList(sized.a, sized.b, sized.c, sized.d));
+    }
+
+    private InterceptorDefinition arrayArgsDefinition(RecordingInterceptor interceptor, String interceptorField) throws NoSuchMethodException {
+        final int interceptorId = binder.getInterceptorRegistryAdaptor().addInterceptor(interceptor);
+        final Method before = RecordingInterceptor.class.getMethod("before", Object.class, Object[].class);
+        final Method after = RecordingInterceptor.class.getMethod("after", Object.class, Object[].class, Object.class, Throwable.class);
+        return new InterceptorDefinition(interceptorId, RecordingInterceptor.class, before, after, interceptorField, -1, TestObject.class.getName(), "echo", "(String)");
+    }
+
+    private Class<?> transform(ClassEdit edit) throws IOException, ClassNotFoundException {
+        final byte[] classFile = transformClassFile(TestObject.class, edit);
+        return new TestClassLoader(getClass().getClassLoader()).define(TestObject.class.getName(), classFile);
+    }
+
+    private byte[] transformClassFile(Class<?> type, ClassEdit edit) throws IOException, ClassNotFoundException {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final String internalName = Type.getInternalName(type);
+        final InputStream in = classLoader.getResourceAsStream(internalName + ".class");
+        final byte[] classFile;
+        try {
+            final ClassReader original = new ClassReader(in);
+            classFile = original.b;
+        } finally {
+            in.close();
+        }
+
+        final ClassReader classReader = new ClassReader(classFile);
+        final ClassWriter classWriter = new HierarchyClassWriter(classReader, ClassWriter.COMPUTE_FRAMES, new ClassFileLocator(), classLoader, ClassMetadata.read(classFile));
+        classReader.accept(new ClassEditVisitor(classWriter, edit), ClassReader.SKIP_FRAMES);
+
+        return classWriter.toByteArray();
+    }
+
+    private TraceContext newTraceContext() {
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final Trace trace = (Trace) Proxy.newProxyInstance(classLoader, new Class<?>[] {Trace.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return null;
+            }
+        });
+        return (TraceContext) Proxy.newProxyInstance(classLoader, new Class<?>[] {TraceContext.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                return method.getName().equals("currentTraceObject") ? trace : null;
+            }
+        });
+    }
+
+    private static class TestClassLoader extends ClassLoader {
+        private TestClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+    }
+
+    public static class TestObject {
+        public TestObject() {
+        }
+
+        public String echo(String message) {
+            return message;
+        }
+
+        public void fail() {
+            throw new IllegalStateException("fail");
+        }
+
+        public static int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    public static class TestStatement implements BindValueAccessor {
+        private BindValueRecorder bindValue = new BindValueRecorder();
+
+        public void setString(int parameterIndex, String x) {
+        }
+
+        @Override
+        public void _$APM$_setBindValue(BindValueRecorder bindValue) {
+            this.bindValue = bindValue;
+        }
+
+        @Override
+        public BindValueRecorder _$APM$_getBindValue() {
+            return bindValue;
+        }
+    }
+
+    public static class Sized {
+        private final int a;
+        private final int b;
+        private final int c;
+        private final int d;
+
+        public Sized(int a, int b, int c, int d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+    }
+
+    public static class RecordingInterceptor implements AroundInterceptor {
+        private final String name;
+        private final List<String> events;
+        private Object target;
+        private Object[] args;
+        private Object result;
+        private Throwable throwable;
+
+        public RecordingInterceptor() {
+            this(null, new ArrayList<String>());
+        }
+
+        public RecordingInterceptor(String name, List<String> events) {
+            this.name = name;
+            this.events = events;
+        }
+
+        @Override
+        public void before(Object target, Object[] args) {
+            this.events.add(name == null ? "before" : name + ".before");
+            this.target = target;
+        }
+
+        @Override
+        public void after(Object target, Object[] args, Object result, Throwable throwable) {
+            this.events.add(name == null ? "after" : name + ".after");
+            this.args = args;
+            this.result = result;
+            this.throwable = throwable;
+        }
+    }
+
+    public static class ArityInterceptor implements AroundInterceptor2 {
+        private final List<Object> values = new ArrayList<Object>();
+
+        @Override
+        public void before(Object target, Object arg0, Object arg1) {
+            values.add(target);
+            values.add(arg0);
+            values.add(arg1);
+        }
+
+        @Override
+        public void after(Object target, Object arg0, Object arg1, Object result, Throwable throwable) {
+            values.add(throwable);
+            values.add(arg0);
+            values.add(arg1);
+            values.add(result);
+        }
+    }
+}
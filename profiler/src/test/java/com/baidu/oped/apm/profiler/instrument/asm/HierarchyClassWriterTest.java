@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.asm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+
+public class HierarchyClassWriterTest {
+
+    @Test
+    public void commonSuperClass() throws Exception {
+        final HierarchyClassWriter classWriter = newClassWriter();
+        assertEquals(Type.getInternalName(Base.class), classWriter.getCommonSuperClass(Type.getInternalName(Left.class), Type.getInternalName(Right.class)));
+        assertEquals(Type.getInternalName(Base.class), classWriter.getCommonSuperClass(Type.getInternalName(Left.class), Type.getInternalName(Base.class)));
+        assertEquals("java/lang/Object", classWriter.getCommonSuperClass(Type.getInternalName(Left.class), "java/lang/Object"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void classFileNotFound() throws Exception {
+        final HierarchyClassWriter classWriter = newClassWriter();
+        classWriter.getCommonSuperClass(Type.getInternalName(Left.class), "com/baidu/oped/apm/NotExist");
+    }
+
+    private HierarchyClassWriter newClassWriter() throws Exception {
+        final ClassReader classReader = new ClassReader(Base.class.getName());
+        return new HierarchyClassWriter(classReader, ClassWriter.COMPUTE_FRAMES, new ClassFileLocator(), getClass().getClassLoader(), null);
+    }
+
+    public static class Base {
+    }
+
+    public static class Left extends Base {
+    }
+
+    public static class Right extends Base {
+    }
+}
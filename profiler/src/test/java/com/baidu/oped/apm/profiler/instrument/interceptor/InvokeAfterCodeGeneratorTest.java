@@ -29,7 +29,9 @@ import org.slf4j.LoggerFactory;
 import com.baidu.oped.apm.bootstrap.context.TraceContext;
 import com.baidu.oped.apm.bootstrap.instrument.InstrumentClass;
 import com.baidu.oped.apm.bootstrap.instrument.InstrumentMethod;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor;
 import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor0;
+import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor2;
 import com.baidu.oped.apm.bootstrap.interceptor.AroundInterceptor3;
 
 /**
@@ -182,4 +184,75 @@ public class InvokeAfterCodeGeneratorTest {
         Assert.assertTrue(generate.contains("$e"));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGenerate_arityMethodOfArrayArgsInterceptor() throws Exception {
+
+        final Class<ArrayArgsAndArityInterceptor> interceptorClass = ArrayArgsAndArityInterceptor.class;
+        //                                                                     this,          param0,       param1,       return,       throwable
+        final Method arityAfter = interceptorClass.getMethod("after", Object.class, Object.class, Object.class, Object.class, Throwable.class);
+        final Method arrayAfter = interceptorClass.getMethod("after", Object.class, Object[].class, Object.class, Throwable.class);
+        final InstrumentClass mockClass = mock(InstrumentClass.class);
+        Mockito.when(mockClass.getName()).thenReturn("TestClass");
+
+        final InstrumentMethod mockMethod = mock(InstrumentMethod.class);
+        Mockito.when(mockMethod.getName()).thenReturn("TestMethod");
+        Mockito.when(mockMethod.getParameterTypes()).thenReturn(new String[]{"java.lang.Object", "java.lang.Object"});
+        Mockito.when(mockMethod.getReturnType()).thenReturn("java.lang.Object");
+
+        TraceContext context = mock(TraceContext.class);
+
+        final String arity = new InvokeAfterCodeGenerator(100, interceptorClass, arityAfter, mockClass, mockMethod, context, false, false).generate();
+        logger.debug("testGenerate_arityMethodOfArrayArgsInterceptor arity:{}", arity);
+        Assert.assertTrue(arity.contains("($w)$1"));
+        Assert.assertTrue(arity.contains("($w)$2"));
+        Assert.assertFalse(arity.contains("$args"));
+
+        final String array = new InvokeAfterCodeGenerator(100, interceptorClass, arrayAfter, mockClass, mockMethod, context, false, false).generate();
+        logger.debug("testGenerate_arityMethodOfArrayArgsInterceptor array:{}", array);
+        Assert.assertTrue(array.contains("$args"));
+    }
+
+    @Test
+    public void testGenerate_interceptorField() throws Exception {
+
+        final Class<AroundInterceptor0> aroundInterceptor0Class = AroundInterceptor0.class;
+        final Method interceptorAfter = aroundInterceptor0Class.getMethod("after", Object.class, Object.class, Throwable.class);
+        final InstrumentClass mockClass = mock(InstrumentClass.class);
+        Mockito.when(mockClass.getName()).thenReturn("TestClass");
+
+        final InstrumentMethod mockMethod = mock(InstrumentMethod.class);
+        Mockito.when(mockMethod.getName()).thenReturn("TestMethod");
+        Mockito.when(mockMethod.getParameterTypes()).thenReturn(new String[]{});
+        Mockito.when(mockMethod.getReturnType()).thenReturn("java.lang.Object");
+
+        TraceContext context = mock(TraceContext.class);
+
+        final String registry = new InvokeAfterCodeGenerator(100, aroundInterceptor0Class, interceptorAfter, mockClass, mockMethod, context, false, false).generate();
+        Assert.assertTrue(registry.contains(".getInterceptor(100)"));
+
+        final String interceptorField = InvokeCodeGenerator.getInterceptorField(100);
+        final String field = new InvokeAfterCodeGenerator(100, aroundInterceptor0Class, interceptorAfter, mockClass, mockMethod, context, false, false, interceptorField).generate();
+        logger.debug("testGenerate_interceptorField:{}", field);
+        Assert.assertTrue(field.contains(InvokeCodeGenerator.getInterceptorVar(100) + " = " + interceptorField + ";"));
+        Assert.assertFalse(field.contains(".getInterceptor("));
+    }
+
+    public static class ArrayArgsAndArityInterceptor implements AroundInterceptor, AroundInterceptor2 {
+        @Override
+        public void before(Object target, Object[] args) {
+        }
+
+        @Override
+        public void after(Object target, Object[] args, Object result, Throwable throwable) {
+        }
+
+        @Override
+        public void before(Object target, Object arg0, Object arg1) {
+        }
+
+        @Override
+        public void after(Object target, Object arg0, Object arg1, Object result, Throwable throwable) {
+        }
+    }
+}
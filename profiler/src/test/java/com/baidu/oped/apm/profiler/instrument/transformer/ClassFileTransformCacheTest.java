@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.transformer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ClassFileTransformCacheTest {
+
+    private static final String CLASS_NAME = "com/test/Foo";
+
+    private final byte[] original = {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 50, 1, 2, 3};
+    private final byte[] transformed = {(byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe, 0, 0, 0, 50, 4, 5, 6, 7};
+    private final List<String> noInjectedClasses = Collections.emptyList();
+
+    private File baseDirectory;
+
+    @Before
+    public void setUp() {
+        baseDirectory = new File(System.getProperty("java.io.tmpdir"), "transform-cache-test-" + System.nanoTime());
+    }
+
+    @After
+    public void tearDown() {
+        delete(baseDirectory);
+    }
+
+    @Test
+    public void putAndGet() {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        assertNull(cache.get(classLoader, CLASS_NAME, original));
+        assertTrue(cache.put(classLoader, CLASS_NAME, original, transformed, noInjectedClasses));
+        assertArrayEquals(transformed, cache.get(classLoader, CLASS_NAME, original).getClassFile());
+
+        // another class file with the same name
+        assertNull(cache.get(classLoader, CLASS_NAME, transformed));
+        // bootstrap class loader
+        assertNull(cache.get(null, CLASS_NAME, original));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void notModified() {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+
+        assertTrue(cache.put(null, CLASS_NAME, original, null, noInjectedClasses));
+        ClassFileTransformCache.Entry entry = cache.get(null, CLASS_NAME, original);
+        assertNotNull(entry);
+        assertNull(entry.getClassFile());
+    }
+
+    @Test
+    public void injectedClasses() {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        List<String> injectedClasses = Arrays.asList("com.test.Accessor", "com.test.Interceptor");
+        cache.put(null, CLASS_NAME, original, transformed, injectedClasses);
+
+        ClassFileTransformCache reloaded = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        ClassFileTransformCache.Entry entry = reloaded.get(null, CLASS_NAME, original);
+        assertArrayEquals(transformed, entry.getClassFile());
+        assertEquals(injectedClasses, entry.getInjectedClasses());
+    }
+
+    @Test
+    public void uncacheable() {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        assertFalse(cache.isUncacheable(null, CLASS_NAME));
+        cache.markUncacheable(null, CLASS_NAME);
+        cache.markUncacheable(null, CLASS_NAME);
+        assertTrue(cache.isUncacheable(null, CLASS_NAME));
+        assertFalse(cache.isUncacheable(getClass().getClassLoader(), CLASS_NAME));
+
+        ClassFileTransformCache reloaded = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        assertTrue(reloaded.isUncacheable(null, CLASS_NAME));
+        assertEquals(1, reloaded.getSkipCount());
+        assertEquals(0, reloaded.getEntries());
+
+        ClassFileTransformCache otherFingerprint = new ClassFileTransformCache(baseDirectory, "v2", 10, 1024 * 1024);
+        assertFalse(otherFingerprint.isUncacheable(null, CLASS_NAME));
+    }
+
+    @Test
+    public void reload() {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        cache.put(null, CLASS_NAME, original, transformed, noInjectedClasses);
+
+        ClassFileTransformCache reloaded = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        assertEquals(1, reloaded.getEntries());
+        assertArrayEquals(transformed, reloaded.get(null, CLASS_NAME, original).getClassFile());
+
+        ClassFileTransformCache otherFingerprint = new ClassFileTransformCache(baseDirectory, "v2", 10, 1024 * 1024);
+        assertEquals(0, otherFingerprint.getEntries());
+        assertNull(otherFingerprint.get(null, CLASS_NAME, original));
+    }
+
+    @Test
+    public void brokenEntry() throws IOException {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 10, 1024 * 1024);
+        cache.put(null, CLASS_NAME, original, transformed, noInjectedClasses);
+
+        File[] files = new File(baseDirectory, "v1").listFiles();
+        assertEquals(1, files.length);
+        RandomAccessFile file = new RandomAccessFile(files[0], "rw");
+        try {
+            // flip the last byte of the class file
+            file.seek(file.length() - 9);
+            int value = file.read();
+            file.seek(file.length() - 9);
+            file.write(value ^ 0xff);
+        } finally {
+            file.close();
+        }
+
+        assertNull(cache.get(null, CLASS_NAME, original));
+        assertEquals(1, cache.getCorruptCount());
+        assertEquals(0, cache.getEntries());
+        assertFalse(files[0].exists());
+    }
+
+    @Test
+    public void maxEntries() {
+        ClassFileTransformCache cache = new ClassFileTransformCache(baseDirectory, "v1", 1, 1024 * 1024);
+
+        assertTrue(cache.put(null, CLASS_NAME, original, transformed, noInjectedClasses));
+        assertFalse(cache.put(null, "com/test/Bar", original, transformed, noInjectedClasses));
+        assertNull(cache.get(null, "com/test/Bar", original));
+    }
+
+    @Test
+    public void fingerprint() throws Exception {
+        URL jar = new URL("http://localhost/plugin.jar");
+        Properties properties = new Properties();
+        properties.setProperty("profiler.key", "a");
+
+        String fingerprint = ClassFileTransformCache.fingerprint("1.0", Collections.singletonList(jar), properties);
+        assertEquals(fingerprint, ClassFileTransformCache.fingerprint("1.0", Collections.singletonList(jar), properties));
+        assertFalse(fingerprint.equals(ClassFileTransformCache.fingerprint("1.1", Collections.singletonList(jar), properties)));
+
+        properties.setProperty("profiler.key", "b");
+        assertFalse(fingerprint.equals(ClassFileTransformCache.fingerprint("1.0", Collections.singletonList(jar), properties)));
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
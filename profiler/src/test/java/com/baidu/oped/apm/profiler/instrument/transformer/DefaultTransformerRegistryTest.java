@@ -0,0 +1,199 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.instrument.transformer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.concurrent.Callable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.bootstrap.instrument.matcher.Matchers;
+
+public class DefaultTransformerRegistryTest {
+
+    @Test
+    public void findClassName() {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        ClassFileTransformer transformer = new TestTransformer();
+        registry.addTransformer(Matchers.newClassNameMatcher("org.test.Foo"), transformer);
+
+        Assert.assertSame(transformer, registry.findTransformer("org/test/Foo"));
+        Assert.assertNull(registry.findTransformer("org/test/Bar"));
+    }
+
+    @Test
+    public void findPackageName() {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        ClassFileTransformer orgTest = new TestTransformer();
+        ClassFileTransformer orgTestSub = new TestTransformer();
+        ClassFileTransformer exact = new TestTransformer();
+        registry.addTransformer(Matchers.newPackageNameMatcher("org.test"), orgTest);
+        registry.addTransformer(Matchers.newPackageNameMatcher("org.test.sub"), orgTestSub);
+        registry.addTransformer(Matchers.newClassNameMatcher("org.test.sub.Exact"), exact);
+
+        Assert.assertSame(orgTest, registry.findTransformer("org/test/Foo"));
+        Assert.assertSame(orgTest, registry.findTransformer("org/test/other/Foo"));
+        Assert.assertSame(orgTestSub, registry.findTransformer("org/test/sub/Foo"));
+        Assert.assertSame(exact, registry.findTransformer("org/test/sub/Exact"));
+
+        Assert.assertNull(registry.findTransformer("org/testing/Foo"));
+        Assert.assertNull(registry.findTransformer("org/test"));
+        Assert.assertNull(registry.findTransformer("org/Foo"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void duplicatedPackageName() {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        registry.addTransformer(Matchers.newPackageNameMatcher("org.test"), new TestTransformer());
+        registry.addTransformer(Matchers.newPackageNameMatcher("org.test"), new TestTransformer());
+    }
+
+    @Test
+    public void findSuperClass() throws IOException {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        ClassFileTransformer transformer = new TestTransformer();
+        registry.addTransformer(Matchers.newSuperClassMatcher(Number.class.getName()), transformer);
+
+        assertTransformer(registry, transformer, TestNumber.class);
+        assertTransformer(registry, null, TestCallable.class);
+    }
+
+    @Test
+    public void findInterface() throws IOException {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        ClassFileTransformer transformer = new TestTransformer();
+        registry.addTransformer(Matchers.newInterfaceMatcher(Callable.class.getName()), transformer);
+
+        assertTransformer(registry, transformer, TestCallable.class);
+        assertTransformer(registry, null, TestNumber.class);
+    }
+
+    @Test
+    public void findAnnotation() throws IOException {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        ClassFileTransformer transformer = new TestTransformer();
+        registry.addTransformer(Matchers.newAnnotationMatcher(Deprecated.class.getName()), transformer);
+
+        assertTransformer(registry, transformer, TestNumber.class);
+        // annotated method only
+        assertTransformer(registry, null, TestCallable.class);
+    }
+
+    @Test
+    public void rejectedClassCache() throws IOException {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        ClassFileTransformer transformer = new TestTransformer();
+        registry.addTransformer(Matchers.newSuperClassMatcher(Number.class.getName()), transformer);
+
+        final ClassLoader classLoader = getClass().getClassLoader();
+        final byte[] classFile = readClassFile(TestNumber.class);
+        // refers java/lang/Number but not as super class
+        final byte[] rejected = readClassFile(TestNumberUser.class);
+        Assert.assertNull(registry.findTransformer(classLoader, "org/test/Cached", rejected));
+
+        // same name in the same class loader is not parsed again
+        Assert.assertNull(registry.findTransformer(classLoader, "org/test/Cached", classFile));
+        // other class loaders are not affected
+        Assert.assertSame(transformer, registry.findTransformer(null, "org/test/Cached", classFile));
+    }
+
+    @Test
+    public void invalidClassFile() {
+        DefaultTransformerRegistry registry = new DefaultTransformerRegistry();
+        registry.addTransformer(Matchers.newSuperClassMatcher(Number.class.getName()), new TestTransformer());
+
+        Assert.assertNull(registry.findTransformer(null, "org/test/Foo", null));
+        Assert.assertNull(registry.findTransformer(null, "org/test/Foo", new byte[] {1, 2, 3}));
+    }
+
+    private void assertTransformer(DefaultTransformerRegistry registry, ClassFileTransformer expected, Class<?> clazz) throws IOException {
+        final String jvmClassName = clazz.getName().replace('.', '/');
+        final ClassFileTransformer transformer = registry.findTransformer(clazz.getClassLoader(), jvmClassName, readClassFile(clazz));
+        Assert.assertSame(expected, transformer);
+    }
+
+    private byte[] readClassFile(Class<?> clazz) throws IOException {
+        final String resourceName = clazz.getName().replace('.', '/') + ".class";
+        final InputStream inputStream = clazz.getClassLoader().getResourceAsStream(resourceName);
+        try {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            return outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static class TestTransformer implements ClassFileTransformer {
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) throws IllegalClassFormatException {
+            return null;
+        }
+    }
+
+    @Deprecated
+    private static class TestNumber extends Number {
+        private final long value = 1L;
+        private final double ratio = 0.5d;
+
+        @Override
+        public int intValue() {
+            return (int) value;
+        }
+
+        @Override
+        public long longValue() {
+            return value;
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) ratio;
+        }
+
+        @Override
+        public double doubleValue() {
+            return ratio;
+        }
+    }
+
+    private static class TestCallable implements Callable<String> {
+        @Deprecated
+        @Override
+        public String call() throws Exception {
+            return "test";
+        }
+    }
+
+    private static class TestNumberUser {
+        private Number number;
+
+        public int getValue() {
+            return number.intValue();
+        }
+    }
+}
@@ -152,5 +152,51 @@ public class IsolateMultipleClassPoolTest {
 
     }
 
+    @Test
+    public void testMaxCachedClassSize() throws Exception {
+
+        IsolateMultipleClassPool pool = new IsolateMultipleClassPool(true, IsolateMultipleClassPool.EMPTY_EVENT_LISTENER, null, 2);
+
+        NamedClassPool childPool = pool.getClassPool(child1);
+        CtClass first = childPool.get("java.lang.String");
+        childPool.get("java.lang.Integer");
+        Assert.assertSame(first, childPool.get("java.lang.String"));
+
+        childPool.get("java.lang.Long");
+        Assert.assertEquals(2, childPool.getCachedClassCount());
+        Assert.assertEquals(1, childPool.getEvictedClassCount());
+        // least recently used Integer was dropped
+        Assert.assertSame(first, childPool.get("java.lang.String"));
+
+        childPool.get("java.lang.Short");
+        Assert.assertEquals(2, pool.getEvictedClassCount());
+    }
+
+    @Test
+    public void testMaxCachedClassSize_modifiedClass() throws Exception {
+
+        IsolateMultipleClassPool pool = new IsolateMultipleClassPool(true, IsolateMultipleClassPool.EMPTY_EVENT_LISTENER, null, 1);
+
+        NamedClassPool childPool = pool.getClassPool(child1);
+        CtClass target = childPool.get(this.getClass().getName());
+        target.setModifiers(target.getModifiers());
+        Assert.assertTrue(target.isModified());
+
+        childPool.get("java.lang.String");
+        // the class being modified is kept, String was dropped instead
+        Assert.assertEquals(1, childPool.getCachedClassCount());
+        Assert.assertSame(target, childPool.get(this.getClass().getName()));
+
+        target.detach();
+        Assert.assertEquals(0, childPool.getCachedClassCount());
+    }
+
+    @Test
+    public void testThrowawayClassLoader() throws Exception {
+        Assert.assertFalse(IsolateMultipleClassPool.isThrowawayClassLoader(null));
+        Assert.assertFalse(IsolateMultipleClassPool.isThrowawayClassLoader(child1));
+        Assert.assertFalse(IsolateMultipleClassPool.isThrowawayClassLoader(systemClassLoader));
+    }
+
 
 }
\ No newline at end of file
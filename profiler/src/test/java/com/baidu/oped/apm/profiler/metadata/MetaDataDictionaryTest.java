@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.profiler.monitor.codahale.MetricMonitorRegistry;
+
+public class MetaDataDictionaryTest {
+
+    @Test
+    public void put() throws Exception {
+        MetaDataDictionary dictionary = new MetaDataDictionary("api", 10);
+        Result first = dictionary.put("a");
+        Assert.assertTrue(first.isNewValue());
+
+        Result second = dictionary.put("a");
+        Assert.assertFalse(second.isNewValue());
+        Assert.assertEquals(first.getId(), second.getId());
+
+        Result other = dictionary.put("b");
+        Assert.assertTrue(other.isNewValue());
+        Assert.assertTrue(first.getId() != other.getId());
+
+        Assert.assertEquals(2, dictionary.size());
+        Assert.assertEquals(1, dictionary.getHitCount());
+        Assert.assertEquals(2, dictionary.getMissCount());
+    }
+
+    @Test
+    public void pinnedEntryIsNeverEvicted() throws Exception {
+        MetaDataDictionary dictionary = new MetaDataDictionary("api", 2, 2, new MetricMonitorRegistry());
+        final int pinnedId = dictionary.put("pinned").getId();
+        dictionary.put("pinned2");
+        for (int i = 0; i < 100; i++) {
+            dictionary.put("overflow" + i);
+        }
+        Assert.assertEquals(2, dictionary.size());
+
+        Result pinned = dictionary.put("pinned");
+        Assert.assertFalse(pinned.isNewValue());
+        Assert.assertEquals(pinnedId, pinned.getId());
+        Assert.assertTrue(dictionary.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void evictedOverflowEntryGetsNewId() throws Exception {
+        MetaDataDictionary dictionary = new MetaDataDictionary("api", 0, 1, new MetricMonitorRegistry());
+        final int firstId = dictionary.put("a").getId();
+        dictionary.put("b");
+
+        Result again = dictionary.put("a");
+        Assert.assertTrue(again.isNewValue());
+        Assert.assertTrue(firstId != again.getId());
+    }
+
+    @Test
+    public void persist() throws Exception {
+        MetaDataDictionary before = new MetaDataDictionary("string", 10);
+        final int aId = before.put("a").getId();
+        final int bId = before.put("b").getId();
+
+        MetaDataDictionary after = new MetaDataDictionary("string", 10);
+        Assert.assertEquals(2, copy(before, after));
+
+        // sent once again for the new agent, with the same id.
+        Result a = after.put("a");
+        Assert.assertTrue(a.isNewValue());
+        Assert.assertEquals(aId, a.getId());
+        Assert.assertEquals(1, after.getResendCount());
+
+        Result aAgain = after.put("a");
+        Assert.assertFalse(aAgain.isNewValue());
+        Assert.assertEquals(aId, aAgain.getId());
+
+        // ids of the previous agent are not issued again.
+        Result c = after.put("c");
+        Assert.assertTrue(c.isNewValue());
+        Assert.assertTrue(c.getId() != aId);
+        Assert.assertTrue(c.getId() != bId);
+    }
+
+    @Test
+    public void persist_smallerDictionary() throws Exception {
+        MetaDataDictionary before = new MetaDataDictionary("sql", 10);
+        for (int i = 0; i < 10; i++) {
+            before.put("sql" + i);
+        }
+        MetaDataDictionary after = new MetaDataDictionary("sql", 3);
+        Assert.assertEquals(3, copy(before, after));
+        Assert.assertEquals(3, after.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void persist_nameMismatch() throws Exception {
+        MetaDataDictionary before = new MetaDataDictionary("api", 10);
+        before.put("a");
+        copy(before, new MetaDataDictionary("string", 10));
+    }
+
+    private int copy(MetaDataDictionary from, MetaDataDictionary to) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        from.writeTo(new DataOutputStream(buffer));
+        return to.readFrom(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.baidu.oped.apm.bootstrap.config.DefaultProfilerConfig;
+import com.baidu.oped.apm.bootstrap.plugin.ApplicationTypeDetector;
+import com.baidu.oped.apm.bootstrap.plugin.ProfilerPlugin;
+import com.baidu.oped.apm.bootstrap.plugin.ProfilerPluginSetupContext;
+import com.baidu.oped.apm.bootstrap.resolver.ConditionProvider;
+import com.baidu.oped.apm.common.trace.ServiceType;
+import com.baidu.oped.apm.test.MockAgent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ProfilerPluginLoaderTest {
+
+    private static final RuntimeException SETUP_FAILURE = new IllegalStateException("setup failure");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void loadParallel_serialOrder() throws Exception {
+        // setup time differs per jar, so the parallel setups complete out of jar order
+        final URL[] pluginJars = new URL[] {
+                createPluginJar(SlowPlugin.class),
+                createPluginJar(FastPlugin.class),
+                createPluginJar(MediumPlugin.class, FastPlugin.class),
+                createPluginJar(FastPlugin.class)
+        };
+
+        final List<String> serial = getPluginNames(newLoader(1).load(pluginJars));
+        final List<String> parallel = getPluginNames(newLoader(4).load(pluginJars));
+
+        final List<String> expected = new ArrayList<String>();
+        expected.add(SlowPlugin.class.getName());
+        expected.add(FastPlugin.class.getName());
+        expected.add(MediumPlugin.class.getName());
+        expected.add(FastPlugin.class.getName());
+        expected.add(FastPlugin.class.getName());
+        assertEquals(expected, serial);
+        assertEquals(serial, parallel);
+    }
+
+    @Test
+    public void loadParallel_rethrowSetupFailure() throws Exception {
+        final URL[] pluginJars = new URL[] {
+                createPluginJar(SlowPlugin.class),
+                createPluginJar(FailPlugin.class),
+                createPluginJar(FastPlugin.class)
+        };
+
+        try {
+            newLoader(4).load(pluginJars);
+            fail("setup failure must be rethrown");
+        } catch (IllegalStateException e) {
+            assertSame(SETUP_FAILURE, e);
+        }
+    }
+
+    private ProfilerPluginLoader newLoader(int threads) {
+        final Properties properties = new Properties();
+        properties.setProperty("profiler.plugin.load.threads", String.valueOf(threads));
+        final DefaultProfilerConfig profilerConfig = new DefaultProfilerConfig(properties);
+        profilerConfig.setApplicationServerType(ServiceType.TEST_STAND_ALONE.getName());
+        return new ProfilerPluginLoader(MockAgent.of(profilerConfig));
+    }
+
+    private URL createPluginJar(Class<?>... pluginClasses) throws IOException {
+        final File jar = temporaryFolder.newFile();
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new JarEntry("META-INF/services/" + ProfilerPlugin.class.getName()));
+            for (Class<?> pluginClass : pluginClasses) {
+                out.write((pluginClass.getName() + "\n").getBytes("UTF-8"));
+            }
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return jar.toURI().toURL();
+    }
+
+    private List<String> getPluginNames(List<DefaultProfilerPluginContext> pluginContexts) {
+        final List<String> pluginNames = new ArrayList<String>();
+        for (DefaultProfilerPluginContext pluginContext : pluginContexts) {
+            for (ApplicationTypeDetector detector : pluginContext.getApplicationTypeDetectors()) {
+                if (detector instanceof PluginNameDetector) {
+                    pluginNames.add(((PluginNameDetector) detector).pluginName);
+                }
+            }
+        }
+        return pluginNames;
+    }
+
+    public static class SlowPlugin extends SleepPlugin {
+        public SlowPlugin() {
+            super(300);
+        }
+    }
+
+    public static class MediumPlugin extends SleepPlugin {
+        public MediumPlugin() {
+            super(100);
+        }
+    }
+
+    public static class FastPlugin extends SleepPlugin {
+        public FastPlugin() {
+            super(0);
+        }
+    }
+
+    public static class FailPlugin implements ProfilerPlugin {
+        @Override
+        public void setup(ProfilerPluginSetupContext context) {
+            throw SETUP_FAILURE;
+        }
+    }
+
+    private static class SleepPlugin implements ProfilerPlugin {
+        private final long sleepMillis;
+
+        private SleepPlugin(long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public void setup(ProfilerPluginSetupContext context) {
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // the detector names the plugin which set up the context
+            context.addApplicationTypeDetector(new PluginNameDetector(getClass().getName()));
+        }
+    }
+
+    private static class PluginNameDetector implements ApplicationTypeDetector {
+        private final String pluginName;
+
+        private PluginNameDetector(String pluginName) {
+            this.pluginName = pluginName;
+        }
+
+        @Override
+        public ServiceType getApplicationType() {
+            return ServiceType.TEST_STAND_ALONE;
+        }
+
+        @Override
+        public boolean detect(ConditionProvider provider) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.common.util.MockClock;
+import com.baidu.oped.apm.profiler.sender.DataSenderStatus;
+
+public class AdaptiveSamplerTest {
+
+    @Test
+    public void adjust() {
+        MockClock clock = new MockClock();
+        TestDataSenderStatus status = new TestDataSenderStatus(100);
+        AdaptiveSampler sampler = new AdaptiveSampler(1, 8, status, 1000, clock);
+        Assert.assertEquals(1, sampler.getSamplingRate());
+
+        // queue filled up
+        status.queueSize = 60;
+        clock.setTime(1000);
+        sampler.isSampling();
+        Assert.assertEquals(2, sampler.getSamplingRate());
+
+        // interval not elapsed
+        clock.setTime(1500);
+        sampler.isSampling();
+        Assert.assertEquals(2, sampler.getSamplingRate());
+
+        // data dropped
+        status.queueSize = 30;
+        status.offerFailCount = 10;
+        clock.setTime(2000);
+        sampler.isSampling();
+        Assert.assertEquals(4, sampler.getSamplingRate());
+
+        // no change between watermarks
+        clock.setTime(3000);
+        sampler.isSampling();
+        Assert.assertEquals(4, sampler.getSamplingRate());
+
+        status.queueSize = 100;
+        sampler.adjust();
+        sampler.adjust();
+        sampler.adjust();
+        Assert.assertEquals(8, sampler.getSamplingRate());
+
+        // drained
+        status.queueSize = 0;
+        sampler.adjust();
+        Assert.assertEquals(4, sampler.getSamplingRate());
+        sampler.adjust();
+        sampler.adjust();
+        sampler.adjust();
+        Assert.assertEquals(1, sampler.getSamplingRate());
+    }
+
+    private static class TestDataSenderStatus implements DataSenderStatus {
+        private final int capacity;
+        private int queueSize;
+        private long offerFailCount;
+
+        private TestDataSenderStatus(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        @Override
+        public int getQueueCapacity() {
+            return capacity;
+        }
+
+        @Override
+        public long getOfferFailCount() {
+            return offerFailCount;
+        }
+    }
+}
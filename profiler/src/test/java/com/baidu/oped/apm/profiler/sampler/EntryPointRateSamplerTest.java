@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EntryPointRateSamplerTest {
+
+    @Test
+    public void findSampler() {
+        Map<String, Integer> rates = new HashMap<String, Integer>();
+        rates.put("/health", 0);
+        rates.put("/static/*", 10);
+        rates.put("/static/img/*", 0);
+        rates.put("/api/order", 1);
+        TrueSampler defaultSampler = new TrueSampler();
+        EntryPointRateSampler sampler = new EntryPointRateSampler(defaultSampler, rates);
+
+        Assert.assertFalse(sampler.isSampling("/health"));
+        Assert.assertTrue(sampler.isSampling("/api/order"));
+        Assert.assertFalse(sampler.isSampling("/static/img/logo.png"));
+        Assert.assertTrue(sampler.findSampler("/static/js/app.js") instanceof StripedRateSampler);
+        Assert.assertSame(defaultSampler, sampler.findSampler("/health/detail"));
+        Assert.assertSame(defaultSampler, sampler.findSampler(null));
+    }
+
+    @Test
+    public void parse() {
+        SamplerFactory samplerFactory = new SamplerFactory();
+        Map<String, Integer> rates = samplerFactory.parseEntryPointSamplingRate(java.util.Arrays.asList("/health:0", " /static/*:100 ", "", "invalid", "/a:b"));
+        Assert.assertEquals(2, rates.size());
+        Assert.assertEquals(Integer.valueOf(0), rates.get("/health"));
+        Assert.assertEquals(Integer.valueOf(100), rates.get("/static/*"));
+    }
+}
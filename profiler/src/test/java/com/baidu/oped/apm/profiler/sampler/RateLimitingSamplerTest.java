@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.common.util.MockClock;
+
+public class RateLimitingSamplerTest {
+
+    @Test
+    public void limit() {
+        MockClock clock = new MockClock();
+        clock.setTime(1000);
+        RateLimitingSampler sampler = new RateLimitingSampler(new TrueSampler(), 2, clock);
+
+        Assert.assertTrue(sampler.isSampling());
+        Assert.assertFalse(sampler.isSampling());
+
+        clock.setTime(1499);
+        Assert.assertFalse(sampler.isSampling());
+
+        // refilled every 500ms
+        clock.setTime(1500);
+        Assert.assertTrue(sampler.isSampling());
+        Assert.assertFalse(sampler.isSampling());
+
+        clock.setTime(2000);
+        Assert.assertTrue(sampler.isSampling());
+        Assert.assertFalse(sampler.isSampling());
+    }
+
+    @Test
+    public void secondBoundary() {
+        final int maxTps = 100;
+        MockClock clock = new MockClock();
+        clock.setTime(10999);
+        RateLimitingSampler sampler = new RateLimitingSampler(new TrueSampler(), maxTps, clock, 4);
+
+        // a fixed one second window would sample maxTps at 10999 and maxTps again at 11000
+        int sampled = drain(sampler);
+        for (long time = 11000; time < 11999; time++) {
+            clock.setTime(time);
+            sampled += drain(sampler);
+        }
+        Assert.assertTrue("sampled:" + sampled, sampled >= maxTps);
+        Assert.assertTrue("sampled:" + sampled, sampled <= maxTps + maxTps / 10);
+    }
+
+    @Test
+    public void rate() {
+        final int maxTps = 1000;
+        MockClock clock = new MockClock();
+        RateLimitingSampler sampler = new RateLimitingSampler(new TrueSampler(), maxTps, clock, 16);
+
+        // a single thread borrows from the other stripes
+        int sampled = 0;
+        for (long time = 0; time < 10000; time++) {
+            clock.setTime(time);
+            sampled += drain(sampler);
+        }
+        Assert.assertTrue("sampled:" + sampled, sampled >= maxTps * 10 - 16);
+        Assert.assertTrue("sampled:" + sampled, sampled <= maxTps * 10 + maxTps / 10);
+    }
+
+    private int drain(RateLimitingSampler sampler) {
+        int sampled = 0;
+        while (sampler.isSampling()) {
+            sampled++;
+        }
+        return sampled;
+    }
+
+    @Test
+    public void delegateFalse() {
+        MockClock clock = new MockClock();
+        RateLimitingSampler sampler = new RateLimitingSampler(new FalseSampler(), 2, clock);
+
+        Assert.assertFalse(sampler.isSampling());
+        Assert.assertFalse(sampler.isSampling("/test"));
+    }
+}
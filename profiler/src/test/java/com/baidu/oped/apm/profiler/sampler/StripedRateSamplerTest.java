@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sampler;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.bootstrap.util.StripedCounter;
+
+public class StripedRateSamplerTest {
+
+    @Test
+    public void samplingRate() {
+        StripedCounter counter = new StripedCounter(1, 12345);
+        int sampled = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (StripedRateSampler.isSampling(counter, 10)) {
+                sampled++;
+            }
+        }
+        Assert.assertEquals(100, sampled);
+        Assert.assertEquals(1000, counter.sum());
+    }
+
+    @Test
+    public void stripeOffset() {
+        StripedCounter counter = new StripedCounter(64, 0);
+        Set<Long> firstSampledCalls = new HashSet<Long>();
+        for (int stripe = 0; stripe < 64; stripe++) {
+            // calls until the first sampled one: (offset + n - 1) % rate == 0
+            final long offset = counter.get(stripe);
+            firstSampledCalls.add((100 - (offset - 1) % 100) % 100);
+        }
+        // the stripes do not all sample on the same call
+        Assert.assertTrue(firstSampledCalls.size() > 32);
+        Assert.assertEquals(0, counter.sum());
+    }
+}
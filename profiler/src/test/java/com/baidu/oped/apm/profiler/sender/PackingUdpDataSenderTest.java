@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.thrift.TBase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.baidu.oped.apm.thrift.dto.TAgentInfo;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanChunk;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+import com.baidu.oped.apm.thrift.io.ChunkHeaderTBaseDeserializer;
+import com.baidu.oped.apm.thrift.io.ChunkHeaderTBaseDeserializerFactory;
+
+public class PackingUdpDataSenderTest {
+
+    private static final int PACKET_SIZE = 1024;
+
+    private DatagramSocket receiver;
+
+    @Before
+    public void setUp() throws Exception {
+        receiver = new DatagramSocket(0);
+        receiver.setSoTimeout(1000);
+    }
+
+    @After
+    public void tearDown() {
+        if (receiver != null) {
+            receiver.close();
+        }
+    }
+
+    @Test
+    public void packSmallMessages() throws Exception {
+        List<Object> messageList = new ArrayList<Object>();
+        for (int i = 0; i < 5; i++) {
+            TAgentInfo agentInfo = new TAgentInfo();
+            agentInfo.setAgentId("agent" + i);
+            messageList.add(agentInfo);
+        }
+
+        PackingUdpDataSender sender = newSender();
+        try {
+            sender.sendPacketN(messageList);
+        } finally {
+            sender.stop();
+        }
+
+        List<List<TBase<?, ?>>> packets = receive();
+        Assert.assertEquals(1, packets.size());
+        Assert.assertEquals(5, packets.get(0).size());
+        Assert.assertEquals("agent4", ((TAgentInfo) packets.get(0).get(4)).getAgentId());
+    }
+
+    @Test
+    public void splitLargeSpan() throws Exception {
+        TSpan span = new TSpan();
+        span.setAgentId("agent");
+        span.setSpanId(10);
+        span.setTransactionId(new byte[] {1, 2, 3});
+        for (short i = 0; i < 50; i++) {
+            TSpanEvent spanEvent = new TSpanEvent();
+            spanEvent.setSequence(i);
+            spanEvent.setDestinationId(RandomStringUtils.randomAlphabetic(100));
+            span.addToSpanEventList(spanEvent);
+        }
+
+        PackingUdpDataSender sender = newSender();
+        try {
+            sender.sendPacket(span);
+        } finally {
+            sender.stop();
+        }
+        Assert.assertEquals("event list restored", 50, span.getSpanEventListSize());
+
+        int spanCount = 0;
+        short nextSequence = 0;
+        List<List<TBase<?, ?>>> packets = receive();
+        Assert.assertTrue(packets.size() > 1);
+        for (List<TBase<?, ?>> packet : packets) {
+            for (TBase<?, ?> tBase : packet) {
+                if (tBase instanceof TSpan) {
+                    spanCount++;
+                    Assert.assertFalse(((TSpan) tBase).isSetSpanEventList());
+                } else {
+                    TSpanChunk spanChunk = (TSpanChunk) tBase;
+                    Assert.assertEquals(10, spanChunk.getSpanId());
+                    Assert.assertEquals("agent", spanChunk.getAgentId());
+                    for (TSpanEvent spanEvent : spanChunk.getSpanEventList()) {
+                        Assert.assertEquals(nextSequence++, spanEvent.getSequence());
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(1, spanCount);
+        Assert.assertEquals(50, nextSequence);
+    }
+
+    private PackingUdpDataSender newSender() {
+        return new PackingUdpDataSender("localhost", receiver.getLocalPort(), "test", 128, 1000, 1024 * 64, PACKET_SIZE);
+    }
+
+    private List<List<TBase<?, ?>>> receive() throws Exception {
+        ChunkHeaderTBaseDeserializer deserializer = ChunkHeaderTBaseDeserializerFactory.DEFAULT_FACTORY.createDeserializer();
+        List<List<TBase<?, ?>>> packets = new ArrayList<List<TBase<?, ?>>>();
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(new byte[PACKET_SIZE * 2], PACKET_SIZE * 2);
+            try {
+                receiver.receive(packet);
+            } catch (SocketTimeoutException e) {
+                return packets;
+            }
+            Assert.assertTrue(packet.getLength() <= PACKET_SIZE);
+            packets.add(deserializer.deserialize(packet.getData(), packet.getOffset(), packet.getLength()));
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.baidu.oped.apm.profiler.sender;
 
 import com.baidu.oped.apm.profiler.logging.Slf4jLoggerBinderInitializer;
 import com.baidu.oped.apm.profiler.sender.UdpDataSender;
+import com.baidu.oped.apm.profiler.sender.queue.AsyncQueueFactory;
+import com.baidu.oped.apm.profiler.sender.spool.SpoolFile;
 import com.baidu.oped.apm.thrift.dto.TAgentInfo;
 
 import org.junit.Assert;
@@ -26,8 +28,13 @@ import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.thrift.TBase;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketTimeoutException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -46,6 +53,9 @@ public class UdpDataSenderTest {
         Slf4jLoggerBinderInitializer.afterClass();
     }
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
 
 
     @Test
@@ -92,7 +102,59 @@ public class UdpDataSenderTest {
         Assert.assertFalse(limit);
     }
 
-    
+    @Test
+    public void spoolWhileCollectorUnavailable() throws Exception {
+        final AtomicBoolean collectorAvailable = new AtomicBoolean(false);
+        final CollectorStatus collectorStatus = new CollectorStatus() {
+            @Override
+            public boolean isCollectorAvailable() {
+                return collectorAvailable.get();
+            }
+        };
+        final DatagramSocket receiver = new DatagramSocket(0);
+        receiver.setSoTimeout(500);
+        final SpoolFile spool = new SpoolFile(temporaryFolder.newFolder(), 1024 * 64, 1024 * 64 * 4);
+        final UdpDataSender sender = new UdpDataSender("localhost", receiver.getLocalPort(), "test", 128, 1000, 1024 * 64,
+                AsyncQueueFactory.DEFAULT, AsyncQueueingExecutor.DEFAULT_MAX_DRAIN_SIZE, false, spool, collectorStatus, 1000);
+        try {
+            for (int i = 0; i < 3; i++) {
+                sender.send(new TAgentInfo());
+            }
+            waitUnreadCount(spool, 3, 3000);
+            Assert.assertEquals(3, spool.getUnreadCount());
+            Assert.assertEquals(0, receive(receiver));
+
+            // replayed after the collector has been available for a while
+            collectorAvailable.set(true);
+            waitUnreadCount(spool, 0, UdpDataSender.SPOOL_REPLAY_WAIT + 3000);
+            Assert.assertTrue(spool.isEmpty());
+            Assert.assertEquals(3, receive(receiver));
+        } finally {
+            sender.stop();
+            receiver.close();
+        }
+    }
+
+    private void waitUnreadCount(SpoolFile spool, long unreadCount, long waitTimeMillis) throws InterruptedException {
+        final long timeout = System.currentTimeMillis() + waitTimeMillis;
+        while (spool.getUnreadCount() != unreadCount && System.currentTimeMillis() < timeout) {
+            Thread.sleep(50);
+        }
+    }
+
+    private int receive(DatagramSocket receiver) throws Exception {
+        int count = 0;
+        while (true) {
+            DatagramPacket packet = new DatagramPacket(new byte[1024], 1024);
+            try {
+                receiver.receive(packet);
+                count++;
+            } catch (SocketTimeoutException e) {
+                return count;
+            }
+        }
+    }
+
     private boolean sendMessage_getLimit(TBase tbase, long waitTimeMillis) throws InterruptedException {
         final AtomicBoolean limitCounter = new AtomicBoolean(false);
         final CountDownLatch latch = new CountDownLatch(1);
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MpscRingBufferQueueTest {
+
+    @Test
+    public void capacity() {
+        Assert.assertEquals(1, new MpscRingBufferQueue<Object>(1).capacity());
+        Assert.assertEquals(8, new MpscRingBufferQueue<Object>(5).capacity());
+        Assert.assertEquals(1024, new MpscRingBufferQueue<Object>(1024).capacity());
+    }
+
+    @Test
+    public void offerFull() {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<Integer>(2);
+        Assert.assertTrue(queue.offer(1));
+        Assert.assertTrue(queue.offer(2));
+        Assert.assertFalse(queue.offer(3));
+        Assert.assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void pollOrder() throws InterruptedException {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<Integer>(4);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(queue.offer(i));
+            Assert.assertEquals(Integer.valueOf(i), queue.poll(0, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void drainTo() {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<Integer>(8);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(i);
+        }
+        List<Integer> drain = new ArrayList<Integer>();
+        Assert.assertEquals(3, queue.drainTo(drain, 3));
+        Assert.assertEquals(2, queue.drainTo(drain, 3));
+        Assert.assertEquals(0, queue.drainTo(drain, 3));
+        Assert.assertEquals(5, drain.size());
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(Integer.valueOf(i), drain.get(i));
+        }
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void pollInterrupt() throws InterruptedException {
+        MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<Integer>(8, WaitStrategyType.PARK);
+        Thread.currentThread().interrupt();
+        queue.poll(1000, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void multiProducer() throws InterruptedException {
+        final int producerCount = 4;
+        final int messageCount = 10000;
+        final MpscRingBufferQueue<Integer> queue = new MpscRingBufferQueue<Integer>(128, WaitStrategyType.YIELD);
+        final CountDownLatch latch = new CountDownLatch(producerCount);
+        final AtomicInteger failCount = new AtomicInteger();
+        for (int i = 0; i < producerCount; i++) {
+            Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < messageCount; j++) {
+                        while (!queue.offer(j)) {
+                            failCount.incrementAndGet();
+                            Thread.yield();
+                        }
+                    }
+                    latch.countDown();
+                }
+            });
+            producer.start();
+        }
+
+        long sum = 0;
+        int received = 0;
+        while (received < producerCount * messageCount) {
+            Integer data = queue.poll(1000, TimeUnit.MILLISECONDS);
+            Assert.assertNotNull(data);
+            sum += data;
+            received++;
+        }
+        Assert.assertTrue(latch.await(1000, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertEquals((long) producerCount * messageCount * (messageCount - 1) / 2, sum);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PriorityLaneAsyncQueueTest {
+
+    // negative numbers are priority data
+    private static final LaneSelector<Integer> SELECTOR = new LaneSelector<Integer>() {
+        @Override
+        public boolean isPriority(Integer data) {
+            return data < 0;
+        }
+    };
+
+    @Test
+    public void bulkFloodKeepsPriority() {
+        PriorityLaneAsyncQueue<Integer> queue = new PriorityLaneAsyncQueue<Integer>(AsyncQueueFactory.DEFAULT, 2, 2, 4, SELECTOR);
+        Assert.assertTrue(queue.offer(1));
+        Assert.assertTrue(queue.offer(2));
+        Assert.assertFalse(queue.offer(3));
+
+        Assert.assertTrue(queue.offer(-1));
+        Assert.assertEquals(4, queue.capacity());
+        Assert.assertEquals(3, queue.size());
+
+        Assert.assertEquals(1, queue.getBulkLaneStatus().getDropCount());
+        Assert.assertEquals(0, queue.getPriorityLaneStatus().getDropCount());
+    }
+
+    @Test
+    public void prioritySpillsIntoBulk() {
+        PriorityLaneAsyncQueue<Integer> queue = new PriorityLaneAsyncQueue<Integer>(AsyncQueueFactory.DEFAULT, 1, 1, 4, SELECTOR);
+        Assert.assertTrue(queue.offer(-1));
+        Assert.assertTrue(queue.offer(-2));
+        Assert.assertFalse(queue.offer(-3));
+
+        LaneStatus status = queue.getPriorityLaneStatus();
+        Assert.assertEquals(3, status.getOfferCount());
+        Assert.assertEquals(1, status.getSpillCount());
+        Assert.assertEquals(1, status.getDropCount());
+
+        List<Integer> drain = new ArrayList<Integer>();
+        Assert.assertEquals(2, queue.drainTo(drain, 10));
+        Assert.assertEquals(2, status.getDrainCount());
+        Assert.assertEquals(0, queue.getBulkLaneStatus().getDrainCount());
+    }
+
+    @Test
+    public void weightedDrain() {
+        PriorityLaneAsyncQueue<Integer> queue = new PriorityLaneAsyncQueue<Integer>(AsyncQueueFactory.DEFAULT, 16, 16, 2, SELECTOR);
+        for (int i = 1; i <= 3; i++) {
+            queue.offer(i);
+        }
+        for (int i = 1; i <= 5; i++) {
+            queue.offer(-i);
+        }
+
+        List<Integer> drain = new ArrayList<Integer>();
+        Assert.assertEquals(8, queue.drainTo(drain, 8));
+        Integer[] expected = {-1, -2, 1, -3, -4, 2, -5, 3};
+        Assert.assertArrayEquals(expected, drain.toArray(new Integer[0]));
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void pollTimeout() throws InterruptedException {
+        PriorityLaneAsyncQueue<Integer> queue = new PriorityLaneAsyncQueue<Integer>(AsyncQueueFactory.DEFAULT, 4, 4, 4, SELECTOR);
+        Assert.assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void pollWakeUp() throws InterruptedException {
+        final PriorityLaneAsyncQueue<Integer> queue = new PriorityLaneAsyncQueue<Integer>(AsyncQueueFactory.DEFAULT, 4, 4, 4, SELECTOR);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignore) {
+                }
+                queue.offer(-1);
+            }
+        });
+        producer.start();
+
+        long start = System.currentTimeMillis();
+        Assert.assertEquals(Integer.valueOf(-1), queue.poll(10000, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        producer.join();
+    }
+
+    @Test(expected = InterruptedException.class)
+    public void pollInterrupt() throws InterruptedException {
+        PriorityLaneAsyncQueue<Integer> queue = new PriorityLaneAsyncQueue<Integer>(AsyncQueueFactory.DEFAULT, 4, 4, 4, SELECTOR);
+        Thread.currentThread().interrupt();
+        queue.poll(1000, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.profiler.sender.spool;
+
+import java.io.File;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SpoolFileTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void appendAndPoll() throws Exception {
+        SpoolFile spool = new SpoolFile(temporaryFolder.newFolder(), SEGMENT_SIZE, SEGMENT_SIZE * 4);
+        try {
+            Assert.assertTrue(spool.isEmpty());
+            Assert.assertNull(spool.poll());
+
+            for (int i = 0; i < 10; i++) {
+                Assert.assertTrue(spool.append(record(i, 10)));
+            }
+            Assert.assertEquals(10, spool.getUnreadCount());
+
+            for (int i = 0; i < 10; i++) {
+                Assert.assertArrayEquals(record(i, 10), spool.poll());
+            }
+            Assert.assertNull(spool.poll());
+            Assert.assertTrue(spool.isEmpty());
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void rollSegment() throws Exception {
+        SpoolFile spool = new SpoolFile(temporaryFolder.newFolder(), SEGMENT_SIZE, SEGMENT_SIZE * 4);
+        try {
+            // 4 records of 250 bytes per segment
+            for (int i = 0; i < 8; i++) {
+                Assert.assertTrue(spool.append(record(i, 246)));
+            }
+            Assert.assertEquals(2, spool.getSegmentCount());
+
+            for (int i = 0; i < 8; i++) {
+                Assert.assertArrayEquals(record(i, 246), spool.poll());
+            }
+            // read up segment is deleted
+            Assert.assertEquals(1, spool.getSegmentCount());
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void evictOldest() throws Exception {
+        SpoolFile spool = new SpoolFile(temporaryFolder.newFolder(), SEGMENT_SIZE, SEGMENT_SIZE * 2);
+        try {
+            for (int i = 0; i < 12; i++) {
+                Assert.assertTrue(spool.append(record(i, 246)));
+            }
+            Assert.assertEquals(2, spool.getSegmentCount());
+            Assert.assertEquals(4, spool.getEvictCount());
+            Assert.assertTrue(spool.getSize() <= SEGMENT_SIZE * 2);
+
+            // the oldest segment (0~3) has been deleted.
+            for (int i = 4; i < 12; i++) {
+                Assert.assertArrayEquals(record(i, 246), spool.poll());
+            }
+            Assert.assertNull(spool.poll());
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void rejectLargeRecord() throws Exception {
+        SpoolFile spool = new SpoolFile(temporaryFolder.newFolder(), SEGMENT_SIZE, SEGMENT_SIZE * 2);
+        try {
+            Assert.assertFalse(spool.append(new byte[SEGMENT_SIZE]));
+            Assert.assertEquals(1, spool.getRejectCount());
+            Assert.assertTrue(spool.isEmpty());
+        } finally {
+            spool.close();
+        }
+    }
+
+    @Test
+    public void recover() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        SpoolFile spool = new SpoolFile(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4);
+        for (int i = 0; i < 6; i++) {
+            spool.append(record(i, 246));
+        }
+        Assert.assertArrayEquals(record(0, 246), spool.poll());
+        Assert.assertArrayEquals(record(1, 246), spool.poll());
+        spool.close();
+
+        SpoolFile recovered = new SpoolFile(directory, SEGMENT_SIZE, SEGMENT_SIZE * 4);
+        try {
+            Assert.assertEquals(4, recovered.getUnreadCount());
+            // consumed records are not replayed again
+            for (int i = 2; i < 6; i++) {
+                Assert.assertArrayEquals(record(i, 246), recovered.poll());
+            }
+            // continue to append to the last segment
+            Assert.assertTrue(recovered.append(record(6, 10)));
+            Assert.assertArrayEquals(record(6, 10), recovered.poll());
+        } finally {
+            recovered.close();
+        }
+    }
+
+    @Test
+    public void replay() throws Exception {
+        final SpoolFile spool = new SpoolFile(temporaryFolder.newFolder(), SEGMENT_SIZE, SEGMENT_SIZE * 4);
+        for (int i = 0; i < 5; i++) {
+            spool.append(record(i, 10));
+        }
+
+        final AtomicBoolean replayable = new AtomicBoolean(false);
+        final CopyOnWriteArrayList<byte[]> replayed = new CopyOnWriteArrayList<byte[]>();
+        SpoolReplayWorker worker = new SpoolReplayWorker(spool, new SpoolReplayListener() {
+            @Override
+            public boolean isReplayable() {
+                return replayable.get();
+            }
+
+            @Override
+            public boolean replay(byte[] packet) {
+                return replayed.add(packet);
+            }
+        }, 1000, "SpoolReplayWorkerTest");
+        try {
+            Thread.sleep(300);
+            Assert.assertTrue(replayed.isEmpty());
+
+            replayable.set(true);
+            final long timeout = System.currentTimeMillis() + 3000;
+            while (replayed.size() < 5 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50);
+            }
+            Assert.assertEquals(5, replayed.size());
+            for (int i = 0; i < 5; i++) {
+                Assert.assertArrayEquals(record(i, 10), replayed.get(i));
+            }
+            Assert.assertTrue(spool.isEmpty());
+        } finally {
+            worker.stop();
+            spool.close();
+        }
+    }
+
+    private byte[] record(int seed, int length) {
+        byte[] record = new byte[length];
+        for (int i = 0; i < length; i++) {
+            record[i] = (byte) (seed + i);
+        }
+        return record;
+    }
+}
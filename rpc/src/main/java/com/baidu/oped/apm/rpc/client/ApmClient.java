@@ -19,6 +19,7 @@ package com.baidu.oped.apm.rpc.client;
 import com.baidu.oped.apm.rpc.*;
 import com.baidu.oped.apm.rpc.cluster.ClusterOption;
 import com.baidu.oped.apm.rpc.packet.RequestPacket;
+import com.baidu.oped.apm.rpc.packet.SendPacketBatch;
 import com.baidu.oped.apm.rpc.stream.*;
 import com.baidu.oped.apm.rpc.util.AssertUtils;
 import org.slf4j.Logger;
@@ -107,6 +108,19 @@ public class ApmClient implements ApmSocket {
         return apmClientHandler.sendAsync(bytes);
     }
 
+    /**
+     * The batch is released by the client, whether or not the write succeeds.
+     */
+    public Future sendAsync(SendPacketBatch batch) {
+        try {
+            ensureOpen();
+        } catch (ApmSocketException e) {
+            batch.release();
+            throw e;
+        }
+        return apmClientHandler.sendAsync(batch);
+    }
+
     @Override
     public void send(byte[] bytes) {
         ensureOpen();
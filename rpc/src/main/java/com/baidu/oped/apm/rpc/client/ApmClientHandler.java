@@ -22,6 +22,7 @@ import com.baidu.oped.apm.rpc.Future;
 import com.baidu.oped.apm.rpc.ResponseMessage;
 import com.baidu.oped.apm.rpc.cluster.ClusterOption;
 import com.baidu.oped.apm.rpc.common.SocketStateCode;
+import com.baidu.oped.apm.rpc.packet.SendPacketBatch;
 import com.baidu.oped.apm.rpc.stream.*;
 
 /**
@@ -42,6 +43,12 @@ public interface ApmClientHandler {
 
     Future sendAsync(byte[] bytes);
 
+    /**
+     * Writes all packets of the batch at once. The handler owns the batch from here on and releases it
+     * when the write completes or fails.
+     */
+    Future sendAsync(SendPacketBatch batch);
+
     void close();
 
     void send(byte[] bytes);
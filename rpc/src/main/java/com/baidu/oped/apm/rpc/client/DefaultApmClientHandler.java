@@ -271,6 +271,24 @@ public class DefaultApmClientHandler extends SimpleChannelHandler implements Apm
         return future ;
     }
 
+    @Override
+    public Future sendAsync(SendPacketBatch batch) {
+        if (batch == null) {
+            throw new NullPointerException("batch");
+        }
+        try {
+            ensureOpen();
+        } catch (ApmSocketException e) {
+            batch.release();
+            throw e;
+        }
+        // the batch releases its buffer once netty is done with it
+        ChannelFuture channelFuture = write0(batch, batch);
+        final ChannelWriteCompleteListenableFuture future = new ChannelWriteCompleteListenableFuture(timeoutMillis);
+        channelFuture.addListener(future);
+        return future;
+    }
+
     @Override
     public void sendSync(byte[] bytes) {
         ChannelFuture write = send0(bytes);
@@ -23,6 +23,7 @@ import com.baidu.oped.apm.rpc.ResponseMessage;
 import com.baidu.oped.apm.rpc.client.ConnectFuture.Result;
 import com.baidu.oped.apm.rpc.cluster.ClusterOption;
 import com.baidu.oped.apm.rpc.common.SocketStateCode;
+import com.baidu.oped.apm.rpc.packet.SendPacketBatch;
 import com.baidu.oped.apm.rpc.stream.*;
 
 import java.net.SocketAddress;
@@ -68,6 +69,12 @@ public class ReconnectStateClientHandler implements ApmClientHandler {
         return reconnectFailureFuture();
     }
 
+    @Override
+    public Future sendAsync(SendPacketBatch batch) {
+        batch.release();
+        return reconnectFailureFuture();
+    }
+
     private DefaultFuture<ResponseMessage> reconnectFailureFuture() {
         DefaultFuture<ResponseMessage> reconnect = new DefaultFuture<ResponseMessage>();
         reconnect.setFailure(newReconnectException());
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.rpc.packet;
+
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+import com.baidu.oped.apm.rpc.util.ChannelBufferPool;
+
+/**
+ * Several {@link SendPacket}s framed back to back in one buffer, so that they go to the channel as a single write.
+ * The bytes on the wire are the same as writing each SendPacket separately.
+ * Payloads are either copied in with {@link #add(byte[])} or written in place between
+ * {@link #beginPacket()} and {@link #endPacket()}.
+ * A pooled buffer goes back to its pool when the channel write completes.
+ */
+public class SendPacketBatch implements Packet, ChannelFutureListener {
+
+    private static final int HEADER_SIZE = 2 + 4;
+
+    private final ChannelBuffer buffer;
+    private final ChannelBufferPool pool;
+    private final OutputStream outputStream;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private int packetStartIndex = -1;
+    private int packetCount;
+
+    public SendPacketBatch(ChannelBuffer buffer) {
+        this(buffer, null);
+    }
+
+    public SendPacketBatch(ChannelBufferPool pool) {
+        this(pool.acquire(), pool);
+    }
+
+    private SendPacketBatch(ChannelBuffer buffer, ChannelBufferPool pool) {
+        if (buffer == null) {
+            throw new NullPointerException("buffer must not be null");
+        }
+        this.buffer = buffer;
+        this.pool = pool;
+        this.outputStream = new ChannelBufferOutputStream(buffer);
+    }
+
+    public void add(byte[] payload) {
+        if (payload == null) {
+            throw new NullPointerException("payload must not be null");
+        }
+        checkNotInPacket();
+        buffer.writeShort(PacketType.APPLICATION_SEND);
+        buffer.writeInt(payload.length);
+        buffer.writeBytes(payload);
+        packetCount++;
+    }
+
+    /**
+     * Starts a packet whose payload is written to the returned stream. Must be followed by
+     * {@link #endPacket()} or {@link #cancelPacket()}.
+     */
+    public OutputStream beginPacket() {
+        checkNotInPacket();
+        this.packetStartIndex = buffer.writerIndex();
+        buffer.writeShort(PacketType.APPLICATION_SEND);
+        // length is filled in by endPacket()
+        buffer.writeInt(0);
+        return outputStream;
+    }
+
+    public void endPacket() {
+        checkInPacket();
+        final int payloadLength = buffer.writerIndex() - packetStartIndex - HEADER_SIZE;
+        buffer.setInt(packetStartIndex + 2, payloadLength);
+        this.packetStartIndex = -1;
+        packetCount++;
+    }
+
+    /**
+     * Discards whatever was written since {@link #beginPacket()}.
+     */
+    public void cancelPacket() {
+        checkInPacket();
+        buffer.writerIndex(packetStartIndex);
+        this.packetStartIndex = -1;
+    }
+
+    private void checkNotInPacket() {
+        if (packetStartIndex != -1) {
+            throw new IllegalStateException("packet not ended");
+        }
+    }
+
+    private void checkInPacket() {
+        if (packetStartIndex == -1) {
+            throw new IllegalStateException("packet not begun");
+        }
+    }
+
+    public int getPacketCount() {
+        return packetCount;
+    }
+
+    public int readableBytes() {
+        return buffer.readableBytes();
+    }
+
+    public boolean isEmpty() {
+        return packetCount == 0;
+    }
+
+    @Override
+    public short getPacketType() {
+        return PacketType.APPLICATION_SEND;
+    }
+
+    /**
+     * @return always null. a batch has no single payload.
+     */
+    @Override
+    public byte[] getPayload() {
+        return null;
+    }
+
+    @Override
+    public ChannelBuffer toBuffer() {
+        checkNotInPacket();
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to its pool. Called when the channel write completes, or by the owner if the batch is never written.
+     */
+    public void release() {
+        if (pool == null) {
+            return;
+        }
+        if (released.compareAndSet(false, true)) {
+            pool.release(buffer);
+        }
+    }
+
+    @Override
+    public void operationComplete(ChannelFuture future) throws Exception {
+        release();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder(64);
+        sb.append("SendPacketBatch{packetCount=").append(packetCount);
+        sb.append(", bytes=").append(buffer.readableBytes());
+        sb.append('}');
+        return sb.toString();
+    }
+}
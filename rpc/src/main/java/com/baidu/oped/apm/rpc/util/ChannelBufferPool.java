@@ -0,0 +1,102 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.rpc.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Small pool of dynamic heap buffers. Netty 3 has no pooled allocator, so buffers that were handed to a channel
+ * are returned here once the write completed, instead of allocating a new one for every batch.
+ * Buffers that grew beyond maxRetainedCapacity are dropped rather than kept alive.
+ */
+public class ChannelBufferPool {
+
+    private final BlockingQueue<ChannelBuffer> pool;
+    private final int initialCapacity;
+    private final int maxRetainedCapacity;
+
+    private final AtomicLong allocateCount = new AtomicLong();
+    private final AtomicLong reuseCount = new AtomicLong();
+
+    public ChannelBufferPool(int poolSize, int initialCapacity, int maxRetainedCapacity) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("negative poolSize:" + poolSize);
+        }
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("negative initialCapacity:" + initialCapacity);
+        }
+        if (maxRetainedCapacity < initialCapacity) {
+            throw new IllegalArgumentException("maxRetainedCapacity < initialCapacity");
+        }
+        this.pool = new ArrayBlockingQueue<ChannelBuffer>(poolSize);
+        this.initialCapacity = initialCapacity;
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    public ChannelBuffer acquire() {
+        final ChannelBuffer buffer = pool.poll();
+        if (buffer != null) {
+            reuseCount.incrementAndGet();
+            return buffer;
+        }
+        allocateCount.incrementAndGet();
+        return ChannelBuffers.dynamicBuffer(initialCapacity);
+    }
+
+    /**
+     * The caller must not touch the buffer afterwards.
+     */
+    public void release(ChannelBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        if (buffer.capacity() > maxRetainedCapacity) {
+            return;
+        }
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    public long getAllocateCount() {
+        return allocateCount.get();
+    }
+
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ChannelBufferPool{");
+        sb.append("size=").append(pool.size());
+        sb.append(", initialCapacity=").append(initialCapacity);
+        sb.append(", maxRetainedCapacity=").append(maxRetainedCapacity);
+        sb.append(", allocateCount=").append(allocateCount.get());
+        sb.append(", reuseCount=").append(reuseCount.get());
+        sb.append('}');
+        return sb.toString();
+    }
+}
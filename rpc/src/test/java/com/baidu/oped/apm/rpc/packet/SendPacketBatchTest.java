@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.rpc.packet;
+
+import java.io.OutputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.rpc.util.ChannelBufferPool;
+
+public class SendPacketBatchTest {
+
+    @Test
+    public void sameBytesAsSeparateSendPackets() throws Exception {
+        byte[] payload1 = new byte[] {1, 2, 3};
+        byte[] payload2 = new byte[] {4, 5};
+
+        SendPacketBatch batch = new SendPacketBatch(ChannelBuffers.dynamicBuffer(16));
+        batch.add(payload1);
+        OutputStream out = batch.beginPacket();
+        out.write(payload2);
+        batch.endPacket();
+
+        ChannelBuffer expected = ChannelBuffers.wrappedBuffer(new SendPacket(payload1).toBuffer(), new SendPacket(payload2).toBuffer());
+        Assert.assertEquals(2, batch.getPacketCount());
+        Assert.assertEquals(expected, batch.toBuffer());
+    }
+
+    @Test
+    public void decode() throws Exception {
+        SendPacketBatch batch = new SendPacketBatch(ChannelBuffers.dynamicBuffer(16));
+        batch.add(new byte[] {7});
+        batch.add(new byte[] {8, 9});
+
+        ChannelBuffer buffer = batch.toBuffer();
+        Assert.assertEquals(PacketType.APPLICATION_SEND, buffer.readShort());
+        SendPacket first = (SendPacket) SendPacket.readBuffer(PacketType.APPLICATION_SEND, buffer);
+        Assert.assertArrayEquals(new byte[] {7}, first.getPayload());
+
+        Assert.assertEquals(PacketType.APPLICATION_SEND, buffer.readShort());
+        SendPacket second = (SendPacket) SendPacket.readBuffer(PacketType.APPLICATION_SEND, buffer);
+        Assert.assertArrayEquals(new byte[] {8, 9}, second.getPayload());
+        Assert.assertFalse(buffer.readable());
+    }
+
+    @Test
+    public void cancelPacket() throws Exception {
+        SendPacketBatch batch = new SendPacketBatch(ChannelBuffers.dynamicBuffer(16));
+        batch.add(new byte[] {1});
+        int size = batch.readableBytes();
+
+        OutputStream out = batch.beginPacket();
+        out.write(new byte[] {2, 3, 4});
+        batch.cancelPacket();
+
+        Assert.assertEquals(1, batch.getPacketCount());
+        Assert.assertEquals(size, batch.readableBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void unfinishedPacket() throws Exception {
+        SendPacketBatch batch = new SendPacketBatch(ChannelBuffers.dynamicBuffer(16));
+        batch.beginPacket();
+        batch.toBuffer();
+    }
+
+    @Test
+    public void releaseOnce() throws Exception {
+        ChannelBufferPool pool = new ChannelBufferPool(2, 16, 64);
+        SendPacketBatch batch = new SendPacketBatch(pool);
+        batch.add(new byte[] {1});
+
+        batch.release();
+        batch.release();
+        Assert.assertEquals(1, pool.size());
+
+        ChannelBuffer reused = pool.acquire();
+        Assert.assertEquals(0, reused.readableBytes());
+        Assert.assertEquals(1, pool.getReuseCount());
+    }
+
+    @Test
+    public void dropGrownBuffer() throws Exception {
+        ChannelBufferPool pool = new ChannelBufferPool(2, 16, 64);
+        SendPacketBatch batch = new SendPacketBatch(pool);
+        batch.add(new byte[128]);
+
+        batch.release();
+        Assert.assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.thrift.io;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+
+import com.baidu.oped.apm.thrift.dto.TAnnotation;
+import com.baidu.oped.apm.thrift.dto.TAnnotationValue;
+import com.baidu.oped.apm.thrift.dto.TIntStringStringValue;
+import com.baidu.oped.apm.thrift.dto.TIntStringValue;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanChunk;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+
+/**
+ * Writes TSpan and TSpanChunk in the thrift compact protocol (header + body), the same bytes as
+ * {@link HeaderTBaseSerializer} with {@link org.apache.thrift.protocol.TCompactProtocol}.
+ * Fields are read straight from the dto and written into a reusable buffer,
+ * without TProtocol, TList descriptors or intermediate byte[] for strings.
+ * Field order and "is set" rules follow the generated StandardScheme write().
+ * Caution. not thread safe
+ */
+public class DirectSpanSerializer {
+
+    // TCompactProtocol.Types
+    private static final byte TYPE_BOOLEAN_TRUE = 0x01;
+    private static final byte TYPE_BOOLEAN_FALSE = 0x02;
+    private static final byte TYPE_BYTE = 0x03;
+    private static final byte TYPE_I16 = 0x04;
+    private static final byte TYPE_I32 = 0x05;
+    private static final byte TYPE_I64 = 0x06;
+    private static final byte TYPE_DOUBLE = 0x07;
+    private static final byte TYPE_BINARY = 0x08;
+    private static final byte TYPE_LIST = 0x09;
+    private static final byte TYPE_STRUCT = 0x0C;
+
+    private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
+
+    private static final Header SPAN_HEADER;
+    private static final Header SPAN_CHUNK_HEADER;
+
+    static {
+        final TBaseLocator locator = new DefaultTBaseLocator();
+        try {
+            SPAN_HEADER = locator.headerLookup(new TSpan());
+            SPAN_CHUNK_HEADER = locator.headerLookup(new TSpanChunk());
+        } catch (TException e) {
+            throw new IllegalStateException("header lookup fail", e);
+        }
+    }
+
+    private byte[] buffer;
+    private int position;
+
+    // TCompactProtocol.lastFieldId_ of the struct being written. the outer values live on the java stack.
+    private short lastFieldId;
+
+    public DirectSpanSerializer() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public DirectSpanSerializer(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Invalid bufferSize " + bufferSize);
+        }
+        this.buffer = new byte[bufferSize];
+    }
+
+    public static boolean isSupport(TBase<?, ?> base) {
+        return base instanceof TSpan || base instanceof TSpanChunk;
+    }
+
+    /**
+     * @return internal buffer. valid until the next call. use {@link #getInterBufferSize()} for the length.
+     */
+    public byte[] serialize(TBase<?, ?> base) throws TException {
+        if (base instanceof TSpan) {
+            this.position = 0;
+            writeHeader(SPAN_HEADER);
+            writeSpan((TSpan) base);
+        } else if (base instanceof TSpanChunk) {
+            this.position = 0;
+            writeHeader(SPAN_CHUNK_HEADER);
+            writeSpanChunk((TSpanChunk) base);
+        } else {
+            throw new TException("Unsupported type:" + (base != null ? base.getClass() : null));
+        }
+        return buffer;
+    }
+
+    public int getInterBufferSize() {
+        return position;
+    }
+
+    private void writeHeader(Header header) {
+        final short type = header.getType();
+        ensureCapacity(Header.HEADER_SIZE);
+        buffer[position++] = header.getSignature();
+        buffer[position++] = header.getVersion();
+        buffer[position++] = BytesUtils.writeShort1(type);
+        buffer[position++] = BytesUtils.writeShort2(type);
+    }
+
+    private void writeSpan(TSpan span) throws TException {
+        final short outerFieldId = structBegin();
+
+        if (span.getAgentId() != null) {
+            writeStringField((short) 1, span.getAgentId());
+        }
+        if (span.getApplicationName() != null) {
+            writeStringField((short) 2, span.getApplicationName());
+        }
+        writeI64Field((short) 3, span.getAgentStartTime());
+        if (span.bufferForTransactionId() != null) {
+            writeBinaryField((short) 4, span.bufferForTransactionId());
+        }
+        writeI64Field((short) 7, span.getSpanId());
+        if (span.isSetParentSpanId()) {
+            writeI64Field((short) 8, span.getParentSpanId());
+        }
+        writeI64Field((short) 9, span.getStartTime());
+        if (span.isSetElapsed()) {
+            writeI32Field((short) 10, span.getElapsed());
+        }
+        if (span.isSetRpc()) {
+            writeStringField((short) 11, span.getRpc());
+        }
+        writeI16Field((short) 12, span.getServiceType());
+        if (span.isSetEndPoint()) {
+            writeStringField((short) 13, span.getEndPoint());
+        }
+        if (span.isSetRemoteAddr()) {
+            writeStringField((short) 14, span.getRemoteAddr());
+        }
+        if (span.isSetAnnotations()) {
+            writeAnnotationListField((short) 15, span.getAnnotations());
+        }
+        if (span.isSetFlag()) {
+            writeI16Field((short) 16, span.getFlag());
+        }
+        if (span.isSetErr()) {
+            writeI32Field((short) 17, span.getErr());
+        }
+        if (span.isSetSpanEventList()) {
+            writeSpanEventListField((short) 18, span.getSpanEventList());
+        }
+        if (span.isSetParentApplicationName()) {
+            writeStringField((short) 19, span.getParentApplicationName());
+        }
+        if (span.isSetParentApplicationType()) {
+            writeI16Field((short) 20, span.getParentApplicationType());
+        }
+        if (span.isSetAcceptorHost()) {
+            writeStringField((short) 21, span.getAcceptorHost());
+        }
+        if (span.isSetApiId()) {
+            writeI32Field((short) 25, span.getApiId());
+        }
+        if (span.isSetExceptionInfo()) {
+            writeFieldBegin((short) 26, TYPE_STRUCT);
+            writeIntStringValue(span.getExceptionInfo());
+        }
+        if (span.isSetApplicationServiceType()) {
+            writeI16Field((short) 30, span.getApplicationServiceType());
+        }
+        if (span.isSetLoggingTransactionInfo()) {
+            writeFieldBegin((short) 31, TYPE_BYTE);
+            writeByte(span.getLoggingTransactionInfo());
+        }
+
+        structEnd(outerFieldId);
+    }
+
+    private void writeSpanChunk(TSpanChunk spanChunk) throws TException {
+        final short outerFieldId = structBegin();
+
+        if (spanChunk.getAgentId() != null) {
+            writeStringField((short) 1, spanChunk.getAgentId());
+        }
+        if (spanChunk.getApplicationName() != null) {
+            writeStringField((short) 2, spanChunk.getApplicationName());
+        }
+        writeI64Field((short) 3, spanChunk.getAgentStartTime());
+        writeI16Field((short) 4, spanChunk.getServiceType());
+        if (spanChunk.bufferForTransactionId() != null) {
+            writeBinaryField((short) 5, spanChunk.bufferForTransactionId());
+        }
+        writeI64Field((short) 8, spanChunk.getSpanId());
+        if (spanChunk.isSetEndPoint()) {
+            writeStringField((short) 9, spanChunk.getEndPoint());
+        }
+        if (spanChunk.getSpanEventList() != null) {
+            writeSpanEventListField((short) 10, spanChunk.getSpanEventList());
+        }
+        if (spanChunk.isSetApplicationServiceType()) {
+            writeI16Field((short) 11, spanChunk.getApplicationServiceType());
+        }
+
+        structEnd(outerFieldId);
+    }
+
+    private void writeSpanEventListField(short fieldId, List<TSpanEvent> spanEventList) throws TException {
+        writeFieldBegin(fieldId, TYPE_LIST);
+        final int size = spanEventList.size();
+        writeListBegin(TYPE_STRUCT, size);
+        // index access. no Iterator.
+        for (int i = 0; i < size; i++) {
+            writeSpanEvent(spanEventList.get(i));
+        }
+    }
+
+    private void writeSpanEvent(TSpanEvent spanEvent) throws TException {
+        final short outerFieldId = structBegin();
+
+        if (spanEvent.isSetSpanId()) {
+            writeI64Field((short) 7, spanEvent.getSpanId());
+        }
+        writeI16Field((short) 8, spanEvent.getSequence());
+        writeI32Field((short) 9, spanEvent.getStartElapsed());
+        if (spanEvent.isSetEndElapsed()) {
+            writeI32Field((short) 10, spanEvent.getEndElapsed());
+        }
+        if (spanEvent.isSetRpc()) {
+            writeStringField((short) 11, spanEvent.getRpc());
+        }
+        writeI16Field((short) 12, spanEvent.getServiceType());
+        if (spanEvent.isSetEndPoint()) {
+            writeStringField((short) 13, spanEvent.getEndPoint());
+        }
+        if (spanEvent.isSetAnnotations()) {
+            writeAnnotationListField((short) 14, spanEvent.getAnnotations());
+        }
+        if (spanEvent.isSetDepth()) {
+            writeI32Field((short) 15, spanEvent.getDepth());
+        }
+        if (spanEvent.isSetNextSpanId()) {
+            writeI64Field((short) 16, spanEvent.getNextSpanId());
+        }
+        if (spanEvent.isSetDestinationId()) {
+            writeStringField((short) 20, spanEvent.getDestinationId());
+        }
+        if (spanEvent.isSetApiId()) {
+            writeI32Field((short) 25, spanEvent.getApiId());
+        }
+        if (spanEvent.isSetExceptionInfo()) {
+            writeFieldBegin((short) 26, TYPE_STRUCT);
+            writeIntStringValue(spanEvent.getExceptionInfo());
+        }
+        if (spanEvent.isSetAsyncId()) {
+            writeI32Field((short) 30, spanEvent.getAsyncId());
+        }
+        if (spanEvent.isSetNextAsyncId()) {
+            writeI32Field((short) 31, spanEvent.getNextAsyncId());
+        }
+        if (spanEvent.isSetAsyncSequence()) {
+            writeI16Field((short) 32, spanEvent.getAsyncSequence());
+        }
+
+        structEnd(outerFieldId);
+    }
+
+    private void writeAnnotationListField(short fieldId, List<TAnnotation> annotations) throws TException {
+        writeFieldBegin(fieldId, TYPE_LIST);
+        final int size = annotations.size();
+        writeListBegin(TYPE_STRUCT, size);
+        for (int i = 0; i < size; i++) {
+            writeAnnotation(annotations.get(i));
+        }
+    }
+
+    private void writeAnnotation(TAnnotation annotation) throws TException {
+        final short outerFieldId = structBegin();
+
+        writeI32Field((short) 1, annotation.getKey());
+        if (annotation.isSetValue()) {
+            writeFieldBegin((short) 2, TYPE_STRUCT);
+            writeAnnotationValue(annotation.getValue());
+        }
+
+        structEnd(outerFieldId);
+    }
+
+    // TUnion : exactly one field
+    private void writeAnnotationValue(TAnnotationValue annotationValue) throws TException {
+        final TAnnotationValue._Fields setField = annotationValue.getSetField();
+        final Object value = annotationValue.getFieldValue();
+        if (setField == null || value == null) {
+            throw new TException("Cannot write a TUnion with no set value!");
+        }
+
+        final short outerFieldId = structBegin();
+        final short fieldId = setField.getThriftFieldId();
+        switch (setField) {
+            case STRING_VALUE:
+                writeStringField(fieldId, (String) value);
+                break;
+            case BOOL_VALUE:
+                // compact protocol packs bool into the field header.
+                writeFieldBegin(fieldId, ((Boolean) value) ? TYPE_BOOLEAN_TRUE : TYPE_BOOLEAN_FALSE);
+                break;
+            case INT_VALUE:
+                writeI32Field(fieldId, (Integer) value);
+                break;
+            case LONG_VALUE:
+                writeI64Field(fieldId, (Long) value);
+                break;
+            case SHORT_VALUE:
+                writeI16Field(fieldId, (Short) value);
+                break;
+            case DOUBLE_VALUE:
+                writeFieldBegin(fieldId, TYPE_DOUBLE);
+                writeDouble((Double) value);
+                break;
+            case BINARY_VALUE:
+                writeBinaryField(fieldId, (ByteBuffer) value);
+                break;
+            case BYTE_VALUE:
+                writeFieldBegin(fieldId, TYPE_BYTE);
+                writeByte((Byte) value);
+                break;
+            case INT_STRING_VALUE:
+                writeFieldBegin(fieldId, TYPE_STRUCT);
+                writeIntStringValue((TIntStringValue) value);
+                break;
+            case INT_STRING_STRING_VALUE:
+                writeFieldBegin(fieldId, TYPE_STRUCT);
+                writeIntStringStringValue((TIntStringStringValue) value);
+                break;
+            default:
+                throw new TException("Cannot write union with unknown field " + setField);
+        }
+        structEnd(outerFieldId);
+    }
+
+    private void writeIntStringValue(TIntStringValue intStringValue) {
+        final short outerFieldId = structBegin();
+
+        writeI32Field((short) 1, intStringValue.getIntValue());
+        if (intStringValue.isSetStringValue()) {
+            writeStringField((short) 2, intStringValue.getStringValue());
+        }
+
+        structEnd(outerFieldId);
+    }
+
+    private void writeIntStringStringValue(TIntStringStringValue intStringStringValue) {
+        final short outerFieldId = structBegin();
+
+        writeI32Field((short) 1, intStringStringValue.getIntValue());
+        if (intStringStringValue.isSetStringValue1()) {
+            writeStringField((short) 2, intStringStringValue.getStringValue1());
+        }
+        if (intStringStringValue.isSetStringValue2()) {
+            writeStringField((short) 3, intStringStringValue.getStringValue2());
+        }
+
+        structEnd(outerFieldId);
+    }
+
+    private short structBegin() {
+        final short outerFieldId = this.lastFieldId;
+        this.lastFieldId = 0;
+        return outerFieldId;
+    }
+
+    private void structEnd(short outerFieldId) {
+        // field stop
+        writeByte((byte) 0);
+        this.lastFieldId = outerFieldId;
+    }
+
+    private void writeFieldBegin(short fieldId, byte compactType) {
+        final int delta = fieldId - lastFieldId;
+        if (fieldId > lastFieldId && delta <= 15) {
+            writeByte((byte) (delta << 4 | compactType));
+        } else {
+            writeByte(compactType);
+            writeVarint32(intToZigZag(fieldId));
+        }
+        this.lastFieldId = fieldId;
+    }
+
+    private void writeListBegin(byte elementType, int size) {
+        if (size <= 14) {
+            writeByte((byte) (size << 4 | elementType));
+        } else {
+            writeByte((byte) (0xf0 | elementType));
+            writeVarint32(size);
+        }
+    }
+
+    private void writeI16Field(short fieldId, short value) {
+        writeFieldBegin(fieldId, TYPE_I16);
+        writeVarint32(intToZigZag(value));
+    }
+
+    private void writeI32Field(short fieldId, int value) {
+        writeFieldBegin(fieldId, TYPE_I32);
+        writeVarint32(intToZigZag(value));
+    }
+
+    private void writeI64Field(short fieldId, long value) {
+        writeFieldBegin(fieldId, TYPE_I64);
+        writeVarint64(longToZigZag(value));
+    }
+
+    private void writeStringField(short fieldId, String value) {
+        writeFieldBegin(fieldId, TYPE_BINARY);
+        writeString(value);
+    }
+
+    private void writeBinaryField(short fieldId, ByteBuffer value) {
+        writeFieldBegin(fieldId, TYPE_BINARY);
+        final int length = value.limit() - value.position();
+        writeVarint32(length);
+        ensureCapacity(length);
+        System.arraycopy(value.array(), value.arrayOffset() + value.position(), buffer, position, length);
+        position += length;
+    }
+
+    // same bytes as String.getBytes("UTF-8"). unpaired surrogates become '?'.
+    private void writeString(String value) {
+        final int length = value.length();
+        final int utf8Length = utf8Length(value, length);
+        writeVarint32(utf8Length);
+        ensureCapacity(utf8Length);
+
+        final byte[] buffer = this.buffer;
+        int position = this.position;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (isSurrogate(c)) {
+                final int codePoint = toCodePoint(value, i, length);
+                if (codePoint < 0) {
+                    buffer[position++] = '?';
+                } else {
+                    buffer[position++] = (byte) (0xf0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3f));
+                    i++;
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        this.position = position;
+    }
+
+    private static int utf8Length(String value, int length) {
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (isSurrogate(c)) {
+                if (toCodePoint(value, i, length) < 0) {
+                    utf8Length++;
+                } else {
+                    utf8Length += 4;
+                    i++;
+                }
+            } else {
+                utf8Length += 3;
+            }
+        }
+        return utf8Length;
+    }
+
+    // Character.isSurrogate() is 1.7+
+    private static boolean isSurrogate(char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    // -1 if not a valid surrogate pair
+    private static int toCodePoint(String value, int index, int length) {
+        final char high = value.charAt(index);
+        if (!Character.isHighSurrogate(high) || index + 1 >= length) {
+            return -1;
+        }
+        final char low = value.charAt(index + 1);
+        if (!Character.isLowSurrogate(low)) {
+            return -1;
+        }
+        return Character.toCodePoint(high, low);
+    }
+
+    private void writeDouble(double value) {
+        // little endian. TCompactProtocol.fixedLongToBytes()
+        final long bits = Double.doubleToLongBits(value);
+        ensureCapacity(8);
+        for (int i = 0; i < 8; i++) {
+            buffer[position++] = (byte) (bits >> (8 * i));
+        }
+    }
+
+    private void writeByte(byte value) {
+        ensureCapacity(1);
+        buffer[position++] = value;
+    }
+
+    private void writeVarint32(int n) {
+        ensureCapacity(5);
+        while (true) {
+            if ((n & ~0x7F) == 0) {
+                buffer[position++] = (byte) n;
+                return;
+            }
+            buffer[position++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+    }
+
+    private void writeVarint64(long n) {
+        ensureCapacity(10);
+        while (true) {
+            if ((n & ~0x7FL) == 0) {
+                buffer[position++] = (byte) n;
+                return;
+            }
+            buffer[position++] = (byte) ((n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+    }
+
+    private static int intToZigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static long longToZigZag(long l) {
+        return (l << 1) ^ (l >> 63);
+    }
+
+    private void ensureCapacity(int length) {
+        final int required = position + length;
+        if (required > buffer.length) {
+            int newLength = buffer.length << 1;
+            if (newLength < required) {
+                newLength = required;
+            }
+            final byte[] newBuffer = new byte[newLength];
+            System.arraycopy(buffer, 0, newBuffer, 0, position);
+            this.buffer = newBuffer;
+        }
+    }
+}
@@ -17,6 +17,8 @@
 package com.baidu.oped.apm.thrift.io;
 
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 
 import org.apache.thrift.TBase;
@@ -64,6 +66,27 @@ public class HeaderTBaseSerializer {
         return baos.toByteArray();
     }
     
+    /**
+     * Serialize the Thrift object and write the bytes to the given stream,
+     * without copying them into a new byte array first.
+     *
+     * @param base The object to serialize
+     * @param out  The stream to write to
+     * @return number of bytes written
+     */
+    public int serialize(TBase<?, ?> base, OutputStream out) throws TException {
+        final Header header = locator.headerLookup(base);
+        baos.reset();
+        writeHeader(header);
+        base.write(protocol);
+        try {
+            baos.writeTo(out);
+        } catch (IOException e) {
+            throw new TException(e);
+        }
+        return baos.size();
+    }
+
     public byte[] continueSerialize(TBase<?, ?> base) throws TException {
         final Header header = locator.headerLookup(base);
         writeHeader(header);
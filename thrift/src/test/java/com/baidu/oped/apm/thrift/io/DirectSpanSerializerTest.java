@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 NAVER Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.baidu.oped.apm.thrift.io;
+
+import java.util.Arrays;
+
+import org.apache.thrift.TBase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.baidu.oped.apm.thrift.dto.TAnnotation;
+import com.baidu.oped.apm.thrift.dto.TAnnotationValue;
+import com.baidu.oped.apm.thrift.dto.TIntStringStringValue;
+import com.baidu.oped.apm.thrift.dto.TIntStringValue;
+import com.baidu.oped.apm.thrift.dto.TSpan;
+import com.baidu.oped.apm.thrift.dto.TSpanChunk;
+import com.baidu.oped.apm.thrift.dto.TSpanEvent;
+
+public class DirectSpanSerializerTest {
+
+    private final HeaderTBaseSerializer serializer = new HeaderTBaseSerializerFactory(false, 1024, true).createSerializer();
+    private final DirectSpanSerializer directSerializer = new DirectSpanSerializer(16);
+
+    @Test
+    public void serializeSpan() throws Exception {
+        TSpan span = new TSpanMockBuilder().build(20, 10);
+        span.setParentSpanId(-1);
+        span.setElapsed(300);
+        span.setRpc("/test/\uD55C\uAE00");
+        span.setEndPoint("localhost:8080");
+        span.setRemoteAddr("127.0.0.1");
+        span.setFlag((short) 1);
+        span.setErr(1);
+        span.setApiId(-10);
+        span.setExceptionInfo(new TIntStringValue(3));
+        span.setApplicationServiceType((short) 1010);
+        span.addToAnnotations(new TAnnotation(-1));
+        span.addToAnnotations(annotation(12, TAnnotationValue.stringValue("broken \uD800 surrogate \uD83D\uDE00")));
+
+        TSpanEvent spanEvent = span.getSpanEventList().get(0);
+        spanEvent.setDepth(1);
+        spanEvent.setNextSpanId(Long.MIN_VALUE);
+        spanEvent.setDestinationId("dest");
+        spanEvent.setAsyncId(1);
+        spanEvent.setNextAsyncId(2);
+        spanEvent.setAsyncSequence((short) 3);
+        spanEvent.setExceptionInfo(new TIntStringValue(Integer.MAX_VALUE));
+        spanEvent.addToAnnotations(annotation(1, TAnnotationValue.boolValue(true)));
+        spanEvent.addToAnnotations(annotation(2, TAnnotationValue.boolValue(false)));
+        spanEvent.addToAnnotations(annotation(3, TAnnotationValue.intValue(-5)));
+        spanEvent.addToAnnotations(annotation(4, TAnnotationValue.longValue(Long.MAX_VALUE)));
+        spanEvent.addToAnnotations(annotation(5, TAnnotationValue.shortValue((short) 7)));
+        spanEvent.addToAnnotations(annotation(6, TAnnotationValue.doubleValue(1.5)));
+        spanEvent.addToAnnotations(annotation(7, TAnnotationValue.binaryValue(new byte[] {1, 2, 3})));
+        spanEvent.addToAnnotations(annotation(8, TAnnotationValue.byteValue((byte) 9)));
+        TIntStringValue intStringValue = new TIntStringValue(10);
+        intStringValue.setStringValue("value");
+        spanEvent.addToAnnotations(annotation(9, TAnnotationValue.intStringValue(intStringValue)));
+        TIntStringStringValue intStringStringValue = new TIntStringStringValue(11);
+        intStringStringValue.setStringValue2("value2");
+        spanEvent.addToAnnotations(annotation(10, TAnnotationValue.intStringStringValue(intStringStringValue)));
+
+        assertSameBytes(span);
+    }
+
+    @Test
+    public void serializeEmptySpan() throws Exception {
+        assertSameBytes(new TSpan());
+    }
+
+    @Test
+    public void serializeSpanChunk() throws Exception {
+        TSpanChunk spanChunk = new TSpanMockBuilder().buildChunk(3, 100);
+        spanChunk.setEndPoint("endPoint");
+        spanChunk.setApplicationServiceType((short) 1000);
+
+        assertSameBytes(spanChunk);
+        // buffer reuse
+        assertSameBytes(new TSpanMockBuilder().buildChunk(1, 10));
+    }
+
+    @Test
+    public void deserialize() throws Exception {
+        TSpan span = new TSpanMockBuilder().build(3, 10);
+        byte[] buffer = directSerializer.serialize(span);
+        byte[] copy = Arrays.copyOf(buffer, directSerializer.getInterBufferSize());
+
+        HeaderTBaseDeserializer deserializer = new HeaderTBaseDeserializerFactory().createDeserializer();
+        TBase<?, ?> result = deserializer.deserialize(copy);
+        Assert.assertEquals(span, result);
+    }
+
+    private TAnnotation annotation(int key, TAnnotationValue value) {
+        TAnnotation annotation = new TAnnotation(key);
+        annotation.setValue(value);
+        return annotation;
+    }
+
+    private void assertSameBytes(TBase<?, ?> base) throws Exception {
+        byte[] expected = serializer.serialize(base);
+        expected = Arrays.copyOf(expected, serializer.getInterBufferSize());
+
+        byte[] actual = directSerializer.serialize(base);
+        actual = Arrays.copyOf(actual, directSerializer.getInterBufferSize());
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+}